@@ -26,8 +26,10 @@ import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelTypeDescriptor;
 import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.*;
 import net.fhirfactory.pegacorn.core.model.petasos.participant.PetasosParticipantRegistration;
 import net.fhirfactory.pegacorn.core.model.petasos.task.datatypes.work.datatypes.TaskWorkItemManifestType;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers.HL7v2xParserWarmUp;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.SimpleSubscriptionItem;
 import net.fhirfactory.pegacorn.processingplant.ProcessingPlant;
+import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.ResourceType;
 
 import java.util.HashSet;
@@ -36,12 +38,17 @@ import java.util.Set;
 
 public abstract class MITaFHL7v2xSubSystem extends ProcessingPlant {
 
+    private static final String HL7_PARSER_WARM_UP_ITERATIONS_PARAMETER_NAME = "HL7_PARSER_WARM_UP_ITERATIONS";
+    private static final int DEFAULT_HL7_PARSER_WARM_UP_ITERATIONS = 3;
+
     private boolean mitafHL7v2SubsystemInitialised;
+    private HL7v2xParserWarmUp parserWarmUp;
 
 
     public MITaFHL7v2xSubSystem(){
         super();
         mitafHL7v2SubsystemInitialised = false;
+        parserWarmUp = new HL7v2xParserWarmUp();
     }
 
     @Override
@@ -77,8 +84,11 @@ public abstract class MITaFHL7v2xSubSystem extends ProcessingPlant {
                 manifest.setSourceSystem(currentSource);
                 manifest.setSourceProcessingPlantParticipantName(currentSimpleSubscription.getSourceSubsystemParticipantName());
                 manifestList.add(manifest);
+                // the HL7 descriptors carry the event type as the sub-category and the trigger event as the resource
+                parserWarmUp.addMessageType(currentDescriptor.getDataParcelSubCategory(), currentDescriptor.getDataParcelResource(), currentDescriptor.getVersion());
             }
         }
+        warmUpParsers();
         getLogger().info(".executePostConstructActivities(): Registration Processing Plant Petasos Participant ... :)");
         PetasosParticipantRegistration participantRegistration = getLocalPetasosParticipantCacheIM().registerPetasosParticipant(getMeAsASoftwareComponent(), new HashSet<>(), manifestList);
         getLogger().info(".executePostConstructActivities(): Registration Processing Plant Petasos Participant, registration->{}!", participantRegistration);
@@ -86,8 +96,37 @@ public abstract class MITaFHL7v2xSubSystem extends ProcessingPlant {
         this.mitafHL7v2SubsystemInitialised = true;
     }
 
+    /**
+     * Pre-loads the HAPI structure classes, and runs synthetic parse/encode cycles, for each of the
+     * subscribed message types - this is done before the Camel routes (and so the MLLP listeners) are
+     * started, so the first message of each type after a (re)deployment doesn't pay for it.
+     */
+    protected void warmUpParsers(){
+        getLogger().debug(".warmUpParsers(): Entry");
+        int iterations = DEFAULT_HL7_PARSER_WARM_UP_ITERATIONS;
+        String iterationsValue = getMeAsASoftwareComponent().getOtherConfigurationParameter(HL7_PARSER_WARM_UP_ITERATIONS_PARAMETER_NAME);
+        if(StringUtils.isNotEmpty(iterationsValue)){
+            try {
+                iterations = Integer.parseInt(iterationsValue.trim());
+            } catch(NumberFormatException numberFormatException){
+                getLogger().warn(".warmUpParsers(): Invalid {} value->{}, using default", HL7_PARSER_WARM_UP_ITERATIONS_PARAMETER_NAME, iterationsValue);
+            }
+        }
+        if(iterations <= 0 || parserWarmUp.getMessageTypeCount() == 0){
+            getLogger().info(".warmUpParsers(): Exit, nothing to warm up, iterations->{}, messageTypes->{}", iterations, parserWarmUp.getMessageTypeCount());
+            return;
+        }
+        long duration = parserWarmUp.warmUp(iterations);
+        getLogger().info(".warmUpParsers(): Exit, messageTypes->{}, warmedUp->{}, failed->{}, iterations->{}, duration->{}ms",
+                parserWarmUp.getMessageTypeCount(), parserWarmUp.getWarmedUpCount(), parserWarmUp.getFailedCount(), iterations, duration);
+    }
+
     abstract protected List<SimpleSubscriptionItem> registerSubscriptionList();
 
+    public HL7v2xParserWarmUp getParserWarmUp() {
+        return parserWarmUp;
+    }
+
     @Override
     public ProcessingPlantRoleEnum getProcessingPlantCapability() {
         return (ProcessingPlantRoleEnum.PETASOS_SERVICE_PROVIDER_MITAF_GENERAL);
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Group;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.Segment;
+import ca.uhn.hl7v2.model.Type;
+import ca.uhn.hl7v2.parser.DefaultModelClassFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link DefaultModelClassFactory} which remembers the outcome of each structure class lookup, so
+ * that the package search (and the Class.forName calls behind it) is only done once per
+ * name/version pair for the life of the processing plant.
+ */
+public class HL7v2xCachingModelClassFactory extends DefaultModelClassFactory {
+    private static final long serialVersionUID = 3218594012774311059L;
+
+    private final ConcurrentHashMap<String, Class<? extends Message>> messageClassCache;
+    private final ConcurrentHashMap<String, Class<? extends Group>> groupClassCache;
+    private final ConcurrentHashMap<String, Class<? extends Segment>> segmentClassCache;
+    private final ConcurrentHashMap<String, Class<? extends Type>> typeClassCache;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xCachingModelClassFactory(){
+        super();
+        this.messageClassCache = new ConcurrentHashMap<>();
+        this.groupClassCache = new ConcurrentHashMap<>();
+        this.segmentClassCache = new ConcurrentHashMap<>();
+        this.typeClassCache = new ConcurrentHashMap<>();
+    }
+
+    //
+    // Cached Lookups
+    //
+
+    @Override
+    public Class<? extends Message> getMessageClass(String name, String version, boolean isExplicit) throws HL7Exception {
+        String key = name + "|" + version + "|" + isExplicit;
+        Class<? extends Message> messageClass = messageClassCache.get(key);
+        if(messageClass == null){
+            messageClass = super.getMessageClass(name, version, isExplicit);
+            if(messageClass != null){
+                messageClassCache.putIfAbsent(key, messageClass);
+            }
+        }
+        return(messageClass);
+    }
+
+    @Override
+    public Class<? extends Group> getGroupClass(String name, String version) throws HL7Exception {
+        String key = name + "|" + version;
+        Class<? extends Group> groupClass = groupClassCache.get(key);
+        if(groupClass == null){
+            groupClass = super.getGroupClass(name, version);
+            if(groupClass != null){
+                groupClassCache.putIfAbsent(key, groupClass);
+            }
+        }
+        return(groupClass);
+    }
+
+    @Override
+    public Class<? extends Segment> getSegmentClass(String name, String version) throws HL7Exception {
+        String key = name + "|" + version;
+        Class<? extends Segment> segmentClass = segmentClassCache.get(key);
+        if(segmentClass == null){
+            segmentClass = super.getSegmentClass(name, version);
+            if(segmentClass != null){
+                segmentClassCache.putIfAbsent(key, segmentClass);
+            }
+        }
+        return(segmentClass);
+    }
+
+    @Override
+    public Class<? extends Type> getTypeClass(String name, String version) throws HL7Exception {
+        String key = name + "|" + version;
+        Class<? extends Type> typeClass = typeClassCache.get(key);
+        if(typeClass == null){
+            typeClass = super.getTypeClass(name, version);
+            if(typeClass != null){
+                typeClassCache.putIfAbsent(key, typeClass);
+            }
+        }
+        return(typeClass);
+    }
+
+    //
+    // Metrics
+    //
+
+    public int getCachedClassCount(){
+        return(messageClassCache.size() + groupClassCache.size() + segmentClassCache.size() + typeClassCache.size());
+    }
+}
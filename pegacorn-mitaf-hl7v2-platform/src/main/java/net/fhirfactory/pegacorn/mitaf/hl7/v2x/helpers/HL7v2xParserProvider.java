@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers;
+
+import ca.uhn.hl7v2.DefaultHapiContext;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.ParserConfiguration;
+import ca.uhn.hl7v2.parser.PipeParser;
+import ca.uhn.hl7v2.validation.impl.ValidationContextFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The single source of HAPI parsers for the MITaF HL7v2.x platform.
+ *
+ * All parsers share one (non-validating) HapiContext and one caching ModelClassFactory, so the
+ * structure class lookups are done once per processing plant rather than once per message. Parsers
+ * are pooled per HL7 version (taken from MSH-12) and are returned to the pool after each use.
+ *
+ * It is a plain static utility rather than an injectable (CDI) service. Most of its callers are not
+ * CDI managed - HL7MessageUtils, HL7MessageWithAttributes, BaseMessageDuplication, the freemarker
+ * configuration and the message views are static helpers or are created with "new" - so they could
+ * not have the service injected. A static utility lets them and the CDI managed beans (e.g. the
+ * HL7v2xMessageEncapsulator) use exactly the same pools, without a second route to the same state.
+ * The pools, the HapiContext and the model class cache are all thread-safe, so no instance is needed.
+ */
+public final class HL7v2xParserProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(HL7v2xParserProvider.class);
+
+    private static final int MAXIMUM_IDLE_PARSERS_PER_VERSION = 32;
+    private static final String UNKNOWN_VERSION = "unknown";
+
+    private static final HL7v2xCachingModelClassFactory SHARED_MODEL_CLASS_FACTORY = new HL7v2xCachingModelClassFactory();
+    private static final HapiContext SHARED_CONTEXT = createSharedContext();
+    private static final ConcurrentHashMap<String, ConcurrentLinkedQueue<PipeParser>> PARSER_POOLS = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger BORROWED_PARSER_COUNT = new AtomicInteger(0);
+    private static final AtomicLong TOTAL_BORROW_COUNT = new AtomicLong(0);
+    private static final AtomicLong CREATED_PARSER_COUNT = new AtomicLong(0);
+
+    //
+    // Constructor(s)
+    //
+
+    private HL7v2xParserProvider(){
+    }
+
+    private static HapiContext createSharedContext(){
+        ParserConfiguration parserConfiguration = new ParserConfiguration();
+        parserConfiguration.setValidating(false);
+        HapiContext context = new DefaultHapiContext(parserConfiguration, ValidationContextFactory.noValidation(), SHARED_MODEL_CLASS_FACTORY);
+        return(context);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Parses an ER7 (pipe delimited) message using a pooled, non-validating parser.
+     *
+     * @param messageText the message as text
+     * @return the parsed message
+     * @throws HL7Exception if the message cannot be parsed
+     */
+    public static Message parse(String messageText) throws HL7Exception {
+        LOG.trace(".parse(): Entry");
+        if(StringUtils.isEmpty(messageText)){
+            throw(new HL7Exception("Cannot parse an empty message"));
+        }
+        String version = extractVersion(messageText);
+        PipeParser parser = borrowParser(version);
+        try {
+            Message message = parser.parse(messageText);
+            LOG.trace(".parse(): Exit");
+            return(message);
+        } finally {
+            returnParser(version, parser);
+        }
+    }
+
+    /**
+     * Encodes a message to ER7 using a pooled parser.
+     *
+     * @param message the message to encode
+     * @return the message as text
+     * @throws HL7Exception if the message cannot be encoded
+     */
+    public static String encode(Message message) throws HL7Exception {
+        String version = message.getVersion();
+        if(StringUtils.isEmpty(version)){
+            version = UNKNOWN_VERSION;
+        }
+        PipeParser parser = borrowParser(version);
+        try {
+            return(parser.encode(message));
+        } finally {
+            returnParser(version, parser);
+        }
+    }
+
+    //
+    // Pool Management
+    //
+
+    private static PipeParser borrowParser(String version){
+        ConcurrentLinkedQueue<PipeParser> pool = PARSER_POOLS.computeIfAbsent(version, key -> new ConcurrentLinkedQueue<>());
+        PipeParser parser = pool.poll();
+        if(parser == null){
+            parser = new PipeParser(SHARED_CONTEXT);
+            long created = CREATED_PARSER_COUNT.incrementAndGet();
+            LOG.debug(".borrowParser(): Created new parser, version->{}, totalCreated->{}", version, created);
+        }
+        BORROWED_PARSER_COUNT.incrementAndGet();
+        TOTAL_BORROW_COUNT.incrementAndGet();
+        return(parser);
+    }
+
+    private static void returnParser(String version, PipeParser parser){
+        BORROWED_PARSER_COUNT.decrementAndGet();
+        ConcurrentLinkedQueue<PipeParser> pool = PARSER_POOLS.get(version);
+        // size() is O(n) on a ConcurrentLinkedQueue, but n is capped at a small number here
+        if(pool != null && pool.size() < MAXIMUM_IDLE_PARSERS_PER_VERSION){
+            pool.offer(parser);
+        }
+    }
+
+    /**
+     * Extracts the version identifier (MSH-12, first component) from the message text without
+     * parsing the message.
+     *
+     * @param messageText the message as text
+     * @return the version identifier, or "unknown" if one cannot be found
+     */
+    public static String extractVersion(String messageText){
+        if(messageText == null || messageText.length() < 8 || !messageText.startsWith("MSH")){
+            return(UNKNOWN_VERSION);
+        }
+        char fieldSeparator = messageText.charAt(3);
+        int fieldNumber = 1;
+        int position = 3;
+        int length = messageText.length();
+        while(position < length){
+            char currentChar = messageText.charAt(position);
+            if(currentChar == '\r' || currentChar == '\n'){
+                return(UNKNOWN_VERSION);
+            }
+            if(currentChar == fieldSeparator){
+                fieldNumber += 1;
+                if(fieldNumber == 12){
+                    int fieldStart = position + 1;
+                    int fieldEnd = fieldStart;
+                    while(fieldEnd < length){
+                        char endChar = messageText.charAt(fieldEnd);
+                        if(endChar == fieldSeparator || endChar == '^' || endChar == '\r' || endChar == '\n'){
+                            break;
+                        }
+                        fieldEnd += 1;
+                    }
+                    if(fieldEnd == fieldStart){
+                        return(UNKNOWN_VERSION);
+                    }
+                    return(messageText.substring(fieldStart, fieldEnd));
+                }
+            }
+            position += 1;
+        }
+        return(UNKNOWN_VERSION);
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public static HapiContext getHapiContext(){
+        return(SHARED_CONTEXT);
+    }
+
+    public static HL7v2xCachingModelClassFactory getModelClassFactory(){
+        return(SHARED_MODEL_CLASS_FACTORY);
+    }
+
+    //
+    // Metrics
+    //
+
+    public static int getBorrowedParserCount(){
+        return(BORROWED_PARSER_COUNT.get());
+    }
+
+    public static long getTotalBorrowCount(){
+        return(TOTAL_BORROW_COUNT.get());
+    }
+
+    public static long getCreatedParserCount(){
+        return(CREATED_PARSER_COUNT.get());
+    }
+
+    public static int getIdleParserCount(){
+        int idle = 0;
+        for(ConcurrentLinkedQueue<PipeParser> pool: PARSER_POOLS.values()){
+            idle += pool.size();
+        }
+        return(idle);
+    }
+
+    public static String getMetricsSummary() {
+        return "HL7v2xParserProvider{" +
+                "borrowedParserCount=" + getBorrowedParserCount() +
+                ", totalBorrowCount=" + getTotalBorrowCount() +
+                ", createdParserCount=" + getCreatedParserCount() +
+                ", idleParserCount=" + getIdleParserCount() +
+                ", cachedModelClassCount=" + SHARED_MODEL_CLASS_FACTORY.getCachedClassCount() +
+                '}';
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Group;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.Structure;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Warms up the HAPI structure classes and the pooled parsers for a set of message types, so that the
+ * first real message of each type doesn't pay for the class loading, the reflective structure lookups
+ * and the (interpreted) first runs of the parser.
+ *
+ * Each message type (event type, trigger event and version) is put through a number of synthetic
+ * parse/encode cycles using {@link HL7v2xParserProvider}, which fills the shared model class cache and
+ * leaves a parser in the pool for the version. On the first cycle every group and segment of the
+ * message structure is also instantiated, so all of the structure's segment and field type classes
+ * are loaded and initialised.
+ *
+ * A message type that HAPI doesn't know (or that fails to parse) is counted and logged, but doesn't
+ * stop the warm-up.
+ */
+public class HL7v2xParserWarmUp {
+    private static final Logger LOG = LoggerFactory.getLogger(HL7v2xParserWarmUp.class);
+
+    private static final String WARM_UP_IDENTIFIER = "WARMUP";
+    private static final String WARM_UP_TIMESTAMP = "20210101000000";
+
+    private final Set<String> messageTypes;
+    private int warmedUpCount;
+    private int failedCount;
+    private long durationInMilliseconds;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xParserWarmUp(){
+        this.messageTypes = new LinkedHashSet<>();
+        this.warmedUpCount = 0;
+        this.failedCount = 0;
+        this.durationInMilliseconds = 0L;
+    }
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Adds a message type to be warmed up. Incomplete or wildcard ("*") combinations are ignored, as are
+     * duplicates.
+     *
+     * @param eventType the message event type (MSH-9.1), e.g. "ADT"
+     * @param triggerEvent the trigger event (MSH-9.2), e.g. "A01"
+     * @param version the HL7 version (MSH-12), e.g. "2.4"
+     * @return true if the message type was added
+     */
+    public boolean addMessageType(String eventType, String triggerEvent, String version){
+        if(!isConcrete(eventType) || !isConcrete(triggerEvent) || !isConcrete(version)){
+            getLogger().debug(".addMessageType(): Ignoring, eventType->{}, triggerEvent->{}, version->{}", eventType, triggerEvent, version);
+            return(false);
+        }
+        return(messageTypes.add(buildSyntheticMessage(eventType.trim(), triggerEvent.trim(), version.trim())));
+    }
+
+    /**
+     * Runs the warm-up for all of the message types added so far.
+     *
+     * @param iterations the number of parse/encode cycles per message type
+     * @return the time taken, in milliseconds
+     */
+    public long warmUp(int iterations){
+        getLogger().debug(".warmUp(): Entry, messageTypes->{}, iterations->{}", messageTypes.size(), iterations);
+        long startTime = System.nanoTime();
+        for(String syntheticMessage: messageTypes){
+            try {
+                for(int counter = 0; counter < iterations; counter += 1){
+                    Message message = HL7v2xParserProvider.parse(syntheticMessage);
+                    if(counter == 0){
+                        instantiateStructure(message);
+                    }
+                    HL7v2xParserProvider.encode(message);
+                }
+                warmedUpCount += 1;
+            } catch(HL7Exception | RuntimeException warmUpException){
+                failedCount += 1;
+                getLogger().warn(".warmUp(): Could not warm up message type, message->{}, error->{}", syntheticMessage, warmUpException.getMessage());
+            }
+        }
+        durationInMilliseconds = (System.nanoTime() - startTime) / 1000000L;
+        getLogger().debug(".warmUp(): Exit, durationInMilliseconds->{}", durationInMilliseconds);
+        return(durationInMilliseconds);
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private static boolean isConcrete(String value){
+        return(StringUtils.isNotBlank(value) && !value.contains("*"));
+    }
+
+    private static String buildSyntheticMessage(String eventType, String triggerEvent, String version){
+        StringBuilder message = new StringBuilder(96);
+        message.append("MSH|^~\\&|").append(WARM_UP_IDENTIFIER).append('|').append(WARM_UP_IDENTIFIER);
+        message.append('|').append(WARM_UP_IDENTIFIER).append('|').append(WARM_UP_IDENTIFIER);
+        message.append('|').append(WARM_UP_TIMESTAMP).append("||").append(eventType).append('^').append(triggerEvent);
+        message.append('|').append(WARM_UP_IDENTIFIER).append("|P|").append(version).append('\r');
+        return(message.toString());
+    }
+
+    /**
+     * Creates the first repetition of every structure in the group (recursively), which loads and
+     * initialises the segment classes and the data type classes of their fields.
+     */
+    private static void instantiateStructure(Group group) throws HL7Exception {
+        for(String name: group.getNames()){
+            Structure structure = group.get(name);
+            if(structure instanceof Group){
+                instantiateStructure((Group)structure);
+            }
+        }
+    }
+
+    //
+    // Getters
+    //
+
+    public int getMessageTypeCount(){
+        return(messageTypes.size());
+    }
+
+    public int getWarmedUpCount() {
+        return warmedUpCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    public long getDurationInMilliseconds() {
+        return durationInMilliseconds;
+    }
+
+    @Override
+    public String toString() {
+        return "HL7v2xParserWarmUp{" +
+                "messageTypeCount=" + getMessageTypeCount() +
+                ", warmedUpCount=" + warmedUpCount +
+                ", failedCount=" + failedCount +
+                ", durationInMilliseconds=" + durationInMilliseconds +
+                '}';
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.model;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers.HL7v2xParserProvider;
+import org.apache.camel.Exchange;
+
+/**
+ * Wraps a HAPI {@link Message} and remembers its ER7 (pipe delimited) encoding and the MSH and PID
+ * segments the first time they are asked for. Encoding a HAPI message walks the whole object
+ * model, so this lets every consumer within a WUP share a single encoding of the message.
+ *
+ * The header metadata (message type, trigger event and version) is read from the encoding, via an
+ * {@link HL7v2xMessageView}, the first time it is asked for.
+ *
+ * The wrapper is not thread-safe, it is intended to travel with a single Camel Exchange (see
+ * {@link #fromExchange(Exchange, Message)} and {@link #fromExchange(Exchange, String)}). The wrapped
+ * message must not be modified once the encoding has been taken.
+ */
+public class CachedHL7v2xMessage {
+    public static final String CACHED_MESSAGE_EXCHANGE_PROPERTY = "MITaFCachedHL7v2xMessage";
+
+    private final Message message;
+    private String encodedMessage;
+    private String mshSegment;
+    private String pidSegment;
+    private boolean segmentsExtracted;
+    private HL7v2xMessageView messageView;
+
+    //
+    // Constructor(s)
+    //
+
+    public CachedHL7v2xMessage(Message message){
+        this.message = message;
+        this.encodedMessage = null;
+        this.segmentsExtracted = false;
+    }
+
+    public CachedHL7v2xMessage(Message message, String encodedMessage){
+        this.message = message;
+        this.encodedMessage = encodedMessage;
+        this.segmentsExtracted = false;
+    }
+
+    /**
+     * Returns the cached representation of the message attached to the exchange, creating (and
+     * attaching) one if the exchange doesn't have one for this message yet.
+     *
+     * @param exchange the Camel Exchange the message is travelling in
+     * @param message the message
+     * @return the (shared) cached representation of the message
+     */
+    public static CachedHL7v2xMessage fromExchange(Exchange exchange, Message message){
+        CachedHL7v2xMessage cachedMessage = exchange.getProperty(CACHED_MESSAGE_EXCHANGE_PROPERTY, CachedHL7v2xMessage.class);
+        if(cachedMessage == null || cachedMessage.getMessage() != message){
+            cachedMessage = new CachedHL7v2xMessage(message);
+            exchange.setProperty(CACHED_MESSAGE_EXCHANGE_PROPERTY, cachedMessage);
+        }
+        return(cachedMessage);
+    }
+
+    /**
+     * Returns the cached representation of the message attached to the exchange if it was parsed from
+     * exactly this text, otherwise parses the text (once) and attaches the result to the exchange. The
+     * text is kept as the message's encoding.
+     *
+     * @param exchange the Camel Exchange the message is travelling in
+     * @param messageText the message (ER7 encoded)
+     * @return the (shared) cached representation of the message
+     * @throws HL7Exception if the message cannot be parsed
+     */
+    public static CachedHL7v2xMessage fromExchange(Exchange exchange, String messageText) throws HL7Exception {
+        CachedHL7v2xMessage cachedMessage = exchange.getProperty(CACHED_MESSAGE_EXCHANGE_PROPERTY, CachedHL7v2xMessage.class);
+        if(cachedMessage == null || cachedMessage.encodedMessage == null || cachedMessage.encodedMessage != messageText){
+            Message message = HL7v2xParserProvider.parse(messageText);
+            cachedMessage = new CachedHL7v2xMessage(message, messageText);
+            exchange.setProperty(CACHED_MESSAGE_EXCHANGE_PROPERTY, cachedMessage);
+        }
+        return(cachedMessage);
+    }
+
+    //
+    // Getters
+    //
+
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the message in ER7 format, encoding it on first use only
+     * @throws HL7Exception if the message cannot be encoded
+     */
+    public String getEncodedMessage() throws HL7Exception {
+        if(encodedMessage == null){
+            encodedMessage = message.encode();
+        }
+        return(encodedMessage);
+    }
+
+    /**
+     * @return the MSH segment, or null if the message has no MSH segment
+     * @throws HL7Exception if the message cannot be encoded
+     */
+    public String getMSHSegment() throws HL7Exception {
+        extractSegments();
+        return(mshSegment);
+    }
+
+    /**
+     * @return the (first) PID segment, or null if the message has no PID segment
+     * @throws HL7Exception if the message cannot be encoded
+     */
+    public String getPIDSegment() throws HL7Exception {
+        extractSegments();
+        return(pidSegment);
+    }
+
+    /**
+     * @return MSH-9.1
+     * @throws HL7Exception if the message cannot be encoded
+     */
+    public String getMessageType() throws HL7Exception {
+        return(getMessageView().getMessageType());
+    }
+
+    /**
+     * @return MSH-9.2
+     * @throws HL7Exception if the message cannot be encoded
+     */
+    public String getTriggerEvent() throws HL7Exception {
+        return(getMessageView().getTriggerEvent());
+    }
+
+    /**
+     * @return MSH-12.1
+     * @throws HL7Exception if the message cannot be encoded
+     */
+    public String getVersion() throws HL7Exception {
+        return(getMessageView().getVersion());
+    }
+
+    /**
+     * @return a (segment level) view of the message's encoding
+     * @throws HL7Exception if the message cannot be encoded
+     */
+    public HL7v2xMessageView getMessageView() throws HL7Exception {
+        if(messageView == null){
+            messageView = new HL7v2xMessageView(getEncodedMessage());
+        }
+        return(messageView);
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private void extractSegments() throws HL7Exception {
+        if(segmentsExtracted){
+            return;
+        }
+        HL7v2xSegmentIndex segmentIndex = getMessageView().getSegmentIndex();
+        mshSegment = segmentIndex.getSegment("MSH");
+        pidSegment = segmentIndex.getSegment("PID");
+        segmentsExtracted = true;
+    }
+
+    /**
+     * Mirrors HAPI's Message.toString() (which encodes the message), but uses the cached encoding.
+     */
+    @Override
+    public String toString() {
+        try {
+            return(getEncodedMessage());
+        } catch (Exception encodingException) {
+            return("CachedHL7v2xMessage{message=" + (message == null ? "null" : message.getClass().getName()) + "}");
+        }
+    }
+}
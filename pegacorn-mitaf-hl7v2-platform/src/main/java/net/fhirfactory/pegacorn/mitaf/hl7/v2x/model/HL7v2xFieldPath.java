@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled Terser style location of a single value within a message, i.e.
+ * SEGMENT[(repetition)]-FIELD[(repetition)][-COMPONENT[-SUBCOMPONENT]], e.g. "PID-3-1", "OBX(1)-5" or
+ * "PID-3(2)-4-1". As with the Terser, repetitions are 0 based, everything else is 1 based and a missing
+ * component or subcomponent means the first one.
+ *
+ * Paths are compiled once and shared (see {@link #compile(String)}), so resolving a path against a
+ * {@link HL7v2xMessageView} is a segment lookup plus a few separator scans - there's no parsing of the
+ * path, and no reflection, per access. Group paths (e.g. "/PATIENT/PID-3") are not supported, a segment
+ * path always refers to the segment's occurrence(s) across the whole message.
+ */
+public class HL7v2xFieldPath {
+    private static final int MAXIMUM_CACHED_PATHS = 4096;
+    private static final ConcurrentHashMap<String, HL7v2xFieldPath> COMPILED_PATHS = new ConcurrentHashMap<>();
+
+    private final String path;
+    private final int segmentType;
+    private final int segmentRepetition;
+    private final int fieldNumber;
+    private final int fieldRepetition;
+    private final int componentNumber;
+    private final int subcomponentNumber;
+
+    //
+    // Constructor(s)
+    //
+
+    private HL7v2xFieldPath(String path, String segmentName, int segmentRepetition, int fieldNumber, int fieldRepetition, int componentNumber, int subcomponentNumber){
+        this.path = path;
+        this.segmentType = HL7v2xSegmentIndex.toSegmentType(segmentName);
+        this.segmentRepetition = segmentRepetition;
+        this.fieldNumber = fieldNumber;
+        this.fieldRepetition = fieldRepetition;
+        this.componentNumber = componentNumber;
+        this.subcomponentNumber = subcomponentNumber;
+    }
+
+    /**
+     * Returns the compiled form of the path, compiling it only the first time it is seen.
+     *
+     * @param path the path, e.g. "PID-3-1"
+     * @return the compiled path
+     * @throws IllegalArgumentException if the path is not a valid segment path
+     */
+    public static HL7v2xFieldPath compile(String path){
+        if(path == null){
+            throw new IllegalArgumentException("Path is null");
+        }
+        HL7v2xFieldPath compiledPath = COMPILED_PATHS.get(path);
+        if(compiledPath == null){
+            compiledPath = parse(path);
+            if(COMPILED_PATHS.size() < MAXIMUM_CACHED_PATHS){
+                COMPILED_PATHS.putIfAbsent(path, compiledPath);
+            }
+        }
+        return(compiledPath);
+    }
+
+    private static HL7v2xFieldPath parse(String path){
+        String[] parts = path.trim().split("-");
+        if(parts.length < 2 || parts.length > 4){
+            throw new IllegalArgumentException("Invalid path (expected SEGMENT-FIELD[-COMPONENT[-SUBCOMPONENT]]): " + path);
+        }
+        String segmentName = parts[0];
+        int segmentRepetition = 0;
+        int repetitionStart = segmentName.indexOf('(');
+        if(repetitionStart > 0){
+            segmentRepetition = parseRepetition(path, segmentName.substring(repetitionStart));
+            segmentName = segmentName.substring(0, repetitionStart);
+        }
+        if(segmentName.length() != 3){
+            throw new IllegalArgumentException("Invalid segment name in path: " + path);
+        }
+        String field = parts[1];
+        int fieldRepetition = 0;
+        repetitionStart = field.indexOf('(');
+        if(repetitionStart > 0){
+            fieldRepetition = parseRepetition(path, field.substring(repetitionStart));
+            field = field.substring(0, repetitionStart);
+        }
+        int fieldNumber = parseNumber(path, field);
+        int componentNumber = parts.length > 2 ? parseNumber(path, parts[2]) : 1;
+        int subcomponentNumber = parts.length > 3 ? parseNumber(path, parts[3]) : 1;
+        return(new HL7v2xFieldPath(path, segmentName, segmentRepetition, fieldNumber, fieldRepetition, componentNumber, subcomponentNumber));
+    }
+
+    private static int parseRepetition(String path, String repetition){
+        if(!repetition.endsWith(")")){
+            throw new IllegalArgumentException("Invalid repetition in path: " + path);
+        }
+        try {
+            int value = Integer.parseInt(repetition.substring(1, repetition.length() - 1));
+            if(value < 0){
+                throw new IllegalArgumentException("Invalid repetition in path: " + path);
+            }
+            return(value);
+        } catch(NumberFormatException numberFormatException){
+            throw new IllegalArgumentException("Invalid repetition in path: " + path);
+        }
+    }
+
+    private static int parseNumber(String path, String number){
+        try {
+            int value = Integer.parseInt(number);
+            if(value < 1){
+                throw new IllegalArgumentException("Invalid path (numbers start at 1): " + path);
+            }
+            return(value);
+        } catch(NumberFormatException numberFormatException){
+            throw new IllegalArgumentException("Invalid number in path: " + path);
+        }
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @param messageView the message
+     * @return the value at this path, un-escaped, or null if absent or empty
+     */
+    public String getValue(HL7v2xMessageView messageView){
+        int segmentNumber = messageView.indexOf(segmentType, segmentRepetition);
+        if(segmentNumber < 0){
+            return(null);
+        }
+        return(messageView.getValue(segmentNumber, fieldNumber, fieldRepetition, componentNumber, subcomponentNumber));
+    }
+
+    //
+    // Getters
+    //
+
+    public String getPath() {
+        return path;
+    }
+
+    public static int getCompiledPathCount(){
+        return(COMPILED_PATHS.size());
+    }
+
+    @Override
+    public String toString() {
+        return "HL7v2xFieldPath{" +
+                "path='" + path + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.model;
+
+import org.apache.camel.component.mllp.MllpProtocolConstants;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An ER7 encoded HL7 v2.x message as received (the raw MLLP frame payload), together with its
+ * charset. Decoding to a String is deferred until it is asked for, and done at most once: if the
+ * charset is ASCII compatible (which includes UTF-8 and the ISO-8859 family) and the message turns out
+ * to be pure 7-bit ASCII, decoding is a straight byte-to-char widening (ISO-8859-1) rather than a
+ * charset decode.
+ *
+ * For ASCII compatible charsets segment delimiters and segment names can be found directly in the
+ * bytes (see {@link HL7v2xSegmentIndex#index(HL7v2xMessageBytes)}) and individual segments decoded
+ * with {@link #decode(int, int)} without decoding the rest of the message.
+ */
+public class HL7v2xMessageBytes {
+    public static final Charset DEFAULT_CHARSET = StandardCharsets.ISO_8859_1;
+
+    private static final String ASCII_PROBE = "\r\n|^~\\&MSHPIDEVNZ0123456789";
+    private static final Map<Charset, Boolean> ASCII_COMPATIBLE_CHARSETS = new ConcurrentHashMap<>();
+    private static final Map<String, Charset> HL7_UNICODE_CHARSETS = Map.of(
+            "UNICODE UTF-8", StandardCharsets.UTF_8,
+            "UNICODE UTF-16", StandardCharsets.UTF_16,
+            "UNICODE", StandardCharsets.UTF_16);
+
+    private static final int ASCII_UNKNOWN = 0;
+    private static final int ASCII_TRUE = 1;
+    private static final int ASCII_FALSE = 2;
+
+    private final byte[] bytes;
+    private final Charset charset;
+    private final boolean asciiCompatible;
+    private int asciiState;
+    private volatile String message;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xMessageBytes(byte[] bytes, Charset charset){
+        this.bytes = bytes == null ? new byte[0] : bytes;
+        this.charset = charset == null ? DEFAULT_CHARSET : charset;
+        this.asciiCompatible = isAsciiCompatible(this.charset);
+        this.asciiState = ASCII_UNKNOWN;
+        this.message = null;
+    }
+
+    //
+    // Static Helpers
+    //
+
+    /**
+     * Resolves the charset named by an MSH-18 value (e.g. "UNICODE UTF-8", "8859/1"), which may also be
+     * a Java charset name. camel-mllp's MSH-18 table (ASCII and the ISO-8859 family) is extended with
+     * the HL7 Unicode values.
+     *
+     * @param msh18Value the MSH-18 (character set) value, may be null
+     * @param defaultCharset the charset to use if the value is absent or unknown
+     * @return the charset
+     */
+    public static Charset resolveCharset(String msh18Value, Charset defaultCharset){
+        if(StringUtils.isBlank(msh18Value)){
+            return(defaultCharset);
+        }
+        String charsetName = msh18Value.trim();
+        Charset charset = MllpProtocolConstants.MSH18_VALUES.get(charsetName);
+        if(charset == null){
+            charset = HL7_UNICODE_CHARSETS.get(charsetName);
+        }
+        if(charset != null){
+            return(charset);
+        }
+        try {
+            if(Charset.isSupported(charsetName)){
+                return(Charset.forName(charsetName));
+            }
+        } catch(IllegalArgumentException illegalCharsetName){
+            // fall through to the default
+        }
+        return(defaultCharset);
+    }
+
+    /**
+     * @param charset a charset
+     * @return true if the charset encodes the ASCII characters used by ER7 framing as single ASCII bytes
+     */
+    public static boolean isAsciiCompatible(Charset charset){
+        return(ASCII_COMPATIBLE_CHARSETS.computeIfAbsent(charset, candidate -> candidate.canEncode()
+                && Arrays.equals(ASCII_PROBE.getBytes(candidate), ASCII_PROBE.getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    //
+    // Getters
+    //
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getLength(){
+        return(bytes.length);
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public boolean isAsciiCompatible() {
+        return asciiCompatible;
+    }
+
+    /**
+     * @return true if every byte of the message is 7-bit ASCII (scanned once, on first call)
+     */
+    public boolean isAscii(){
+        if(asciiState == ASCII_UNKNOWN){
+            int state = ASCII_TRUE;
+            for(byte currentByte: bytes){
+                if(currentByte < 0){
+                    state = ASCII_FALSE;
+                    break;
+                }
+            }
+            asciiState = state;
+        }
+        return(asciiState == ASCII_TRUE);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @return the decoded message (decoded on first call, then reused)
+     */
+    public String getMessage(){
+        String decodedMessage = message;
+        if(decodedMessage == null){
+            decodedMessage = decode(0, bytes.length);
+            message = decodedMessage;
+        }
+        return(decodedMessage);
+    }
+
+    /**
+     * @return true if {@link #getMessage()} has already decoded the message
+     */
+    public boolean isDecoded(){
+        return(message != null);
+    }
+
+    /**
+     * Decodes part of the message. Only meaningful on character boundaries, which (for an ASCII
+     * compatible charset) segment and field delimiters always are.
+     *
+     * @param start the start offset (inclusive)
+     * @param end the end offset (exclusive)
+     * @return the decoded text
+     */
+    public String decode(int start, int end){
+        if(asciiCompatible && isAscii()){
+            return(new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+        }
+        return(new String(bytes, start, end - start, charset));
+    }
+
+    /**
+     * Appends the decoded text of part of the message to the builder.
+     *
+     * @param builder the builder to append to
+     * @param start the start offset (inclusive)
+     * @param end the end offset (exclusive)
+     * @return the builder
+     */
+    public StringBuilder appendTo(StringBuilder builder, int start, int end){
+        if(asciiCompatible && isAscii()){
+            builder.ensureCapacity(builder.length() + (end - start));
+            for(int position = start; position < end; position += 1){
+                builder.append((char)bytes[position]);
+            }
+            return(builder);
+        }
+        return(builder.append(decode(start, end)));
+    }
+
+    //
+    // toString
+    //
+
+    @Override
+    public String toString() {
+        return "HL7v2xMessageBytes{" +
+                "length=" + bytes.length +
+                ", charset=" + charset +
+                ", decoded=" + isDecoded() +
+                '}';
+    }
+}
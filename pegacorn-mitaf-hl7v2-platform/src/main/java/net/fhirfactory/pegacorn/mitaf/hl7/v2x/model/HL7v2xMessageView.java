@@ -0,0 +1,526 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.model;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers.HL7v2xParserProvider;
+import org.apache.camel.Exchange;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+
+/**
+ * A lazy, read-only view of an ER7 (pipe delimited) HL7 v2.x message.
+ *
+ * The segments are indexed (see {@link HL7v2xSegmentIndex}) when the view is created, but a segment's
+ * fields are only located the first time one of them is asked for, and a field is only sliced (and
+ * un-escaped) when it is read. The HAPI object model is only built if {@link #getMessage()} is called,
+ * so consumers that only need a few header fields (MSH-10, MSA-2, QRD-8 ...) never pay for a full
+ * structural parse.
+ *
+ * Field numbers follow the HL7 convention (so for MSH, MSH-1 is the field separator itself). Values
+ * are returned as HAPI would return them from Primitive.getValue() - un-escaped, or null if empty.
+ *
+ * Like {@link CachedHL7v2xMessage} the view is not thread-safe, it is intended to travel with a single
+ * Camel Exchange (see {@link #fromExchange(Exchange, String)}).
+ */
+public class HL7v2xMessageView {
+    public static final String MESSAGE_VIEW_EXCHANGE_PROPERTY = "MITaFHL7v2xMessageView";
+
+    private static final String MSH_SEGMENT_NAME = "MSH";
+    private static final int MSH_SEGMENT_TYPE = HL7v2xSegmentIndex.toSegmentType(MSH_SEGMENT_NAME);
+    private static final char DEFAULT_FIELD_SEPARATOR = '|';
+    private static final String DEFAULT_ENCODING_CHARACTERS = "^~\\&";
+    private static final int NOT_FOUND = -1;
+
+    private final String messageText;
+    private final HL7v2xSegmentIndex segmentIndex;
+    private final char fieldSeparator;
+    private final char componentSeparator;
+    private final char repetitionSeparator;
+    private final char escapeCharacter;
+    private final char subcomponentSeparator;
+    private final int[][] fieldSeparatorPositions;
+    private Message message;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xMessageView(String messageText){
+        this(HL7v2xSegmentIndex.index(messageText));
+    }
+
+    /**
+     * Creates the view over an existing segment index (e.g. the one built at capture time), rather than
+     * indexing the message again.
+     *
+     * @param segmentIndex the segment index of the message
+     */
+    public HL7v2xMessageView(HL7v2xSegmentIndex segmentIndex){
+        this.segmentIndex = segmentIndex.toMessageIndex();
+        this.messageText = this.segmentIndex.getMessage();
+        this.fieldSeparatorPositions = new int[this.segmentIndex.getSegmentCount()][];
+        String mshSegment = this.segmentIndex.getSegment(MSH_SEGMENT_NAME);
+        String encodingCharacters = DEFAULT_ENCODING_CHARACTERS;
+        char separator = DEFAULT_FIELD_SEPARATOR;
+        if(mshSegment != null && mshSegment.length() > 3){
+            separator = mshSegment.charAt(3);
+            int encodingCharactersEnd = mshSegment.indexOf(separator, 4);
+            if(encodingCharactersEnd < 0){
+                encodingCharactersEnd = mshSegment.length();
+            }
+            if(encodingCharactersEnd - 4 >= DEFAULT_ENCODING_CHARACTERS.length()){
+                encodingCharacters = mshSegment.substring(4, encodingCharactersEnd);
+            }
+        }
+        this.fieldSeparator = separator;
+        this.componentSeparator = encodingCharacters.charAt(0);
+        this.repetitionSeparator = encodingCharacters.charAt(1);
+        this.escapeCharacter = encodingCharacters.charAt(2);
+        this.subcomponentSeparator = encodingCharacters.charAt(3);
+        this.message = null;
+    }
+
+    /**
+     * Returns the view of the message attached to the exchange, creating (and attaching) one if the
+     * exchange doesn't have one for this message yet.
+     *
+     * @param exchange the Camel Exchange the message is travelling in
+     * @param messageText the message
+     * @return the (shared) view of the message
+     */
+    public static HL7v2xMessageView fromExchange(Exchange exchange, String messageText){
+        HL7v2xMessageView messageView = exchange.getProperty(MESSAGE_VIEW_EXCHANGE_PROPERTY, HL7v2xMessageView.class);
+        if(messageView == null || !messageView.getSegmentIndex().isIndexOf(messageText)){
+            messageView = new HL7v2xMessageView(messageText);
+            exchange.setProperty(MESSAGE_VIEW_EXCHANGE_PROPERTY, messageView);
+        }
+        return(messageView);
+    }
+
+    //
+    // Getters
+    //
+
+    public String getMessageText() {
+        return messageText;
+    }
+
+    public HL7v2xSegmentIndex getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    public int getSegmentCount(){
+        return(segmentIndex.getSegmentCount());
+    }
+
+    public boolean isParsed(){
+        return(message != null);
+    }
+
+    /**
+     * Escalates to the full HAPI object model, parsing the message (once) with a pooled parser.
+     *
+     * @return the parsed message
+     * @throws HL7Exception if the message cannot be parsed
+     */
+    public Message getMessage() throws HL7Exception {
+        if(message == null){
+            message = HL7v2xParserProvider.parse(messageText);
+        }
+        return(message);
+    }
+
+    //
+    // Header Fields
+    //
+
+    /** @return MSH-3.1 */
+    public String getSendingApplication(){
+        return(getComponent(MSH_SEGMENT_NAME, 3, 1));
+    }
+
+    /** @return MSH-4.1 */
+    public String getSendingFacility(){
+        return(getComponent(MSH_SEGMENT_NAME, 4, 1));
+    }
+
+    /** @return MSH-7.1, as text */
+    public String getMessageDateTime(){
+        return(getComponent(MSH_SEGMENT_NAME, 7, 1));
+    }
+
+    /** @return MSH-7.1, as a Date (null if absent or not a valid HL7 timestamp) */
+    public Date getMessageDate(){
+        return(toDate(getMessageDateTime()));
+    }
+
+    /** @return MSH-9.1 */
+    public String getMessageType(){
+        return(getComponent(MSH_SEGMENT_NAME, 9, 1));
+    }
+
+    /** @return MSH-9.2 */
+    public String getTriggerEvent(){
+        return(getComponent(MSH_SEGMENT_NAME, 9, 2));
+    }
+
+    /** @return MSH-10 */
+    public String getMessageControlId(){
+        return(getFieldValue(MSH_SEGMENT_NAME, 10));
+    }
+
+    /** @return MSH-12.1 */
+    public String getVersion(){
+        return(getComponent(MSH_SEGMENT_NAME, 12, 1));
+    }
+
+    //
+    // Segment and Field Access
+    //
+
+    /**
+     * @param segmentName the segment name, e.g. "PID"
+     * @return the number of the first segment with that name, or -1
+     */
+    public int indexOf(String segmentName){
+        return(segmentIndex.indexOf(segmentName));
+    }
+
+    public String getSegment(String segmentName){
+        return(segmentIndex.getSegment(segmentName));
+    }
+
+    public String getSegment(int segmentNumber){
+        return(segmentIndex.getSegment(segmentNumber));
+    }
+
+    /**
+     * @param segmentName the segment name (the first segment with that name is used)
+     * @param fieldNumber the field number
+     * @return the field exactly as it is in the message (all repetitions, still escaped), or null if absent
+     */
+    public String getRawField(String segmentName, int fieldNumber){
+        int segmentNumber = indexOf(segmentName);
+        if(segmentNumber == NOT_FOUND){
+            return(null);
+        }
+        return(getRawField(segmentNumber, fieldNumber));
+    }
+
+    public String getRawField(int segmentNumber, int fieldNumber){
+        int fieldStart = getFieldStart(segmentNumber, fieldNumber);
+        if(fieldStart == NOT_FOUND){
+            return(null);
+        }
+        return(messageText.substring(fieldStart, getFieldEnd(segmentNumber, fieldNumber)));
+    }
+
+    /**
+     * @param segmentName the segment name (the first segment with that name is used)
+     * @param fieldNumber the field number
+     * @return the (first repetition of the) field, un-escaped, or null if absent or empty
+     */
+    public String getFieldValue(String segmentName, int fieldNumber){
+        int segmentNumber = indexOf(segmentName);
+        if(segmentNumber == NOT_FOUND){
+            return(null);
+        }
+        return(getFieldValue(segmentNumber, fieldNumber));
+    }
+
+    public String getFieldValue(int segmentNumber, int fieldNumber){
+        if(isFieldSeparatorField(segmentNumber, fieldNumber)){
+            return(String.valueOf(fieldSeparator));
+        }
+        int fieldStart = getFieldStart(segmentNumber, fieldNumber);
+        if(fieldStart == NOT_FOUND){
+            return(null);
+        }
+        int fieldEnd = getFieldEnd(segmentNumber, fieldNumber);
+        if(isEncodingCharactersField(segmentNumber, fieldNumber)){
+            return(fieldEnd > fieldStart ? messageText.substring(fieldStart, fieldEnd) : null);
+        }
+        return(slice(fieldStart, indexOfOrEnd(repetitionSeparator, fieldStart, fieldEnd)));
+    }
+
+    /**
+     * @param segmentName the segment name (the first segment with that name is used)
+     * @param fieldNumber the field number
+     * @param componentNumber the component number (1 based)
+     * @return the component (of the first repetition of the field), un-escaped, or null if absent or empty
+     */
+    public String getComponent(String segmentName, int fieldNumber, int componentNumber){
+        int segmentNumber = indexOf(segmentName);
+        if(segmentNumber == NOT_FOUND){
+            return(null);
+        }
+        return(getComponent(segmentNumber, fieldNumber, componentNumber));
+    }
+
+    public String getComponent(int segmentNumber, int fieldNumber, int componentNumber){
+        return(getValue(segmentNumber, fieldNumber, 0, componentNumber, 1));
+    }
+
+    /**
+     * @param segmentType the packed segment type (see {@link HL7v2xSegmentIndex#toSegmentType(String)})
+     * @param repetition the segment repetition (0 based), e.g. 1 for the second OBX
+     * @return the segment number of that repetition of the segment, or -1
+     */
+    public int indexOf(int segmentType, int repetition){
+        int segmentNumber = segmentIndex.indexOf(segmentType, 0);
+        for(int counter = 0; counter < repetition && segmentNumber != NOT_FOUND; counter += 1){
+            segmentNumber = segmentIndex.indexOf(segmentType, segmentNumber + 1);
+        }
+        return(segmentNumber);
+    }
+
+    /**
+     * Locates a single primitive value, as a Terser path does (e.g. PID-3(1)-1-2).
+     *
+     * @param segmentNumber the segment number
+     * @param fieldNumber the field number
+     * @param repetition the field repetition (0 based)
+     * @param componentNumber the component number (1 based)
+     * @param subcomponentNumber the subcomponent number (1 based)
+     * @return the value, un-escaped, or null if absent or empty
+     */
+    public String getValue(int segmentNumber, int fieldNumber, int repetition, int componentNumber, int subcomponentNumber){
+        if(componentNumber < 1 || subcomponentNumber < 1 || repetition < 0){
+            return(null);
+        }
+        if(isFieldSeparatorField(segmentNumber, fieldNumber) || isEncodingCharactersField(segmentNumber, fieldNumber)){
+            return(repetition == 0 && componentNumber == 1 && subcomponentNumber == 1 ? getFieldValue(segmentNumber, fieldNumber) : null);
+        }
+        int fieldStart = getFieldStart(segmentNumber, fieldNumber);
+        if(fieldStart == NOT_FOUND){
+            return(null);
+        }
+        int repetitionStart = skipTo(repetitionSeparator, repetition, fieldStart, getFieldEnd(segmentNumber, fieldNumber));
+        if(repetitionStart == NOT_FOUND){
+            return(null);
+        }
+        int repetitionEnd = indexOfOrEnd(repetitionSeparator, repetitionStart, getFieldEnd(segmentNumber, fieldNumber));
+        int componentStart = skipTo(componentSeparator, componentNumber - 1, repetitionStart, repetitionEnd);
+        if(componentStart == NOT_FOUND){
+            return(null);
+        }
+        int componentEnd = indexOfOrEnd(componentSeparator, componentStart, repetitionEnd);
+        int subcomponentStart = skipTo(subcomponentSeparator, subcomponentNumber - 1, componentStart, componentEnd);
+        if(subcomponentStart == NOT_FOUND){
+            return(null);
+        }
+        return(slice(subcomponentStart, indexOfOrEnd(subcomponentSeparator, subcomponentStart, componentEnd)));
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private boolean isHeaderSegment(int segmentNumber){
+        return(segmentIndex.getSegmentType(segmentNumber) == MSH_SEGMENT_TYPE);
+    }
+
+    private boolean isFieldSeparatorField(int segmentNumber, int fieldNumber){
+        return(fieldNumber == 1 && isHeaderSegment(segmentNumber));
+    }
+
+    private boolean isEncodingCharactersField(int segmentNumber, int fieldNumber){
+        return(fieldNumber == 2 && isHeaderSegment(segmentNumber));
+    }
+
+    /**
+     * Locates (once per segment) the field separators of a segment, as absolute offsets into the message.
+     */
+    private int[] getFieldSeparatorPositions(int segmentNumber){
+        int[] positions = fieldSeparatorPositions[segmentNumber];
+        if(positions != null){
+            return(positions);
+        }
+        int segmentStart = segmentIndex.getSegmentStart(segmentNumber);
+        int segmentEnd = segmentIndex.getSegmentEnd(segmentNumber);
+        int count = 0;
+        for(int position = segmentStart; position < segmentEnd; position += 1){
+            if(messageText.charAt(position) == fieldSeparator){
+                count += 1;
+            }
+        }
+        positions = new int[count];
+        int counter = 0;
+        for(int position = segmentStart; position < segmentEnd; position += 1){
+            if(messageText.charAt(position) == fieldSeparator){
+                positions[counter] = position;
+                counter += 1;
+            }
+        }
+        fieldSeparatorPositions[segmentNumber] = positions;
+        return(positions);
+    }
+
+    private int toSeparatorNumber(int segmentNumber, int fieldNumber){
+        // the n-th field follows the n-th separator, except in MSH where the first separator is MSH-1
+        return(isHeaderSegment(segmentNumber) ? fieldNumber - 2 : fieldNumber - 1);
+    }
+
+    private int getFieldStart(int segmentNumber, int fieldNumber){
+        if(segmentNumber < 0 || segmentNumber >= getSegmentCount() || fieldNumber < 1){
+            return(NOT_FOUND);
+        }
+        int separatorNumber = toSeparatorNumber(segmentNumber, fieldNumber);
+        int[] positions = getFieldSeparatorPositions(segmentNumber);
+        if(separatorNumber < 0 || separatorNumber >= positions.length){
+            return(NOT_FOUND);
+        }
+        return(positions[separatorNumber] + 1);
+    }
+
+    private int getFieldEnd(int segmentNumber, int fieldNumber){
+        int separatorNumber = toSeparatorNumber(segmentNumber, fieldNumber) + 1;
+        int[] positions = getFieldSeparatorPositions(segmentNumber);
+        if(separatorNumber < positions.length){
+            return(positions[separatorNumber]);
+        }
+        return(segmentIndex.getSegmentEnd(segmentNumber));
+    }
+
+    /**
+     * @return the start of the part following the count-th separator (within start..end), or -1 if
+     * there aren't that many separators
+     */
+    private int skipTo(char separator, int count, int start, int end){
+        int partStart = start;
+        for(int counter = 0; counter < count; counter += 1){
+            int nextSeparator = indexOfOrEnd(separator, partStart, end);
+            if(nextSeparator == end){
+                return(NOT_FOUND);
+            }
+            partStart = nextSeparator + 1;
+        }
+        return(partStart);
+    }
+
+    private int indexOfOrEnd(char character, int start, int end){
+        for(int position = start; position < end; position += 1){
+            if(messageText.charAt(position) == character){
+                return(position);
+            }
+        }
+        return(end);
+    }
+
+    private String slice(int start, int end){
+        if(end <= start){
+            return(null);
+        }
+        if(indexOfOrEnd(escapeCharacter, start, end) == end){
+            return(messageText.substring(start, end));
+        }
+        return(unescape(start, end));
+    }
+
+    /**
+     * Resolves the delimiter escape sequences (\F\, \S\, \T\, \R\ and \E\), other escape sequences are
+     * left as they are.
+     */
+    private String unescape(int start, int end){
+        StringBuilder value = new StringBuilder(end - start);
+        int position = start;
+        while(position < end){
+            char currentChar = messageText.charAt(position);
+            if(currentChar == escapeCharacter && position + 2 < end && messageText.charAt(position + 2) == escapeCharacter){
+                char replacement = 0;
+                switch(messageText.charAt(position + 1)){
+                    case 'F': replacement = fieldSeparator; break;
+                    case 'S': replacement = componentSeparator; break;
+                    case 'T': replacement = subcomponentSeparator; break;
+                    case 'R': replacement = repetitionSeparator; break;
+                    case 'E': replacement = escapeCharacter; break;
+                    default: break;
+                }
+                if(replacement != 0){
+                    value.append(replacement);
+                    position += 3;
+                    continue;
+                }
+            }
+            value.append(currentChar);
+            position += 1;
+        }
+        return(value.toString());
+    }
+
+    /**
+     * Converts an HL7 timestamp (YYYY[MM[DD[HH[MM[SS[.S[S[S[S]]]]]]]]][+/-ZZZZ]) into a Date, a timestamp
+     * without an offset is taken to be in the local time zone (as HAPI does).
+     */
+    protected static Date toDate(String timestamp){
+        if(timestamp == null || timestamp.length() < 4){
+            return(null);
+        }
+        try {
+            String dateTime = timestamp;
+            ZoneId zone = ZoneId.systemDefault();
+            int offsetStart = Math.max(dateTime.indexOf('+'), dateTime.indexOf('-'));
+            if(offsetStart > 0){
+                String offset = dateTime.substring(offsetStart);
+                if(offset.length() == 5){
+                    zone = ZoneOffset.of(offset.substring(0, 3) + ":" + offset.substring(3));
+                }
+                dateTime = dateTime.substring(0, offsetStart);
+            }
+            int nanoseconds = 0;
+            int fractionStart = dateTime.indexOf('.');
+            if(fractionStart > 0){
+                String fraction = (dateTime.substring(fractionStart + 1) + "000000000").substring(0, 9);
+                nanoseconds = Integer.parseInt(fraction);
+                dateTime = dateTime.substring(0, fractionStart);
+            }
+            int year = Integer.parseInt(dateTime.substring(0, 4));
+            int month = dateTime.length() >= 6 ? Integer.parseInt(dateTime.substring(4, 6)) : 1;
+            int day = dateTime.length() >= 8 ? Integer.parseInt(dateTime.substring(6, 8)) : 1;
+            int hour = dateTime.length() >= 10 ? Integer.parseInt(dateTime.substring(8, 10)) : 0;
+            int minute = dateTime.length() >= 12 ? Integer.parseInt(dateTime.substring(10, 12)) : 0;
+            int second = dateTime.length() >= 14 ? Integer.parseInt(dateTime.substring(12, 14)) : 0;
+            ZonedDateTime zonedDateTime = ZonedDateTime.of(LocalDateTime.of(year, month, day, hour, minute, second, nanoseconds), zone);
+            return(Date.from(zonedDateTime.toInstant()));
+        } catch (RuntimeException invalidTimestamp) {
+            return(null);
+        }
+    }
+
+    //
+    // toString
+    //
+
+    @Override
+    public String toString() {
+        return "HL7v2xMessageView{" +
+                "segments=" + segmentIndex +
+                ", parsed=" + isParsed() +
+                '}';
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.model;
+
+import java.util.Arrays;
+
+/**
+ * A compact index of the segments within an ER7 (pipe delimited) HL7 v2.x message, built with a
+ * single pass over the message text. For each segment it records the segment type (the three
+ * character segment name packed into an int) and the start/end offsets of the segment within the
+ * message, all held in primitive arrays.
+ *
+ * Segments are separated by a carriage return (the standard) or a line feed (which is tolerated),
+ * empty segments are skipped. Segment content can then be sliced from the original message without
+ * rescanning it - e.g. {@link #getSegment(String)} or, without allocating, via
+ * {@link #appendSegment(StringBuilder, int)}.
+ *
+ * The index refers to the exact String it was built from, use {@link #isIndexOf(String)} to check
+ * that it still describes the current payload before relying on it.
+ *
+ * An index can also be built over the raw bytes of a message ({@link #index(HL7v2xMessageBytes)}), in
+ * which case the offsets are byte offsets and segments are decoded individually as they are asked for,
+ * so the message as a whole need never be decoded to find or rewrite its segments.
+ */
+public class HL7v2xSegmentIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NOT_FOUND = -1;
+
+    private final String message;
+    private final HL7v2xMessageBytes messageBytes;
+    private int segmentCount;
+    private int[] segmentTypes;
+    private int[] segmentStarts;
+    private int[] segmentEnds;
+
+    //
+    // Constructor(s)
+    //
+
+    private HL7v2xSegmentIndex(String message, HL7v2xMessageBytes messageBytes){
+        this.message = message;
+        this.messageBytes = messageBytes;
+        this.segmentCount = 0;
+        this.segmentTypes = new int[INITIAL_CAPACITY];
+        this.segmentStarts = new int[INITIAL_CAPACITY];
+        this.segmentEnds = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Builds the segment index of the given message in a single pass.
+     *
+     * @param message the ER7 encoded message (may be null or empty, in which case the index is empty)
+     * @return the segment index of the message
+     */
+    public static HL7v2xSegmentIndex index(String message){
+        HL7v2xSegmentIndex segmentIndex = new HL7v2xSegmentIndex(message, null);
+        if(message == null){
+            return(segmentIndex);
+        }
+        int length = message.length();
+        int segmentStart = 0;
+        int segmentType = 0;
+        for(int position = 0; position < length; position += 1){
+            char currentChar = message.charAt(position);
+            if(currentChar == '\r' || currentChar == '\n'){
+                if(position > segmentStart){
+                    segmentIndex.addSegment(segmentType, segmentStart, position);
+                }
+                segmentStart = position + 1;
+                segmentType = 0;
+            } else if(position - segmentStart < 3){
+                segmentType = (segmentType << 8) | (currentChar & 0xFF);
+            }
+        }
+        if(length > segmentStart){
+            segmentIndex.addSegment(segmentType, segmentStart, length);
+        }
+        return(segmentIndex);
+    }
+
+    /**
+     * Builds the segment index of the given raw message in a single pass over its bytes. If the charset
+     * of the message isn't ASCII compatible the message is decoded and indexed as a String instead.
+     *
+     * @param messageBytes the raw ER7 encoded message
+     * @return the segment index of the message
+     */
+    public static HL7v2xSegmentIndex index(HL7v2xMessageBytes messageBytes){
+        if(!messageBytes.isAsciiCompatible()){
+            return(index(messageBytes.getMessage()));
+        }
+        HL7v2xSegmentIndex segmentIndex = new HL7v2xSegmentIndex(null, messageBytes);
+        byte[] bytes = messageBytes.getBytes();
+        int length = bytes.length;
+        int segmentStart = 0;
+        int segmentType = 0;
+        for(int position = 0; position < length; position += 1){
+            byte currentByte = bytes[position];
+            if(currentByte == '\r' || currentByte == '\n'){
+                if(position > segmentStart){
+                    segmentIndex.addSegment(segmentType, segmentStart, position);
+                }
+                segmentStart = position + 1;
+                segmentType = 0;
+            } else if(position - segmentStart < 3){
+                segmentType = (segmentType << 8) | (currentByte & 0xFF);
+            }
+        }
+        if(length > segmentStart){
+            segmentIndex.addSegment(segmentType, segmentStart, length);
+        }
+        return(segmentIndex);
+    }
+
+    /**
+     * Returns the equivalent index over the decoded message. For a raw message that is pure ASCII the
+     * byte offsets are also the character offsets, so the segment arrays are shared rather than the
+     * decoded message being scanned again.
+     *
+     * @return an index over the (decoded) message String
+     */
+    public HL7v2xSegmentIndex toMessageIndex(){
+        if(messageBytes == null){
+            return(this);
+        }
+        if(!messageBytes.isAscii()){
+            return(index(messageBytes.getMessage()));
+        }
+        HL7v2xSegmentIndex messageIndex = new HL7v2xSegmentIndex(messageBytes.getMessage(), null);
+        messageIndex.segmentCount = segmentCount;
+        messageIndex.segmentTypes = segmentTypes;
+        messageIndex.segmentStarts = segmentStarts;
+        messageIndex.segmentEnds = segmentEnds;
+        return(messageIndex);
+    }
+
+    /**
+     * Packs a segment name (e.g. "PID") into the int representation used by the index.
+     *
+     * @param segmentName the segment name
+     * @return the packed segment type
+     */
+    public static int toSegmentType(String segmentName){
+        int segmentType = 0;
+        if(segmentName == null){
+            return(segmentType);
+        }
+        int length = Math.min(3, segmentName.length());
+        for(int counter = 0; counter < length; counter += 1){
+            segmentType = (segmentType << 8) | (segmentName.charAt(counter) & 0xFF);
+        }
+        return(segmentType);
+    }
+
+    /**
+     * Unpacks a segment type back into the segment name.
+     *
+     * @param segmentType the packed segment type
+     * @return the segment name
+     */
+    public static String toSegmentName(int segmentType){
+        StringBuilder segmentName = new StringBuilder(3);
+        for(int shift = 16; shift >= 0; shift -= 8){
+            int segmentChar = (segmentType >>> shift) & 0xFF;
+            if(segmentChar != 0 || segmentName.length() > 0){
+                segmentName.append((char)segmentChar);
+            }
+        }
+        return(segmentName.toString());
+    }
+
+    //
+    // Getters
+    //
+
+    /**
+     * @return the indexed message (decoding it, if the index was built over the raw bytes)
+     */
+    public String getMessage() {
+        if(messageBytes != null){
+            return(messageBytes.getMessage());
+        }
+        return message;
+    }
+
+    /**
+     * @return the raw message the index was built over, or null if it was built from a String
+     */
+    public HL7v2xMessageBytes getMessageBytes() {
+        return messageBytes;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public int getSegmentType(int segmentNumber){
+        return(segmentTypes[checkSegmentNumber(segmentNumber)]);
+    }
+
+    public String getSegmentName(int segmentNumber){
+        return(toSegmentName(getSegmentType(segmentNumber)));
+    }
+
+    public int getSegmentStart(int segmentNumber){
+        return(segmentStarts[checkSegmentNumber(segmentNumber)]);
+    }
+
+    public int getSegmentEnd(int segmentNumber){
+        return(segmentEnds[checkSegmentNumber(segmentNumber)]);
+    }
+
+    /**
+     * @param candidateMessage a message (typically the current UoW payload)
+     * @return true if this index was built from exactly that String instance
+     */
+    public boolean isIndexOf(String candidateMessage){
+        return(candidateMessage != null && candidateMessage == message);
+    }
+
+    /**
+     * @param candidateMessage a raw message
+     * @return true if this index was built over exactly that raw message
+     */
+    public boolean isIndexOf(HL7v2xMessageBytes candidateMessage){
+        return(candidateMessage != null && candidateMessage == messageBytes);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @param segmentType the packed segment type (see {@link #toSegmentType(String)})
+     * @param fromSegmentNumber the segment number to start searching from
+     * @return the number of the first matching segment at or after fromSegmentNumber, or -1
+     */
+    public int indexOf(int segmentType, int fromSegmentNumber){
+        for(int counter = Math.max(0, fromSegmentNumber); counter < segmentCount; counter += 1){
+            if(segmentTypes[counter] == segmentType){
+                return(counter);
+            }
+        }
+        return(NOT_FOUND);
+    }
+
+    public int indexOf(String segmentName){
+        return(indexOf(toSegmentType(segmentName), 0));
+    }
+
+    /**
+     * @param segmentNumber the segment number (0 based)
+     * @return the content of the segment (without the segment separator)
+     */
+    public String getSegment(int segmentNumber){
+        int checkedNumber = checkSegmentNumber(segmentNumber);
+        if(messageBytes != null){
+            return(messageBytes.decode(segmentStarts[checkedNumber], segmentEnds[checkedNumber]));
+        }
+        return(message.substring(segmentStarts[checkedNumber], segmentEnds[checkedNumber]));
+    }
+
+    /**
+     * @param segmentName the segment name, e.g. "MSH"
+     * @return the content of the first segment with that name, or null if there isn't one
+     */
+    public String getSegment(String segmentName){
+        int segmentNumber = indexOf(segmentName);
+        if(segmentNumber == NOT_FOUND){
+            return(null);
+        }
+        return(getSegment(segmentNumber));
+    }
+
+    /**
+     * Appends the content of the segment to the builder without creating an intermediate String.
+     *
+     * @param builder the builder to append to
+     * @param segmentNumber the segment number (0 based)
+     * @return the builder
+     */
+    public StringBuilder appendSegment(StringBuilder builder, int segmentNumber){
+        int checkedNumber = checkSegmentNumber(segmentNumber);
+        if(messageBytes != null){
+            return(messageBytes.appendTo(builder, segmentStarts[checkedNumber], segmentEnds[checkedNumber]));
+        }
+        builder.append(message, segmentStarts[checkedNumber], segmentEnds[checkedNumber]);
+        return(builder);
+    }
+
+    /**
+     * Whether the message is already in normal form: every segment is non-empty and followed by exactly
+     * one carriage return, with nothing (no line feeds, no blank segments) in between.
+     *
+     * @return true if the message needs no segment separator normalisation
+     */
+    public boolean isNormalised(){
+        int messageLength = getMessageLength();
+        if(segmentCount == 0 || segmentStarts[0] != 0){
+            return(false);
+        }
+        for(int counter = 0; counter < segmentCount; counter += 1){
+            int segmentEnd = segmentEnds[counter];
+            if(segmentEnd >= messageLength || separatorAt(segmentEnd) != '\r'){
+                return(false);
+            }
+            int nextSegmentStart = counter + 1 < segmentCount ? segmentStarts[counter + 1] : messageLength;
+            if(nextSegmentStart != segmentEnd + 1){
+                return(false);
+            }
+        }
+        return(true);
+    }
+
+    /**
+     * Appends a region of the indexed message (e.g. the text between two segments, separators and
+     * all) to the builder without creating an intermediate String.
+     *
+     * @param builder the builder to append to
+     * @param start the start offset (inclusive)
+     * @param end the end offset (exclusive)
+     * @return the builder
+     */
+    public StringBuilder appendRegion(StringBuilder builder, int start, int end){
+        if(messageBytes != null){
+            return(messageBytes.appendTo(builder, start, end));
+        }
+        builder.append(message, start, end);
+        return(builder);
+    }
+
+    /**
+     * @return the length of the indexed message (in bytes, if the index was built over the raw bytes)
+     */
+    public int getMessageLength(){
+        if(messageBytes != null){
+            return(messageBytes.getLength());
+        }
+        return(message == null ? 0 : message.length());
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private void addSegment(int segmentType, int segmentStart, int segmentEnd){
+        if(segmentCount == segmentTypes.length){
+            int newCapacity = segmentTypes.length * 2;
+            segmentTypes = Arrays.copyOf(segmentTypes, newCapacity);
+            segmentStarts = Arrays.copyOf(segmentStarts, newCapacity);
+            segmentEnds = Arrays.copyOf(segmentEnds, newCapacity);
+        }
+        segmentTypes[segmentCount] = segmentType;
+        segmentStarts[segmentCount] = segmentStart;
+        segmentEnds[segmentCount] = segmentEnd;
+        segmentCount += 1;
+    }
+
+    private int separatorAt(int position){
+        if(messageBytes != null){
+            return(messageBytes.getBytes()[position]);
+        }
+        return(message.charAt(position));
+    }
+
+    private int checkSegmentNumber(int segmentNumber){
+        if(segmentNumber < 0 || segmentNumber >= segmentCount){
+            throw new IndexOutOfBoundsException("segmentNumber->" + segmentNumber + ", segmentCount->" + segmentCount);
+        }
+        return(segmentNumber);
+    }
+
+    //
+    // toString
+    //
+
+    @Override
+    public String toString() {
+        StringBuilder segmentNames = new StringBuilder();
+        for(int counter = 0; counter < segmentCount; counter += 1){
+            if(counter > 0){
+                segmentNames.append(",");
+            }
+            segmentNames.append(toSegmentName(segmentTypes[counter]));
+        }
+        return "HL7v2xSegmentIndex{" +
+                "segmentCount=" + segmentCount +
+                ", segments=[" + segmentNames + "]" +
+                '}';
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Key for the asynchronous ACK correlation cache: the message control id (MSH-10 of the outbound
+ * message, MSA-2 of the acknowledgement) plus which side of the exchange the cached message is.
+ */
+public final class AsynchronousCorrelationKey implements Serializable {
+    private final String messageControlId;
+    private final AsynchronousCorrelationDirectionEnum direction;
+    private final int hashCode;
+
+    //
+    // Constructor(s)
+    //
+
+    public AsynchronousCorrelationKey(String messageControlId, AsynchronousCorrelationDirectionEnum direction){
+        this.messageControlId = Objects.requireNonNull(messageControlId, "messageControlId must not be null");
+        this.direction = Objects.requireNonNull(direction, "direction must not be null");
+        this.hashCode = Objects.hash(messageControlId, direction);
+    }
+
+    public static AsynchronousCorrelationKey forOutboundMessage(String messageControlId){
+        return(new AsynchronousCorrelationKey(messageControlId, AsynchronousCorrelationDirectionEnum.CORRELATION_OUTBOUND_MESSAGE));
+    }
+
+    public static AsynchronousCorrelationKey forAcknowledgement(String messageControlId){
+        return(new AsynchronousCorrelationKey(messageControlId, AsynchronousCorrelationDirectionEnum.CORRELATION_ACKNOWLEDGEMENT));
+    }
+
+    //
+    // Getters
+    //
+
+    public String getMessageControlId() {
+        return messageControlId;
+    }
+
+    public AsynchronousCorrelationDirectionEnum getDirection() {
+        return direction;
+    }
+
+    //
+    // Equals, HashCode and ToString
+    //
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AsynchronousCorrelationKey that = (AsynchronousCorrelationKey) o;
+        return messageControlId.equals(that.messageControlId) && direction == that.direction;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "AsynchronousCorrelationKey{" +
+                "messageControlId='" + messageControlId + '\'' +
+                ", direction=" + direction +
+                '}';
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Key of an interned DataParcelTypeDescriptor or DataParcelManifest (see
+ * {@link ProcessingPlantDataParcelManifestDM}): what the instance is for (its purpose, which names the
+ * code that builds it) plus every value that goes into building it. Immutable (the values are
+ * copied), so it is safe to share as a map key.
+ */
+public final class DataParcelInternKey implements Serializable {
+    private final String purpose;
+    private final String[] values;
+    private final int hashCode;
+
+    //
+    // Constructor(s)
+    //
+
+    public DataParcelInternKey(String purpose, String... values){
+        this.purpose = purpose;
+        this.values = values.clone();
+        this.hashCode = 31 * purpose.hashCode() + Arrays.hashCode(values);
+    }
+
+    //
+    // Getters
+    //
+
+    public String getPurpose() {
+        return purpose;
+    }
+
+    //
+    // Equals, HashCode and ToString
+    //
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DataParcelInternKey that = (DataParcelInternKey) o;
+        return hashCode == that.hashCode && purpose.equals(that.purpose) && Arrays.equals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "DataParcelInternKey{" +
+                "purpose=" + purpose +
+                ", values=" + Arrays.toString(values) +
+                '}';
+    }
+}
@@ -21,49 +21,319 @@
  */
 package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches;
 
+import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
-import javax.transaction.Transactional;
-import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
 
+/**
+ * Correlation store for asynchronous acknowledgement processing. Holds the outbound message and
+ * the acknowledgement received for it, keyed by message control id and direction.
+ *
+ * The store is bounded: every entry has a time-to-live (tracked by a hashed timing wheel which is
+ * advanced on each access, so expiry costs O(1) per entry) and there is a maximum number of
+ * entries, beyond which the oldest entry is evicted.
+ */
 @ApplicationScoped
 public class ProcessingPlantAsynchronousCacheDM {
     private static final Logger LOG = LoggerFactory.getLogger(ProcessingPlantAsynchronousCacheDM.class);
 
-    private final ConcurrentHashMap<String, String> asynchronousACKCache;
+    public static final String ASYNCHRONOUS_ACK_CACHE_ENTRY_TTL_PARAMETER_NAME = "ASYNCHRONOUS_ACK_CACHE_ENTRY_TTL";
+    public static final String ASYNCHRONOUS_ACK_CACHE_MAXIMUM_ENTRIES_PARAMETER_NAME = "ASYNCHRONOUS_ACK_CACHE_MAXIMUM_ENTRIES";
+
+    private static final long DEFAULT_ENTRY_TTL_IN_SECONDS = 300L;
+    private static final int DEFAULT_MAXIMUM_ENTRIES = 10000;
+    private static final long WHEEL_TICK_DURATION_IN_MILLISECONDS = 1000L;
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private final LinkedHashMap<AsynchronousCorrelationKey, CacheEntry> asynchronousACKCache;
+    private final ArrayDeque<CacheEntry>[] timingWheel;
+    private final ReentrantLock cacheLock;
+    private final LongSupplier nanoClock;
+    private final long wheelStartTime;
+    private long lastProcessedTick;
+
+    private long entryTTLInTicks;
+    private int maximumEntries;
+    private boolean initialised;
+
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private final AtomicLong expiryCount;
+    private final AtomicLong evictionCount;
+
+    @Inject
+    private ProcessingPlantInterface processingPlant;
+
+    //
+    // Constructor(s)
+    //
 
     public ProcessingPlantAsynchronousCacheDM() {
-        asynchronousACKCache = new ConcurrentHashMap<>();
+        this(DEFAULT_ENTRY_TTL_IN_SECONDS, DEFAULT_MAXIMUM_ENTRIES, System::nanoTime);
     }
 
-    @Transactional
-    public void addAckMessage(String messageControlId, String ackMessage) {
-        LOG.debug(".addAckMessage(): Entry, messageControlId --> {}", messageControlId);
-
-        if(asynchronousACKCache.containsKey(messageControlId)){
-            asynchronousACKCache.remove(messageControlId);
+    @SuppressWarnings("unchecked")
+    ProcessingPlantAsynchronousCacheDM(long entryTTLInSeconds, int maximumEntries, LongSupplier nanoClock) {
+        this.asynchronousACKCache = new LinkedHashMap<>();
+        this.timingWheel = new ArrayDeque[WHEEL_SIZE];
+        for(int counter = 0; counter < WHEEL_SIZE; counter++){
+            this.timingWheel[counter] = new ArrayDeque<>();
         }
-        asynchronousACKCache.put(messageControlId, ackMessage);
+        this.cacheLock = new ReentrantLock();
+        this.nanoClock = nanoClock;
+        this.wheelStartTime = nanoClock.getAsLong();
+        this.lastProcessedTick = 0;
+        this.entryTTLInTicks = toTicks(entryTTLInSeconds);
+        this.maximumEntries = maximumEntries;
+        this.initialised = false;
+        this.hitCount = new AtomicLong(0);
+        this.missCount = new AtomicLong(0);
+        this.expiryCount = new AtomicLong(0);
+        this.evictionCount = new AtomicLong(0);
     }
 
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        LOG.debug(".initialise(): Entry");
+        if(initialised){
+            LOG.debug(".initialise(): Nothing to do, already initialised!");
+            return;
+        }
+        String ttlValue = getProcessingPlant().getMeAsASoftwareComponent().getOtherConfigurationParameter(ASYNCHRONOUS_ACK_CACHE_ENTRY_TTL_PARAMETER_NAME);
+        if(StringUtils.isNotEmpty(ttlValue)){
+            try {
+                this.entryTTLInTicks = toTicks(Long.parseLong(ttlValue.trim()));
+            } catch(NumberFormatException numberFormatException){
+                LOG.warn(".initialise(): Invalid {} value->{}, using default", ASYNCHRONOUS_ACK_CACHE_ENTRY_TTL_PARAMETER_NAME, ttlValue);
+            }
+        }
+        String maximumEntriesValue = getProcessingPlant().getMeAsASoftwareComponent().getOtherConfigurationParameter(ASYNCHRONOUS_ACK_CACHE_MAXIMUM_ENTRIES_PARAMETER_NAME);
+        if(StringUtils.isNotEmpty(maximumEntriesValue)){
+            try {
+                this.maximumEntries = Math.max(1, Integer.parseInt(maximumEntriesValue.trim()));
+            } catch(NumberFormatException numberFormatException){
+                LOG.warn(".initialise(): Invalid {} value->{}, using default", ASYNCHRONOUS_ACK_CACHE_MAXIMUM_ENTRIES_PARAMETER_NAME, maximumEntriesValue);
+            }
+        }
+        LOG.info(".initialise(): entryTTL->{}s, maximumEntries->{}", entryTTLInTicks * WHEEL_TICK_DURATION_IN_MILLISECONDS / 1000L, maximumEntries);
+        this.initialised = true;
+        LOG.debug(".initialise(): Exit");
+    }
 
-    public String getAckMessage(String messageControlId) {
-        LOG.debug(".getAckMessage(): Entry, messageControlId --> {}", messageControlId);
+    //
+    // Business Methods
+    //
 
-        return asynchronousACKCache.get(messageControlId);
+    public void addAckMessage(AsynchronousCorrelationKey key, String message) {
+        LOG.debug(".addAckMessage(): Entry, key --> {}", key);
+        if(key == null){
+            return;
+        }
+        cacheLock.lock();
+        try {
+            long currentTick = advanceTimingWheel();
+            CacheEntry previousEntry = asynchronousACKCache.remove(key);
+            if(previousEntry != null){
+                previousEntry.setRemoved(true);
+            }
+            while(asynchronousACKCache.size() >= maximumEntries){
+                evictEldestEntry();
+            }
+            CacheEntry entry = new CacheEntry(key, message, currentTick + entryTTLInTicks);
+            asynchronousACKCache.put(key, entry);
+            timingWheel[(int)(entry.getExpiryTick() & WHEEL_MASK)].addLast(entry);
+        } finally {
+            cacheLock.unlock();
+        }
     }
 
-     @Transactional
-    public void removeAckMessage(String messageControlId) {
-        LOG.debug(".removeAckMessage(): Entry, messageControlId --> {}", messageControlId);
+    public String getAckMessage(AsynchronousCorrelationKey key) {
+        LOG.debug(".getAckMessage(): Entry, key --> {}", key);
+        if(key == null){
+            return(null);
+        }
+        CacheEntry entry;
+        cacheLock.lock();
+        try {
+            advanceTimingWheel();
+            entry = asynchronousACKCache.get(key);
+        } finally {
+            cacheLock.unlock();
+        }
+        if(entry == null){
+            missCount.incrementAndGet();
+            return(null);
+        }
+        hitCount.incrementAndGet();
+        return(entry.getMessage());
+    }
 
-        if (messageControlId == null) {
+    public void removeAckMessage(AsynchronousCorrelationKey key) {
+        LOG.debug(".removeAckMessage(): Entry, key --> {}", key);
+        if (key == null) {
             return;
         }
-        if (asynchronousACKCache.containsKey(messageControlId)) {
-            asynchronousACKCache.remove(messageControlId);
+        cacheLock.lock();
+        try {
+            advanceTimingWheel();
+            CacheEntry entry = asynchronousACKCache.remove(key);
+            if(entry != null){
+                entry.setRemoved(true);
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    //
+    // Timing Wheel
+    //
+
+    /**
+     * Expires every entry whose deadline has passed since the wheel was last advanced. Must be
+     * called with the cacheLock held.
+     *
+     * @return the current tick
+     */
+    private long advanceTimingWheel(){
+        long currentTick = toCurrentTick();
+        if(currentTick <= lastProcessedTick){
+            return(currentTick);
+        }
+        // If we've been idle for more than a full rotation, a single pass over every bucket is enough
+        long firstTick = Math.max(lastProcessedTick + 1, currentTick - WHEEL_MASK);
+        for(long tick = firstTick; tick <= currentTick; tick++){
+            ArrayDeque<CacheEntry> bucket = timingWheel[(int)(tick & WHEEL_MASK)];
+            Iterator<CacheEntry> bucketIterator = bucket.iterator();
+            while(bucketIterator.hasNext()){
+                CacheEntry entry = bucketIterator.next();
+                if(entry.isRemoved()){
+                    bucketIterator.remove();
+                } else if(entry.getExpiryTick() <= currentTick){
+                    bucketIterator.remove();
+                    entry.setRemoved(true);
+                    asynchronousACKCache.remove(entry.getKey());
+                    expiryCount.incrementAndGet();
+                    LOG.trace(".advanceTimingWheel(): Expired key->{}", entry.getKey());
+                }
+            }
+        }
+        lastProcessedTick = currentTick;
+        return(currentTick);
+    }
+
+    /**
+     * Removes the oldest entry in the cache. Must be called with the cacheLock held.
+     */
+    private void evictEldestEntry(){
+        Iterator<CacheEntry> entryIterator = asynchronousACKCache.values().iterator();
+        if(entryIterator.hasNext()){
+            CacheEntry eldestEntry = entryIterator.next();
+            entryIterator.remove();
+            eldestEntry.setRemoved(true);
+            evictionCount.incrementAndGet();
+            LOG.debug(".evictEldestEntry(): Evicted key->{}", eldestEntry.getKey());
+        }
+    }
+
+    private long toCurrentTick(){
+        return(TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - wheelStartTime) / WHEEL_TICK_DURATION_IN_MILLISECONDS);
+    }
+
+    private static long toTicks(long durationInSeconds){
+        long ticks = (TimeUnit.SECONDS.toMillis(durationInSeconds) + WHEEL_TICK_DURATION_IN_MILLISECONDS - 1) / WHEEL_TICK_DURATION_IN_MILLISECONDS;
+        return(Math.max(1L, ticks));
+    }
+
+    //
+    // Metrics
+    //
+
+    public int getCacheSize(){
+        cacheLock.lock();
+        try {
+            return(asynchronousACKCache.size());
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getExpiryCount() {
+        return expiryCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected ProcessingPlantInterface getProcessingPlant(){
+        return(processingPlant);
+    }
+
+    //
+    // Cache Entry
+    //
+
+    private static class CacheEntry {
+        private final AsynchronousCorrelationKey key;
+        private final String message;
+        private final long expiryTick;
+        private boolean removed;
+
+        public CacheEntry(AsynchronousCorrelationKey key, String message, long expiryTick){
+            this.key = key;
+            this.message = message;
+            this.expiryTick = expiryTick;
+            this.removed = false;
+        }
+
+        public AsynchronousCorrelationKey getKey() {
+            return key;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public long getExpiryTick() {
+            return expiryTick;
+        }
+
+        public boolean isRemoved() {
+            return removed;
+        }
+
+        public void setRemoved(boolean removed) {
+            this.removed = removed;
         }
     }
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches;
+
+import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
+import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelManifest;
+import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelTypeDescriptor;
+import net.fhirfactory.pegacorn.internals.fhir.r4.internal.topics.HL7V2XTopicFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Prototype cache for the DataParcelTypeDescriptors and DataParcelManifests that are built for every
+ * message. A processing plant only ever sees a few dozen combinations of event type, trigger, version,
+ * discriminator and source, so rather than resolving (through the topic factory) and building a new
+ * descriptor and manifest per message, each combination is built once and the instance shared.
+ *
+ * Shared instances are read-only by contract. The code that changes a manifest later on (the policy
+ * enforcement points, the exception handlers) already works on a clone of the whole UoWPayload, so a
+ * cache hit hands out the shared instance as it is; code that needs to change a manifest or descriptor
+ * it did not build itself takes its own copy with {@link #copyOf(DataParcelManifest)} or
+ * {@link #copyOf(DataParcelTypeDescriptor)} (a plain field-by-field copy, not a serialisation round trip).
+ *
+ * The number of interned instances is bounded (the values come from the messages themselves); once
+ * the bound is reached new combinations are built per message, as before, and counted as overflows.
+ */
+@ApplicationScoped
+public class ProcessingPlantDataParcelManifestDM {
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessingPlantDataParcelManifestDM.class);
+
+    public static final String DATA_PARCEL_INTERN_CACHE_MAXIMUM_ENTRIES_PARAMETER_NAME = "DATA_PARCEL_INTERN_CACHE_MAXIMUM_ENTRIES";
+
+    private static final int DEFAULT_MAXIMUM_ENTRIES = 1000;
+    private static final String HL7V2X_DESCRIPTOR_PURPOSE = "HL7v2xDescriptor";
+
+    private final ConcurrentHashMap<DataParcelInternKey, DataParcelTypeDescriptor> descriptors;
+    private final ConcurrentHashMap<DataParcelInternKey, DataParcelManifest> manifests;
+    private int maximumEntries;
+    private boolean initialised;
+
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private final AtomicLong overflowCount;
+
+    @Inject
+    private ProcessingPlantInterface processingPlant;
+
+    @Inject
+    private HL7V2XTopicFactory topicFactory;
+
+    //
+    // Constructor(s)
+    //
+
+    public ProcessingPlantDataParcelManifestDM(){
+        this.descriptors = new ConcurrentHashMap<>();
+        this.manifests = new ConcurrentHashMap<>();
+        this.maximumEntries = DEFAULT_MAXIMUM_ENTRIES;
+        this.initialised = false;
+        this.hitCount = new AtomicLong(0);
+        this.missCount = new AtomicLong(0);
+        this.overflowCount = new AtomicLong(0);
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Nothing to do, already initialised!");
+            return;
+        }
+        String maximumEntriesValue = processingPlant.getMeAsASoftwareComponent().getOtherConfigurationParameter(DATA_PARCEL_INTERN_CACHE_MAXIMUM_ENTRIES_PARAMETER_NAME);
+        if(StringUtils.isNotEmpty(maximumEntriesValue)){
+            try {
+                this.maximumEntries = Math.max(0, Integer.parseInt(maximumEntriesValue.trim()));
+            } catch(NumberFormatException numberFormatException){
+                getLogger().warn(".initialise(): Invalid {} value->{}, using default", DATA_PARCEL_INTERN_CACHE_MAXIMUM_ENTRIES_PARAMETER_NAME, maximumEntriesValue);
+            }
+        }
+        getLogger().info(".initialise(): maximumEntries->{}", maximumEntries);
+        this.initialised = true;
+        getLogger().debug(".initialise(): Exit");
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * The HL7v2x DataParcelTypeDescriptor for an event type, trigger event, version and (optional)
+     * discriminator.
+     *
+     * @param eventType the message event type (MSH-9.1)
+     * @param triggerEvent the trigger event (MSH-9.2)
+     * @param version the version (MSH-12.1)
+     * @param discriminatorType the discriminator type (may be empty)
+     * @param discriminatorValue the discriminator value (may be empty)
+     * @return the shared descriptor (must not be modified, see {@link #copyOf(DataParcelTypeDescriptor)})
+     */
+    public DataParcelTypeDescriptor getHL7v2xDescriptor(String eventType, String triggerEvent, String version, String discriminatorType, String discriminatorValue){
+        DataParcelInternKey key = new DataParcelInternKey(HL7V2X_DESCRIPTOR_PURPOSE, eventType, triggerEvent, version, StringUtils.defaultString(discriminatorType), StringUtils.defaultString(discriminatorValue));
+        return(intern(descriptors, key, () -> {
+            DataParcelTypeDescriptor descriptor = topicFactory.newDataParcelDescriptor(eventType, triggerEvent, version);
+            if(StringUtils.isNotEmpty(discriminatorType)){
+                descriptor.setDataParcelDiscriminatorType(discriminatorType);
+            }
+            if(StringUtils.isNotEmpty(discriminatorValue)){
+                descriptor.setDataParcelDiscriminatorValue(discriminatorValue);
+            }
+            return(descriptor);
+        }));
+    }
+
+    /**
+     * The DataParcelManifest for the key, built by the manifestBuilder the first time the key is seen.
+     * The key must cover every value the builder uses.
+     *
+     * @param key the key
+     * @param manifestBuilder builds the manifest
+     * @return the shared manifest (must not be modified, see {@link #copyOf(DataParcelManifest)})
+     */
+    public DataParcelManifest getManifest(DataParcelInternKey key, Supplier<DataParcelManifest> manifestBuilder){
+        return(intern(manifests, key, manifestBuilder));
+    }
+
+    private <T> T intern(ConcurrentHashMap<DataParcelInternKey, T> instances, DataParcelInternKey key, Supplier<T> builder){
+        T instance = instances.get(key);
+        if(instance != null){
+            hitCount.incrementAndGet();
+            return(instance);
+        }
+        if(descriptors.size() + manifests.size() >= maximumEntries){
+            overflowCount.incrementAndGet();
+            return(builder.get());
+        }
+        missCount.incrementAndGet();
+        instance = instances.computeIfAbsent(key, newKey -> {
+            T newInstance = builder.get();
+            getLogger().debug(".intern(): Interned, key->{}", newKey);
+            return(newInstance);
+        });
+        return(instance);
+    }
+
+    //
+    // Copies (for the code that has to change a shared instance)
+    //
+
+    /**
+     * A field-by-field copy of a manifest, including its content and container descriptors, which the
+     * caller may modify.
+     *
+     * @param manifest the (possibly shared) manifest
+     * @return the copy, or null if the manifest is null
+     */
+    public static DataParcelManifest copyOf(DataParcelManifest manifest){
+        if(manifest == null){
+            return(null);
+        }
+        DataParcelManifest copy = new DataParcelManifest();
+        copy.setContentDescriptor(copyOf(manifest.getContentDescriptor()));
+        copy.setContainerDescriptor(copyOf(manifest.getContainerDescriptor()));
+        copy.setDataParcelType(manifest.getDataParcelType());
+        copy.setDataParcelFlowDirection(manifest.getDataParcelFlowDirection());
+        copy.setNormalisationStatus(manifest.getNormalisationStatus());
+        copy.setValidationStatus(manifest.getValidationStatus());
+        copy.setEnforcementPointApprovalStatus(manifest.getEnforcementPointApprovalStatus());
+        copy.setSourceSystem(manifest.getSourceSystem());
+        copy.setIntendedTargetSystem(manifest.getIntendedTargetSystem());
+        copy.setSourceProcessingPlantParticipantName(manifest.getSourceProcessingPlantParticipantName());
+        copy.setTargetProcessingPlantParticipantName(manifest.getTargetProcessingPlantParticipantName());
+        copy.setInterSubsystemDistributable(manifest.isInterSubsystemDistributable());
+        return(copy);
+    }
+
+    /**
+     * A field-by-field copy of a descriptor, which the caller may modify.
+     *
+     * @param descriptor the (possibly shared) descriptor
+     * @return the copy, or null if the descriptor is null
+     */
+    public static DataParcelTypeDescriptor copyOf(DataParcelTypeDescriptor descriptor){
+        if(descriptor == null){
+            return(null);
+        }
+        DataParcelTypeDescriptor copy = new DataParcelTypeDescriptor();
+        copy.setDataParcelDefiner(descriptor.getDataParcelDefiner());
+        copy.setDataParcelCategory(descriptor.getDataParcelCategory());
+        copy.setDataParcelSubCategory(descriptor.getDataParcelSubCategory());
+        copy.setDataParcelResource(descriptor.getDataParcelResource());
+        copy.setDataParcelSegment(descriptor.getDataParcelSegment());
+        copy.setDataParcelAttribute(descriptor.getDataParcelAttribute());
+        copy.setDataParcelDiscriminatorType(descriptor.getDataParcelDiscriminatorType());
+        copy.setDataParcelDiscriminatorValue(descriptor.getDataParcelDiscriminatorValue());
+        copy.setVersion(descriptor.getVersion());
+        return(copy);
+    }
+
+    //
+    // Metrics
+    //
+
+    public int getInternedCount(){
+        return(descriptors.size() + manifests.size());
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public int getMaximumEntries() {
+        return maximumEntries;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the egress messages that have been sent to an external system which answers with an
+ * asynchronous acknowledgement (ACK or ORR). Entries are keyed by the message control id (MSH-10)
+ * of the outbound message and are completed by the ACK/ORR collectors as soon as the matching
+ * acknowledgement arrives, which releases the waiting egress route immediately rather than after
+ * a fixed delay.
+ *
+ * An entry is removed when its egress route stops waiting for it, including when the route fails
+ * before it gets to wait (see {@link #cancelPendingAcknowledgement(String, long)}). As a backstop,
+ * entries older than the time-to-live are purged, and no more than the maximum number of entries is
+ * held - a message that cannot be registered falls back to the asynchronous ACK cache.
+ */
+@ApplicationScoped
+public class ProcessingPlantPendingAcknowledgementDM {
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessingPlantPendingAcknowledgementDM.class);
+
+    public static final long NOT_REGISTERED = Long.MIN_VALUE;
+
+    private static final int DEFAULT_MAXIMUM_PENDING_ACKNOWLEDGEMENTS = 10000;
+    private static final long DEFAULT_PENDING_ACKNOWLEDGEMENT_TTL = 300000L;
+
+    private final ConcurrentHashMap<String, PendingAcknowledgement> pendingAcknowledgements;
+    private final int maximumPendingAcknowledgements;
+    private final long pendingAcknowledgementTTL;
+    private volatile long nextPurgeTime;
+    private final AtomicLong registrationSequence;
+
+    private final AtomicLong acknowledgementsReceivedCount;
+    private final AtomicLong acknowledgementTimeoutCount;
+    private final AtomicLong unmatchedAcknowledgementCount;
+    private final AtomicLong cumulativeRoundTripTime;
+    private final AtomicLong maximumRoundTripTime;
+    private final AtomicLong expiredPendingAcknowledgementCount;
+    private final AtomicLong rejectedRegistrationCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public ProcessingPlantPendingAcknowledgementDM(){
+        this(DEFAULT_MAXIMUM_PENDING_ACKNOWLEDGEMENTS, DEFAULT_PENDING_ACKNOWLEDGEMENT_TTL);
+    }
+
+    ProcessingPlantPendingAcknowledgementDM(int maximumPendingAcknowledgements, long pendingAcknowledgementTTL){
+        this.pendingAcknowledgements = new ConcurrentHashMap<>();
+        this.maximumPendingAcknowledgements = maximumPendingAcknowledgements;
+        this.pendingAcknowledgementTTL = pendingAcknowledgementTTL;
+        this.nextPurgeTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pendingAcknowledgementTTL);
+        this.registrationSequence = new AtomicLong(0);
+        this.acknowledgementsReceivedCount = new AtomicLong(0);
+        this.acknowledgementTimeoutCount = new AtomicLong(0);
+        this.unmatchedAcknowledgementCount = new AtomicLong(0);
+        this.cumulativeRoundTripTime = new AtomicLong(0);
+        this.maximumRoundTripTime = new AtomicLong(0);
+        this.expiredPendingAcknowledgementCount = new AtomicLong(0);
+        this.rejectedRegistrationCount = new AtomicLong(0);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Registers an outbound message as awaiting an asynchronous acknowledgement. This must be done
+     * before the message is written to the external system, otherwise a fast responder can answer
+     * before there is anything to complete.
+     *
+     * @param messageControlId the MSH-10 value of the outbound message
+     * @return the registration token (to pass to {@link #cancelPendingAcknowledgement(String, long)}), or NOT_REGISTERED if nothing was registered
+     */
+    public long registerPendingAcknowledgement(String messageControlId){
+        getLogger().debug(".registerPendingAcknowledgement(): Entry, messageControlId->{}", messageControlId);
+        if(messageControlId == null){
+            getLogger().debug(".registerPendingAcknowledgement(): Exit, messageControlId is null");
+            return(NOT_REGISTERED);
+        }
+        long now = System.nanoTime();
+        if(now - nextPurgeTime >= 0 || pendingAcknowledgements.size() >= maximumPendingAcknowledgements){
+            purgeExpiredPendingAcknowledgements(now);
+        }
+        if(pendingAcknowledgements.size() >= maximumPendingAcknowledgements){
+            rejectedRegistrationCount.incrementAndGet();
+            getLogger().warn(".registerPendingAcknowledgement(): Exit, {} acknowledgements already pending, not registering messageControlId->{}", maximumPendingAcknowledgements, messageControlId);
+            return(NOT_REGISTERED);
+        }
+        // a sequence rather than the registration time, which two registrations can share
+        PendingAcknowledgement pendingAcknowledgement = new PendingAcknowledgement(registrationSequence.incrementAndGet(), now);
+        pendingAcknowledgements.put(messageControlId, pendingAcknowledgement);
+        getLogger().debug(".registerPendingAcknowledgement(): Exit, pending->{}", pendingAcknowledgements.size());
+        return(pendingAcknowledgement.getRegistrationToken());
+    }
+
+    /**
+     * Removes the entry made by the registration with registrationToken, if it is still there (it is
+     * normally removed by {@link #awaitAcknowledgement(String, long)}). Called when the egress route
+     * completes, so an entry whose route failed before waiting on it does not linger.
+     *
+     * @param messageControlId the MSH-10 value of the outbound message
+     * @param registrationToken the value returned by {@link #registerPendingAcknowledgement(String)}
+     * @return true if an entry was removed
+     */
+    public boolean cancelPendingAcknowledgement(String messageControlId, long registrationToken){
+        getLogger().debug(".cancelPendingAcknowledgement(): Entry, messageControlId->{}", messageControlId);
+        if(messageControlId == null){
+            return(false);
+        }
+        PendingAcknowledgement pendingAcknowledgement = pendingAcknowledgements.get(messageControlId);
+        boolean cancelled = false;
+        if(pendingAcknowledgement != null && pendingAcknowledgement.getRegistrationToken() == registrationToken){
+            cancelled = pendingAcknowledgements.remove(messageControlId, pendingAcknowledgement);
+        }
+        getLogger().debug(".cancelPendingAcknowledgement(): Exit, cancelled->{}", cancelled);
+        return(cancelled);
+    }
+
+    /**
+     * Removes the entries registered more than the time-to-live ago.
+     */
+    protected void purgeExpiredPendingAcknowledgements(long now){
+        nextPurgeTime = now + TimeUnit.MILLISECONDS.toNanos(pendingAcknowledgementTTL);
+        long expiryTime = now - TimeUnit.MILLISECONDS.toNanos(pendingAcknowledgementTTL);
+        pendingAcknowledgements.forEach((messageControlId, pendingAcknowledgement) -> {
+            if(pendingAcknowledgement.getRegistrationTime() - expiryTime < 0 && pendingAcknowledgements.remove(messageControlId, pendingAcknowledgement)){
+                expiredPendingAcknowledgementCount.incrementAndGet();
+                getLogger().debug(".purgeExpiredPendingAcknowledgements(): Expired, messageControlId->{}", messageControlId);
+            }
+        });
+    }
+
+    /**
+     * Completes the pending entry for the given message control id (MSA-2 of the acknowledgement).
+     *
+     * @param messageControlId the message control id being acknowledged
+     * @param acknowledgementMessage the acknowledgement message as received
+     * @return true if a waiting egress message was completed, false if nothing was waiting on it
+     */
+    public boolean completePendingAcknowledgement(String messageControlId, String acknowledgementMessage){
+        getLogger().debug(".completePendingAcknowledgement(): Entry, messageControlId->{}", messageControlId);
+        if(messageControlId == null){
+            getLogger().debug(".completePendingAcknowledgement(): Exit, messageControlId is null");
+            return(false);
+        }
+        PendingAcknowledgement pendingAcknowledgement = pendingAcknowledgements.get(messageControlId);
+        if(pendingAcknowledgement == null){
+            unmatchedAcknowledgementCount.incrementAndGet();
+            getLogger().debug(".completePendingAcknowledgement(): Exit, no pending acknowledgement for messageControlId->{}", messageControlId);
+            return(false);
+        }
+        boolean completed = pendingAcknowledgement.getAcknowledgementFuture().complete(acknowledgementMessage);
+        if(completed) {
+            long roundTripTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pendingAcknowledgement.getRegistrationTime());
+            acknowledgementsReceivedCount.incrementAndGet();
+            cumulativeRoundTripTime.addAndGet(roundTripTime);
+            maximumRoundTripTime.accumulateAndGet(roundTripTime, Math::max);
+            getLogger().debug(".completePendingAcknowledgement(): messageControlId->{}, roundTripTime->{}ms", messageControlId, roundTripTime);
+        }
+        getLogger().debug(".completePendingAcknowledgement(): Exit, completed->{}", completed);
+        return(completed);
+    }
+
+    /**
+     * Waits (for no longer than the timeout) for the acknowledgement of the given message.
+     *
+     * @param messageControlId the MSH-10 value of the outbound message
+     * @param timeoutInMilliseconds the maximum time to wait
+     * @return the acknowledgement message, or null if none was registered or received in time
+     */
+    public String awaitAcknowledgement(String messageControlId, long timeoutInMilliseconds){
+        getLogger().debug(".awaitAcknowledgement(): Entry, messageControlId->{}, timeoutInMilliseconds->{}", messageControlId, timeoutInMilliseconds);
+        if(messageControlId == null){
+            getLogger().debug(".awaitAcknowledgement(): Exit, messageControlId is null");
+            return(null);
+        }
+        PendingAcknowledgement pendingAcknowledgement = pendingAcknowledgements.get(messageControlId);
+        if(pendingAcknowledgement == null){
+            getLogger().debug(".awaitAcknowledgement(): Exit, no pending acknowledgement registered");
+            return(null);
+        }
+        String acknowledgementMessage = null;
+        try {
+            acknowledgementMessage = pendingAcknowledgement.getAcknowledgementFuture().get(timeoutInMilliseconds, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException timeoutException) {
+            acknowledgementTimeoutCount.incrementAndGet();
+            getLogger().warn(".awaitAcknowledgement(): No acknowledgement received within {}ms, messageControlId->{}", timeoutInMilliseconds, messageControlId);
+        } catch (InterruptedException interruptedException) {
+            getLogger().warn(".awaitAcknowledgement(): Interrupted while waiting for acknowledgement, messageControlId->{}", messageControlId);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException executionException) {
+            getLogger().warn(".awaitAcknowledgement(): Acknowledgement failed, messageControlId->{}, error->{}", messageControlId, executionException.getMessage());
+        } finally {
+            pendingAcknowledgements.remove(messageControlId, pendingAcknowledgement);
+        }
+        getLogger().debug(".awaitAcknowledgement(): Exit, acknowledgementMessage->{}", acknowledgementMessage);
+        return(acknowledgementMessage);
+    }
+
+    //
+    // Metrics
+    //
+
+    public int getPendingAcknowledgementCount(){
+        return(pendingAcknowledgements.size());
+    }
+
+    public long getAcknowledgementsReceivedCount() {
+        return acknowledgementsReceivedCount.get();
+    }
+
+    public long getAcknowledgementTimeoutCount() {
+        return acknowledgementTimeoutCount.get();
+    }
+
+    public long getUnmatchedAcknowledgementCount() {
+        return unmatchedAcknowledgementCount.get();
+    }
+
+    public long getExpiredPendingAcknowledgementCount() {
+        return expiredPendingAcknowledgementCount.get();
+    }
+
+    public long getRejectedRegistrationCount() {
+        return rejectedRegistrationCount.get();
+    }
+
+    public long getMaximumRoundTripTime() {
+        return maximumRoundTripTime.get();
+    }
+
+    public long getAverageRoundTripTime(){
+        long received = acknowledgementsReceivedCount.get();
+        if(received == 0){
+            return(0);
+        }
+        return(cumulativeRoundTripTime.get() / received);
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    //
+    // Pending Acknowledgement Entry
+    //
+
+    private static class PendingAcknowledgement {
+        private final CompletableFuture<String> acknowledgementFuture;
+        private final long registrationToken;
+        private final long registrationTime;
+
+        public PendingAcknowledgement(long registrationToken, long registrationTime){
+            this.acknowledgementFuture = new CompletableFuture<>();
+            this.registrationToken = registrationToken;
+            this.registrationTime = registrationTime;
+        }
+
+        public long getRegistrationToken() {
+            return registrationToken;
+        }
+
+        public CompletableFuture<String> getAcknowledgementFuture() {
+            return acknowledgementFuture;
+        }
+
+        public long getRegistrationTime() {
+            return registrationTime;
+        }
+    }
+}
@@ -23,6 +23,7 @@ package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.datatype
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xSegmentIndex;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.Serializable;
@@ -49,6 +50,7 @@ public class MLLPMessageActivityParcel implements Serializable {
     private String mllpVersionId;
     private String mllpCharSet;
     Map<Integer, String> notes;
+    private transient HL7v2xSegmentIndex segmentIndex;
 
     //
     // Constructor(s)
@@ -74,6 +76,7 @@ public class MLLPMessageActivityParcel implements Serializable {
         this.mllpVersionId = null;
         this.mllpCharSet = null;
         this.notes = new HashMap<>();
+        this.segmentIndex = null;
     }
 
     //
@@ -260,6 +263,21 @@ public class MLLPMessageActivityParcel implements Serializable {
         return(notes.size());
     }
 
+    /**
+     * The segment index of the UoW ingres payload, built once at MLLP capture time so that later
+     * ingres stages can slice segments out of the payload without rescanning it. It is not
+     * serialised - if it is absent (or no longer matches the payload) it should simply be rebuilt.
+     */
+    @JsonIgnore
+    public HL7v2xSegmentIndex getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    @JsonIgnore
+    public void setSegmentIndex(HL7v2xSegmentIndex segmentIndex) {
+        this.segmentIndex = segmentIndex;
+    }
+
     //
     // toString
     //
@@ -22,13 +22,13 @@
 package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp;
 
 import ca.uhn.hl7v2.HL7Exception;
-import ca.uhn.hl7v2.model.Message;
-import ca.uhn.hl7v2.model.v24.message.ACK;
-import ca.uhn.hl7v2.model.v24.segment.MSA;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.AsynchronousCorrelationKey;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantAsynchronousCacheDM;
-import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.HL7v2MessageAsTextToHL7V2xMessage;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantPendingAcknowledgementDM;
 import org.apache.camel.Exchange;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,18 +43,17 @@ public class MLLPAsynchronousMessageACKCollector {
     private ProcessingPlantAsynchronousCacheDM asynchronousACKCacheDM;
 
     @Inject
-    private HL7v2MessageAsTextToHL7V2xMessage hL7v2MessageAsTextToHL7V2xMessage;
+    private ProcessingPlantPendingAcknowledgementDM pendingAcknowledgementDM;
 
     public UoW extractAndSaveACKMessage(UoW incomingUoW, Exchange camelExchange) throws HL7Exception {
         LOG.warn(".extractAndSaveACKMessage(): Entry, incomingUoW->{}", incomingUoW);
-        String messageAsString = incomingUoW.getIngresContent().getPayload();        
-        Message message = hL7v2MessageAsTextToHL7V2xMessage.convertToMessage(incomingUoW, camelExchange);        
-        ACK ackMessage = (ACK) message;        
-        MSA msa = ackMessage.getMSA();
-
-        String messageControlId = msa.getMessageControlID().getValueOrEmpty();
-        asynchronousACKCacheDM.addAckMessage(messageControlId + "-ACK", messageAsString);
+        String messageAsString = incomingUoW.getIngresContent().getPayload();
+        // only MSA-2 is needed to correlate the ACK, so there's no need to build the full HAPI model
+        HL7v2xMessageView ackMessage = HL7v2xMessageView.fromExchange(camelExchange, messageAsString);
+        String messageControlId = StringUtils.defaultString(ackMessage.getFieldValue("MSA", 2));
+        asynchronousACKCacheDM.addAckMessage(AsynchronousCorrelationKey.forAcknowledgement(messageControlId), messageAsString);
         LOG.warn("Add ACK message to asynchronous ACK cache: messageControlId->{}, ackMessage->{}", messageControlId, messageAsString);
+        pendingAcknowledgementDM.completePendingAcknowledgement(messageControlId, messageAsString);
 
         return (incomingUoW);
     }
@@ -30,9 +30,15 @@ import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelTypeDescriptor;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
+import net.fhirfactory.pegacorn.core.model.topology.endpoints.interact.StandardInteractClientTopologyEndpointPort;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.AsynchronousCorrelationKey;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantAsynchronousCacheDM;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantPendingAcknowledgementDM;
 import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.support.SynchronizationAdapter;
 import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.StringUtils;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -46,9 +52,15 @@ public class MLLPAsynchronousMessageFinaliser {
 
     private static final Logger LOG = LoggerFactory.getLogger(MLLPAsynchronousMessageFinaliser.class);
 
+    public static final String ASYNCHRONOUS_ACK_TIMEOUT_PARAMETER_NAME = "ASYNCHRONOUS_ACK_TIMEOUT";
+    private static final long DEFAULT_ASYNCHRONOUS_ACK_TIMEOUT = 5000L;
+
     @Inject
     private ProcessingPlantAsynchronousCacheDM asynchronousACKCacheDM;
 
+    @Inject
+    private ProcessingPlantPendingAcknowledgementDM pendingAcknowledgementDM;
+
     @Inject
     private HL7v2xMessageInformationExtractor hL7v2MessageExtractor;
 
@@ -64,7 +76,18 @@ public class MLLPAsynchronousMessageFinaliser {
     public String extractUoW(String answer, Exchange camelExchange) {
         
         String messageControlId = hL7v2MessageExtractor.extractMessageID(answer);
-        asynchronousACKCacheDM.addAckMessage(messageControlId + "-MSG", answer);
+        asynchronousACKCacheDM.addAckMessage(AsynchronousCorrelationKey.forOutboundMessage(messageControlId), answer);
+        long registrationToken = pendingAcknowledgementDM.registerPendingAcknowledgement(messageControlId);
+        if(registrationToken != ProcessingPlantPendingAcknowledgementDM.NOT_REGISTERED) {
+            // Normally removed by awaitAcknowledgement(), but the route can fail (connection refused,
+            // socket timeout...) before it gets there
+            camelExchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+                @Override
+                public void onDone(Exchange completedExchange) {
+                    pendingAcknowledgementDM.cancelPendingAcknowledgement(messageControlId, registrationToken);
+                }
+            });
+        }
         
         return answer;
     }
@@ -78,7 +101,12 @@ public class MLLPAsynchronousMessageFinaliser {
         String messageAsString = uow.getIngresContent().getPayload();
         String messageControlId = hL7v2MessageExtractor.extractMessageID(messageAsString);
 
-        String acknowledgementMessage = asynchronousACKCacheDM.getAckMessage(messageControlId + "-ACK");
+        long acknowledgementTimeout = resolveAcknowledgementTimeout(camelExchange);
+        String acknowledgementMessage = pendingAcknowledgementDM.awaitAcknowledgement(messageControlId, acknowledgementTimeout);
+        if (acknowledgementMessage == null) {
+            // Nothing was registered (or it timed out), so check whether the ACK was cached anyway
+            acknowledgementMessage = asynchronousACKCacheDM.getAckMessage(AsynchronousCorrelationKey.forAcknowledgement(messageControlId));
+        }
         LOG.warn("Get ACK message from asynchronous ACK cache: messageControlId->{}, ackMessage->{}", messageControlId, acknowledgementMessage);
 
         UoWProcessingOutcomeEnum outcome = null;
@@ -88,6 +116,7 @@ public class MLLPAsynchronousMessageFinaliser {
         } else {
             // Acknnowledgment message not received in the time alloted, finalise UoW outcome as failed.
             outcome = UoWProcessingOutcomeEnum.UOW_OUTCOME_FAILED;
+            uow.setFailureDescription("Acknowledgement not received within " + acknowledgementTimeout + "ms");
         }
 
         DataParcelManifest payloadTopicID = SerializationUtils.clone(uow.getPayloadTopicID());
@@ -111,12 +140,33 @@ public class MLLPAsynchronousMessageFinaliser {
         uow.getEgressContent().addPayloadElement(payload);
         uow.setProcessingOutcome(outcome);
 
-        // Remove ACK entry from cache, finished processing.
-        asynchronousACKCacheDM.removeAckMessage(messageControlId);
+        // Remove ACK entry from cache, finished processing. The outbound message entry is left in place
+        // for any ORR transformation that still needs it and is aged out by the cache.
+        asynchronousACKCacheDM.removeAckMessage(AsynchronousCorrelationKey.forAcknowledgement(messageControlId));
 
         LOG.debug(".extractUoWAndAnswer(): Exit, uow->{}", uow);
         LOG.warn(".extractUoWAndAnswer(): Exit, Acknowledgement Message->{}", acknowledgeString);
 
         return (uow);
     }
+
+    //
+    // Helper Methods
+    //
+
+    protected long resolveAcknowledgementTimeout(Exchange camelExchange){
+        StandardInteractClientTopologyEndpointPort endpointPort = camelExchange.getProperty(PetasosPropertyConstants.ENDPOINT_TOPOLOGY_NODE_EXCHANGE_PROPERTY, StandardInteractClientTopologyEndpointPort.class);
+        if(endpointPort == null){
+            return(DEFAULT_ASYNCHRONOUS_ACK_TIMEOUT);
+        }
+        String timeoutValue = endpointPort.getOtherConfigurationParameter(ASYNCHRONOUS_ACK_TIMEOUT_PARAMETER_NAME);
+        if(StringUtils.isNotEmpty(timeoutValue)){
+            try {
+                return(Long.parseLong(timeoutValue.trim()));
+            } catch(NumberFormatException numberFormatException){
+                LOG.warn(".resolveAcknowledgementTimeout(): Invalid {} value->{}, using default", ASYNCHRONOUS_ACK_TIMEOUT_PARAMETER_NAME, timeoutValue);
+            }
+        }
+        return(DEFAULT_ASYNCHRONOUS_ACK_TIMEOUT);
+    }
 }
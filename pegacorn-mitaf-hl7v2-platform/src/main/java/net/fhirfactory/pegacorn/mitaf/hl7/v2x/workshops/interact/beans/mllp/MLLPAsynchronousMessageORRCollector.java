@@ -28,9 +28,13 @@ import ca.uhn.hl7v2.model.v24.segment.MSA;
 import java.util.ArrayList;
 import java.util.List;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.AsynchronousCorrelationKey;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantAsynchronousCacheDM;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantPendingAcknowledgementDM;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.HL7v2MessageAsTextToHL7V2xMessage;
 import org.apache.camel.Exchange;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,6 +58,9 @@ public class MLLPAsynchronousMessageORRCollector {
     @Inject
     private ProcessingPlantAsynchronousCacheDM asynchronousACKCacheDM;
 
+    @Inject
+    private ProcessingPlantPendingAcknowledgementDM pendingAcknowledgementDM;
+
     @Inject
     private HL7v2MessageAsTextToHL7V2xMessage hL7v2MessageAsTextToHL7V2xMessage;
 
@@ -63,13 +70,12 @@ public class MLLPAsynchronousMessageORRCollector {
     public UoW extractAndSaveACKMessage(UoW incomingUoW, Exchange camelExchange) throws HL7Exception {
         LOG.warn(".extractAndSaveACKMessage(): Entry, incomingUoW->{}", incomingUoW);
         String messageAsString = incomingUoW.getIngresContent().getPayload();
-        Message message = hL7v2MessageAsTextToHL7V2xMessage.convertToMessage(incomingUoW, camelExchange);
-        ORR_O02 ackMessage = (ORR_O02) message;
-        MSA msa = ackMessage.getMSA();
-
-        String messageControlId = msa.getMessageControlID().getValueOrEmpty();
-        asynchronousACKCacheDM.addAckMessage(messageControlId + "-ACK", messageAsString);
+        // only MSA-2 is needed to correlate the ORR, so there's no need to build the full HAPI model
+        HL7v2xMessageView ackMessage = HL7v2xMessageView.fromExchange(camelExchange, messageAsString);
+        String messageControlId = StringUtils.defaultString(ackMessage.getFieldValue("MSA", 2));
+        asynchronousACKCacheDM.addAckMessage(AsynchronousCorrelationKey.forAcknowledgement(messageControlId), messageAsString);
         LOG.warn("Add ACK message to asynchronous ACK cache: messageControlId->{}, ackMessage->{}", messageControlId, messageAsString);
+        pendingAcknowledgementDM.completePendingAcknowledgement(messageControlId, messageAsString);
 
         return incomingUoW;
     }
@@ -80,7 +86,7 @@ public class MLLPAsynchronousMessageORRCollector {
         MSA msa = ackMessage.getMSA();
 
         String messageControlId = msa.getMessageControlID().getValueOrEmpty();
-        String outgoingMessage = asynchronousACKCacheDM.getAckMessage(messageControlId + "-MSG");
+        String outgoingMessage = asynchronousACKCacheDM.getAckMessage(AsynchronousCorrelationKey.forOutboundMessage(messageControlId));
         LOG.warn("Get outgoing message from asynchronous ACK cache: messageControlId->{}, Message->{}", messageControlId, outgoingMessage);
 
         HL7Message orrMessage = HL7MessageUtils.getHL7Message(message);
@@ -27,6 +27,7 @@ import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.valuesets.P
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.notifications.EndpointITOpsNotificationPublisher;
 import net.fhirfactory.pegacorn.petasos.core.tasks.factories.metadata.HL7v2xTaskMetadataExtractor;
 import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.EndpointMetricsAgent;
 import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.ProcessingPlantMetricsAgent;
@@ -69,6 +70,9 @@ public class MLLPEgressMessageMetricsCapture {
     @Inject
     private ProcessingPlantInterface processingPlant;
 
+    @Inject
+    private EndpointITOpsNotificationPublisher notificationPublisher;
+
     //
     // Constructor(s)
     //
@@ -191,8 +195,12 @@ public class MLLPEgressMessageMetricsCapture {
     }
 
     protected void sendTrafficNotification(EndpointMetricsAgent endpointMetricsAgent, String msh, String pid, String message){
-        getLogger().debug(".sendACKNotification(): Entry");
+        getLogger().debug(".sendTrafficNotification(): Entry");
+        notificationPublisher.publish(endpointMetricsAgent, eventInstant -> buildTrafficNotification(endpointMetricsAgent, msh, pid, message, eventInstant));
+        getLogger().debug(".sendTrafficNotification(): Exit");
+    }
 
+    protected EndpointITOpsNotificationPublisher.NotificationContent buildTrafficNotification(EndpointMetricsAgent endpointMetricsAgent, String msh, String pid, String message, Instant eventInstant){
         String target = getConnectedSystemName(endpointMetricsAgent);
         String endpointDisplayName = getEndpointDisplayName(endpointMetricsAgent);
 
@@ -201,7 +209,7 @@ public class MLLPEgressMessageMetricsCapture {
         formattedMessageBuilder.append("<table>");
         formattedMessageBuilder.append("<tr>");
         formattedMessageBuilder.append("<td> To </td>");
-        formattedMessageBuilder.append("<td>" + target + " via " + endpointDisplayName + " (" + getTimeFormatter().format(Instant.now()) + ") </td>");
+        formattedMessageBuilder.append("<td>" + target + " via " + endpointDisplayName + " (" + getTimeFormatter().format(eventInstant) + ") </td>");
         formattedMessageBuilder.append("</tr>");
         formattedMessageBuilder.append("<tr>");
         formattedMessageBuilder.append("<td>Metadata</td><td>");
@@ -215,7 +223,7 @@ public class MLLPEgressMessageMetricsCapture {
         StringBuilder unformattedMessageBuilder = new StringBuilder();
         unformattedMessageBuilder.append("-------------------------------------------------------");
         unformattedMessageBuilder.append("Sending Egress Message ");
-        unformattedMessageBuilder.append("(" + getTimeFormatter().format(Instant.now()) + ") \n");
+        unformattedMessageBuilder.append("(" + getTimeFormatter().format(eventInstant) + ") \n");
         unformattedMessageBuilder.append("To: ");
         unformattedMessageBuilder.append(target);
         unformattedMessageBuilder.append(" via ");
@@ -233,11 +241,7 @@ public class MLLPEgressMessageMetricsCapture {
         }
         String unformattedMessage = unformattedMessageBuilder.toString();
 
-        //
-        // Endpoint Notification
-        endpointMetricsAgent.sendITOpsNotification(unformattedMessage, formattedMessage);
-
-        getLogger().debug(".sendACKNotification(): Exit ...");
+        return(new EndpointITOpsNotificationPublisher.NotificationContent(unformattedMessage, formattedMessage));
     }
 
     public UoW capturePostSendMetricDetail(UoW uow, Exchange camelExchange){
@@ -298,6 +302,21 @@ public class MLLPEgressMessageMetricsCapture {
     protected void sendACKNotification(Boolean success, String acknowledgementPayload, EndpointMetricsAgent endpointMetricsAgent){
         getLogger().debug(".sendACKNotification(): Entry, success->{}, acknowledgementPayload->{}", success, acknowledgementPayload);
 
+        if(success){
+            //
+            // Routine acknowledgements go via the (asynchronous, coalescing) publisher
+            notificationPublisher.publish(endpointMetricsAgent, eventInstant -> buildACKNotification(true, acknowledgementPayload, endpointMetricsAgent, eventInstant));
+        } else {
+            //
+            // Failures are always sent, and sent now
+            EndpointITOpsNotificationPublisher.NotificationContent content = buildACKNotification(false, acknowledgementPayload, endpointMetricsAgent, Instant.now());
+            endpointMetricsAgent.sendITOpsNotification(content.getPlainContent(), content.getFormattedContent());
+            getProcessingPlantMetricsAgent().sendITOpsNotification(content.getPlainContent(), content.getFormattedContent());
+        }
+        getLogger().debug(".sendACKNotification(): Exit ...");
+    }
+
+    protected EndpointITOpsNotificationPublisher.NotificationContent buildACKNotification(Boolean success, String acknowledgementPayload, EndpointMetricsAgent endpointMetricsAgent, Instant eventInstant){
         String target = getConnectedSystemName(endpointMetricsAgent);
         String endpointDescription = getEndpointDisplayName(endpointMetricsAgent);
 
@@ -311,7 +330,7 @@ public class MLLPEgressMessageMetricsCapture {
         } else {
             formattedMessageBuilder.append("<font color=red> ERROR </font>");
         }
-        formattedMessageBuilder.append("  (" + getTimeFormatter().format(Instant.now()) + ")");
+        formattedMessageBuilder.append("  (" + getTimeFormatter().format(eventInstant) + ")");
         formattedMessageBuilder.append("</td>");
         formattedMessageBuilder.append("</tr>");
         formattedMessageBuilder.append("</table>");
@@ -325,7 +344,7 @@ public class MLLPEgressMessageMetricsCapture {
         } else {
             unformattedMessageBuilder.append(" ERROR ");
         }
-        unformattedMessageBuilder.append("(" + getTimeFormatter().format(Instant.now()) + ") \n");
+        unformattedMessageBuilder.append("(" + getTimeFormatter().format(eventInstant) + ") \n");
         unformattedMessageBuilder.append("From: ");
         unformattedMessageBuilder.append(target);
         unformattedMessageBuilder.append(" via ");
@@ -350,14 +369,7 @@ public class MLLPEgressMessageMetricsCapture {
 
         String unformattedMessage = unformattedMessageBuilder.toString();
 
-        //
-        // Endpoint Notification
-        endpointMetricsAgent.sendITOpsNotification(unformattedMessage, formattedMessage);
-
-        if(!success){
-            getProcessingPlantMetricsAgent().sendITOpsNotification(unformattedMessage, formattedMessage);
-        }
-        getLogger().debug(".sendACKNotification(): Exit ...");
+        return(new EndpointITOpsNotificationPublisher.NotificationContent(unformattedMessage, formattedMessage));
     }
 
     public Object captureTimeoutException(Object info, Exchange camelExchange){
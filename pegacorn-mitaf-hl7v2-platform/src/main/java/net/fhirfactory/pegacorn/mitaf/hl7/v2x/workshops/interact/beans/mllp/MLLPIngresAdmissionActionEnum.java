@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp;
+
+/**
+ * What an MLLP ingres WUP does with a message that arrives while its admission controller is
+ * throttling (see {@link MLLPIngresAdmissionController}).
+ */
+public enum MLLPIngresAdmissionActionEnum {
+    /**
+     * Hold the message (and so the connection, which reads nothing more until it is acknowledged) until
+     * the load drops below the low water marks, rejecting it if that takes longer than the maximum wait.
+     */
+    MLLP_INGRES_ADMISSION_BLOCK("block"),
+    /**
+     * Reject the message immediately with an application reject (AR) acknowledgement.
+     */
+    MLLP_INGRES_ADMISSION_REJECT("reject");
+
+    private final String token;
+
+    private MLLPIngresAdmissionActionEnum(String token){
+        this.token = token;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public static MLLPIngresAdmissionActionEnum fromToken(String token){
+        if(token == null){
+            return(null);
+        }
+        for(MLLPIngresAdmissionActionEnum currentAction: values()){
+            if(currentAction.getToken().equalsIgnoreCase(token.trim())){
+                return(currentAction);
+            }
+        }
+        return(null);
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp;
+
+import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.notifications.EndpointITOpsNotificationPublisher;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp.MLLPAcknowledgementGenerator;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp.MLLPMessageHeaderExtractor;
+import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.EndpointMetricsAgent;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.mllp.MllpConstants;
+import org.apache.camel.component.seda.SedaEndpoint;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for an MLLP ingres WUP. The ingres route hands its messages off (InOnly) to the
+ * egress feed however far behind the downstream WUPs are, so without this a downstream stall grows the
+ * heap until the processing plant dies.
+ *
+ * Two load signals are watched, both specific to the endpoint: the number of exchanges in flight on
+ * its ingres route (less the ones this controller is itself holding) and, if the route's own egress feed
+ * is a SEDA queue, that queue's backlog. Other routes in the same Camel context (including the other
+ * ingres endpoints of the processing plant) don't count towards either. When either
+ * reaches its high water mark the controller starts throttling, and it stops once both are back at or
+ * below their low water marks. While throttling, arriving messages are either held - and, as MLLP
+ * connections process one message at a time, the connection reads nothing further until the message
+ * is acknowledged - or rejected with an application reject (AR) acknowledgement (see
+ * {@link MLLPIngresAdmissionActionEnum}). A held message that waits longer than the maximum wait is
+ * rejected.
+ *
+ * Thresholds are per endpoint, from the MLLPServerAdapter additional parameters. A high water mark of
+ * 0 (the default) disables that signal, with both disabled admission control is off.
+ */
+public class MLLPIngresAdmissionController {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPIngresAdmissionController.class);
+
+    public static final String MLLP_INGRES_ADMISSION_INFLIGHT_HIGH_WATER_MARK_PARAMETER_NAME = "MLLP_INGRES_ADMISSION_INFLIGHT_HIGH_WATER_MARK";
+    public static final String MLLP_INGRES_ADMISSION_INFLIGHT_LOW_WATER_MARK_PARAMETER_NAME = "MLLP_INGRES_ADMISSION_INFLIGHT_LOW_WATER_MARK";
+    public static final String MLLP_INGRES_ADMISSION_BACKLOG_HIGH_WATER_MARK_PARAMETER_NAME = "MLLP_INGRES_ADMISSION_BACKLOG_HIGH_WATER_MARK";
+    public static final String MLLP_INGRES_ADMISSION_BACKLOG_LOW_WATER_MARK_PARAMETER_NAME = "MLLP_INGRES_ADMISSION_BACKLOG_LOW_WATER_MARK";
+    public static final String MLLP_INGRES_ADMISSION_ACTION_PARAMETER_NAME = "MLLP_INGRES_ADMISSION_ACTION";
+    public static final String MLLP_INGRES_ADMISSION_MAXIMUM_WAIT_PARAMETER_NAME = "MLLP_INGRES_ADMISSION_MAXIMUM_WAIT";
+
+    private static final long DEFAULT_MAXIMUM_WAIT_IN_MILLISECONDS = 10000L;
+    private static final long POLL_INTERVAL_IN_MILLISECONDS = 20L;
+    private static final String REJECTION_MSA_TEXT = "Receiver overloaded, retry later";
+
+    private int inFlightHighWaterMark;
+    private int inFlightLowWaterMark;
+    private int backlogHighWaterMark;
+    private int backlogLowWaterMark;
+    private MLLPIngresAdmissionActionEnum admissionAction;
+    private long maximumWait;
+
+    private String endpointName;
+    private CamelContext camelContext;
+    private String routeId;
+    private String egressFeedURI;
+    private volatile SedaEndpoint egressFeedQueue;
+    private volatile boolean egressFeedResolved;
+    private EndpointITOpsNotificationPublisher notificationPublisher;
+
+    private final AtomicBoolean throttling;
+    private volatile long throttlingStartTime;
+    private final AtomicInteger waitingMessageCount;
+    private final AtomicLong throttlingEpisodeCount;
+    private final AtomicLong cumulativeThrottledTime;
+    private final AtomicLong heldMessageCount;
+    private final AtomicLong cumulativeHoldTime;
+    private final AtomicLong rejectedMessageCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPIngresAdmissionController(){
+        this.inFlightHighWaterMark = 0;
+        this.inFlightLowWaterMark = 0;
+        this.backlogHighWaterMark = 0;
+        this.backlogLowWaterMark = 0;
+        this.admissionAction = MLLPIngresAdmissionActionEnum.MLLP_INGRES_ADMISSION_BLOCK;
+        this.maximumWait = DEFAULT_MAXIMUM_WAIT_IN_MILLISECONDS;
+        this.egressFeedResolved = false;
+        this.throttling = new AtomicBoolean(false);
+        this.throttlingStartTime = 0L;
+        this.waitingMessageCount = new AtomicInteger(0);
+        this.throttlingEpisodeCount = new AtomicLong(0);
+        this.cumulativeThrottledTime = new AtomicLong(0);
+        this.heldMessageCount = new AtomicLong(0);
+        this.cumulativeHoldTime = new AtomicLong(0);
+        this.rejectedMessageCount = new AtomicLong(0);
+    }
+
+    //
+    // Configuration
+    //
+
+    /**
+     * Reads the thresholds from the MLLPServerAdapter additional parameters. Low water marks default to
+     * half the high water mark.
+     *
+     * @param parameters the additional parameters of the ingres MLLPServerAdapter
+     */
+    public void configure(Map<String, String> parameters){
+        getLogger().debug(".configure(): Entry");
+        if(parameters == null){
+            getLogger().debug(".configure(): Exit, no parameters");
+            return;
+        }
+        inFlightHighWaterMark = parseCount(parameters, MLLP_INGRES_ADMISSION_INFLIGHT_HIGH_WATER_MARK_PARAMETER_NAME, 0);
+        inFlightLowWaterMark = Math.min(inFlightHighWaterMark, parseCount(parameters, MLLP_INGRES_ADMISSION_INFLIGHT_LOW_WATER_MARK_PARAMETER_NAME, inFlightHighWaterMark / 2));
+        backlogHighWaterMark = parseCount(parameters, MLLP_INGRES_ADMISSION_BACKLOG_HIGH_WATER_MARK_PARAMETER_NAME, 0);
+        backlogLowWaterMark = Math.min(backlogHighWaterMark, parseCount(parameters, MLLP_INGRES_ADMISSION_BACKLOG_LOW_WATER_MARK_PARAMETER_NAME, backlogHighWaterMark / 2));
+        String actionValue = parameters.get(MLLP_INGRES_ADMISSION_ACTION_PARAMETER_NAME);
+        if(StringUtils.isNotEmpty(actionValue)){
+            MLLPIngresAdmissionActionEnum action = MLLPIngresAdmissionActionEnum.fromToken(actionValue);
+            if(action != null){
+                admissionAction = action;
+            } else {
+                getLogger().warn(".configure(): Unknown admission action ({}), using {}", actionValue, admissionAction.getToken());
+            }
+        }
+        maximumWait = parseCount(parameters, MLLP_INGRES_ADMISSION_MAXIMUM_WAIT_PARAMETER_NAME, (int)DEFAULT_MAXIMUM_WAIT_IN_MILLISECONDS);
+        getLogger().info(".configure(): Exit, enabled->{}, inFlight->{}/{}, backlog->{}/{}, action->{}, maximumWait->{}ms",
+                isEnabled(), inFlightHighWaterMark, inFlightLowWaterMark, backlogHighWaterMark, backlogLowWaterMark, admissionAction.getToken(), maximumWait);
+    }
+
+    /**
+     * Binds the controller to the route it protects.
+     *
+     * @param camelContext the Camel context of the ingres route
+     * @param routeId the id of the ingres route (whose in-flight exchanges are counted)
+     * @param egressFeedURI the URI of the ingres route's egress feed
+     * @param endpointName the name of the ingres endpoint (for logging and notifications)
+     * @param notificationPublisher the publisher for throttling notifications (may be null)
+     */
+    public void bind(CamelContext camelContext, String routeId, String egressFeedURI, String endpointName, EndpointITOpsNotificationPublisher notificationPublisher){
+        this.camelContext = camelContext;
+        this.routeId = routeId;
+        this.egressFeedURI = egressFeedURI;
+        this.endpointName = endpointName;
+        this.notificationPublisher = notificationPublisher;
+        this.egressFeedResolved = false;
+    }
+
+    public boolean isEnabled(){
+        return(inFlightHighWaterMark > 0 || backlogHighWaterMark > 0);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Admits (returns), holds, or rejects the message according to the current load. A rejected
+     * message has its AR acknowledgement set and the rest of the route is skipped.
+     *
+     * @param exchange the Camel Exchange of the arriving message
+     */
+    public void admitMessage(Exchange exchange){
+        if(!isEnabled() || !updateThrottling(exchange)){
+            return;
+        }
+        if(admissionAction.equals(MLLPIngresAdmissionActionEnum.MLLP_INGRES_ADMISSION_BLOCK)){
+            long holdStartTime = System.nanoTime();
+            long holdDeadline = holdStartTime + TimeUnit.MILLISECONDS.toNanos(maximumWait);
+            boolean stillThrottling = true;
+            waitingMessageCount.incrementAndGet();
+            try {
+                while (stillThrottling && System.nanoTime() < holdDeadline) {
+                    Thread.sleep(POLL_INTERVAL_IN_MILLISECONDS);
+                    stillThrottling = updateThrottling(exchange);
+                }
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waitingMessageCount.decrementAndGet();
+                heldMessageCount.incrementAndGet();
+                cumulativeHoldTime.addAndGet(System.nanoTime() - holdStartTime);
+            }
+            if(!stillThrottling){
+                return;
+            }
+            getLogger().warn(".admitMessage(): Message held for {}ms without the load dropping, rejecting it, endpoint->{}", maximumWait, endpointName);
+        }
+        rejectMessage(exchange);
+    }
+
+    /**
+     * Re-evaluates the load signals, starting or ending a throttling episode as the water marks are crossed.
+     *
+     * @param exchange the exchange that triggered the evaluation
+     * @return true if the controller is (now) throttling
+     */
+    protected boolean updateThrottling(Exchange exchange){
+        int inFlightCount = getInFlightCount();
+        int backlog = getEgressFeedBacklog();
+        if(throttling.get()){
+            boolean inFlightRecovered = inFlightHighWaterMark <= 0 || inFlightCount <= inFlightLowWaterMark;
+            boolean backlogRecovered = backlogHighWaterMark <= 0 || backlog <= backlogLowWaterMark;
+            if(inFlightRecovered && backlogRecovered && throttling.compareAndSet(true, false)){
+                long throttledTime = System.nanoTime() - throttlingStartTime;
+                cumulativeThrottledTime.addAndGet(throttledTime);
+                getLogger().info(".updateThrottling(): Admission resumed, endpoint->{}, inFlight->{}, backlog->{}, throttledFor->{}ms", endpointName, inFlightCount, backlog, TimeUnit.NANOSECONDS.toMillis(throttledTime));
+                sendThrottlingNotification(exchange, false, inFlightCount, backlog);
+            }
+        } else {
+            boolean inFlightExceeded = inFlightHighWaterMark > 0 && inFlightCount >= inFlightHighWaterMark;
+            boolean backlogExceeded = backlogHighWaterMark > 0 && backlog >= backlogHighWaterMark;
+            if((inFlightExceeded || backlogExceeded) && throttling.compareAndSet(false, true)){
+                throttlingStartTime = System.nanoTime();
+                throttlingEpisodeCount.incrementAndGet();
+                getLogger().warn(".updateThrottling(): Admission throttled, endpoint->{}, inFlight->{}, backlog->{}, action->{}", endpointName, inFlightCount, backlog, admissionAction.getToken());
+                sendThrottlingNotification(exchange, true, inFlightCount, backlog);
+            }
+        }
+        return(throttling.get());
+    }
+
+    protected void rejectMessage(Exchange exchange){
+        rejectedMessageCount.incrementAndGet();
+        exchange.setProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_TYPE, MLLPAcknowledgementGenerator.APPLICATION_REJECT);
+        exchange.setProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_MSA_TEXT, REJECTION_MSA_TEXT);
+        String acknowledgement = MLLPAcknowledgementGenerator.generateAcknowledgement(extractMSHFields(exchange), MLLPAcknowledgementGenerator.APPLICATION_REJECT, REJECTION_MSA_TEXT);
+        if(acknowledgement != null){
+            exchange.setProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_STRING, acknowledgement);
+        }
+        exchange.setRouteStop(true);
+        getLogger().debug(".rejectMessage(): Message rejected, endpoint->{}", endpointName);
+    }
+
+    //
+    // Load Signals
+    //
+
+    /**
+     * @return the exchanges in flight on the ingres route, excluding those held by this controller
+     */
+    protected int getInFlightCount(){
+        if(camelContext == null || StringUtils.isEmpty(routeId)){
+            return(0);
+        }
+        return(Math.max(0, camelContext.getInflightRepository().size(routeId) - waitingMessageCount.get()));
+    }
+
+    /**
+     * @return the number of exchanges queued on the ingres route's egress feed (0 if it isn't a SEDA queue)
+     */
+    protected int getEgressFeedBacklog(){
+        if(!egressFeedResolved){
+            resolveEgressFeed();
+        }
+        SedaEndpoint queue = egressFeedQueue;
+        if(queue == null){
+            return(0);
+        }
+        return(queue.getCurrentQueueSize());
+    }
+
+    private void resolveEgressFeed(){
+        if(camelContext == null || StringUtils.isEmpty(egressFeedURI)){
+            return;
+        }
+        Endpoint endpoint = camelContext.hasEndpoint(egressFeedURI);
+        if(endpoint == null){
+            return;
+        }
+        if(endpoint instanceof SedaEndpoint){
+            egressFeedQueue = (SedaEndpoint)endpoint;
+        } else {
+            getLogger().info(".resolveEgressFeed(): Egress feed is not a queue, only in-flight count will be used, egressFeed->{}", egressFeedURI);
+        }
+        egressFeedResolved = true;
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private String[] extractMSHFields(Exchange exchange){
+        Object body = exchange.getMessage().getBody();
+        if(body instanceof byte[]){
+            String charsetName = exchange.getProperty(Exchange.CHARSET_NAME, String.class);
+            Charset charset = StringUtils.isNotEmpty(charsetName) && Charset.isSupported(charsetName) ? Charset.forName(charsetName) : StandardCharsets.ISO_8859_1;
+            return(MLLPMessageHeaderExtractor.extractMSHFields((byte[])body, charset));
+        }
+        String message = exchange.getMessage().getBody(String.class);
+        if(message == null){
+            return(new String[0]);
+        }
+        int mshEnd = StringUtils.indexOfAny(message, '\r', '\n');
+        String mshSegment = mshEnd < 0 ? message : message.substring(0, mshEnd);
+        return(MLLPMessageHeaderExtractor.extractMSHFields(mshSegment.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+    }
+
+    private void sendThrottlingNotification(Exchange exchange, boolean throttled, int inFlightCount, int backlog){
+        if(notificationPublisher == null){
+            return;
+        }
+        EndpointMetricsAgent endpointMetricsAgent = exchange.getProperty(PetasosPropertyConstants.ENDPOINT_METRICS_AGENT_EXCHANGE_PROPERTY, EndpointMetricsAgent.class);
+        if(endpointMetricsAgent == null){
+            return;
+        }
+        String state = throttled ? "Throttled (" + admissionAction.getToken() + ")" : "Resumed";
+        notificationPublisher.publish(endpointMetricsAgent, eventInstant -> {
+            String plainText = "Ingres-Admission((" + endpointName + ")(" + eventInstant + ")){" + state + ", inFlight=" + inFlightCount + ", backlog=" + backlog + "}";
+            String formattedText = "<table><tr><th> Ingres Admission </th><th>" + endpointName + " (" + eventInstant + ") </th></tr>"
+                    + "<tr><td> State </td><td>" + state + "</td></tr>"
+                    + "<tr><td> Load </td><td> inFlight=" + inFlightCount + ", backlog=" + backlog + "</td></tr></table>";
+            return(new EndpointITOpsNotificationPublisher.NotificationContent(plainText, formattedText));
+        });
+    }
+
+    private int parseCount(Map<String, String> parameters, String parameterName, int defaultValue){
+        String value = parameters.get(parameterName);
+        if(StringUtils.isEmpty(value)){
+            return(defaultValue);
+        }
+        try {
+            return(Math.max(0, Integer.parseInt(value.trim())));
+        } catch (NumberFormatException numberFormatException) {
+            getLogger().warn(".parseCount(): Cannot parse {} ({}), using {}", parameterName, value, defaultValue);
+            return(defaultValue);
+        }
+    }
+
+    //
+    // Metrics
+    //
+
+    public boolean isThrottling(){
+        return(throttling.get());
+    }
+
+    public long getThrottlingEpisodeCount() {
+        return throttlingEpisodeCount.get();
+    }
+
+    /**
+     * @return the total time spent throttling (including the current episode, if any) in milliseconds
+     */
+    public long getThrottledTime(){
+        long throttledTime = cumulativeThrottledTime.get();
+        if(throttling.get()){
+            throttledTime += System.nanoTime() - throttlingStartTime;
+        }
+        return(TimeUnit.NANOSECONDS.toMillis(throttledTime));
+    }
+
+    public long getHeldMessageCount() {
+        return heldMessageCount.get();
+    }
+
+    /**
+     * @return the total time messages have been held in milliseconds
+     */
+    public long getHoldTime() {
+        return TimeUnit.NANOSECONDS.toMillis(cumulativeHoldTime.get());
+    }
+
+    public long getRejectedMessageCount() {
+        return rejectedMessageCount.get();
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public int getInFlightHighWaterMark() {
+        return inFlightHighWaterMark;
+    }
+
+    public int getInFlightLowWaterMark() {
+        return inFlightLowWaterMark;
+    }
+
+    public int getBacklogHighWaterMark() {
+        return backlogHighWaterMark;
+    }
+
+    public int getBacklogLowWaterMark() {
+        return backlogLowWaterMark;
+    }
+
+    public MLLPIngresAdmissionActionEnum getAdmissionAction() {
+        return admissionAction;
+    }
+
+    public long getMaximumWait() {
+        return maximumWait;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp;
+
+import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
+import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.datatypes.MLLPMessageActivityParcel;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.notifications.EndpointITOpsNotificationPublisher;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp.MLLPAcknowledgementGenerator;
+import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.EndpointMetricsAgent;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.component.mllp.MllpConstants;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Duplicate message suppression for an MLLP ingres WUP. Senders resend a message when its
+ * acknowledgement doesn't arrive in time, and without this every resend is encapsulated, transformed
+ * and sent on again.
+ *
+ * A message is identified by its sending application, sending facility and message control id
+ * (MSH-3, MSH-4, MSH-10), and the identities seen in the last duplicateWindow milliseconds are held in
+ * an {@link MLLPIngresMessageIdentityRegistry}. An identity is in progress from the moment its message
+ * passes this bean until the route completes, then either completed (the message was published) or
+ * forgotten (the route failed or the message was answered AE/AR, so the sender's retry is treated as
+ * new).
+ *
+ * Only a copy of a completed message is a duplicate: it is acknowledged (AA) but the rest of the route
+ * is skipped, so it is not published again. A copy that arrives while the original is still in progress
+ * cannot be acknowledged AA - the original may yet fail - so it is answered AE (and not processed),
+ * and the sender retries it later.
+ *
+ * Settings are per endpoint, from the MLLPServerAdapter additional parameters. A window of 0 (the
+ * default) disables duplicate suppression.
+ */
+public class MLLPIngresDuplicateDetector {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPIngresDuplicateDetector.class);
+
+    public static final String MLLP_INGRES_DUPLICATE_WINDOW_PARAMETER_NAME = "MLLP_INGRES_DUPLICATE_WINDOW";
+    public static final String MLLP_INGRES_DUPLICATE_CAPACITY_PARAMETER_NAME = "MLLP_INGRES_DUPLICATE_CAPACITY";
+
+    private static final int DEFAULT_CAPACITY = 100000;
+    private static final String DUPLICATE_MSA_TEXT = "Duplicate message, already received";
+    private static final String IN_PROGRESS_MSA_TEXT = "Original message still being processed, resend later";
+
+    private long duplicateWindow;
+    private int capacity;
+    private String endpointName;
+    private EndpointITOpsNotificationPublisher notificationPublisher;
+    private MLLPIngresMessageIdentityRegistry identityRegistry;
+
+    private final AtomicLong checkedMessageCount;
+    private final AtomicLong suppressedMessageCount;
+    private final AtomicLong inProgressMessageCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPIngresDuplicateDetector(){
+        this.duplicateWindow = 0;
+        this.capacity = DEFAULT_CAPACITY;
+        this.checkedMessageCount = new AtomicLong(0);
+        this.suppressedMessageCount = new AtomicLong(0);
+        this.inProgressMessageCount = new AtomicLong(0);
+    }
+
+    //
+    // Configuration
+    //
+
+    /**
+     * Reads the window and capacity from the MLLPServerAdapter additional parameters, and sizes the
+     * identity registry accordingly.
+     *
+     * @param parameters the additional parameters of the ingres MLLPServerAdapter
+     */
+    public void configure(Map<String, String> parameters){
+        getLogger().debug(".configure(): Entry");
+        if(parameters != null){
+            duplicateWindow = parseCount(parameters, MLLP_INGRES_DUPLICATE_WINDOW_PARAMETER_NAME, 0);
+            capacity = Math.max(1, parseCount(parameters, MLLP_INGRES_DUPLICATE_CAPACITY_PARAMETER_NAME, DEFAULT_CAPACITY));
+        }
+        if(isEnabled()){
+            this.identityRegistry = new MLLPIngresMessageIdentityRegistry(duplicateWindow, capacity, System.currentTimeMillis());
+        }
+        getLogger().info(".configure(): Exit, enabled->{}, duplicateWindow->{}ms, capacity->{}", isEnabled(), duplicateWindow, capacity);
+    }
+
+    /**
+     * @param endpointName the name of the ingres endpoint (for logging and notifications)
+     * @param notificationPublisher the publisher for suppression notifications (may be null)
+     */
+    public void bind(String endpointName, EndpointITOpsNotificationPublisher notificationPublisher){
+        this.endpointName = endpointName;
+        this.notificationPublisher = notificationPublisher;
+    }
+
+    public boolean isEnabled(){
+        return(duplicateWindow > 0);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Passes the parcel on unchanged. A copy of a completed message gets an AA acknowledgement, a copy
+     * of a message still in progress gets an AE acknowledgement, and in both cases the rest of the
+     * route is skipped.
+     *
+     * @param parcel the parcel produced by MLLPMessageIngresProcessor
+     * @param exchange the Camel Exchange
+     * @return the parcel
+     */
+    public MLLPMessageActivityParcel suppressDuplicate(MLLPMessageActivityParcel parcel, Exchange exchange){
+        if(!isEnabled() || parcel == null || StringUtils.isEmpty(parcel.getMllpMessageControlId())){
+            return(parcel);
+        }
+        if(parcel.getUow() != null && UoWProcessingOutcomeEnum.UOW_OUTCOME_FAILED.equals(parcel.getUow().getProcessingOutcome())){
+            return(parcel);
+        }
+        checkedMessageCount.incrementAndGet();
+        String messageIdentity = buildMessageIdentity(parcel);
+        long registrationToken = identityRegistry.nextRegistrationToken();
+        switch(identityRegistry.checkAndRegister(messageIdentity, registrationToken, System.currentTimeMillis())){
+            case COMPLETED:
+                suppressDuplicateMessage(parcel, exchange);
+                break;
+            case IN_PROGRESS:
+                deferInProgressMessage(parcel, exchange);
+                break;
+            case NEW:
+            default:
+                exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter(){
+                    @Override
+                    public void onComplete(Exchange completedExchange) {
+                        String acknowledgementType = completedExchange.getProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_TYPE, String.class);
+                        if(MLLPAcknowledgementGenerator.APPLICATION_ERROR.equals(acknowledgementType) || MLLPAcknowledgementGenerator.APPLICATION_REJECT.equals(acknowledgementType)){
+                            identityRegistry.forget(messageIdentity, registrationToken);
+                        } else {
+                            identityRegistry.complete(messageIdentity, registrationToken);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exchange failedExchange) {
+                        identityRegistry.forget(messageIdentity, registrationToken);
+                    }
+                });
+        }
+        return(parcel);
+    }
+
+    protected void suppressDuplicateMessage(MLLPMessageActivityParcel parcel, Exchange exchange){
+        long suppressedCount = suppressedMessageCount.incrementAndGet();
+        exchange.setProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_TYPE, MLLPAcknowledgementGenerator.APPLICATION_ACCEPT);
+        exchange.setProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_MSA_TEXT, DUPLICATE_MSA_TEXT);
+        exchange.setRouteStop(true);
+        getLogger().info(".suppressDuplicateMessage(): Duplicate suppressed, endpoint->{}, sendingApplication->{}, sendingFacility->{}, messageControlId->{}, suppressed->{}",
+                endpointName, parcel.getMllpSendingApplication(), parcel.getMllpSendingFacility(), parcel.getMllpMessageControlId(), suppressedCount);
+        sendDuplicateNotification(parcel, exchange, suppressedCount);
+    }
+
+    /**
+     * Answers a copy of a message whose original is still in progress with AE, without processing it,
+     * so the sender retries once the original has an outcome.
+     */
+    protected void deferInProgressMessage(MLLPMessageActivityParcel parcel, Exchange exchange){
+        long inProgressCount = inProgressMessageCount.incrementAndGet();
+        exchange.setProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_TYPE, MLLPAcknowledgementGenerator.APPLICATION_ERROR);
+        exchange.setProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_MSA_TEXT, IN_PROGRESS_MSA_TEXT);
+        exchange.setRouteStop(true);
+        getLogger().info(".deferInProgressMessage(): Original still in progress, endpoint->{}, sendingApplication->{}, sendingFacility->{}, messageControlId->{}, deferred->{}",
+                endpointName, parcel.getMllpSendingApplication(), parcel.getMllpSendingFacility(), parcel.getMllpMessageControlId(), inProgressCount);
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private String buildMessageIdentity(MLLPMessageActivityParcel parcel){
+        StringBuilder identityBuilder = new StringBuilder();
+        identityBuilder.append(StringUtils.defaultString(parcel.getMllpSendingApplication()));
+        identityBuilder.append('|');
+        identityBuilder.append(StringUtils.defaultString(parcel.getMllpSendingFacility()));
+        identityBuilder.append('|');
+        identityBuilder.append(parcel.getMllpMessageControlId());
+        return(identityBuilder.toString());
+    }
+
+    private void sendDuplicateNotification(MLLPMessageActivityParcel parcel, Exchange exchange, long suppressedCount){
+        if(notificationPublisher == null){
+            return;
+        }
+        EndpointMetricsAgent endpointMetricsAgent = exchange.getProperty(PetasosPropertyConstants.ENDPOINT_METRICS_AGENT_EXCHANGE_PROPERTY, EndpointMetricsAgent.class);
+        if(endpointMetricsAgent == null){
+            return;
+        }
+        String messageControlId = parcel.getMllpMessageControlId();
+        String sender = StringUtils.defaultString(parcel.getMllpSendingApplication()) + "^" + StringUtils.defaultString(parcel.getMllpSendingFacility());
+        notificationPublisher.publish(endpointMetricsAgent, eventInstant -> {
+            String plainText = "Ingres-Duplicate((" + endpointName + ")(" + eventInstant + ")){sender=" + sender + ", messageControlId=" + messageControlId + ", suppressed=" + suppressedCount + "}";
+            String formattedText = "<table><tr><th> Duplicate Suppressed </th><th>" + endpointName + " (" + eventInstant + ") </th></tr>"
+                    + "<tr><td> Message </td><td>" + sender + " / " + messageControlId + "</td></tr>"
+                    + "<tr><td> Suppressed </td><td>" + suppressedCount + "</td></tr></table>";
+            return(new EndpointITOpsNotificationPublisher.NotificationContent(plainText, formattedText));
+        });
+    }
+
+    private int parseCount(Map<String, String> parameters, String parameterName, int defaultValue){
+        String value = parameters.get(parameterName);
+        if(StringUtils.isEmpty(value)){
+            return(defaultValue);
+        }
+        try {
+            return(Math.max(0, Integer.parseInt(value.trim())));
+        } catch (NumberFormatException numberFormatException) {
+            getLogger().warn(".parseCount(): Cannot parse {} ({}), using {}", parameterName, value, defaultValue);
+            return(defaultValue);
+        }
+    }
+
+    //
+    // Metrics
+    //
+
+    public long getCheckedMessageCount() {
+        return checkedMessageCount.get();
+    }
+
+    public long getSuppressedMessageCount() {
+        return suppressedMessageCount.get();
+    }
+
+    /**
+     * @return the copies answered AE because their original was still in progress
+     */
+    public long getInProgressMessageCount() {
+        return inProgressMessageCount.get();
+    }
+
+    /**
+     * @return the Bloom filter hits that the LRU did not confirm (false positives, or identities aged out of the LRU)
+     */
+    public long getFalsePositiveCount() {
+        if(identityRegistry == null){
+            return(0);
+        }
+        return(identityRegistry.getFalsePositiveCount());
+    }
+
+    public int getRecentMessageCount(){
+        if(identityRegistry == null){
+            return(0);
+        }
+        return(identityRegistry.getIdentityCount());
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public long getDuplicateWindow() {
+        return duplicateWindow;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp;
+
+import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.notifications.EndpointITOpsNotificationPublisher;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.utils.LatencyHistogram;
+import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.EndpointMetricsAgent;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Route;
+import org.apache.camel.spi.RoutePolicy;
+import org.apache.camel.support.RoutePolicySupport;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records, per MLLP ingres endpoint, how long each stage of the ingres route takes - from the start
+ * of the route (receipt of the message) to its hand-off to the egress feed - in a
+ * {@link LatencyHistogram} per {@link MLLPIngresStageEnum stage}.
+ *
+ * The route is timed by the Processors returned by {@link #startTiming()} and
+ * {@link #stageCompleted(MLLPIngresStageEnum)}, placed between its beans; each reads the clock once.
+ * The start of the route allocates one small long[] per exchange (held as an exchange property) for
+ * the route's start time and the last stage's completion time; the stages then record into the
+ * histograms without allocating. Every reportInterval milliseconds the interval's
+ * percentiles (p50, p90, p99, p99.9, max) are logged and sent as an ITOps notification through the
+ * (rate limited) {@link EndpointITOpsNotificationPublisher}.
+ *
+ * The reports only run while the route does - see {@link #getRoutePolicy()}. The report thread is
+ * shared by all the recorders and is shut down when the last of them stops reporting.
+ *
+ * The report interval is per endpoint, from the MLLPServerAdapter additional parameters; 0 disables
+ * the recording.
+ */
+public class MLLPIngresLatencyRecorder {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPIngresLatencyRecorder.class);
+
+    public static final String MLLP_INGRES_LATENCY_REPORT_INTERVAL_PARAMETER_NAME = "MLLP_INGRES_LATENCY_REPORT_INTERVAL";
+
+    private static final String STAGE_TIMES_EXCHANGE_PROPERTY_NAME = "MITaFIngresStageTimes";
+    private static final int DEFAULT_REPORT_INTERVAL_IN_MILLISECONDS = 60000;
+    private static final double[] REPORTED_PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+    private static ScheduledExecutorService reportScheduler;
+    private static int reportSchedulerUsers = 0;
+
+    private long reportInterval;
+    private String endpointName;
+    private EndpointITOpsNotificationPublisher notificationPublisher;
+    private final EnumMap<MLLPIngresStageEnum, LatencyHistogram> stageHistograms;
+    private volatile EndpointMetricsAgent endpointMetricsAgent;
+    private ScheduledFuture<?> reportFuture;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPIngresLatencyRecorder(){
+        this.reportInterval = DEFAULT_REPORT_INTERVAL_IN_MILLISECONDS;
+        this.stageHistograms = new EnumMap<>(MLLPIngresStageEnum.class);
+        for(MLLPIngresStageEnum currentStage: MLLPIngresStageEnum.values()){
+            stageHistograms.put(currentStage, new LatencyHistogram());
+        }
+    }
+
+    //
+    // Configuration
+    //
+
+    /**
+     * @param parameters the additional parameters of the ingres MLLPServerAdapter
+     */
+    public void configure(Map<String, String> parameters){
+        getLogger().debug(".configure(): Entry");
+        if(parameters != null){
+            String value = parameters.get(MLLP_INGRES_LATENCY_REPORT_INTERVAL_PARAMETER_NAME);
+            if(StringUtils.isNotEmpty(value)){
+                try {
+                    reportInterval = Math.max(0L, Long.parseLong(value.trim()));
+                } catch (NumberFormatException numberFormatException) {
+                    getLogger().warn(".configure(): Cannot parse {} ({}), using {}", MLLP_INGRES_LATENCY_REPORT_INTERVAL_PARAMETER_NAME, value, reportInterval);
+                }
+            }
+        }
+        getLogger().info(".configure(): Exit, enabled->{}, reportInterval->{}ms", isEnabled(), reportInterval);
+    }
+
+    /**
+     * @param endpointName the name of the ingres endpoint (for logging and notifications)
+     * @param notificationPublisher the publisher for the report notifications (may be null)
+     */
+    public void bind(String endpointName, EndpointITOpsNotificationPublisher notificationPublisher){
+        this.endpointName = endpointName;
+        this.notificationPublisher = notificationPublisher;
+    }
+
+    public boolean isEnabled(){
+        return(reportInterval > 0);
+    }
+
+    //
+    // Lifecycle
+    //
+
+    /**
+     * @return a RoutePolicy, to be set on the timed route, that starts the periodic report when the
+     * route starts and stops it when the route stops (or is removed)
+     */
+    public RoutePolicy getRoutePolicy(){
+        return(new RoutePolicySupport() {
+            @Override
+            public void onStart(Route route) {
+                startReporting();
+            }
+
+            @Override
+            public void onStop(Route route) {
+                stopReporting();
+            }
+
+            @Override
+            public void onRemove(Route route) {
+                stopReporting();
+            }
+        });
+    }
+
+    public synchronized void startReporting(){
+        if(!isEnabled() || reportFuture != null){
+            return;
+        }
+        reportFuture = acquireReportScheduler().scheduleAtFixedRate(this::report, reportInterval, reportInterval, TimeUnit.MILLISECONDS);
+        getLogger().debug(".startReporting(): Started, endpoint->{}", endpointName);
+    }
+
+    public synchronized void stopReporting(){
+        if(reportFuture == null){
+            return;
+        }
+        reportFuture.cancel(false);
+        reportFuture = null;
+        releaseReportScheduler();
+        getLogger().debug(".stopReporting(): Stopped, endpoint->{}", endpointName);
+    }
+
+    public synchronized boolean isReporting(){
+        return(reportFuture != null);
+    }
+
+    private static synchronized ScheduledExecutorService acquireReportScheduler(){
+        if(reportScheduler == null){
+            reportScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread reportThread = new Thread(runnable, "MLLP-Ingres-Latency-Report");
+                reportThread.setDaemon(true);
+                return(reportThread);
+            });
+        }
+        reportSchedulerUsers += 1;
+        return(reportScheduler);
+    }
+
+    private static synchronized void releaseReportScheduler(){
+        reportSchedulerUsers -= 1;
+        if(reportSchedulerUsers <= 0 && reportScheduler != null){
+            reportScheduler.shutdown();
+            reportScheduler = null;
+            reportSchedulerUsers = 0;
+        }
+    }
+
+    //
+    // Route Processors
+    //
+
+    /**
+     * @return a Processor, to be placed first in the route, that starts the timing of the exchange. It
+     * allocates the exchange's stage times (a long[2] of the start time and the last stage's completion
+     * time), which the {@link #stageCompleted(MLLPIngresStageEnum)} Processors then update in place.
+     */
+    public Processor startTiming(){
+        return(exchange -> {
+            long now = System.nanoTime();
+            exchange.setProperty(STAGE_TIMES_EXCHANGE_PROPERTY_NAME, new long[]{now, now});
+            if(endpointMetricsAgent == null){
+                endpointMetricsAgent = exchange.getProperty(PetasosPropertyConstants.ENDPOINT_METRICS_AGENT_EXCHANGE_PROPERTY, EndpointMetricsAgent.class);
+            }
+        });
+    }
+
+    /**
+     * @param stage the stage (bean) which this Processor follows in the route
+     * @return a Processor that records the time since the previous stage completed against the stage
+     * (and, for the hand-off, the time since the route started against the total)
+     */
+    public Processor stageCompleted(MLLPIngresStageEnum stage){
+        LatencyHistogram stageHistogram = stageHistograms.get(stage);
+        LatencyHistogram totalHistogram = stage.equals(MLLPIngresStageEnum.MLLP_INGRES_STAGE_HANDOFF) ? stageHistograms.get(MLLPIngresStageEnum.MLLP_INGRES_STAGE_TOTAL) : null;
+        return(exchange -> {
+            long[] stageTimes = exchange.getProperty(STAGE_TIMES_EXCHANGE_PROPERTY_NAME, long[].class);
+            if(stageTimes == null){
+                return;
+            }
+            long now = System.nanoTime();
+            stageHistogram.recordNanoseconds(now - stageTimes[1]);
+            stageTimes[1] = now;
+            if(totalHistogram != null){
+                totalHistogram.recordNanoseconds(now - stageTimes[0]);
+            }
+        });
+    }
+
+    //
+    // Reporting
+    //
+
+    protected void report(){
+        try {
+            Map<MLLPIngresStageEnum, LatencyHistogram.Snapshot> snapshots = new EnumMap<>(MLLPIngresStageEnum.class);
+            for(Map.Entry<MLLPIngresStageEnum, LatencyHistogram> currentEntry: stageHistograms.entrySet()){
+                snapshots.put(currentEntry.getKey(), currentEntry.getValue().snapshotAndReset());
+            }
+            if(snapshots.get(MLLPIngresStageEnum.MLLP_INGRES_STAGE_TOTAL).getTotalCount() == 0 && snapshots.get(MLLPIngresStageEnum.MLLP_INGRES_STAGE_CAPTURE).getTotalCount() == 0){
+                return;
+            }
+            //
+            // The summaries are only read after this point, so the publisher's thread can format them
+            Map<MLLPIngresStageEnum, String> stageSummaries = new EnumMap<>(MLLPIngresStageEnum.class);
+            for(Map.Entry<MLLPIngresStageEnum, LatencyHistogram.Snapshot> currentEntry: snapshots.entrySet()){
+                if(currentEntry.getValue().getTotalCount() > 0){
+                    stageSummaries.put(currentEntry.getKey(), summarise(currentEntry.getValue()));
+                }
+            }
+            String reportedEndpointName = endpointName;
+            getLogger().info(".report(): {}", buildPlainText(reportedEndpointName, stageSummaries, Instant.now()));
+            EndpointMetricsAgent metricsAgent = endpointMetricsAgent;
+            EndpointITOpsNotificationPublisher publisher = notificationPublisher;
+            if(metricsAgent != null && publisher != null){
+                publisher.publish(metricsAgent, eventInstant -> new EndpointITOpsNotificationPublisher.NotificationContent(
+                        buildPlainText(reportedEndpointName, stageSummaries, eventInstant),
+                        buildFormattedText(reportedEndpointName, stageSummaries, eventInstant)));
+            }
+        } catch (Exception reportException) {
+            getLogger().warn(".report(): Cannot report ingres latency, endpoint->{}, error->{}", endpointName, reportException.getMessage());
+        }
+    }
+
+    private static String buildPlainText(String endpointName, Map<MLLPIngresStageEnum, String> stageSummaries, Instant eventInstant){
+        StringBuilder plainText = new StringBuilder();
+        plainText.append("Ingres-Latency((").append(endpointName).append(")(").append(eventInstant).append(")){");
+        for(Map.Entry<MLLPIngresStageEnum, String> currentEntry: stageSummaries.entrySet()){
+            plainText.append(currentEntry.getKey().getToken()).append("=[").append(currentEntry.getValue()).append("] ");
+        }
+        plainText.append("}");
+        return(plainText.toString());
+    }
+
+    private static String buildFormattedText(String endpointName, Map<MLLPIngresStageEnum, String> stageSummaries, Instant eventInstant){
+        StringBuilder formattedText = new StringBuilder();
+        formattedText.append("<table><tr><th> Ingres Latency (us) </th><th>").append(endpointName).append(" (").append(eventInstant).append(") </th></tr>");
+        for(Map.Entry<MLLPIngresStageEnum, String> currentEntry: stageSummaries.entrySet()){
+            formattedText.append("<tr><td> ").append(currentEntry.getKey().getToken()).append(" </td><td>").append(currentEntry.getValue()).append("</td></tr>");
+        }
+        formattedText.append("</table>");
+        return(formattedText.toString());
+    }
+
+    private String summarise(LatencyHistogram.Snapshot snapshot){
+        StringBuilder summary = new StringBuilder();
+        summary.append("n=").append(snapshot.getTotalCount());
+        summary.append(", mean=").append(snapshot.getMean());
+        for(double currentPercentile: REPORTED_PERCENTILES){
+            summary.append(", p").append(currentPercentile == Math.rint(currentPercentile) ? Long.toString((long)currentPercentile) : Double.toString(currentPercentile));
+            summary.append("=").append(snapshot.getValueAtPercentile(currentPercentile));
+        }
+        summary.append(", max=").append(snapshot.getMaximum());
+        return(summary.toString());
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public long getReportInterval() {
+        return reportInterval;
+    }
+
+    public LatencyHistogram getStageHistogram(MLLPIngresStageEnum stage){
+        return(stageHistograms.get(stage));
+    }
+}
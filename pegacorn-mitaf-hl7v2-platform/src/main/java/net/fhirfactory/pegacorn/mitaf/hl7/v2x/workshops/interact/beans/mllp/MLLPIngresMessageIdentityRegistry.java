@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The message identities (see {@link MLLPIngresDuplicateDetector}) seen by an ingres endpoint in the
+ * last window milliseconds, and whether the message that registered each one is still in progress or
+ * has been completed (published).
+ *
+ * Every identity seen in the window is in a rotating pair of Bloom filters, so a new identity (the
+ * overwhelmingly common case) is recognised as such without consulting anything else. A Bloom filter
+ * hit is confirmed against an exact, bounded LRU of the most recently seen identities: a false
+ * positive, or an identity that has aged out of the LRU, is treated as new.
+ *
+ * The filter test, the LRU check and the registration are all made under the one lock, so of two copies
+ * of a message arriving together exactly one is NEW. Each registration carries a token from
+ * {@link #nextRegistrationToken()}, which is what {@link #complete(String, long)} and
+ * {@link #forget(String, long)} match on - registration times (milliseconds) are not unique.
+ */
+public class MLLPIngresMessageIdentityRegistry {
+
+    public enum IdentityStatus {
+        /** Not seen in the window - now registered as in progress */
+        NEW,
+        /** Registered by a message that has not completed yet */
+        IN_PROGRESS,
+        /** Registered by a message that completed successfully */
+        COMPLETED
+    }
+
+    private static final double BLOOM_FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+    private final long window;
+    // the filters, the rotation time and the LRU are only used with identitiesLock held
+    private BloomFilter currentFilter;
+    private BloomFilter previousFilter;
+    private long filterRotationTime;
+    private final ReentrantLock identitiesLock;
+    private final LinkedHashMap<String, IdentityRecord> identities;
+    private final AtomicLong registrationSequence;
+
+    private final AtomicLong falsePositiveCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPIngresMessageIdentityRegistry(long window, int capacity, long now){
+        this.window = window;
+        this.identitiesLock = new ReentrantLock();
+        this.identities = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdentityRecord> eldest) {
+                return(size() > capacity);
+            }
+        };
+        this.currentFilter = new BloomFilter(capacity, BLOOM_FILTER_FALSE_POSITIVE_RATE);
+        this.previousFilter = new BloomFilter(capacity, BLOOM_FILTER_FALSE_POSITIVE_RATE);
+        this.filterRotationTime = now + window;
+        this.registrationSequence = new AtomicLong(0);
+        this.falsePositiveCount = new AtomicLong(0);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @return a token, unique to this registry, for a registration
+     */
+    public long nextRegistrationToken(){
+        return(registrationSequence.incrementAndGet());
+    }
+
+    /**
+     * Looks the identity up and, if it has not been seen in the window (or its registration has
+     * expired), registers it as in progress under the registration token.
+     *
+     * @param identity the message identity
+     * @param registrationToken the token for the registration (see {@link #nextRegistrationToken()})
+     * @param now the current time (milliseconds)
+     * @return the status of the identity before this call
+     */
+    public IdentityStatus checkAndRegister(String identity, long registrationToken, long now){
+        long identityHash = hash(identity);
+        identitiesLock.lock();
+        try {
+            if(now >= filterRotationTime){
+                rotateFilters(now);
+            }
+            boolean possiblySeen = currentFilter.mightContain(identityHash) || previousFilter.mightContain(identityHash);
+            currentFilter.put(identityHash);
+            if(possiblySeen){
+                IdentityRecord existingRecord = identities.get(identity);
+                if(existingRecord != null && now - existingRecord.getRegistrationTime() <= window){
+                    return(existingRecord.isCompleted() ? IdentityStatus.COMPLETED : IdentityStatus.IN_PROGRESS);
+                }
+                falsePositiveCount.incrementAndGet();
+            }
+            identities.put(identity, new IdentityRecord(registrationToken, now));
+            return(IdentityStatus.NEW);
+        } finally {
+            identitiesLock.unlock();
+        }
+    }
+
+    /**
+     * Marks the registration made with registrationToken as completed, so later copies of the message
+     * are duplicates.
+     */
+    public void complete(String identity, long registrationToken){
+        identitiesLock.lock();
+        try {
+            IdentityRecord existingRecord = identities.get(identity);
+            if(existingRecord != null && existingRecord.getRegistrationToken() == registrationToken){
+                existingRecord.setCompleted(true);
+            }
+        } finally {
+            identitiesLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the registration made with registrationToken (its message was not published), unless the
+     * identity has been re-registered since - so the sender's retry is treated as new.
+     */
+    public void forget(String identity, long registrationToken){
+        identitiesLock.lock();
+        try {
+            IdentityRecord existingRecord = identities.get(identity);
+            if(existingRecord != null && existingRecord.getRegistrationToken() == registrationToken){
+                identities.remove(identity);
+            }
+        } finally {
+            identitiesLock.unlock();
+        }
+    }
+
+    /**
+     * Swaps the filters once the current one has covered a full window, so every identity stays in a
+     * filter for at least one window (and at most two). Called with identitiesLock held.
+     */
+    protected void rotateFilters(long now){
+        BloomFilter expiredFilter = previousFilter;
+        expiredFilter.clear();
+        previousFilter = currentFilter;
+        currentFilter = expiredFilter;
+        filterRotationTime = now + window;
+    }
+
+    /**
+     * 64 bit FNV-1a over the characters of the identity, finished with a MurmurHash3 mix so that both
+     * halves are usable as independent hashes.
+     */
+    static long hash(String identity){
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < identity.length(); i++){
+            hash ^= identity.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return(hash);
+    }
+
+    //
+    // Metrics
+    //
+
+    /**
+     * @return the Bloom filter hits that the LRU did not confirm (false positives, or identities aged out of the LRU)
+     */
+    public long getFalsePositiveCount() {
+        return falsePositiveCount.get();
+    }
+
+    public int getIdentityCount(){
+        identitiesLock.lock();
+        try {
+            return(identities.size());
+        } finally {
+            identitiesLock.unlock();
+        }
+    }
+
+    //
+    // Identity Record
+    //
+
+    private static class IdentityRecord {
+        private final long registrationToken;
+        private final long registrationTime;
+        private boolean completed;
+
+        public IdentityRecord(long registrationToken, long registrationTime){
+            this.registrationToken = registrationToken;
+            this.registrationTime = registrationTime;
+            this.completed = false;
+        }
+
+        public long getRegistrationToken() {
+            return registrationToken;
+        }
+
+        public long getRegistrationTime() {
+            return registrationTime;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        public void setCompleted(boolean completed) {
+            this.completed = completed;
+        }
+    }
+
+    //
+    // Bloom Filter
+    //
+
+    /**
+     * A lock free Bloom filter over 64 bit hashes (Kirsch-Mitzenmacher double hashing).
+     */
+    static class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        public BloomFilter(int expectedEntries, double falsePositiveRate){
+            long optimalBitCount = (long)Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int wordCount = (int)Math.max(1, (optimalBitCount + 63) / 64);
+            this.bits = new AtomicLongArray(wordCount);
+            this.bitCount = (long)wordCount * 64;
+            this.hashCount = Math.max(1, (int)Math.round((double)bitCount / expectedEntries * Math.log(2)));
+        }
+
+        public void put(long hash){
+            int firstHash = (int)hash;
+            int secondHash = (int)(hash >>> 32);
+            for(int i = 1; i <= hashCount; i++){
+                long bitIndex = Math.floorMod(firstHash + i * secondHash, bitCount);
+                int wordIndex = (int)(bitIndex >>> 6);
+                long mask = 1L << bitIndex;
+                long word = bits.get(wordIndex);
+                while((word & mask) == 0 && !bits.compareAndSet(wordIndex, word, word | mask)){
+                    word = bits.get(wordIndex);
+                }
+            }
+        }
+
+        public boolean mightContain(long hash){
+            int firstHash = (int)hash;
+            int secondHash = (int)(hash >>> 32);
+            for(int i = 1; i <= hashCount; i++){
+                long bitIndex = Math.floorMod(firstHash + i * secondHash, bitCount);
+                if((bits.get((int)(bitIndex >>> 6)) & (1L << bitIndex)) == 0){
+                    return(false);
+                }
+            }
+            return(true);
+        }
+
+        public void clear(){
+            for(int i = 0; i < bits.length(); i++){
+                bits.set(i, 0L);
+            }
+        }
+    }
+}
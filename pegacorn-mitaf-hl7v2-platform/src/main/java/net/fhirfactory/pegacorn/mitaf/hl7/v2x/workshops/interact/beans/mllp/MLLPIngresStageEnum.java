@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp;
+
+/**
+ * The timed stages of the MLLP ingres route (see {@link MLLPIngresLatencyRecorder}), in route order.
+ */
+public enum MLLPIngresStageEnum {
+    MLLP_INGRES_STAGE_ADMISSION("admission"),
+    MLLP_INGRES_STAGE_CAPTURE("capture"),
+    MLLP_INGRES_STAGE_DUPLICATE_CHECK("duplicate-check"),
+    MLLP_INGRES_STAGE_MINIMAL_COMPLIANCE("minimal-compliance"),
+    MLLP_INGRES_STAGE_ENCAPSULATION("encapsulation"),
+    MLLP_INGRES_STAGE_ACTIVITY_REGISTRATION("activity-registration"),
+    MLLP_INGRES_STAGE_AUDIT("audit"),
+    MLLP_INGRES_STAGE_HANDOFF("handoff"),
+    /**
+     * From the start of the route to the hand-off to the egress feed.
+     */
+    MLLP_INGRES_STAGE_TOTAL("total");
+
+    private final String token;
+
+    private MLLPIngresStageEnum(String token){
+        this.token = token;
+    }
+
+    public String getToken() {
+        return token;
+    }
+}
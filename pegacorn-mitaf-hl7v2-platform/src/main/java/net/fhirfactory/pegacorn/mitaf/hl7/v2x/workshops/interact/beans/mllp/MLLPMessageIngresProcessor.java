@@ -21,8 +21,6 @@
  */
 package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp;
 
-import ca.uhn.hl7v2.DefaultHapiContext;
-import ca.uhn.hl7v2.HapiContext;
 import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
 import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
 import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelManifest;
@@ -36,9 +34,12 @@ import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
 import net.fhirfactory.pegacorn.core.model.topology.endpoints.base.IPCTopologyEndpoint;
 import net.fhirfactory.pegacorn.core.model.topology.nodes.WorkUnitProcessorSoftwareComponent;
-import net.fhirfactory.pegacorn.internals.hl7v2.helpers.UltraDefensivePipeParser;
-import net.fhirfactory.pegacorn.internals.hl7v2.triggerevents.valuesets.HL7v2SegmentTypeEnum;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageBytes;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xSegmentIndex;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.DataParcelInternKey;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantDataParcelManifestDM;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.datatypes.MLLPMessageActivityParcel;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.notifications.EndpointITOpsNotificationPublisher;
 import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.EndpointMetricsAgent;
 import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.ProcessingPlantMetricsAgent;
 import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.ProcessingPlantMetricsAgentAccessor;
@@ -53,6 +54,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.nio.charset.Charset;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -62,7 +64,8 @@ import java.time.format.DateTimeFormatter;
 public class MLLPMessageIngresProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(MLLPMessageIngresProcessor.class);
 
-    private HapiContext context;
+    private static final String CAPTURED_MESSAGE_MANIFEST_PURPOSE = "MLLPIngresCapturedMessage";
+
     private DateTimeFormatter timeFormatter;
     private boolean initialised;
     private boolean includeFullHL7MessageInLog;
@@ -78,14 +81,16 @@ public class MLLPMessageIngresProcessor {
     private ProcessingPlantMetricsAgentAccessor processingPlantMetricsAgentAccessor;
 
     @Inject
-    private UltraDefensivePipeParser defensivePipeParser;
+    private EndpointITOpsNotificationPublisher notificationPublisher;
+
+    @Inject
+    private ProcessingPlantDataParcelManifestDM manifestDM;
 
     //
     // Constructor(s)
     //
 
     public MLLPMessageIngresProcessor() {
-        context = new DefaultHapiContext();
         timeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.of(PetasosPropertyConstants.DEFAULT_TIMEZONE));
         maxHL7MessageSize = 64000;
         includeFullHL7MessageInLog = false;
@@ -182,6 +187,53 @@ public class MLLPMessageIngresProcessor {
         LOG.warn("Incoming Message->{}", messageString);
         // -------------------------------------------------
 
+        //
+        // Index the message segments (single pass), the index travels with the parcel for later stages
+        HL7v2xSegmentIndex segmentIndex = HL7v2xSegmentIndex.index(messageString);
+
+        return(captureIndexedMessage(segmentIndex, messageString, exchange, sourceSystem, intendedTargetSystem, parcelDiscriminatorType, parcelDiscriminatorValue));
+    }
+
+    /**
+     * The byte[] payload (stringPayload=false) equivalent of captureMLLPMessage(). The frame is not
+     * decoded here: the segment index is built over the raw bytes, only the MSH and PID segments are
+     * decoded (for the notification), and the UoW payload is left unset - it is decoded from the raw
+     * message (once, with the MSH-18 charset) by HL7v2xTriggerEventValidationProcessor.
+     *
+     * @param messageBytes the MLLP frame payload
+     * @param exchange the Camel Exchange
+     * @param sourceSystem the source system
+     * @param intendedTargetSystem the intended target system
+     * @param parcelDiscriminatorType the parcel discriminator type
+     * @param parcelDiscriminatorValue the parcel discriminator value
+     * @return the MLLPMessageActivityParcel
+     */
+    public MLLPMessageActivityParcel captureMLLPMessageBytes(byte[] messageBytes,
+                                                             Exchange exchange,
+                                                             String sourceSystem,
+                                                             String intendedTargetSystem,
+                                                             String parcelDiscriminatorType,
+                                                             String parcelDiscriminatorValue) {
+        HL7v2xMessageBytes rawMessage = new HL7v2xMessageBytes(messageBytes, resolveMessageCharset(exchange));
+        LOG.debug(".captureMLLPMessageBytes(): Entry, rawMessage->{}, sourceSystem->{}, intendedTargetSystem->{}, parcelDiscriminatorType->{}, parcelDiscriminatorValue->{}",
+                rawMessage, sourceSystem, intendedTargetSystem,parcelDiscriminatorType, parcelDiscriminatorValue);
+
+        //
+        // Index the message segments (single pass over the bytes), the index carries the raw message to later stages
+        HL7v2xSegmentIndex segmentIndex = HL7v2xSegmentIndex.index(rawMessage);
+
+        return(captureIndexedMessage(segmentIndex, null, exchange, sourceSystem, intendedTargetSystem, parcelDiscriminatorType, parcelDiscriminatorValue));
+    }
+
+    protected MLLPMessageActivityParcel captureIndexedMessage(HL7v2xSegmentIndex segmentIndex,
+                                                              String messageString,
+                                                              Exchange exchange,
+                                                              String sourceSystem,
+                                                              String intendedTargetSystem,
+                                                              String parcelDiscriminatorType,
+                                                              String parcelDiscriminatorValue) {
+        HL7v2xMessageBytes rawMessage = segmentIndex.getMessageBytes();
+
         //
         // add to Processing Plant metrics
         getProcessingPlantMetricsAgent().incrementIngresMessageCount();
@@ -202,12 +254,11 @@ public class MLLPMessageIngresProcessor {
         String targetPort = exchange.getProperty(PetasosPropertyConstants.ENDPOINT_PORT_VALUE, String.class);
 //            String notificationContent;
 
-
         String mshSegment = null;
         String pidSegment = null;
         try{
-            mshSegment = defensivePipeParser.extractSegment(messageString, HL7v2SegmentTypeEnum.MSH);
-            pidSegment = defensivePipeParser.extractSegment(messageString, HL7v2SegmentTypeEnum.PID);
+            mshSegment = segmentIndex.getSegment("MSH");
+            pidSegment = segmentIndex.getSegment("PID");
             if(StringUtils.isEmpty(pidSegment)) {
                 pidSegment = "PID: Unknown";
             }
@@ -234,39 +285,25 @@ public class MLLPMessageIngresProcessor {
 
         //
         // Send ITOps Console Notification about Message Arrival
-        sendMessageReceivedConsoleNotification(portDescription, messageString, mshSegment, pidSegment, endpointMetricsAgent);
+        if(rawMessage != null){
+            sendMessageReceivedConsoleNotification(portDescription, rawMessage, mshSegment, pidSegment, endpointMetricsAgent);
+        } else {
+            sendMessageReceivedConsoleNotification(portDescription, messageString, mshSegment, pidSegment, endpointMetricsAgent);
+        }
 
         UoWPayload mllpPayload = new UoWPayload();
-        DataParcelTypeDescriptor contentDescriptor = new DataParcelTypeDescriptor();
-        contentDescriptor.setDataParcelDefiner("Apache Camel");
-        contentDescriptor.setDataParcelCategory("MLLP");
-        contentDescriptor.setDataParcelSubCategory("Consumer");
-        contentDescriptor.setDataParcelResource("stringPayload");
-        contentDescriptor.setVersion("3.17.x"); // TODO should derive this from library or such
-        if(StringUtils.isNotEmpty(parcelDiscriminatorType)){
-            contentDescriptor.setDataParcelDiscriminatorType(parcelDiscriminatorType);
-        }
-        if(StringUtils.isNotEmpty(parcelDiscriminatorValue)){
-            contentDescriptor.setDataParcelDiscriminatorValue(parcelDiscriminatorValue);
-        }
-        // Build the manifest
-        DataParcelManifest manifest = new DataParcelManifest();
-        manifest.setContentDescriptor(contentDescriptor);
-        if(StringUtils.isNotEmpty(sourceSystem)){
-            manifest.setSourceSystem(sourceSystem);
-        }
-        manifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_FALSE);
-        manifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_FALSE);
-        manifest.setDataParcelType(DataParcelTypeEnum.GENERAL_DATA_PARCEL_TYPE);
-        manifest.setInterSubsystemDistributable(false);
+        // The manifest is the same for every message of the WUP, so it is built once and shared (read-only)
+        DataParcelInternKey manifestKey = new DataParcelInternKey(CAPTURED_MESSAGE_MANIFEST_PURPOSE,
+                StringUtils.defaultString(parcelDiscriminatorType), StringUtils.defaultString(parcelDiscriminatorValue), StringUtils.defaultString(sourceSystem));
+        DataParcelManifest manifest = manifestDM.getManifest(manifestKey, () -> buildCapturedMessageManifest(sourceSystem, parcelDiscriminatorType, parcelDiscriminatorValue));
 
         boolean failed = false;
         String failedMessage = null;
-        if(StringUtils.isEmpty(messageString)){
+        if(rawMessage != null ? rawMessage.getLength() == 0 : StringUtils.isEmpty(messageString)){
             mllpPayload.setPayload("Empty Message");
             failedMessage = "Empty Message";
             failed = true;
-        } else {
+        } else if(rawMessage == null){
             mllpPayload.setPayload(messageString);
         }
         mllpPayload.setPayloadManifest(manifest);
@@ -285,11 +322,55 @@ public class MLLPMessageIngresProcessor {
 
 
         messageActivity.setUow(uow);
+        messageActivity.setSegmentIndex(segmentIndex);
 
-        getLogger().debug(".captureMLLPMessage(): Exit, messageActivity->{}", messageActivity);
+        getLogger().debug(".captureIndexedMessage(): Exit, messageActivity->{}", messageActivity);
         return (messageActivity);
     }
 
+    protected DataParcelManifest buildCapturedMessageManifest(String sourceSystem, String parcelDiscriminatorType, String parcelDiscriminatorValue){
+        DataParcelTypeDescriptor contentDescriptor = new DataParcelTypeDescriptor();
+        contentDescriptor.setDataParcelDefiner("Apache Camel");
+        contentDescriptor.setDataParcelCategory("MLLP");
+        contentDescriptor.setDataParcelSubCategory("Consumer");
+        contentDescriptor.setDataParcelResource("stringPayload");
+        contentDescriptor.setVersion("3.17.x"); // TODO should derive this from library or such
+        if(StringUtils.isNotEmpty(parcelDiscriminatorType)){
+            contentDescriptor.setDataParcelDiscriminatorType(parcelDiscriminatorType);
+        }
+        if(StringUtils.isNotEmpty(parcelDiscriminatorValue)){
+            contentDescriptor.setDataParcelDiscriminatorValue(parcelDiscriminatorValue);
+        }
+        // Build the manifest
+        DataParcelManifest manifest = new DataParcelManifest();
+        manifest.setContentDescriptor(contentDescriptor);
+        if(StringUtils.isNotEmpty(sourceSystem)){
+            manifest.setSourceSystem(sourceSystem);
+        }
+        manifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_FALSE);
+        manifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_FALSE);
+        manifest.setDataParcelType(DataParcelTypeEnum.GENERAL_DATA_PARCEL_TYPE);
+        manifest.setInterSubsystemDistributable(false);
+        return(manifest);
+    }
+
+    /**
+     * The charset of the message: MSH-18 (the CamelMllpCharset header) if known, otherwise the charset
+     * the MLLP consumer used (Exchange.CHARSET_NAME), otherwise ISO-8859-1.
+     *
+     * @param exchange the Camel Exchange
+     * @return the charset of the message
+     */
+    protected Charset resolveMessageCharset(Exchange exchange){
+        Charset defaultCharset = HL7v2xMessageBytes.DEFAULT_CHARSET;
+        String consumerCharsetName = exchange.getProperty(Exchange.CHARSET_NAME, String.class);
+        if(StringUtils.isNotEmpty(consumerCharsetName)){
+            defaultCharset = HL7v2xMessageBytes.resolveCharset(consumerCharsetName, defaultCharset);
+        }
+        String mllpCharSet = exchange.getMessage().getHeader(MllpConstants.MLLP_CHARSET, String.class);
+        return(HL7v2xMessageBytes.resolveCharset(mllpCharSet, defaultCharset));
+    }
+
 
     protected MLLPMessageActivityParcel extractMLLPMessageDetailsFromExchange(Exchange exchange){
         getLogger().debug(".extractMLLPMessageDetailsFromExchange(): Entry");
@@ -326,10 +407,10 @@ public class MLLPMessageIngresProcessor {
             messageActivity.setMllpAcknowledgementType(mllpAcknowledgementType);
         }
         if(StringUtils.isNotEmpty(mllpSendingApplication)){
-            messageActivity.setMllpSendingApplication(mllpReceivingApplication);
+            messageActivity.setMllpSendingApplication(mllpSendingApplication);
         }
         if(StringUtils.isNotEmpty(mllpSendingFacility)){
-            messageActivity.setMllpSendingFacility(mllpReceivingFacility);
+            messageActivity.setMllpSendingFacility(mllpSendingFacility);
         }
         if(StringUtils.isNotEmpty(mllpTimestamp)){
             messageActivity.setMllpTimestamp(mllpTimestamp);
@@ -365,8 +446,25 @@ public class MLLPMessageIngresProcessor {
 
     protected void sendMessageReceivedConsoleNotification(String portDescription, String messageString, String mshSegment, String pidSegment, EndpointMetricsAgent endpointMetricsAgent){
         getLogger().debug(".sendMessageReceivedConsoleNotification(): Entry, portDescription->{}, messageString->{}", portDescription, messageString);
+        notificationPublisher.publish(endpointMetricsAgent, eventInstant -> buildMessageReceivedNotification(portDescription, messageString, mshSegment, pidSegment, eventInstant));
+        getLogger().debug(".sendMessageReceivedConsoleNotification(): Exit");
+    }
+
+    protected void sendMessageReceivedConsoleNotification(String portDescription, HL7v2xMessageBytes rawMessage, String mshSegment, String pidSegment, EndpointMetricsAgent endpointMetricsAgent){
+        getLogger().debug(".sendMessageReceivedConsoleNotification(): Entry, portDescription->{}, rawMessage->{}", portDescription, rawMessage);
+        notificationPublisher.publish(endpointMetricsAgent, eventInstant -> {
+            String displayedMessage = null;
+            if(includeFullHL7MessageInLog){
+                displayedMessage = rawMessage.decode(0, Math.min(rawMessage.getLength(), getMaxHL7MessageSize()));
+            }
+            return(buildMessageReceivedNotification(portDescription, displayedMessage, mshSegment, pidSegment, eventInstant));
+        });
+        getLogger().debug(".sendMessageReceivedConsoleNotification(): Exit");
+    }
+
+    protected EndpointITOpsNotificationPublisher.NotificationContent buildMessageReceivedNotification(String portDescription, String messageString, String mshSegment, String pidSegment, Instant eventInstant){
         StringBuilder notificationContentBuilder = new StringBuilder();
-        notificationContentBuilder.append("Ingres-Message((" + portDescription +")(" + getTimeFormatter().format(Instant.now()) + ")){");
+        notificationContentBuilder.append("Ingres-Message((" + portDescription +")(" + getTimeFormatter().format(eventInstant) + ")){");
         if(includeFullHL7MessageInLog){
             String displayedMessage = null;
             try {
@@ -377,7 +475,7 @@ public class MLLPMessageIngresProcessor {
                 }
             } catch (Exception ex){
                 displayedMessage = "Cannot Parse Message Content";
-                getLogger().warn(".sendMessageReceivedConsoleNotification(): Cannot parse message, error->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
+                getLogger().warn(".buildMessageReceivedNotification(): Cannot parse message, error->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
             }
             notificationContentBuilder.append(displayedMessage);
         } else {
@@ -390,15 +488,13 @@ public class MLLPMessageIngresProcessor {
         StringBuilder formattedNotificationContent = new StringBuilder();
         formattedNotificationContent.append("<table>");
         formattedNotificationContent.append("<tr>");
-        formattedNotificationContent.append("<th> From </th><th>" + portDescription + " ("+ getTimeFormatter().format(Instant.now()) + ") </th");
+        formattedNotificationContent.append("<th> From </th><th>" + portDescription + " ("+ getTimeFormatter().format(eventInstant) + ") </th");
         formattedNotificationContent.append("</tr>");
         formattedNotificationContent.append("<tr>");
         formattedNotificationContent.append("<td> Metadata </td><td>" + mshSegment + "\n" + pidSegment + "</td>");
         formattedNotificationContent.append("</tr>");
         formattedNotificationContent.append("</table>");
 
-        endpointMetricsAgent.sendITOpsNotification(notificationContentBuilder.toString(),formattedNotificationContent.toString());
-
-        getLogger().debug(".sendMessageReceivedConsoleNotification(): Exit");
+        return(new EndpointITOpsNotificationPublisher.NotificationContent(notificationContentBuilder.toString(), formattedNotificationContent.toString()));
     }
 }
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.notifications;
+
+import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
+import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
+import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.EndpointMetricsAgent;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the per-message (traffic) ITOps notifications of the MLLP endpoints off the message
+ * processing threads.
+ *
+ * Callers enqueue a formatter (a lambda which builds the plain and HTML content) onto a bounded,
+ * lock-free queue and return immediately; a single background thread does the string building and
+ * calls {@link EndpointMetricsAgent#sendITOpsNotification(String, String)}. When an endpoint
+ * produces more notifications within a second than the configured rate, the excess are not
+ * formatted at all but coalesced into a single summary notification for that endpoint. If the
+ * queue is full the notification is dropped. Both outcomes are counted.
+ *
+ * Failure notifications should NOT be sent through here - they are rare and must not be
+ * coalesced or dropped.
+ */
+@ApplicationScoped
+public class EndpointITOpsNotificationPublisher {
+    private static final Logger LOG = LoggerFactory.getLogger(EndpointITOpsNotificationPublisher.class);
+
+    public static final String ITOPS_NOTIFICATION_QUEUE_CAPACITY_PARAMETER_NAME = "ITOPS_NOTIFICATION_QUEUE_CAPACITY";
+    public static final String ITOPS_NOTIFICATION_RATE_LIMIT_PARAMETER_NAME = "ITOPS_NOTIFICATION_RATE_LIMIT";
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final int DEFAULT_RATE_LIMIT_PER_SECOND = 20;
+    private static final long IDLE_PARK_DURATION_IN_NANOSECONDS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ConcurrentLinkedQueue<NotificationRequest> notificationQueue;
+    private final AtomicInteger queuedCount;
+    private final Map<EndpointMetricsAgent, EndpointWindow> endpointWindows;
+    private final DateTimeFormatter timeFormatter;
+
+    private final AtomicLong publishedCount;
+    private final AtomicLong coalescedCount;
+    private final AtomicLong droppedCount;
+    private final AtomicLong summaryCount;
+
+    private int queueCapacity;
+    private int rateLimitPerSecond;
+    private boolean initialised;
+    private volatile boolean running;
+    private volatile boolean formatterIdle;
+    private Thread formatterThread;
+
+    @Inject
+    private ProcessingPlantInterface processingPlant;
+
+    //
+    // Constructor(s)
+    //
+
+    public EndpointITOpsNotificationPublisher(){
+        this.notificationQueue = new ConcurrentLinkedQueue<>();
+        this.queuedCount = new AtomicInteger(0);
+        this.endpointWindows = new IdentityHashMap<>();
+        this.timeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.of(PetasosPropertyConstants.DEFAULT_TIMEZONE));
+        this.publishedCount = new AtomicLong(0);
+        this.coalescedCount = new AtomicLong(0);
+        this.droppedCount = new AtomicLong(0);
+        this.summaryCount = new AtomicLong(0);
+        this.queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        this.rateLimitPerSecond = DEFAULT_RATE_LIMIT_PER_SECOND;
+        this.initialised = false;
+        this.running = false;
+        this.formatterIdle = false;
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Nothing to do, already initialised!");
+            return;
+        }
+        this.queueCapacity = resolveParameter(ITOPS_NOTIFICATION_QUEUE_CAPACITY_PARAMETER_NAME, DEFAULT_QUEUE_CAPACITY);
+        this.rateLimitPerSecond = resolveParameter(ITOPS_NOTIFICATION_RATE_LIMIT_PARAMETER_NAME, DEFAULT_RATE_LIMIT_PER_SECOND);
+        this.running = true;
+        this.formatterThread = new Thread(this::runFormatter, "ITOpsNotificationPublisher");
+        this.formatterThread.setDaemon(true);
+        this.formatterThread.start();
+        this.initialised = true;
+        getLogger().info(".initialise(): queueCapacity->{}, rateLimitPerSecond->{}", queueCapacity, rateLimitPerSecond);
+        getLogger().debug(".initialise(): Exit");
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        getLogger().debug(".shutdown(): Entry");
+        this.running = false;
+        if(formatterThread != null){
+            LockSupport.unpark(formatterThread);
+        }
+        getLogger().debug(".shutdown(): Exit");
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Queues a notification for the endpoint. The formatter is invoked on the publisher's own thread,
+     * so it must only capture immutable values (Strings etc.), not objects that travel on with the
+     * Exchange.
+     *
+     * @param endpointMetricsAgent the endpoint the notification is for
+     * @param formatter builds the notification content, given the instant the event occurred
+     * @return true if the notification was queued, false if it was dropped (queue full)
+     */
+    public boolean publish(EndpointMetricsAgent endpointMetricsAgent, NotificationFormatter formatter){
+        if(endpointMetricsAgent == null || formatter == null){
+            return(false);
+        }
+        if(!running){
+            getLogger().debug(".publish(): Publisher not running, sending notification directly");
+            sendNotification(endpointMetricsAgent, formatter, Instant.now());
+            return(true);
+        }
+        if(queuedCount.incrementAndGet() > queueCapacity){
+            queuedCount.decrementAndGet();
+            droppedCount.incrementAndGet();
+            getLogger().debug(".publish(): Notification queue full, notification dropped");
+            return(false);
+        }
+        notificationQueue.offer(new NotificationRequest(endpointMetricsAgent, formatter, Instant.now()));
+        if(formatterIdle){
+            LockSupport.unpark(formatterThread);
+        }
+        return(true);
+    }
+
+    //
+    // Formatter Thread
+    //
+
+    private void runFormatter(){
+        getLogger().debug(".runFormatter(): Entry");
+        while(running){
+            NotificationRequest request = notificationQueue.poll();
+            if(request == null){
+                flushCoalescedNotifications(System.currentTimeMillis());
+                formatterIdle = true;
+                if(notificationQueue.isEmpty() && running){
+                    LockSupport.parkNanos(IDLE_PARK_DURATION_IN_NANOSECONDS);
+                }
+                formatterIdle = false;
+                continue;
+            }
+            queuedCount.decrementAndGet();
+            processRequest(request);
+        }
+        getLogger().debug(".runFormatter(): Exit");
+    }
+
+    private void processRequest(NotificationRequest request){
+        long eventSecond = request.getEventInstant().getEpochSecond();
+        EndpointWindow window = endpointWindows.get(request.getEndpointMetricsAgent());
+        if(window == null){
+            window = new EndpointWindow(eventSecond);
+            endpointWindows.put(request.getEndpointMetricsAgent(), window);
+        }
+        if(window.getWindowSecond() != eventSecond){
+            sendCoalescedSummary(request.getEndpointMetricsAgent(), window);
+            window.reset(eventSecond);
+        }
+        window.incrementNotificationCount();
+        if(rateLimitPerSecond > 0 && window.getNotificationCount() > rateLimitPerSecond){
+            window.incrementCoalescedCount();
+            coalescedCount.incrementAndGet();
+            return;
+        }
+        sendNotification(request.getEndpointMetricsAgent(), request.getFormatter(), request.getEventInstant());
+    }
+
+    private void flushCoalescedNotifications(long nowInMilliseconds){
+        long currentSecond = TimeUnit.MILLISECONDS.toSeconds(nowInMilliseconds);
+        for(Map.Entry<EndpointMetricsAgent, EndpointWindow> windowEntry: endpointWindows.entrySet()){
+            EndpointWindow window = windowEntry.getValue();
+            if(window.getWindowSecond() < currentSecond && window.getCoalescedCount() > 0){
+                sendCoalescedSummary(windowEntry.getKey(), window);
+                window.reset(currentSecond);
+            }
+        }
+    }
+
+    private void sendCoalescedSummary(EndpointMetricsAgent endpointMetricsAgent, EndpointWindow window){
+        if(window.getCoalescedCount() == 0){
+            return;
+        }
+        String windowStart = timeFormatter.format(Instant.ofEpochSecond(window.getWindowSecond()));
+        String plainContent = "Traffic-Summary((" + windowStart + ")){" + window.getNotificationCount() + " messages within 1 second, "
+                + window.getCoalescedCount() + " notifications coalesced (rate limit " + rateLimitPerSecond + "/s)}";
+        StringBuilder formattedContent = new StringBuilder();
+        formattedContent.append("<table>");
+        formattedContent.append("<tr>");
+        formattedContent.append("<td> Traffic Summary </td><td>" + windowStart + "</td>");
+        formattedContent.append("</tr>");
+        formattedContent.append("<tr>");
+        formattedContent.append("<td> Messages </td><td>" + window.getNotificationCount() + " (" + window.getCoalescedCount() + " notifications coalesced)</td>");
+        formattedContent.append("</tr>");
+        formattedContent.append("</table>");
+        try {
+            endpointMetricsAgent.sendITOpsNotification(plainContent, formattedContent.toString());
+            summaryCount.incrementAndGet();
+        } catch(Exception ex){
+            getLogger().warn(".sendCoalescedSummary(): Unable to send notification, error->{}", ExceptionUtils.getMessage(ex));
+        }
+    }
+
+    private void sendNotification(EndpointMetricsAgent endpointMetricsAgent, NotificationFormatter formatter, Instant eventInstant){
+        try {
+            NotificationContent content = formatter.format(eventInstant);
+            if(content != null){
+                endpointMetricsAgent.sendITOpsNotification(content.getPlainContent(), content.getFormattedContent());
+                publishedCount.incrementAndGet();
+            }
+        } catch(Exception ex){
+            getLogger().warn(".sendNotification(): Unable to send notification, error->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
+        }
+    }
+
+    private int resolveParameter(String parameterName, int defaultValue){
+        String parameterValue = getProcessingPlant().getMeAsASoftwareComponent().getOtherConfigurationParameter(parameterName);
+        if(StringUtils.isNotEmpty(parameterValue)){
+            try {
+                return(Integer.parseInt(parameterValue.trim()));
+            } catch(NumberFormatException numberFormatException){
+                getLogger().warn(".resolveParameter(): Invalid {} value->{}, using default->{}", parameterName, parameterValue, defaultValue);
+            }
+        }
+        return(defaultValue);
+    }
+
+    //
+    // Metrics
+    //
+
+    public int getQueuedCount(){
+        return(queuedCount.get());
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSummaryCount() {
+        return summaryCount.get();
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    protected ProcessingPlantInterface getProcessingPlant(){
+        return(processingPlant);
+    }
+
+    public DateTimeFormatter getTimeFormatter(){
+        return(timeFormatter);
+    }
+
+    //
+    // Notification Formatter/Content
+    //
+
+    @FunctionalInterface
+    public interface NotificationFormatter {
+        NotificationContent format(Instant eventInstant);
+    }
+
+    public static class NotificationContent {
+        private final String plainContent;
+        private final String formattedContent;
+
+        public NotificationContent(String plainContent, String formattedContent){
+            this.plainContent = plainContent;
+            this.formattedContent = formattedContent;
+        }
+
+        public String getPlainContent() {
+            return plainContent;
+        }
+
+        public String getFormattedContent() {
+            return formattedContent;
+        }
+    }
+
+    //
+    // Internal Types
+    //
+
+    private static class NotificationRequest {
+        private final EndpointMetricsAgent endpointMetricsAgent;
+        private final NotificationFormatter formatter;
+        private final Instant eventInstant;
+
+        public NotificationRequest(EndpointMetricsAgent endpointMetricsAgent, NotificationFormatter formatter, Instant eventInstant){
+            this.endpointMetricsAgent = endpointMetricsAgent;
+            this.formatter = formatter;
+            this.eventInstant = eventInstant;
+        }
+
+        public EndpointMetricsAgent getEndpointMetricsAgent() {
+            return endpointMetricsAgent;
+        }
+
+        public NotificationFormatter getFormatter() {
+            return formatter;
+        }
+
+        public Instant getEventInstant() {
+            return eventInstant;
+        }
+    }
+
+    private static class EndpointWindow {
+        private long windowSecond;
+        private int notificationCount;
+        private int coalescedCount;
+
+        public EndpointWindow(long windowSecond){
+            reset(windowSecond);
+        }
+
+        public void reset(long windowSecond){
+            this.windowSecond = windowSecond;
+            this.notificationCount = 0;
+            this.coalescedCount = 0;
+        }
+
+        public long getWindowSecond() {
+            return windowSecond;
+        }
+
+        public int getNotificationCount() {
+            return notificationCount;
+        }
+
+        public void incrementNotificationCount(){
+            this.notificationCount += 1;
+        }
+
+        public int getCoalescedCount() {
+            return coalescedCount;
+        }
+
+        public void incrementCoalescedCount(){
+            this.coalescedCount += 1;
+        }
+    }
+}
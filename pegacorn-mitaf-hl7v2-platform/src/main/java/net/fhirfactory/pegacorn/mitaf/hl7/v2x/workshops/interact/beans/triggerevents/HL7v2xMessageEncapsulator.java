@@ -29,9 +29,6 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
-import net.fhirfactory.pegacorn.internals.hl7v2.helpers.HL7v2xMessageInformationExtractor;
-import net.fhirfactory.pegacorn.internals.hl7v2.helpers.UltraDefensivePipeParser;
-import net.fhirfactory.pegacorn.internals.hl7v2.triggerevents.valuesets.HL7v2SegmentTypeEnum;
 import net.fhirfactory.pegacorn.internals.fhir.r4.internal.topics.HL7V2XTopicFactory;
 import org.apache.camel.Exchange;
 import org.apache.commons.lang3.StringUtils;
@@ -39,8 +36,7 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import ca.uhn.hl7v2.DefaultHapiContext;
-import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.model.Message;
 import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
 import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
@@ -55,6 +51,11 @@ import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
 import net.fhirfactory.pegacorn.core.model.topology.endpoints.base.IPCTopologyEndpoint;
 import net.fhirfactory.pegacorn.core.model.topology.nodes.WorkUnitProcessorSoftwareComponent;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers.HL7v2xParserProvider;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.CachedHL7v2xMessage;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.DataParcelInternKey;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantDataParcelManifestDM;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.notifications.EndpointITOpsNotificationPublisher;
 import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.EndpointMetricsAgent;
 import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.ProcessingPlantMetricsAgent;
 import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.ProcessingPlantMetricsAgentAccessor;
@@ -64,9 +65,10 @@ import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.WorkUnitProcessorMetr
 public class HL7v2xMessageEncapsulator  {
     private static final Logger LOG = LoggerFactory.getLogger(HL7v2xMessageEncapsulator.class);
 
+    private static final String ENCAPSULATED_MESSAGE_MANIFEST_PURPOSE = "HL7v2xMessageEncapsulator";
+
     private static final Integer SYNAPSE_PAYLOAD_SIZE = 32000;
 
-    private HapiContext context;
     private DateTimeFormatter timeFormatter;
     private boolean initialised;
     private boolean includeFullHL7MessageInLog;
@@ -85,14 +87,16 @@ public class HL7v2xMessageEncapsulator  {
     private ProcessingPlantMetricsAgentAccessor processingPlantMetricsAgentAccessor;
 
     @Inject
-    private UltraDefensivePipeParser defensivePipeParser;
+    private EndpointITOpsNotificationPublisher notificationPublisher;
+
+    @Inject
+    private ProcessingPlantDataParcelManifestDM manifestDM;
 
     //
     // Constructor(s)
     //
 
     public HL7v2xMessageEncapsulator() {
-        context = new DefaultHapiContext();
         timeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.of(PetasosPropertyConstants.DEFAULT_TIMEZONE));
         maxHL7MessageSize = SYNAPSE_PAYLOAD_SIZE;
         includeFullHL7MessageInLog = false;
@@ -189,8 +193,15 @@ public class HL7v2xMessageEncapsulator  {
                                   String messageTimestamp) {
 
         getLogger().debug(".encapsulateMessage(): Entry (10 Parameters, String in), hl7MessageString->{}", hl7MessageString);
-        HL7v2xMessageInformationExtractor extractor = new HL7v2xMessageInformationExtractor();
-        Message message = extractor.convertToHL7v2Message(hl7MessageString);
+        Message message;
+        try {
+            message = HL7v2xParserProvider.parse(hl7MessageString);
+        } catch (HL7Exception parseException) {
+            getLogger().error(".encapsulateMessage(): Unable to parse message, error->{}", ExceptionUtils.getMessage(parseException));
+            UoW failedUoW = newFailedUoW(hl7MessageString, parseException.toString());
+            getLogger().debug(".encapsulateMessage(): Exit, message not parsed, failedUoW->{}", failedUoW);
+            return(failedUoW);
+        }
         getLogger().debug(".encapsulateMessage(): Invoking generalised method!");
         return this.encapsulateMessage(message, exchange, sourceSystem, intendedTargetSystem, parcelDiscriminatorType, parcelDiscriminatorValue, messageTriggerEvent, messageEventType, messageVersion, messageTimestamp);
     }
@@ -226,10 +237,17 @@ public class HL7v2xMessageEncapsulator  {
                                    String messageVersion,
                                    String messageTimestamp) {
 
-        LOG.debug(".encapsulateMessage(): Entry, message->{}", message);
+        LOG.debug(".encapsulateMessage(): Entry");
+
+        //
+        // Encode the message once and share the encoding (and its MSH/PID segments) with everything else
+        if(message != null && message.getParser() != null){
+            message.getParser().getParserConfiguration().setValidating(false);
+        }
+        CachedHL7v2xMessage cachedMessage = CachedHL7v2xMessage.fromExchange(exchange, message);
 
         // -------------------------------------------------
-        LOG.warn("Incoming Message->{}", message);
+        LOG.warn("Incoming Message->{}", cachedMessage);
         // -------------------------------------------------
 
         //
@@ -260,8 +278,8 @@ public class HL7v2xMessageEncapsulator  {
             String mshSegment = null;
             String pidSegment = null;
             try{
-                mshSegment = defensivePipeParser.extractSegment(message.encode(), HL7v2SegmentTypeEnum.MSH);
-                pidSegment = defensivePipeParser.extractSegment(message.encode(), HL7v2SegmentTypeEnum.PID);
+                mshSegment = cachedMessage.getMSHSegment();
+                pidSegment = cachedMessage.getPIDSegment();
                 if(StringUtils.isEmpty(pidSegment)) {
                     pidSegment = "PID: Unknown";
                 }
@@ -288,7 +306,7 @@ public class HL7v2xMessageEncapsulator  {
 
             //
             // Send ITOps Console Notification about Message Arrival
-            sendMessageReceivedConsoleNotification(portDescription, message, mshSegment, pidSegment, endpointMetricsAgent);
+            sendMessageReceivedConsoleNotification(portDescription, cachedMessage, mshSegment, pidSegment, endpointMetricsAgent);
 
             //
             // Now actually process the UoW/Message
@@ -306,44 +324,23 @@ public class HL7v2xMessageEncapsulator  {
 
             outcomeEnum = UoWProcessingOutcomeEnum.UOW_OUTCOME_SUCCESS;
             outcomeDescription = "All Good!";
-            message.getParser().getParserConfiguration().setValidating(false);
             LOG.trace(".encapsulateMessage(): Attempting to decode!");
-            String encodedString = message.encode();
+            String encodedString = cachedMessage.getEncodedMessage();
             LOG.trace(".encapsulateMessage(): Decoded, encodedString --> {}", encodedString);
 
             //
-            // Create the DataParcelManifest for the message
-            LOG.trace(".encapsulateMessage(): Creating Data Parcel Descriptor (messageDescriptor)");
-            DataParcelTypeDescriptor messageDescriptor = createDataParcelTypeDescriptor(messageEventType, messageTriggerEvent, messageVersionFirstField );
-            if(!StringUtils.isEmpty(parcelDiscriminatorType)) {
-                messageDescriptor.setDataParcelDiscriminatorType(parcelDiscriminatorType);
-            }
-            if(!StringUtils.isEmpty(parcelDiscriminatorValue)){
-                messageDescriptor.setDataParcelDiscriminatorValue(parcelDiscriminatorValue);
-            }
-            LOG.trace(".encapsulateMessage(): messageDescriptor created->{}", messageDescriptor);
-            LOG.trace(".encapsulateMessage(): Creating Data Parcel Manifest (messageManifest)");
-            DataParcelManifest messageManifest = new DataParcelManifest();
-            messageManifest.setContentDescriptor(messageDescriptor);
-            if(!StringUtils.isEmpty(sourceSystem)) {
-                if(sourceSystem.contentEquals(DataParcelManifest.WILDCARD_CHARACTER)){
-                    messageManifest.setSourceSystem(null);
-                } else {
-                    messageManifest.setSourceSystem(sourceSystem);
-                }
-            }
-            if(!StringUtils.isEmpty(intendedTargetSystem)) {
-                if(intendedTargetSystem.contentEquals(DataParcelManifest.WILDCARD_CHARACTER)){
-                    messageManifest.setSourceSystem(null);
-                } else {
-                    messageManifest.setIntendedTargetSystem(intendedTargetSystem);
-                }
-            }
-            messageManifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_FALSE);
-            messageManifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_TRUE);
-            messageManifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_INBOUND_DATA_PARCEL);
-            messageManifest.setSourceProcessingPlantParticipantName(participantNameHolder.getSubsystemParticipantName());
-            LOG.trace(".encapsulateMessage(): messageManifest created->{}", messageManifest);
+            // Resolve the DataParcelManifest for the message (the shared, read-only instance - see ProcessingPlantDataParcelManifestDM)
+            LOG.trace(".encapsulateMessage(): Resolving Data Parcel Descriptor (messageDescriptor)");
+            DataParcelTypeDescriptor messageDescriptor = manifestDM.getHL7v2xDescriptor(messageEventType, messageTriggerEvent, messageVersionFirstField, parcelDiscriminatorType, parcelDiscriminatorValue);
+            LOG.trace(".encapsulateMessage(): messageDescriptor resolved->{}", messageDescriptor);
+            LOG.trace(".encapsulateMessage(): Resolving Data Parcel Manifest (messageManifest)");
+            String participantName = participantNameHolder.getSubsystemParticipantName();
+            DataParcelInternKey manifestKey = new DataParcelInternKey(ENCAPSULATED_MESSAGE_MANIFEST_PURPOSE,
+                    messageEventType, messageTriggerEvent, messageVersionFirstField,
+                    StringUtils.defaultString(parcelDiscriminatorType), StringUtils.defaultString(parcelDiscriminatorValue),
+                    StringUtils.defaultString(sourceSystem), StringUtils.defaultString(intendedTargetSystem), participantName);
+            DataParcelManifest messageManifest = manifestDM.getManifest(manifestKey, () -> buildEncapsulatedMessageManifest(messageDescriptor, sourceSystem, intendedTargetSystem, participantName));
+            LOG.trace(".encapsulateMessage(): messageManifest resolved->{}", messageManifest);
 
             //
             // Populate the UoWPayload
@@ -369,31 +366,43 @@ public class HL7v2xMessageEncapsulator  {
             return(newUoW);
         } catch (Exception ex) {
             LOG.warn(".encapsulateMessage(): Exception occurred", ex);
-            UoWPayload newPayload = new UoWPayload();
-            if(message != null){
-                newPayload.setPayload(message.toString());
-                newPayload.setPayloadManifest(topicFactory.newBadDataParcelManifest());
-            } else {
-                newPayload.setPayload("Unable to decipher input message");
-                newPayload.setPayloadManifest(topicFactory.newBadDataParcelManifest());
-            }
-            UoW newUoW = new UoW();
-            newUoW.setIngresContent(newPayload);
-            newUoW.setFailureDescription(ex.toString());
-            newUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_FAILED);
+            UoW newUoW = newFailedUoW(message != null ? cachedMessage.toString() : null, ex.toString());
             LOG.debug(".encapsulateMessage(): Exit, newUoW created ->{}", newUoW);
             return(newUoW);
         }
     }
 
-    protected void sendMessageReceivedConsoleNotification(String portDescription, Message message, String mshSegment, String pidSegment, EndpointMetricsAgent endpointMetricsAgent){
-        getLogger().debug(".sendMessageReceivedConsoleNotification(): Entry, portDescription->{}, message->{}", portDescription, message);
-        StringBuilder notificationContentBuilder = new StringBuilder();
-        notificationContentBuilder.append("Ingres-Message((" + portDescription +")(" + getTimeFormatter().format(Instant.now()) + ")){");
+    /**
+     * Builds the failed UoW for a message that cannot be encapsulated, carrying the message (if there is
+     * one) under the "bad data" manifest.
+     *
+     * @param messageText the message as text, or null if it cannot be deciphered
+     * @param failureDescription why the message cannot be encapsulated
+     * @return a UoW with a UOW_OUTCOME_FAILED outcome
+     */
+    protected UoW newFailedUoW(String messageText, String failureDescription){
+        UoWPayload newPayload = new UoWPayload();
+        if(StringUtils.isNotEmpty(messageText)){
+            newPayload.setPayload(messageText);
+        } else {
+            newPayload.setPayload("Unable to decipher input message");
+        }
+        newPayload.setPayloadManifest(topicFactory.newBadDataParcelManifest());
+        UoW newUoW = new UoW();
+        newUoW.setIngresContent(newPayload);
+        newUoW.setFailureDescription(failureDescription);
+        newUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_FAILED);
+        return(newUoW);
+    }
+
+    protected void sendMessageReceivedConsoleNotification(String portDescription, CachedHL7v2xMessage message, String mshSegment, String pidSegment, EndpointMetricsAgent endpointMetricsAgent){
+        getLogger().debug(".sendMessageReceivedConsoleNotification(): Entry, portDescription->{}", portDescription);
+        //
+        // The cached message is not thread-safe, so take the (already cached) encoding on this thread
+        String displayedMessage = null;
         if(includeFullHL7MessageInLog){
-            String displayedMessage = null;
             try {
-                String actualMessage = message.encode();
+                String actualMessage = message.getEncodedMessage();
 
                 if (actualMessage.length() > getMaxHL7MessageSize()) {
                     displayedMessage = actualMessage.substring(0, getMaxHL7MessageSize());
@@ -404,6 +413,16 @@ public class HL7v2xMessageEncapsulator  {
                 displayedMessage = "Cannot Parse Message Content";
                 getLogger().warn(".sendMessageReceivedConsoleNotification(): Cannot parse message, error->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
             }
+        }
+        String messageContent = displayedMessage;
+        notificationPublisher.publish(endpointMetricsAgent, eventInstant -> buildMessageReceivedNotification(portDescription, messageContent, mshSegment, pidSegment, eventInstant));
+        getLogger().debug(".sendMessageReceivedConsoleNotification(): Exit");
+    }
+
+    protected EndpointITOpsNotificationPublisher.NotificationContent buildMessageReceivedNotification(String portDescription, String displayedMessage, String mshSegment, String pidSegment, Instant eventInstant){
+        StringBuilder notificationContentBuilder = new StringBuilder();
+        notificationContentBuilder.append("Ingres-Message((" + portDescription +")(" + getTimeFormatter().format(eventInstant) + ")){");
+        if(includeFullHL7MessageInLog){
             notificationContentBuilder.append(displayedMessage);
         } else {
             notificationContentBuilder.append(mshSegment);
@@ -415,16 +434,14 @@ public class HL7v2xMessageEncapsulator  {
         StringBuilder formattedNotificationContent = new StringBuilder();
         formattedNotificationContent.append("<table>");
         formattedNotificationContent.append("<tr>");
-        formattedNotificationContent.append("<th> From </th><th>" + portDescription + " ("+ getTimeFormatter().format(Instant.now()) + ") </th");
+        formattedNotificationContent.append("<th> From </th><th>" + portDescription + " ("+ getTimeFormatter().format(eventInstant) + ") </th");
         formattedNotificationContent.append("</tr>");
         formattedNotificationContent.append("<tr>");
         formattedNotificationContent.append("<td> Metadata </td><td>" + mshSegment + "\n" + pidSegment + "</td>");
         formattedNotificationContent.append("</tr>");
         formattedNotificationContent.append("</table>");
 
-        endpointMetricsAgent.sendITOpsNotification(notificationContentBuilder.toString(),formattedNotificationContent.toString());
-
-        getLogger().debug(".sendMessageReceivedConsoleNotification(): Exit");
+        return(new EndpointITOpsNotificationPublisher.NotificationContent(notificationContentBuilder.toString(), formattedNotificationContent.toString()));
     }
 
     //
@@ -441,6 +458,30 @@ public class HL7v2xMessageEncapsulator  {
     }
 
 
+    protected DataParcelManifest buildEncapsulatedMessageManifest(DataParcelTypeDescriptor messageDescriptor, String sourceSystem, String intendedTargetSystem, String participantName){
+        DataParcelManifest messageManifest = new DataParcelManifest();
+        messageManifest.setContentDescriptor(messageDescriptor);
+        if(!StringUtils.isEmpty(sourceSystem)) {
+            if(sourceSystem.contentEquals(DataParcelManifest.WILDCARD_CHARACTER)){
+                messageManifest.setSourceSystem(null);
+            } else {
+                messageManifest.setSourceSystem(sourceSystem);
+            }
+        }
+        if(!StringUtils.isEmpty(intendedTargetSystem)) {
+            if(intendedTargetSystem.contentEquals(DataParcelManifest.WILDCARD_CHARACTER)){
+                messageManifest.setSourceSystem(null);
+            } else {
+                messageManifest.setIntendedTargetSystem(intendedTargetSystem);
+            }
+        }
+        messageManifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_FALSE);
+        messageManifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_TRUE);
+        messageManifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_INBOUND_DATA_PARCEL);
+        messageManifest.setSourceProcessingPlantParticipantName(participantName);
+        return(messageManifest);
+    }
+
     public DataParcelTypeDescriptor createDataParcelTypeDescriptor(String messageEventType, String messageTriggerEvent, String version) {
         DataParcelTypeDescriptor descriptor = getTopicFactory().newDataParcelDescriptor(messageEventType, messageTriggerEvent, version);
         return (descriptor);
@@ -21,8 +21,6 @@
  */
 package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents;
 
-import ca.uhn.hl7v2.DefaultHapiContext;
-import ca.uhn.hl7v2.HapiContext;
 import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
 import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
 import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelManifest;
@@ -36,6 +34,8 @@ import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
 import net.fhirfactory.pegacorn.internals.fhir.r4.internal.topics.HL7V2XTopicFactory;
 import net.fhirfactory.pegacorn.internals.hl7v2.helpers.UltraDefensivePipeParser;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.DataParcelInternKey;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantDataParcelManifestDM;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.datatypes.MLLPMessageActivityParcel;
 import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.ProcessingPlantMetricsAgent;
 import net.fhirfactory.pegacorn.petasos.oam.metrics.agents.ProcessingPlantMetricsAgentAccessor;
@@ -54,7 +54,8 @@ import java.time.format.DateTimeFormatter;
 public class HL7v2xTriggerEventIngresProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(HL7v2xTriggerEventIngresProcessor.class);
 
-    private HapiContext context;
+    private static final String TRIGGER_EVENT_MANIFEST_PURPOSE = "HL7v2xTriggerEventIngres";
+
     private DateTimeFormatter timeFormatter;
     private boolean initialised;
     private boolean includeFullHL7MessageInLog;
@@ -75,12 +76,14 @@ public class HL7v2xTriggerEventIngresProcessor {
     @Inject
     private UltraDefensivePipeParser defensivePipeParser;
 
+    @Inject
+    private ProcessingPlantDataParcelManifestDM manifestDM;
+
     //
     // Constructor(s)
     //
 
     public HL7v2xTriggerEventIngresProcessor() {
-        context = new DefaultHapiContext();
         timeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.of(PetasosPropertyConstants.DEFAULT_TIMEZONE));
         maxHL7MessageSize = 64000;
         includeFullHL7MessageInLog = false;
@@ -192,30 +195,36 @@ public class HL7v2xTriggerEventIngresProcessor {
 
                 //
                 // Create the DataParcelManifest for the incomingMessageActivity
-                LOG.trace(".encapsulateTriggerEvent(): Creating Data Parcel Descriptor (messageDescriptor)");
-                DataParcelTypeDescriptor messageDescriptor = createDataParcelTypeDescriptor(incomingMessageActivity.getMllpEventType(), incomingMessageActivity.getMllpTriggerEvent(), messageVersionFirstField);
-                if (StringUtils.isNotEmpty(incomingMessageActivity.getUow().getIngresContent().getPayloadManifest().getContentDescriptor().getDataParcelDiscriminatorType())) {
-                    messageDescriptor.setDataParcelDiscriminatorType(incomingMessageActivity.getUow().getIngresContent().getPayloadManifest().getContentDescriptor().getDataParcelDiscriminatorType());
-                }
-                if (StringUtils.isNotEmpty(incomingMessageActivity.getUow().getIngresContent().getPayloadManifest().getContentDescriptor().getDataParcelDiscriminatorValue())) {
-                    messageDescriptor.setDataParcelDiscriminatorValue(incomingMessageActivity.getUow().getIngresContent().getPayloadManifest().getContentDescriptor().getDataParcelDiscriminatorValue());
-                }
-                LOG.trace(".encapsulateTriggerEvent(): messageDescriptor created->{}", messageDescriptor);
-                LOG.trace(".encapsulateTriggerEvent(): Creating Data Parcel Manifest (messageManifest)");
-                DataParcelManifest messageManifest = new DataParcelManifest();
-                messageManifest.setContentDescriptor(messageDescriptor);
-                if (StringUtils.isNotEmpty(incomingMessageActivity.getUow().getIngresContent().getPayloadManifest().getSourceSystem())) {
-                    if (incomingMessageActivity.getUow().getIngresContent().getPayloadManifest().getSourceSystem().contentEquals(DataParcelManifest.WILDCARD_CHARACTER)) {
-                        messageManifest.setSourceSystem(null);
-                    } else {
-                        messageManifest.setSourceSystem(incomingMessageActivity.getUow().getIngresContent().getPayloadManifest().getSourceSystem());
+                // (shared, read-only instances - see ProcessingPlantDataParcelManifestDM)
+                LOG.trace(".encapsulateTriggerEvent(): Resolving Data Parcel Descriptor (messageDescriptor)");
+                DataParcelManifest ingresManifest = incomingMessageActivity.getUow().getIngresContent().getPayloadManifest();
+                String discriminatorType = ingresManifest.getContentDescriptor().getDataParcelDiscriminatorType();
+                String discriminatorValue = ingresManifest.getContentDescriptor().getDataParcelDiscriminatorValue();
+                DataParcelTypeDescriptor messageDescriptor = manifestDM.getHL7v2xDescriptor(incomingMessageActivity.getMllpEventType(), incomingMessageActivity.getMllpTriggerEvent(), messageVersionFirstField, discriminatorType, discriminatorValue);
+                LOG.trace(".encapsulateTriggerEvent(): messageDescriptor resolved->{}", messageDescriptor);
+                LOG.trace(".encapsulateTriggerEvent(): Resolving Data Parcel Manifest (messageManifest)");
+                String sourceSystem = ingresManifest.getSourceSystem();
+                String participantName = participantNameHolder.getSubsystemParticipantName();
+                DataParcelInternKey manifestKey = new DataParcelInternKey(TRIGGER_EVENT_MANIFEST_PURPOSE,
+                        incomingMessageActivity.getMllpEventType(), incomingMessageActivity.getMllpTriggerEvent(), messageVersionFirstField,
+                        StringUtils.defaultString(discriminatorType), StringUtils.defaultString(discriminatorValue), StringUtils.defaultString(sourceSystem), participantName);
+                DataParcelManifest messageManifest = manifestDM.getManifest(manifestKey, () -> {
+                    DataParcelManifest newManifest = new DataParcelManifest();
+                    newManifest.setContentDescriptor(messageDescriptor);
+                    if (StringUtils.isNotEmpty(sourceSystem)) {
+                        if (sourceSystem.contentEquals(DataParcelManifest.WILDCARD_CHARACTER)) {
+                            newManifest.setSourceSystem(null);
+                        } else {
+                            newManifest.setSourceSystem(sourceSystem);
+                        }
                     }
-                }
-                messageManifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_FALSE);
-                messageManifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_TRUE);
-                messageManifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_INBOUND_DATA_PARCEL);
-                messageManifest.setSourceProcessingPlantParticipantName(participantNameHolder.getSubsystemParticipantName());
-                LOG.trace(".encapsulateTriggerEvent(): messageManifest created->{}", messageManifest);
+                    newManifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_FALSE);
+                    newManifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_TRUE);
+                    newManifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_INBOUND_DATA_PARCEL);
+                    newManifest.setSourceProcessingPlantParticipantName(participantName);
+                    return(newManifest);
+                });
+                LOG.trace(".encapsulateTriggerEvent(): messageManifest resolved->{}", messageManifest);
 
                 //
                 // Populate the UoWPayload
@@ -21,6 +21,7 @@
  */
 package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents;
 
+import ca.uhn.hl7v2.Version;
 import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
@@ -31,9 +32,14 @@ import net.fhirfactory.pegacorn.core.model.topology.nodes.WorkUnitProcessorSoftw
 import net.fhirfactory.pegacorn.internals.hl7v2.helpers.UltraDefensivePipeParser;
 import net.fhirfactory.pegacorn.internals.hl7v2.triggerevents.valuesets.HL7v2SegmentTypeEnum;
 import net.fhirfactory.pegacorn.internals.hl7v2.triggerevents.valuesets.HL7v2VersionEnum;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageBytes;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xSegmentIndex;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.datatypes.MLLPMessageActivityParcel;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.HL7v2xTriggerEventConformanceToolInterface;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.HL7v2xTriggerEventConformanceToolbox;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.rules.HL7v2xCompiledSegmentRules;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.rules.HL7v2xConformanceRuleEngine;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.rules.HL7v2xConformanceRuleTable;
 import org.apache.camel.Exchange;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -43,13 +49,19 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @ApplicationScoped
 public class HL7v2xTriggerEventValidationProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(HL7v2xTriggerEventValidationProcessor.class);
 
+    private static final int MSH_VERSION_FIELD_SEPARATOR_COUNT = 11;
+
     private boolean checkInitialisationDone;
     private boolean complianceActivityToBeDone;
+    private Map<Integer, HL7v2SegmentTypeEnum> knownSegmentTypes;
+    private Set<Integer> unknownSegmentTypes;
 
     @Inject
     private UltraDefensivePipeParser defensivePipeParser;
@@ -57,6 +69,9 @@ public class HL7v2xTriggerEventValidationProcessor {
     @Inject
     private HL7v2xTriggerEventConformanceToolbox triggerEventConformanceToolbox;
 
+    @Inject
+    private HL7v2xConformanceRuleEngine conformanceRuleEngine;
+
     //
     // Constructor(s)
     //
@@ -64,6 +79,8 @@ public class HL7v2xTriggerEventValidationProcessor {
     public HL7v2xTriggerEventValidationProcessor(){
         setCheckInitialisationDone(false);
         setComplianceActivityToBeDone(false);
+        this.knownSegmentTypes = new ConcurrentHashMap<>();
+        this.unknownSegmentTypes = ConcurrentHashMap.newKeySet();
     }
 
     //
@@ -82,6 +99,10 @@ public class HL7v2xTriggerEventValidationProcessor {
         return(this.triggerEventConformanceToolbox);
     }
 
+    protected HL7v2xConformanceRuleEngine getConformanceRuleEngine(){
+        return(this.conformanceRuleEngine);
+    }
+
     public boolean isCheckInitialisationDone() {
         return checkInitialisationDone;
     }
@@ -106,6 +127,7 @@ public class HL7v2xTriggerEventValidationProcessor {
         getLogger().debug(".ensureMinimalCompliance(): Entry, parcel->{}", parcel);
 
         if(!shouldPerformComplianceFixes(camelExchange)){
+            decodeRawPayload(parcel);
             getLogger().debug(".ensureMinimalCompliance(): Exit, flag not set for conformance fixes!");
             return(parcel);
         }
@@ -133,36 +155,242 @@ public class HL7v2xTriggerEventValidationProcessor {
 
         UoWPayload payload = parcel.getUow().getIngresContent();
 
-        // fix any bad segments
-        Map<Integer, String> segmentList = getDefensivePipeParser().getOrderedSegmentList(payload.getPayload());
-        HL7v2xTriggerEventConformanceToolInterface conformanceTool = null;
-        for(int counter = 0; counter < segmentList.size(); counter += 1){
-            getLogger().info(".ensureMinimalCompliance(): processing segment <{}>", counter);
-            String segment = segmentList.get(counter);
-            HL7v2SegmentTypeEnum segmentType = getDefensivePipeParser().getSegmentType(segment);
-            getLogger().info(".ensureMinimalCompliance(): processing segmentType->{}",segmentType);
-            if(segmentType != null){
-                conformanceTool = getTriggerEventConformanceToolbox().getConformanceTool(segmentType);
-                if(conformanceTool != null){
-                    getLogger().info(".ensureMinimalCompliance(): using conformanceTool!");
-                    String correctedSegment = conformanceTool.correctSegment(HL7v2VersionEnum.VERSION_HL7_V231, segment);
-                    segmentList.put(counter, correctedSegment);
-                }
-            }
+        // use the segment index built at capture time (unless the payload has been changed since), if the
+        // payload was captured as raw bytes it is decoded by the rebuild below rather than up front
+        HL7v2xSegmentIndex segmentIndex = parcel.getSegmentIndex();
+        boolean rawPayload = segmentIndex != null && segmentIndex.getMessageBytes() != null && payload.getPayload() == null;
+        if(!rawPayload && (segmentIndex == null || !segmentIndex.isIndexOf(payload.getPayload()))){
+            getLogger().debug(".ensureMinimalCompliance(): (re)building segment index");
+            segmentIndex = HL7v2xSegmentIndex.index(payload.getPayload());
         }
+        parcel.setSegmentIndex(segmentIndex);
 
-        // Rebuild the payload
-        StringBuilder outputMessage = new StringBuilder();
-        for(int counter = 0; counter < segmentList.size(); counter += 1) {
-            outputMessage.append(segmentList.get(counter) + "\r");
+        Version messageVersion = resolveMessageVersion(parcel, segmentIndex);
+        HL7v2xConformanceRuleTable ruleTable = getConformanceRuleEngine().getRuleTable(messageVersion);
+        // a payload with line feeds or blank segments is always rebuilt (one carriage return per segment)
+        boolean normaliseSegments = !segmentIndex.isNormalised();
+        String correctedPayload = applyConformanceTools(segmentIndex, ruleTable, toConformanceToolVersion(messageVersion), normaliseSegments);
+        if(correctedPayload == null){
+            // already in normal form and nothing was corrected, so the payload (and its index) are used as they are
+            decodeRawPayload(parcel);
+            getLogger().debug(".ensureMinimalCompliance(): Exit, no corrections required, parcel->{}", parcel);
+            return(parcel);
         }
-        String newPayloadString = outputMessage.toString();
-        payload.setPayload(newPayloadString);
+        payload.setPayload(correctedPayload);
+        parcel.setSegmentIndex(HL7v2xSegmentIndex.index(correctedPayload));
 
         getLogger().debug(".ensureMinimalCompliance(): Exit, parcel->{}", parcel);
         return(parcel);
     }
 
+    /**
+     * Runs the (declarative) conformance rules and then the conformance tools over the segments of the
+     * message in a single pass.
+     *
+     * If the message is already in normal form (see {@link HL7v2xSegmentIndex#isNormalised()}) the output
+     * is only started when a rule or tool actually changes a segment, at which point everything before
+     * that segment is copied across verbatim; after that only the corrected segments and the (verbatim)
+     * regions between them are appended. Otherwise the message is rebuilt segment by segment, each
+     * followed by a single carriage return.
+     *
+     * @param segmentIndex the index of the message
+     * @param ruleTable the compiled rules for the message's version (may be null)
+     * @param toolVersion the message's version, as passed to the conformance tools
+     * @param normaliseSegments rebuild the message even if no segment needs correcting
+     * @return the corrected message, or null if the message was in normal form and no segment needed correcting
+     */
+    protected String applyConformanceTools(HL7v2xSegmentIndex segmentIndex, HL7v2xConformanceRuleTable ruleTable, HL7v2VersionEnum toolVersion, boolean normaliseSegments){
+        if(normaliseSegments){
+            return(rebuildMessage(segmentIndex, ruleTable, toolVersion));
+        }
+        StringBuilder outputMessage = null;
+        int copiedUpTo = 0;
+        for(int counter = 0; counter < segmentIndex.getSegmentCount(); counter += 1){
+            String segment = segmentIndex.getSegment(counter);
+            String correctedSegment = correctSegment(segmentIndex, counter, ruleTable, toolVersion);
+            if(correctedSegment == null || correctedSegment.equals(segment)){
+                continue;
+            }
+            if(getLogger().isTraceEnabled()){
+                getLogger().trace(".applyConformanceTools(): segment <{}> corrected, segmentName->{}", counter, segmentIndex.getSegmentName(counter));
+            }
+            if(outputMessage == null){
+                outputMessage = new StringBuilder(segmentIndex.getMessageLength() + (correctedSegment.length() - segment.length()) + 16);
+            }
+            segmentIndex.appendRegion(outputMessage, copiedUpTo, segmentIndex.getSegmentStart(counter));
+            outputMessage.append(correctedSegment);
+            copiedUpTo = segmentIndex.getSegmentEnd(counter);
+        }
+        if(outputMessage == null){
+            return(null);
+        }
+        segmentIndex.appendRegion(outputMessage, copiedUpTo, segmentIndex.getMessageLength());
+        return(outputMessage.toString());
+    }
+
+    /**
+     * Rebuilds the message from its (non-empty) segments, corrected, each followed by a single carriage
+     * return - so line feed (or carriage return line feed) separators and blank segments are dropped.
+     */
+    protected String rebuildMessage(HL7v2xSegmentIndex segmentIndex, HL7v2xConformanceRuleTable ruleTable, HL7v2VersionEnum toolVersion){
+        StringBuilder outputMessage = new StringBuilder(segmentIndex.getMessageLength() + 16);
+        for(int counter = 0; counter < segmentIndex.getSegmentCount(); counter += 1){
+            String correctedSegment = correctSegment(segmentIndex, counter, ruleTable, toolVersion);
+            if(correctedSegment == null){
+                segmentIndex.appendSegment(outputMessage, counter);
+            } else {
+                outputMessage.append(correctedSegment);
+            }
+            outputMessage.append('\r');
+        }
+        return(outputMessage.toString());
+    }
+
+    /**
+     * Applies the rules and then the conformance tool (if any) for the segment's type.
+     *
+     * @return the corrected segment, or null if no rule or tool applies to the segment
+     */
+    private String correctSegment(HL7v2xSegmentIndex segmentIndex, int segmentNumber, HL7v2xConformanceRuleTable ruleTable, HL7v2VersionEnum toolVersion){
+        HL7v2xCompiledSegmentRules segmentRules = null;
+        if(ruleTable != null){
+            segmentRules = ruleTable.get(segmentIndex.getSegmentType(segmentNumber));
+        }
+        HL7v2xTriggerEventConformanceToolInterface conformanceTool = null;
+        HL7v2SegmentTypeEnum segmentType = resolveSegmentType(segmentIndex.getSegmentType(segmentNumber));
+        if(segmentType != null){
+            conformanceTool = getTriggerEventConformanceToolbox().getConformanceTool(segmentType);
+        }
+        if(segmentRules == null && conformanceTool == null){
+            return(null);
+        }
+        String correctedSegment = segmentIndex.getSegment(segmentNumber);
+        if(segmentRules != null){
+            correctedSegment = segmentRules.apply(correctedSegment);
+        }
+        if(conformanceTool != null){
+            String toolSegment = conformanceTool.correctSegment(toolVersion, correctedSegment);
+            if(toolSegment != null){
+                correctedSegment = toolSegment;
+            }
+        }
+        return(correctedSegment);
+    }
+
+    /**
+     * Sets the UoW payload of a parcel captured as raw bytes (see
+     * MLLPMessageIngresProcessor.captureMLLPMessageBytes()) to the decoded message, decoding it now.
+     *
+     * @param parcel the parcel (may be null)
+     */
+    protected void decodeRawPayload(MLLPMessageActivityParcel parcel){
+        if(parcel == null || parcel.getUow() == null || parcel.getSegmentIndex() == null){
+            return;
+        }
+        HL7v2xMessageBytes rawMessage = parcel.getSegmentIndex().getMessageBytes();
+        UoWPayload payload = parcel.getUow().getIngresContent();
+        if(rawMessage == null || payload == null || payload.getPayload() != null){
+            return;
+        }
+        HL7v2xSegmentIndex messageIndex = parcel.getSegmentIndex().toMessageIndex();
+        payload.setPayload(messageIndex.getMessage());
+        parcel.setSegmentIndex(messageIndex);
+    }
+
+    /**
+     * Works out the version of the message from MSH-12 (first component), as captured on the parcel or,
+     * failing that, from the MSH segment itself.
+     *
+     * @param parcel the parcel
+     * @param segmentIndex the index of the message
+     * @return the message version (null if it cannot be determined or isn't an HL7 version HAPI knows)
+     */
+    protected Version resolveMessageVersion(MLLPMessageActivityParcel parcel, HL7v2xSegmentIndex segmentIndex){
+        String versionId = parcel.getMllpVersionId();
+        if(StringUtils.isEmpty(versionId)){
+            versionId = extractMSHVersion(segmentIndex.getSegment("MSH"));
+        }
+        if(StringUtils.isEmpty(versionId)){
+            return(null);
+        }
+        int componentSeparatorIndex = versionId.indexOf('^');
+        if(componentSeparatorIndex >= 0){
+            versionId = versionId.substring(0, componentSeparatorIndex);
+        }
+        return(Version.versionOf(versionId.trim()));
+    }
+
+    private String extractMSHVersion(String mshSegment){
+        if(mshSegment == null || mshSegment.length() < 4){
+            return(null);
+        }
+        char fieldSeparator = mshSegment.charAt(3);
+        int fieldStart = 3;
+        for(int separatorCount = 0; separatorCount < MSH_VERSION_FIELD_SEPARATOR_COUNT; separatorCount += 1){
+            fieldStart = mshSegment.indexOf(fieldSeparator, fieldStart + 1);
+            if(fieldStart < 0){
+                return(null);
+            }
+        }
+        int fieldEnd = mshSegment.indexOf(fieldSeparator, fieldStart + 1);
+        return(mshSegment.substring(fieldStart + 1, fieldEnd < 0 ? mshSegment.length() : fieldEnd));
+    }
+
+    /**
+     * The conformance tools use the (pegacorn-internals) HL7v2VersionEnum, which covers 2.1 to 2.6 -
+     * the later versions HAPI knows (2.7 onwards) are VERSION_UNKNOWN to them.
+     */
+    protected HL7v2VersionEnum toConformanceToolVersion(Version messageVersion){
+        if(messageVersion == null){
+            return(HL7v2VersionEnum.VERSION_UNKNOWN);
+        }
+        switch(messageVersion){
+            case V21:
+                return(HL7v2VersionEnum.VERSION_HL7_V21);
+            case V22:
+                return(HL7v2VersionEnum.VERSION_HL7_V22);
+            case V23:
+                return(HL7v2VersionEnum.VERSION_HL7_V23);
+            case V231:
+                return(HL7v2VersionEnum.VERSION_HL7_V231);
+            case V24:
+                return(HL7v2VersionEnum.VERSION_HL7_V24);
+            case V25:
+                return(HL7v2VersionEnum.VERSION_HL7_V25);
+            case V251:
+                return(HL7v2VersionEnum.VERSION_HL7_V251);
+            case V26:
+                return(HL7v2VersionEnum.VERSION_HL7_V26);
+            case V27:
+            case V271:
+            case V28:
+            case V281:
+            default:
+                return(HL7v2VersionEnum.VERSION_UNKNOWN);
+        }
+    }
+
+    /**
+     * Maps the (packed) segment type held in the segment index to the HL7v2SegmentTypeEnum, remembering
+     * the outcome so that each distinct segment name is only resolved once.
+     *
+     * @param segmentType the packed segment type from the HL7v2xSegmentIndex
+     * @return the matching HL7v2SegmentTypeEnum, or null if there isn't one (e.g. Z-segments)
+     */
+    protected HL7v2SegmentTypeEnum resolveSegmentType(int segmentType){
+        HL7v2SegmentTypeEnum segmentTypeEnum = knownSegmentTypes.get(segmentType);
+        if(segmentTypeEnum != null || unknownSegmentTypes.contains(segmentType)){
+            return(segmentTypeEnum);
+        }
+        try {
+            segmentTypeEnum = HL7v2SegmentTypeEnum.valueOf(HL7v2xSegmentIndex.toSegmentName(segmentType));
+            knownSegmentTypes.put(segmentType, segmentTypeEnum);
+        } catch(IllegalArgumentException unknownSegment){
+            unknownSegmentTypes.add(segmentType);
+        }
+        return(segmentTypeEnum);
+    }
+
     //
     // Derive Behaviour from Flags
     //
@@ -21,9 +21,11 @@
  */
 package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance;
 
+import net.fhirfactory.pegacorn.internals.hl7v2.triggerevents.valuesets.HL7v2SegmentTypeEnum;
 import net.fhirfactory.pegacorn.internals.hl7v2.triggerevents.valuesets.HL7v2VersionEnum;
 
 public interface HL7v2xTriggerEventConformanceToolInterface {
+    public HL7v2SegmentTypeEnum getSupportedSegmentType();
     public String correctSegment(HL7v2VersionEnum version, String segment);
     public String checkSegment(HL7v2VersionEnum version, String segment);
 }
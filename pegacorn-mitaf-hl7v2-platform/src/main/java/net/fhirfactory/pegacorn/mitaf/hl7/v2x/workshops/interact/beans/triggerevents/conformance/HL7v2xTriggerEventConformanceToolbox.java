@@ -25,22 +25,87 @@ import net.fhirfactory.pegacorn.internals.hl7v2.triggerevents.valuesets.HL7v2Seg
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The registry of HL7v2xTriggerEventConformanceToolInterface implementations, one per segment type.
+ *
+ * The tools are discovered (as CDI beans) and registered when the toolbox is constructed, which is forced
+ * at application startup by {@link #onApplicationStartup(Object)}, and the toolbox is then frozen into an
+ * EnumMap so that the per-segment lookup is a plain array index. Tools added later via
+ * {@link #addConformanceTool(HL7v2SegmentTypeEnum, HL7v2xTriggerEventConformanceToolInterface)} replace the
+ * frozen map with a new copy.
+ */
 @ApplicationScoped
 public class HL7v2xTriggerEventConformanceToolbox {
     private static final Logger LOG = LoggerFactory.getLogger(HL7v2xTriggerEventConformanceToolbox.class);
 
-    Map<HL7v2SegmentTypeEnum, HL7v2xTriggerEventConformanceToolInterface> toolbox;
+    private volatile EnumMap<HL7v2SegmentTypeEnum, HL7v2xTriggerEventConformanceToolInterface> toolbox;
+    private final ReentrantLock toolboxUpdateLock;
+    private boolean initialised;
+    private long registrationTimeInMicroseconds;
+
+    @Inject
+    @Any
+    private Instance<HL7v2xTriggerEventConformanceToolInterface> discoveredTools;
 
     //
     // Constructor(s)
     //
 
     public HL7v2xTriggerEventConformanceToolbox(){
-        this.toolbox = new ConcurrentHashMap<>();
+        this.toolbox = new EnumMap<>(HL7v2SegmentTypeEnum.class);
+        this.toolboxUpdateLock = new ReentrantLock();
+        this.initialised = false;
+        this.registrationTimeInMicroseconds = 0;
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Nothing to do, already initialised");
+            return;
+        }
+        long startTime = System.nanoTime();
+        EnumMap<HL7v2SegmentTypeEnum, HL7v2xTriggerEventConformanceToolInterface> registeredTools = new EnumMap<>(HL7v2SegmentTypeEnum.class);
+        if(discoveredTools != null){
+            for(HL7v2xTriggerEventConformanceToolInterface currentTool: discoveredTools){
+                registerTool(registeredTools, currentTool.getSupportedSegmentType(), currentTool);
+            }
+        }
+        toolboxUpdateLock.lock();
+        try {
+            registeredTools.putAll(toolbox);
+            this.toolbox = registeredTools;
+        } finally {
+            toolboxUpdateLock.unlock();
+        }
+        this.registrationTimeInMicroseconds = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime);
+        this.initialised = true;
+        getLogger().info(".initialise(): Registered {} conformance tools in {}us, segmentTypes->{}", registeredTools.size(), registrationTimeInMicroseconds, registeredTools.keySet());
+        getLogger().debug(".initialise(): Exit");
+    }
+
+    /**
+     * Forces the (otherwise lazily created) toolbox, and so the discovery of the tools, to happen at
+     * application startup rather than on the first message.
+     */
+    public void onApplicationStartup(@Observes @Initialized(ApplicationScoped.class) Object startupEvent){
+        getLogger().debug(".onApplicationStartup(): toolSize->{}", getToolCount());
     }
 
     //
@@ -51,42 +116,57 @@ public class HL7v2xTriggerEventConformanceToolbox {
         return(LOG);
     }
 
+    public int getToolCount(){
+        return(toolbox.size());
+    }
+
+    public long getRegistrationTimeInMicroseconds() {
+        return registrationTimeInMicroseconds;
+    }
+
     //
     // Business Methods
     //
 
     public void addConformanceTool(HL7v2SegmentTypeEnum segmentType, HL7v2xTriggerEventConformanceToolInterface tool){
         getLogger().debug(".addConformanceTool(): Entry, segmentType->{}", segmentType);
+        toolboxUpdateLock.lock();
+        try {
+            EnumMap<HL7v2SegmentTypeEnum, HL7v2xTriggerEventConformanceToolInterface> updatedToolbox = new EnumMap<>(toolbox);
+            if(registerTool(updatedToolbox, segmentType, tool)){
+                this.toolbox = updatedToolbox;
+            }
+        } finally {
+            toolboxUpdateLock.unlock();
+        }
+        getLogger().debug(".addConformanceTool(): Exit");
+    }
 
+    private boolean registerTool(EnumMap<HL7v2SegmentTypeEnum, HL7v2xTriggerEventConformanceToolInterface> tools, HL7v2SegmentTypeEnum segmentType, HL7v2xTriggerEventConformanceToolInterface tool){
         if(tool == null || segmentType == null){
-            getLogger().debug(".addConformanceTool(): Exit, tool or segmentType are null");
-            return;
+            getLogger().debug(".registerTool(): tool or segmentType are null");
+            return(false);
         }
-
-        if(toolbox.containsKey(segmentType)){
-            getLogger().debug(".addConformanceTool(): Exit, tool already specified for given segmentType");
-            return;
+        if(tools.containsKey(segmentType)){
+            getLogger().warn(".registerTool(): tool already specified for segmentType->{}, ignoring tool->{}", segmentType, tool.getClass().getSimpleName());
+            return(false);
         }
-
-        toolbox.put(segmentType, tool);
-        getLogger().debug(".addConformanceTool(): Exit, tool added");
+        tools.put(segmentType, tool);
+        getLogger().debug(".registerTool(): segmentType->{}, tool->{}", segmentType, tool.getClass().getSimpleName());
+        return(true);
     }
 
+    /**
+     * Called for every segment of every message when conformance is enforced, so it is a single map
+     * lookup with no logging.
+     *
+     * @param segmentType the segment type
+     * @return the conformance tool for the segment type, or null if there isn't one
+     */
     public HL7v2xTriggerEventConformanceToolInterface getConformanceTool(HL7v2SegmentTypeEnum segmentType){
-        getLogger().debug(".getConformanceTool(): Entry, segmentType->{}", segmentType);
-
         if(segmentType == null){
-            getLogger().debug(".getConformanceTool(): Exit, segmentType is null, returning -null-");
             return(null);
         }
-
-        if(toolbox.containsKey(segmentType)){
-            HL7v2xTriggerEventConformanceToolInterface conformanceTool = toolbox.get(segmentType);
-            getLogger().debug(".getConformanceTool(): Exit, conformanceTool->{}", conformanceTool);
-            return(conformanceTool);
-        }
-
-        getLogger().debug(".getConformanceTool(): Exit, no conformanceTool for segmentType, returning -null-");
-        return(null);
+        return(toolbox.get(segmentType));
     }
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.rules;
+
+import java.util.Arrays;
+
+/**
+ * The conformance rules for one segment type (within one HL7 version), compiled into arrays indexed by
+ * field number so that all of them are applied in a single pass over the segment's field offsets.
+ *
+ * The segment is only copied if a rule actually changes it, otherwise the input String is returned.
+ */
+public class HL7v2xCompiledSegmentRules {
+    private static final int HEADER_SEGMENT_FIELD_OFFSET = 1;
+
+    private final String segmentName;
+    private final int fieldNumberOffset;
+    private int minimumFieldCount;
+    private int highestRuleField;
+    private int highestDefaultValueField;
+    private String[] defaultValues;
+    private int[] padLengths;
+    private char[] padCharacters;
+    private boolean[] padLefts;
+    private boolean[] fieldHasRule;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xCompiledSegmentRules(String segmentName){
+        this.segmentName = segmentName;
+        // for MSH, BHS and FHS the first separator is itself field 1
+        boolean headerSegment = "MSH".equals(segmentName) || "BHS".equals(segmentName) || "FHS".equals(segmentName);
+        this.fieldNumberOffset = headerSegment ? HEADER_SEGMENT_FIELD_OFFSET : 0;
+        this.minimumFieldCount = 0;
+        this.highestRuleField = 0;
+        this.highestDefaultValueField = 0;
+        this.defaultValues = new String[1];
+        this.padLengths = new int[1];
+        this.padCharacters = new char[1];
+        this.padLefts = new boolean[1];
+        this.fieldHasRule = new boolean[1];
+    }
+
+    //
+    // Compilation
+    //
+
+    /**
+     * Adds a (validated) rule, a later rule for the same field replaces an earlier one.
+     *
+     * @param rule the rule
+     */
+    void addRule(HL7v2xConformanceRule rule){
+        switch(rule.getType()){
+            case MINIMUM_FIELD_COUNT:
+                this.minimumFieldCount = Math.max(minimumFieldCount, rule.getFieldCount());
+                break;
+            case DEFAULT_VALUE:
+                ensureFieldCapacity(rule.getField());
+                defaultValues[rule.getField()] = rule.getValue();
+                fieldHasRule[rule.getField()] = true;
+                this.highestDefaultValueField = Math.max(highestDefaultValueField, rule.getField());
+                break;
+            case FIELD_PADDING:
+                ensureFieldCapacity(rule.getField());
+                padLengths[rule.getField()] = rule.getLength();
+                padCharacters[rule.getField()] = rule.resolvePadCharacter();
+                padLefts[rule.getField()] = rule.isPadLeft();
+                fieldHasRule[rule.getField()] = true;
+                break;
+        }
+    }
+
+    private void ensureFieldCapacity(int fieldNumber){
+        if(fieldNumber < defaultValues.length){
+            return;
+        }
+        int newLength = fieldNumber + 1;
+        this.defaultValues = Arrays.copyOf(defaultValues, newLength);
+        this.padLengths = Arrays.copyOf(padLengths, newLength);
+        this.padCharacters = Arrays.copyOf(padCharacters, newLength);
+        this.padLefts = Arrays.copyOf(padLefts, newLength);
+        this.fieldHasRule = Arrays.copyOf(fieldHasRule, newLength);
+        this.highestRuleField = fieldNumber;
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Applies the rules to the segment.
+     *
+     * @param segment the segment (without the segment separator)
+     * @return the corrected segment, or the same String instance if no rule changed it
+     */
+    public String apply(String segment){
+        if(segment == null || segment.length() < 3){
+            return(segment);
+        }
+        int length = segment.length();
+        char fieldSeparator = length > 3 ? segment.charAt(3) : '|';
+        StringBuilder outputSegment = null;
+        int copiedUpTo = 0;
+        int fieldNumber = fieldNumberOffset;
+        int position = 3;
+        while(position < length){
+            int fieldStart = position + 1;
+            int fieldEnd = segment.indexOf(fieldSeparator, fieldStart);
+            if(fieldEnd < 0){
+                fieldEnd = length;
+            }
+            fieldNumber += 1;
+            if(fieldNumber <= highestRuleField && fieldHasRule[fieldNumber]){
+                String correctedField = correctField(fieldNumber, segment, fieldStart, fieldEnd);
+                if(correctedField != null){
+                    if(outputSegment == null){
+                        outputSegment = new StringBuilder(length + 16);
+                    }
+                    outputSegment.append(segment, copiedUpTo, fieldStart).append(correctedField);
+                    copiedUpTo = fieldEnd;
+                }
+            }
+            position = fieldEnd;
+        }
+        int requiredFieldCount = Math.max(minimumFieldCount, highestDefaultValueField);
+        if(fieldNumber < requiredFieldCount){
+            if(outputSegment == null){
+                outputSegment = new StringBuilder(length + 16);
+            }
+            outputSegment.append(segment, copiedUpTo, length);
+            copiedUpTo = length;
+            for(int missingField = fieldNumber + 1; missingField <= requiredFieldCount; missingField += 1){
+                outputSegment.append(fieldSeparator);
+                if(missingField <= highestRuleField && defaultValues[missingField] != null){
+                    outputSegment.append(defaultValues[missingField]);
+                }
+            }
+        }
+        if(outputSegment == null){
+            return(segment);
+        }
+        outputSegment.append(segment, copiedUpTo, length);
+        return(outputSegment.toString());
+    }
+
+    private String correctField(int fieldNumber, String segment, int fieldStart, int fieldEnd){
+        int fieldLength = fieldEnd - fieldStart;
+        if(fieldLength == 0){
+            return(defaultValues[fieldNumber]);
+        }
+        int padLength = padLengths[fieldNumber];
+        if(padLength > fieldLength){
+            StringBuilder paddedField = new StringBuilder(padLength);
+            if(padLefts[fieldNumber]){
+                for(int counter = fieldLength; counter < padLength; counter += 1){
+                    paddedField.append(padCharacters[fieldNumber]);
+                }
+                paddedField.append(segment, fieldStart, fieldEnd);
+            } else {
+                paddedField.append(segment, fieldStart, fieldEnd);
+                for(int counter = fieldLength; counter < padLength; counter += 1){
+                    paddedField.append(padCharacters[fieldNumber]);
+                }
+            }
+            return(paddedField.toString());
+        }
+        return(null);
+    }
+
+    //
+    // Getters
+    //
+
+    public String getSegmentName() {
+        return segmentName;
+    }
+
+    public int getMinimumFieldCount() {
+        return minimumFieldCount;
+    }
+
+    @Override
+    public String toString() {
+        return "HL7v2xCompiledSegmentRules{" +
+                "segmentName=" + segmentName +
+                ", minimumFieldCount=" + minimumFieldCount +
+                ", highestRuleField=" + highestRuleField +
+                ", highestDefaultValueField=" + highestDefaultValueField +
+                '}';
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.rules;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single conformance rule, as read from the conformance rules file, e.g.
+ * <pre>
+ *   - segment: MFE
+ *     versions: ["2.3.1", "2.4", "2.5", "2.5.1"]
+ *     type: DEFAULT_VALUE
+ *     field: 5
+ *     value: CE
+ * </pre>
+ * An empty versions list (or "*") applies the rule to every version. Field numbers follow the HL7
+ * convention (MSH-1 is the field separator itself).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class HL7v2xConformanceRule {
+    public static final String ALL_VERSIONS = "*";
+    public static final char DEFAULT_PAD_CHARACTER = ' ';
+
+    private String segment;
+    private List<String> versions;
+    private HL7v2xConformanceRuleTypeEnum type;
+    private int field;
+    private int fieldCount;
+    private String value;
+    private int length;
+    private String padCharacter;
+    private boolean padLeft;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xConformanceRule(){
+        this.versions = new ArrayList<>();
+        this.padLeft = false;
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public String getSegment() {
+        return segment;
+    }
+
+    public void setSegment(String segment) {
+        this.segment = segment;
+    }
+
+    public List<String> getVersions() {
+        return versions;
+    }
+
+    public void setVersions(List<String> versions) {
+        this.versions = versions;
+    }
+
+    public HL7v2xConformanceRuleTypeEnum getType() {
+        return type;
+    }
+
+    public void setType(HL7v2xConformanceRuleTypeEnum type) {
+        this.type = type;
+    }
+
+    public int getField() {
+        return field;
+    }
+
+    public void setField(int field) {
+        this.field = field;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public void setFieldCount(int fieldCount) {
+        this.fieldCount = fieldCount;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    public String getPadCharacter() {
+        return padCharacter;
+    }
+
+    public void setPadCharacter(String padCharacter) {
+        this.padCharacter = padCharacter;
+    }
+
+    public boolean isPadLeft() {
+        return padLeft;
+    }
+
+    public void setPadLeft(boolean padLeft) {
+        this.padLeft = padLeft;
+    }
+
+    //
+    // Helpers
+    //
+
+    public boolean appliesToAllVersions(){
+        return(versions == null || versions.isEmpty() || versions.contains(ALL_VERSIONS));
+    }
+
+    public char resolvePadCharacter(){
+        if(padCharacter == null || padCharacter.isEmpty()){
+            return(DEFAULT_PAD_CHARACTER);
+        }
+        return(padCharacter.charAt(0));
+    }
+
+    //
+    // toString
+    //
+
+    @Override
+    public String toString() {
+        return "HL7v2xConformanceRule{" +
+                "segment=" + segment +
+                ", versions=" + versions +
+                ", type=" + type +
+                ", field=" + field +
+                ", fieldCount=" + fieldCount +
+                ", value=" + value +
+                ", length=" + length +
+                ", padCharacter=" + padCharacter +
+                ", padLeft=" + padLeft +
+                '}';
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.rules;
+
+import ca.uhn.hl7v2.Version;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xSegmentIndex;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the declarative (field count, padding and default value) conformance rules from the YAML file
+ * named by the HL7_CONFORMANCE_RULES_FILE processing plant parameter and compiles them, at startup, into
+ * a {@link HL7v2xConformanceRuleTable} per HL7 version - so a new feed quirk can be fixed by adding a
+ * rule rather than a SegmentConformanceToolBase class.
+ *
+ * Rules for all versions are applied first, then the version specific ones (which win for the same
+ * field). Versions are the HL7 versions HAPI knows (2.1 to 2.8.1, see ca.uhn.hl7v2.Version): a rule
+ * naming any other version is rejected when the rules are loaded, and a message with any other version
+ * gets only the rules for all versions.
+ */
+@ApplicationScoped
+public class HL7v2xConformanceRuleEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(HL7v2xConformanceRuleEngine.class);
+
+    public static final String HL7_CONFORMANCE_RULES_FILE_PARAMETER_NAME = "HL7_CONFORMANCE_RULES_FILE";
+
+    private static final int SEGMENT_NAME_LENGTH = 3;
+
+    private volatile Map<Version, HL7v2xConformanceRuleTable> ruleTables;
+    private volatile HL7v2xConformanceRuleTable allVersionsRuleTable;
+    private int ruleCount;
+    private boolean initialised;
+
+    @Inject
+    private ProcessingPlantInterface processingPlant;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xConformanceRuleEngine(){
+        this.ruleTables = new EnumMap<>(Version.class);
+        this.allVersionsRuleTable = null;
+        this.ruleCount = 0;
+        this.initialised = false;
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Nothing to do, already initialised!");
+            return;
+        }
+        String rulesFileName = processingPlant.getMeAsASoftwareComponent().getOtherConfigurationParameter(HL7_CONFORMANCE_RULES_FILE_PARAMETER_NAME);
+        if(StringUtils.isEmpty(rulesFileName)){
+            getLogger().info(".initialise(): No {} specified, no declarative conformance rules", HL7_CONFORMANCE_RULES_FILE_PARAMETER_NAME);
+        } else {
+            try {
+                HL7v2xConformanceRuleSet ruleSet = loadRuleSet(new File(rulesFileName));
+                compile(ruleSet);
+                getLogger().info(".initialise(): Loaded {} conformance rules from {}, ruleTables->{}", ruleCount, rulesFileName, ruleTables);
+            } catch (IOException loadException) {
+                getLogger().error(".initialise(): Cannot load conformance rules from {}, error->{}", rulesFileName, loadException.getMessage());
+            }
+        }
+        this.initialised = true;
+        getLogger().debug(".initialise(): Exit");
+    }
+
+    //
+    // Compilation
+    //
+
+    protected HL7v2xConformanceRuleSet loadRuleSet(File rulesFile) throws IOException {
+        ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+        HL7v2xConformanceRuleSet ruleSet = yamlMapper.readValue(rulesFile, HL7v2xConformanceRuleSet.class);
+        if(ruleSet == null){
+            ruleSet = new HL7v2xConformanceRuleSet();
+        }
+        return(ruleSet);
+    }
+
+    /**
+     * Compiles the rule set, replacing any previously compiled tables.
+     *
+     * @param ruleSet the rules
+     */
+    public void compile(HL7v2xConformanceRuleSet ruleSet){
+        List<HL7v2xConformanceRule> allVersionRules = new ArrayList<>();
+        Map<Version, List<HL7v2xConformanceRule>> versionRules = new EnumMap<>(Version.class);
+        int validRuleCount = 0;
+        if(ruleSet != null && ruleSet.getRules() != null){
+            for(HL7v2xConformanceRule currentRule: ruleSet.getRules()){
+                if(!isValid(currentRule)){
+                    getLogger().warn(".compile(): Ignoring invalid conformance rule->{}", currentRule);
+                    continue;
+                }
+                validRuleCount += 1;
+                if(currentRule.appliesToAllVersions()){
+                    allVersionRules.add(currentRule);
+                    continue;
+                }
+                for(String currentVersion: currentRule.getVersions()){
+                    Version version = Version.versionOf(currentVersion.trim());
+                    versionRules.computeIfAbsent(version, key -> new ArrayList<>()).add(currentRule);
+                }
+            }
+        }
+        HL7v2xConformanceRuleTable newAllVersionsRuleTable = new HL7v2xConformanceRuleTable();
+        addRules(newAllVersionsRuleTable, allVersionRules);
+        Map<Version, HL7v2xConformanceRuleTable> newRuleTables = new EnumMap<>(Version.class);
+        for(Version currentVersion: Version.values()){
+            HL7v2xConformanceRuleTable ruleTable = new HL7v2xConformanceRuleTable();
+            addRules(ruleTable, allVersionRules);
+            addRules(ruleTable, versionRules.get(currentVersion));
+            if(!ruleTable.isEmpty()){
+                newRuleTables.put(currentVersion, ruleTable);
+            }
+        }
+        this.ruleTables = newRuleTables;
+        this.allVersionsRuleTable = newAllVersionsRuleTable.isEmpty() ? null : newAllVersionsRuleTable;
+        this.ruleCount = validRuleCount;
+    }
+
+    private void addRules(HL7v2xConformanceRuleTable ruleTable, List<HL7v2xConformanceRule> rules){
+        if(rules == null){
+            return;
+        }
+        for(HL7v2xConformanceRule currentRule: rules){
+            String segmentName = currentRule.getSegment().trim();
+            ruleTable.getOrCreate(HL7v2xSegmentIndex.toSegmentType(segmentName), segmentName).addRule(currentRule);
+        }
+    }
+
+    protected boolean isValid(HL7v2xConformanceRule rule){
+        if(rule == null || rule.getType() == null || rule.getSegment() == null || rule.getSegment().trim().length() != SEGMENT_NAME_LENGTH){
+            return(false);
+        }
+        if(!rule.appliesToAllVersions()){
+            for(String currentVersion: rule.getVersions()){
+                if(currentVersion == null || Version.versionOf(currentVersion.trim()) == null){
+                    getLogger().warn(".isValid(): Unknown HL7 version->{}", currentVersion);
+                    return(false);
+                }
+            }
+        }
+        switch(rule.getType()){
+            case MINIMUM_FIELD_COUNT:
+                return(rule.getFieldCount() > 0);
+            case DEFAULT_VALUE:
+                return(rule.getField() > 0 && StringUtils.isNotEmpty(rule.getValue()));
+            case FIELD_PADDING:
+                return(rule.getField() > 0 && rule.getLength() > 0);
+            default:
+                return(false);
+        }
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @param version the message version (null if it is not one HAPI knows)
+     * @return the compiled rules for the version, or null if there are none
+     */
+    public HL7v2xConformanceRuleTable getRuleTable(Version version){
+        if(version == null){
+            return(allVersionsRuleTable);
+        }
+        return(ruleTables.get(version));
+    }
+
+    public boolean hasRules(){
+        return(!ruleTables.isEmpty());
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+}
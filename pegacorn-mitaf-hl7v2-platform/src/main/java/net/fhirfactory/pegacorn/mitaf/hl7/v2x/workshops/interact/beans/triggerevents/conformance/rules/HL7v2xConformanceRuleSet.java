@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.rules;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The root of the conformance rules file:
+ * <pre>
+ * rules:
+ *   - segment: ...
+ * </pre>
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class HL7v2xConformanceRuleSet {
+    private List<HL7v2xConformanceRule> rules;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xConformanceRuleSet(){
+        this.rules = new ArrayList<>();
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public List<HL7v2xConformanceRule> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<HL7v2xConformanceRule> rules) {
+        this.rules = rules;
+    }
+
+    @Override
+    public String toString() {
+        return "HL7v2xConformanceRuleSet{" +
+                "rules=" + rules +
+                '}';
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The compiled conformance rules for one HL7 version - a small open addressed table from the (packed)
+ * segment type used by HL7v2xSegmentIndex to the segment's compiled rules, so that the per-segment
+ * lookup neither boxes the key nor allocates.
+ */
+public class HL7v2xConformanceRuleTable {
+    private static final int EMPTY_KEY = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] segmentTypes;
+    private HL7v2xCompiledSegmentRules[] segmentRules;
+    private int size;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xConformanceRuleTable(){
+        this.segmentTypes = new int[INITIAL_CAPACITY];
+        this.segmentRules = new HL7v2xCompiledSegmentRules[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    //
+    // Compilation
+    //
+
+    HL7v2xCompiledSegmentRules getOrCreate(int segmentType, String segmentName){
+        HL7v2xCompiledSegmentRules existing = get(segmentType);
+        if(existing != null){
+            return(existing);
+        }
+        if((size + 1) * 2 > segmentTypes.length){
+            resize(segmentTypes.length * 2);
+        }
+        HL7v2xCompiledSegmentRules newRules = new HL7v2xCompiledSegmentRules(segmentName);
+        insert(segmentType, newRules);
+        return(newRules);
+    }
+
+    private void insert(int segmentType, HL7v2xCompiledSegmentRules rules){
+        int mask = segmentTypes.length - 1;
+        int slot = mix(segmentType) & mask;
+        while(segmentTypes[slot] != EMPTY_KEY){
+            slot = (slot + 1) & mask;
+        }
+        segmentTypes[slot] = segmentType;
+        segmentRules[slot] = rules;
+        size += 1;
+    }
+
+    private void resize(int newCapacity){
+        int[] oldTypes = segmentTypes;
+        HL7v2xCompiledSegmentRules[] oldRules = segmentRules;
+        this.segmentTypes = new int[newCapacity];
+        this.segmentRules = new HL7v2xCompiledSegmentRules[newCapacity];
+        this.size = 0;
+        for(int counter = 0; counter < oldTypes.length; counter += 1){
+            if(oldTypes[counter] != EMPTY_KEY){
+                insert(oldTypes[counter], oldRules[counter]);
+            }
+        }
+    }
+
+    private static int mix(int segmentType){
+        int hash = segmentType * 0x9E3779B9;
+        return(hash ^ (hash >>> 16));
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @param segmentType the packed segment type (see HL7v2xSegmentIndex.toSegmentType())
+     * @return the compiled rules for the segment type, or null if there are none
+     */
+    public HL7v2xCompiledSegmentRules get(int segmentType){
+        if(segmentType == EMPTY_KEY || size == 0){
+            return(null);
+        }
+        int mask = segmentTypes.length - 1;
+        int slot = mix(segmentType) & mask;
+        while(segmentTypes[slot] != EMPTY_KEY){
+            if(segmentTypes[slot] == segmentType){
+                return(segmentRules[slot]);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return(null);
+    }
+
+    public boolean isEmpty(){
+        return(size == 0);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        List<String> segmentNames = new ArrayList<>();
+        for(HL7v2xCompiledSegmentRules currentRules: segmentRules){
+            if(currentRules != null){
+                segmentNames.add(currentRules.getSegmentName());
+            }
+        }
+        return "HL7v2xConformanceRuleTable{" +
+                "segments=" + segmentNames +
+                '}';
+    }
+}
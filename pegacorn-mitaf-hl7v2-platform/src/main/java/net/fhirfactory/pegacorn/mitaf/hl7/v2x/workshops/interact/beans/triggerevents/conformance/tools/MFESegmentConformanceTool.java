@@ -52,7 +52,7 @@ public class MFESegmentConformanceTool extends SegmentConformanceToolBase {
     }
 
     @Override
-    protected HL7v2SegmentTypeEnum getSupportedSegmentType() {
+    public HL7v2SegmentTypeEnum getSupportedSegmentType() {
         return (HL7v2SegmentTypeEnum.MFE);
     }
 
@@ -105,6 +105,10 @@ public class MFESegmentConformanceTool extends SegmentConformanceToolBase {
 
     private String correctSegmentV231toV251(String inputSegment){
         getLogger().debug(".correctSegmentV231toV251(): Entry, inputSegment->{}", inputSegment);
+        if(isAlreadyConformant(inputSegment)){
+            getLogger().debug(".correctSegmentV231toV251(): Exit, inputSegment already has MFE-5, outputSegment = inputSegment");
+            return(inputSegment);
+        }
         String segmentWithNewLineRemoved = inputSegment.replace("\\n", "");
         String segmentWithCarriageReturnRemoved = segmentWithNewLineRemoved.replace("\\r", "");
         String[] fieldSet = segmentWithCarriageReturnRemoved.split("\\|");
@@ -119,10 +123,29 @@ public class MFESegmentConformanceTool extends SegmentConformanceToolBase {
         if(fieldCount == 5){
             outputSegment = segmentWithCarriageReturnRemoved + "|CE";
         }
-        if(fieldCount== 6){
+        if(fieldCount >= 6){
             outputSegment = inputSegment;
         }
         getLogger().debug(".correctSegmentV231toV251(): Exit, outputSegment->{}", outputSegment);
         return(outputSegment);
     }
+
+    /**
+     * The common case - the segment already has (at least) 6 fields, doesn't end with an empty field and
+     * has no escaped line breaks to strip - is answered by counting the field separators, without
+     * splitting the segment.
+     */
+    private boolean isAlreadyConformant(String inputSegment){
+        int length = inputSegment.length();
+        if(length == 0 || inputSegment.charAt(length - 1) == '|' || inputSegment.indexOf('\\') >= 0){
+            return(false);
+        }
+        int separatorCount = 0;
+        for(int position = 0; position < length && separatorCount < 5; position += 1){
+            if(inputSegment.charAt(position) == '|'){
+                separatorCount += 1;
+            }
+        }
+        return(separatorCount >= 5);
+    }
 }
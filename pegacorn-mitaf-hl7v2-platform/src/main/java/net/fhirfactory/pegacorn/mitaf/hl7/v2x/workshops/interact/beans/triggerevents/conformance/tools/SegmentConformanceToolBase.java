@@ -23,27 +23,20 @@ package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggere
 
 import net.fhirfactory.pegacorn.internals.hl7v2.triggerevents.valuesets.HL7v2SegmentTypeEnum;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.HL7v2xTriggerEventConformanceToolInterface;
-import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.HL7v2xTriggerEventConformanceToolbox;
-import org.apache.camel.LoggingLevel;
-import org.apache.camel.builder.RouteBuilder;
 import org.slf4j.Logger;
 
-import javax.annotation.PostConstruct;
-import javax.inject.Inject;
-
-public abstract class SegmentConformanceToolBase extends RouteBuilder implements HL7v2xTriggerEventConformanceToolInterface {
-
-    private boolean initialised;
-
-    @Inject
-    private HL7v2xTriggerEventConformanceToolbox toolbox;
+/**
+ * Base class for the (CDI bean) segment conformance tools. A tool only has to be a bean - it is
+ * discovered and registered by the HL7v2xTriggerEventConformanceToolbox at startup, for the segment type
+ * returned by {@link #getSupportedSegmentType()}.
+ */
+public abstract class SegmentConformanceToolBase implements HL7v2xTriggerEventConformanceToolInterface {
 
     //
     // Constructor
     //
 
     public SegmentConformanceToolBase(){
-        setInitialised(false);
     }
 
     //
@@ -51,48 +44,7 @@ public abstract class SegmentConformanceToolBase extends RouteBuilder implements
     //
 
     protected abstract Logger getLogger();
-    protected abstract HL7v2SegmentTypeEnum getSupportedSegmentType();
-
-    public boolean isInitialised() {
-        return initialised;
-    }
-
-    public void setInitialised(boolean initialised) {
-        this.initialised = initialised;
-    }
-
-    //
-    // Post Construct
-    //
-
-    @PostConstruct
-    public void initialise(){
-        getLogger().debug(".initialise(): Entry");
-        if(isInitialised()){
-            getLogger().debug(".initialise(): Nothing to do, already initialised");
-        } else {
-            getLogger().info(".initialise(): Starting...");
-            getLogger().info(".initialise(): [Register this Tool with Toolbox] Start");
-            toolbox.addConformanceTool(getSupportedSegmentType(), this);
-            getLogger().info(".initialise(): [Register this Tool with Toolbox] Finish");
-
-            setInitialised(true);
-            getLogger().info(".initialise(): Finished...");
-        }
-        getLogger().debug(".initialise(): Exit");
-    }
-
-    //
-    // Startup Service
-    //
-
 
     @Override
-    public void configure() throws Exception {
-        String instanceName = getClass().getSimpleName();
-
-        from("timer://"+instanceName+"?delay=1000&repeatCount=1")
-                .routeId("ConformanceTool::"+instanceName)
-                .log(LoggingLevel.DEBUG, "Starting....");
-    }
+    public abstract HL7v2SegmentTypeEnum getSupportedSegmentType();
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, high dynamic range latency histogram (in the manner of HdrHistogram): values from 0 to
+ * about 71 minutes, in microseconds, are counted in log-linear buckets - exact below 256us, and within
+ * 1/128th (&lt; 0.8%) of the value above - so 3,328 counters cover the whole range.
+ *
+ * Recording is a single atomic increment (plus the sum and maximum) and never allocates, so it is safe
+ * on the message path. {@link #snapshotAndReset()} takes an interval snapshot from which percentiles
+ * are read; a value recorded while the snapshot is taken lands in either this interval or the next.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF_COUNT * 2;
+    private static final int MAXIMUM_VALUE_BITS = 32;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAXIMUM_VALUE_BITS - SUB_BUCKET_BITS - 1) * SUB_BUCKET_HALF_COUNT;
+    private static final long HIGHEST_TRACKABLE_VALUE = (1L << MAXIMUM_VALUE_BITS) - 1;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount;
+    private final AtomicLong totalValue;
+    private final AtomicLong maximumValue;
+
+    //
+    // Constructor(s)
+    //
+
+    public LatencyHistogram(){
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.totalCount = new AtomicLong(0);
+        this.totalValue = new AtomicLong(0);
+        this.maximumValue = new AtomicLong(0);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @param elapsedNanoseconds the latency to record, in nanoseconds (negative values count as 0,
+     *                           values beyond the range as the highest trackable value)
+     */
+    public void recordNanoseconds(long elapsedNanoseconds){
+        long value = Math.min(HIGHEST_TRACKABLE_VALUE, Math.max(0L, elapsedNanoseconds / 1000L));
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        maximumValue.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @return the values recorded since the previous snapshot, the histogram starting afresh
+     */
+    public Snapshot snapshotAndReset(){
+        long[] snapshotCounts = new long[BUCKET_COUNT];
+        long snapshotTotalCount = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            long count = counts.getAndSet(i, 0L);
+            snapshotCounts[i] = count;
+            snapshotTotalCount += count;
+        }
+        totalCount.set(0);
+        long snapshotTotalValue = totalValue.getAndSet(0);
+        long snapshotMaximumValue = maximumValue.getAndSet(0);
+        return(new Snapshot(snapshotCounts, snapshotTotalCount, snapshotTotalValue, snapshotMaximumValue));
+    }
+
+    public long getTotalCount(){
+        return(totalCount.get());
+    }
+
+    //
+    // Bucket Arithmetic
+    //
+
+    static int bucketIndex(long value){
+        if(value < SUB_BUCKET_COUNT){
+            return((int)value);
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int subBucket = (int)(value >>> shift) - SUB_BUCKET_HALF_COUNT;
+        return(SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + subBucket);
+    }
+
+    static long bucketUpperValue(int index){
+        if(index < SUB_BUCKET_COUNT){
+            return(index);
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return(((subBucket + 1) << shift) - 1);
+    }
+
+    //
+    // Snapshot
+    //
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+        private final long totalValue;
+        private final long maximumValue;
+
+        private Snapshot(long[] counts, long totalCount, long totalValue, long maximumValue){
+            this.counts = counts;
+            this.totalCount = totalCount;
+            this.totalValue = totalValue;
+            this.maximumValue = maximumValue;
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * @return the mean, in microseconds
+         */
+        public long getMean(){
+            if(totalCount == 0){
+                return(0);
+            }
+            return(totalValue / totalCount);
+        }
+
+        /**
+         * @return the maximum, in microseconds
+         */
+        public long getMaximum() {
+            return maximumValue;
+        }
+
+        /**
+         * @param percentile the percentile (0 to 100)
+         * @return the value at the percentile, in microseconds (the upper bound of its bucket, capped at the maximum)
+         */
+        public long getValueAtPercentile(double percentile){
+            if(totalCount == 0){
+                return(0);
+            }
+            long targetCount = Math.max(1L, (long)Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * totalCount));
+            long cumulativeCount = 0;
+            for(int i = 0; i < counts.length; i++){
+                cumulativeCount += counts[i];
+                if(cumulativeCount >= targetCount){
+                    return(Math.min(bucketUpperValue(i), maximumValue));
+                }
+            }
+            return(maximumValue);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.support.CamelContextHelper;
+import org.apache.camel.support.DefaultComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * A MITaF owned MLLP server (ingres only) component, an alternative to camel-mllp for MLLP ingres
+ * WUPs. URI format: {@code mitaf-mllp:hostname:port[?options]} - see {@link MITaFMLLPEndpoint} for the
+ * options.
+ *
+ * The exchanges it produces carry the same body, headers (CamelMllp*) and honour the same
+ * acknowledgement exchange properties as the camel-mllp consumer, so the existing ingres bean chain
+ * works unchanged on top of it.
+ */
+public class MITaFMLLPComponent extends DefaultComponent {
+    private static final Logger LOG = LoggerFactory.getLogger(MITaFMLLPComponent.class);
+
+    public static final String MITAF_MLLP_SCHEME = "mitaf-mllp";
+
+    public static final String MLLP_INGRES_EXECUTION_MODE_PARAMETER_NAME = "MLLP_INGRES_EXECUTION_MODE";
+    public static final String MLLP_INGRES_MAXIMUM_SESSIONS_PARAMETER_NAME = "MLLP_INGRES_MAXIMUM_SESSIONS";
+    public static final String MLLP_INGRES_JOURNAL_DIRECTORY_PARAMETER_NAME = "MLLP_INGRES_JOURNAL_DIRECTORY";
+    public static final String MLLP_INGRES_JOURNAL_SEGMENT_SIZE_PARAMETER_NAME = "MLLP_INGRES_JOURNAL_SEGMENT_SIZE";
+
+    //
+    // Constructor(s)
+    //
+
+    public MITaFMLLPComponent(){
+        super();
+    }
+
+    public MITaFMLLPComponent(CamelContext camelContext){
+        super(camelContext);
+    }
+
+    /**
+     * Registers the component (under {@link #MITAF_MLLP_SCHEME}) with the CamelContext, if it isn't
+     * already registered.
+     *
+     * @param camelContext the CamelContext
+     */
+    public static void registerWith(CamelContext camelContext){
+        synchronized (camelContext) {
+            if (camelContext.hasComponent(MITAF_MLLP_SCHEME) == null) {
+                LOG.info(".registerWith(): Registering component, scheme->{}", MITAF_MLLP_SCHEME);
+                camelContext.addComponent(MITAF_MLLP_SCHEME, new MITaFMLLPComponent(camelContext));
+            }
+        }
+    }
+
+    //
+    // Endpoint Creation
+    //
+
+    @Override
+    protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
+        MITaFMLLPEndpoint endpoint = new MITaFMLLPEndpoint(uri, this);
+        int separatorIndex = remaining.lastIndexOf(':');
+        if(separatorIndex != -1){
+            endpoint.setHostname(remaining.substring(0, separatorIndex));
+            endpoint.setPort(CamelContextHelper.parseInt(getCamelContext(), remaining.substring(separatorIndex + 1)));
+        } else {
+            endpoint.setPort(CamelContextHelper.parseInt(getCamelContext(), remaining));
+        }
+        setProperties(endpoint, parameters);
+        return(endpoint);
+    }
+}
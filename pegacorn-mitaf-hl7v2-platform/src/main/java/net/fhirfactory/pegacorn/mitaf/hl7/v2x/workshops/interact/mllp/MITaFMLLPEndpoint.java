@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.apache.camel.Category;
+import org.apache.camel.Consumer;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.ResolveEndpointFailedException;
+import org.apache.camel.spi.UriEndpoint;
+import org.apache.camel.support.DefaultEndpoint;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Endpoint of the {@link MITaFMLLPComponent}. Only consumers (MLLP servers) are supported: using a
+ * mitaf-mllp URI as a producer (e.g. in a to()) fails the route at start up with a
+ * ResolveEndpointFailedException.
+ *
+ * Options (URI parameters):
+ * <ul>
+ *     <li>executionMode - "platform-threads", "virtual-threads" or "event-loop" (see {@link MLLPIngresExecutionModeEnum})</li>
+ *     <li>maxConcurrentSessions - the maximum number of concurrently open connections</li>
+ *     <li>eventLoopThreads - the size of the shared event loop group (fixed by the first event-loop port to start)</li>
+ *     <li>maxPendingFrames - decoded frames queued per connection before reading is paused (event-loop mode)</li>
+ *     <li>acceptTimeout, bindTimeout, bindRetryInterval, idleTimeout - in milliseconds (in event-loop mode
+ *     idleTimeout is checked by a once-a-second sweep, so it closes idle connections up to a second late)</li>
+ *     <li>backlog, receiveBufferSize, maxFrameSize - in connections/bytes</li>
+ *     <li>stringPayload - deliver the message body as a String (true) or byte[] (false)</li>
+ *     <li>charsetName - the charset used when MSH-18 doesn't specify one</li>
+ *     <li>tcpNoDelay, keepAlive - socket options</li>
+ *     <li>journalDirectory - journal received frames here (in a sub-directory named for the port) and
+ *     acknowledge them once journaled, see {@link MLLPIngresJournal}; not set (the default) disables the journal</li>
+ *     <li>journalSegmentSize - the size of a journal segment file, in bytes</li>
+ *     <li>journalMaximumRetries - deliveries of a journaled frame retried before it is set aside as failed</li>
+ * </ul>
+ */
+@UriEndpoint(scheme = MITaFMLLPComponent.MITAF_MLLP_SCHEME, title = "MITaF MLLP", syntax = "mitaf-mllp:hostname:port",
+        consumerOnly = true, category = {Category.NETWORKING, Category.HL7})
+public class MITaFMLLPEndpoint extends DefaultEndpoint {
+    private static final int DEFAULT_MAXIMUM_CONCURRENT_SESSIONS = 1000;
+    private static final int DEFAULT_ACCEPT_TIMEOUT = 45000;
+    private static final int DEFAULT_BIND_TIMEOUT = 20000;
+    private static final int DEFAULT_BIND_RETRY_INTERVAL = 5000;
+    private static final int DEFAULT_BACKLOG = 5;
+    private static final int DEFAULT_RECEIVE_BUFFER_SIZE = 65536;
+    private static final int DEFAULT_MAXIMUM_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_MAXIMUM_PENDING_FRAMES = 1;
+    private static final int DEFAULT_EVENT_LOOP_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int DEFAULT_JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_JOURNAL_MAXIMUM_RETRIES = 5;
+    private static final int JOURNAL_SEGMENT_HEADROOM = 4096;
+
+    private String hostname;
+    private int port;
+    private MLLPIngresExecutionModeEnum executionMode;
+    private int maxConcurrentSessions;
+    private int eventLoopThreads;
+    private int maxPendingFrames;
+    private int acceptTimeout;
+    private int bindTimeout;
+    private int bindRetryInterval;
+    private int idleTimeout;
+    private int backlog;
+    private int receiveBufferSize;
+    private int maxFrameSize;
+    private boolean stringPayload;
+    private String charsetName;
+    private boolean tcpNoDelay;
+    private boolean keepAlive;
+    private String journalDirectory;
+    private int journalSegmentSize;
+    private int journalMaximumRetries;
+
+    //
+    // Constructor(s)
+    //
+
+    public MITaFMLLPEndpoint(String endpointUri, MITaFMLLPComponent component){
+        super(endpointUri, component);
+        this.hostname = null;
+        this.port = 0;
+        this.executionMode = MLLPIngresExecutionModeEnum.MLLP_INGRES_EXECUTION_PLATFORM_THREADS;
+        this.maxConcurrentSessions = DEFAULT_MAXIMUM_CONCURRENT_SESSIONS;
+        this.eventLoopThreads = DEFAULT_EVENT_LOOP_THREADS;
+        this.maxPendingFrames = DEFAULT_MAXIMUM_PENDING_FRAMES;
+        this.acceptTimeout = DEFAULT_ACCEPT_TIMEOUT;
+        this.bindTimeout = DEFAULT_BIND_TIMEOUT;
+        this.bindRetryInterval = DEFAULT_BIND_RETRY_INTERVAL;
+        this.idleTimeout = 0;
+        this.backlog = DEFAULT_BACKLOG;
+        this.receiveBufferSize = DEFAULT_RECEIVE_BUFFER_SIZE;
+        this.maxFrameSize = DEFAULT_MAXIMUM_FRAME_SIZE;
+        this.stringPayload = true;
+        this.charsetName = StandardCharsets.ISO_8859_1.name();
+        this.tcpNoDelay = true;
+        this.keepAlive = true;
+        this.journalDirectory = null;
+        this.journalSegmentSize = DEFAULT_JOURNAL_SEGMENT_SIZE;
+        this.journalMaximumRetries = DEFAULT_JOURNAL_MAXIMUM_RETRIES;
+    }
+
+    //
+    // Endpoint Methods
+    //
+
+    @Override
+    public Producer createProducer() throws Exception {
+        throw new ResolveEndpointFailedException(getEndpointUri(), MITaFMLLPComponent.MITAF_MLLP_SCHEME + " endpoints only support consumers, use camel-mllp for egress");
+    }
+
+    @Override
+    public Consumer createConsumer(Processor processor) throws Exception {
+        MITaFMLLPServerConsumer consumer = new MITaFMLLPServerConsumer(this, processor);
+        configureConsumer(consumer);
+        return(consumer);
+    }
+
+    @Override
+    public MITaFMLLPComponent getComponent() {
+        return (MITaFMLLPComponent)super.getComponent();
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public String getHostname() {
+        return hostname;
+    }
+
+    public void setHostname(String hostname) {
+        this.hostname = hostname;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public MLLPIngresExecutionModeEnum getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(String executionMode) {
+        MLLPIngresExecutionModeEnum mode = MLLPIngresExecutionModeEnum.fromToken(executionMode);
+        if(mode == null || mode.equals(MLLPIngresExecutionModeEnum.MLLP_INGRES_EXECUTION_CAMEL_MLLP)){
+            throw new IllegalArgumentException("Unsupported executionMode->" + executionMode);
+        }
+        this.executionMode = mode;
+    }
+
+    public int getMaxConcurrentSessions() {
+        return maxConcurrentSessions;
+    }
+
+    public void setMaxConcurrentSessions(int maxConcurrentSessions) {
+        this.maxConcurrentSessions = maxConcurrentSessions;
+    }
+
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    public void setEventLoopThreads(int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    public int getMaxPendingFrames() {
+        return maxPendingFrames;
+    }
+
+    public void setMaxPendingFrames(int maxPendingFrames) {
+        this.maxPendingFrames = maxPendingFrames;
+    }
+
+    public int getAcceptTimeout() {
+        return acceptTimeout;
+    }
+
+    public void setAcceptTimeout(int acceptTimeout) {
+        this.acceptTimeout = acceptTimeout;
+    }
+
+    public int getBindTimeout() {
+        return bindTimeout;
+    }
+
+    public void setBindTimeout(int bindTimeout) {
+        this.bindTimeout = bindTimeout;
+    }
+
+    public int getBindRetryInterval() {
+        return bindRetryInterval;
+    }
+
+    public void setBindRetryInterval(int bindRetryInterval) {
+        this.bindRetryInterval = bindRetryInterval;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    public void setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    public boolean isStringPayload() {
+        return stringPayload;
+    }
+
+    public void setStringPayload(boolean stringPayload) {
+        this.stringPayload = stringPayload;
+    }
+
+    public String getCharsetName() {
+        return charsetName;
+    }
+
+    public void setCharsetName(String charsetName) {
+        this.charsetName = charsetName;
+    }
+
+    public Charset getCharset(){
+        return(Charset.forName(getCharsetName()));
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    public void setJournalDirectory(String journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    public boolean isJournaled(){
+        return(journalDirectory != null && !journalDirectory.isBlank());
+    }
+
+    public int getJournalSegmentSize() {
+        return journalSegmentSize;
+    }
+
+    public void setJournalSegmentSize(int journalSegmentSize) {
+        this.journalSegmentSize = journalSegmentSize;
+    }
+
+    /**
+     * @return the journal segment size, raised if need be so that a segment can hold a frame of maxFrameSize
+     */
+    public int getEffectiveJournalSegmentSize(){
+        long minimumSegmentSize = (long)getMaxFrameSize() + JOURNAL_SEGMENT_HEADROOM;
+        return((int)Math.min(Integer.MAX_VALUE, Math.max(getJournalSegmentSize(), minimumSegmentSize)));
+    }
+
+    public int getJournalMaximumRetries() {
+        return journalMaximumRetries;
+    }
+
+    public void setJournalMaximumRetries(int journalMaximumRetries) {
+        this.journalMaximumRetries = journalMaximumRetries;
+    }
+}
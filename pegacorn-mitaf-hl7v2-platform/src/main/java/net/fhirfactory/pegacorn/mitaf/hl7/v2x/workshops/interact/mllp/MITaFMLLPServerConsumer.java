@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.apache.camel.Processor;
+import org.apache.camel.support.DefaultConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.file.Paths;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MLLP server consumer of the {@link MITaFMLLPComponent}. Each accepted connection is run by an
+ * {@link MLLPBlockingSession} on its own thread - a virtual thread in the "virtual-threads"
+ * execution mode - and the number of concurrent sessions is capped by a semaphore
+ * (maxConcurrentSessions) rather than by the size of a thread pool. Connections beyond the cap are
+ * closed on accept.
+ *
+ * In the "event-loop" execution mode there is no thread per connection: the port is served by the
+ * {@link MLLPEventLoopGroup} shared by all event-loop ports of the processing plant, each connection
+ * being an {@link MLLPNioConnection} (pooled direct read buffers, in-place frame decoding, read-side
+ * backpressure) whose frames are run through the route on a worker executor. The worker executor
+ * uses virtual threads where available, so the hazards below apply to it too.
+ *
+ * <b>Pinning hazards (virtual-threads mode).</b> On JDK 21 to 23 a virtual thread that blocks while
+ * holding a monitor (inside a synchronized method/block, or in Object.wait()) stays mounted on - pins -
+ * its carrier thread, and there are only as many carriers as cores. The whole ingres bean chain runs
+ * synchronously on the session thread, so:
+ * <ul>
+ *     <li>the session loop itself holds no monitors while blocked on the socket (which is why
+ *     camel-mllp's MllpSocketBuffer, whose readFrom() is synchronized, is not used);</li>
+ *     <li>beans in the chain (captureMLLPMessage through IngresActivityBeginRegistration) must not do
+ *     blocking I/O or waits inside synchronized code - use java.util.concurrent locks instead;</li>
+ *     <li>logging appenders that write under a monitor (e.g. logback before 1.3) pin for the duration of
+ *     the write, so keep per-message logging at debug in this mode;</li>
+ *     <li>anything that runs native code (JNI) or class initialisation on the session thread also pins.</li>
+ * </ul>
+ * Use -Djdk.tracePinnedThreads=full to find pinning in a running plant. From JDK 24 (JEP 491)
+ * synchronized no longer pins.
+ *
+ * When a journalDirectory is configured the port's {@link MLLPIngresJournal} is opened (and its
+ * unprocessed entries queued for replay) before the port starts listening, and closed after the
+ * last session has been stopped.
+ */
+public class MITaFMLLPServerConsumer extends DefaultConsumer {
+    private static final Logger LOG = LoggerFactory.getLogger(MITaFMLLPServerConsumer.class);
+
+    private static final long SESSION_SHUTDOWN_WAIT_IN_MILLISECONDS = 5000L;
+
+    private final MLLPFrameProcessor frameProcessor;
+    private final Set<MLLPSession> activeSessions;
+    private Semaphore sessionPermits;
+    private ExecutorService sessionExecutor;
+    private ServerSocket serverSocket;
+    private MLLPEventLoopGroup eventLoopGroup;
+    private MLLPNioAcceptor acceptor;
+    private MLLPEventLoop acceptorEventLoop;
+    private Thread acceptThread;
+    private volatile boolean accepting;
+    private volatile MLLPIngresJournal journal;
+    private MLLPIngresJournalReplayer journalReplayer;
+
+    //
+    // Constructor(s)
+    //
+
+    public MITaFMLLPServerConsumer(MITaFMLLPEndpoint endpoint, Processor processor){
+        super(endpoint, processor);
+        this.frameProcessor = new MLLPFrameProcessor(this);
+        this.activeSessions = ConcurrentHashMap.newKeySet();
+        this.accepting = false;
+    }
+
+    //
+    // Lifecycle
+    //
+
+    @Override
+    protected void doStart() throws Exception {
+        getLogger().debug(".doStart(): Entry");
+        super.doStart();
+        MITaFMLLPEndpoint endpoint = getEndpoint();
+        boolean eventLoopMode = endpoint.getExecutionMode().equals(MLLPIngresExecutionModeEnum.MLLP_INGRES_EXECUTION_EVENT_LOOP);
+        boolean useVirtualThreads = eventLoopMode || endpoint.getExecutionMode().equals(MLLPIngresExecutionModeEnum.MLLP_INGRES_EXECUTION_VIRTUAL_THREADS);
+        if(useVirtualThreads && VirtualThreadSupport.isVirtualThreadSupported() && VirtualThreadSupport.isSynchronizedPinningRuntime()){
+            getLogger().info(".doStart(): Virtual threads on Java {} pin carriers inside synchronized blocks, see MITaFMLLPServerConsumer for the hazards", Runtime.version().feature());
+        }
+        this.sessionPermits = new Semaphore(endpoint.getMaxConcurrentSessions());
+        this.sessionExecutor = VirtualThreadSupport.newSessionExecutor("MLLP-" + endpoint.getPort() + "-", useVirtualThreads);
+        if(endpoint.isJournaled()){
+            startJournal(endpoint);
+        }
+        this.accepting = true;
+        if(eventLoopMode){
+            startEventLoopListener(endpoint);
+        } else {
+            this.serverSocket = bind(endpoint);
+            this.acceptThread = new Thread(this::acceptConnections, "MLLP-Accept-" + endpoint.getPort());
+            this.acceptThread.setDaemon(true);
+            this.acceptThread.start();
+        }
+        getLogger().info(".doStart(): Listening, port->{}, executionMode->{}, maxConcurrentSessions->{}", endpoint.getPort(), endpoint.getExecutionMode(), endpoint.getMaxConcurrentSessions());
+        getLogger().debug(".doStart(): Exit");
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        getLogger().debug(".doStop(): Entry");
+        this.accepting = false;
+        if(serverSocket != null){
+            try {
+                serverSocket.close();
+            } catch (IOException closeException) {
+                getLogger().debug(".doStop(): Error closing server socket, error->{}", closeException.getMessage());
+            }
+            serverSocket = null;
+        }
+        if(acceptor != null){
+            acceptorEventLoop.execute(acceptor::close);
+            acceptor = null;
+            acceptorEventLoop = null;
+        }
+        for(MLLPSession currentSession: activeSessions){
+            currentSession.close();
+        }
+        if(sessionExecutor != null){
+            sessionExecutor.shutdown();
+            if(!sessionExecutor.awaitTermination(SESSION_SHUTDOWN_WAIT_IN_MILLISECONDS, TimeUnit.MILLISECONDS)){
+                sessionExecutor.shutdownNow();
+            }
+            sessionExecutor = null;
+        }
+        stopJournal();
+        if(eventLoopGroup != null){
+            MLLPEventLoopGroup.releaseSharedGroup();
+            eventLoopGroup = null;
+        }
+        super.doStop();
+        getLogger().debug(".doStop(): Exit");
+    }
+
+    //
+    // Journal
+    //
+
+    protected void startJournal(MITaFMLLPEndpoint endpoint) throws Exception {
+        MLLPIngresJournal newJournal = new MLLPIngresJournal(Paths.get(endpoint.getJournalDirectory(), Integer.toString(endpoint.getPort())), endpoint.getEffectiveJournalSegmentSize());
+        newJournal.open();
+        this.journalReplayer = new MLLPIngresJournalReplayer(newJournal, frameProcessor, endpoint.getJournalMaximumRetries());
+        this.journal = newJournal;
+        this.journalReplayer.start("MLLP-Journal-" + endpoint.getPort());
+    }
+
+    protected void stopJournal() throws InterruptedException {
+        MLLPIngresJournal currentJournal = journal;
+        if(currentJournal == null){
+            return;
+        }
+        this.journal = null;
+        if(journalReplayer != null){
+            journalReplayer.stop();
+            journalReplayer = null;
+        }
+        currentJournal.close();
+    }
+
+    //
+    // Connection Handling
+    //
+
+    protected ServerSocket bind(MITaFMLLPEndpoint endpoint) throws IOException, InterruptedException {
+        InetSocketAddress bindAddress = endpoint.getHostname() == null ? new InetSocketAddress(endpoint.getPort()) : new InetSocketAddress(endpoint.getHostname(), endpoint.getPort());
+        long bindDeadline = System.currentTimeMillis() + endpoint.getBindTimeout();
+        while(true){
+            ServerSocket newServerSocket = new ServerSocket();
+            try {
+                newServerSocket.setReuseAddress(true);
+                newServerSocket.setSoTimeout(endpoint.getAcceptTimeout());
+                newServerSocket.bind(bindAddress, endpoint.getBacklog());
+                return(newServerSocket);
+            } catch (BindException bindException) {
+                newServerSocket.close();
+                if(System.currentTimeMillis() >= bindDeadline){
+                    throw bindException;
+                }
+                getLogger().warn(".bind(): Cannot bind to {}, retrying in {}ms", bindAddress, endpoint.getBindRetryInterval());
+                Thread.sleep(endpoint.getBindRetryInterval());
+            }
+        }
+    }
+
+    protected void startEventLoopListener(MITaFMLLPEndpoint endpoint) throws IOException, InterruptedException {
+        this.eventLoopGroup = MLLPEventLoopGroup.acquireSharedGroup(endpoint.getEventLoopThreads());
+        ServerSocketChannel serverChannel;
+        try {
+            serverChannel = bindChannel(endpoint);
+        } catch (IOException | InterruptedException bindException) {
+            MLLPEventLoopGroup.releaseSharedGroup();
+            this.eventLoopGroup = null;
+            throw bindException;
+        }
+        this.acceptor = new MLLPNioAcceptor(this, serverChannel);
+        this.acceptorEventLoop = eventLoopGroup.next();
+        acceptorEventLoop.register(serverChannel, SelectionKey.OP_ACCEPT, acceptor);
+    }
+
+    protected ServerSocketChannel bindChannel(MITaFMLLPEndpoint endpoint) throws IOException, InterruptedException {
+        InetSocketAddress bindAddress = endpoint.getHostname() == null ? new InetSocketAddress(endpoint.getPort()) : new InetSocketAddress(endpoint.getHostname(), endpoint.getPort());
+        long bindDeadline = System.currentTimeMillis() + endpoint.getBindTimeout();
+        while(true){
+            ServerSocketChannel newServerChannel = ServerSocketChannel.open();
+            try {
+                newServerChannel.configureBlocking(false);
+                newServerChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                newServerChannel.bind(bindAddress, endpoint.getBacklog());
+                return(newServerChannel);
+            } catch (BindException bindException) {
+                newServerChannel.close();
+                if(System.currentTimeMillis() >= bindDeadline){
+                    throw bindException;
+                }
+                getLogger().warn(".bindChannel(): Cannot bind to {}, retrying in {}ms", bindAddress, endpoint.getBindRetryInterval());
+                Thread.sleep(endpoint.getBindRetryInterval());
+            }
+        }
+    }
+
+    protected void acceptConnections(){
+        getLogger().debug(".acceptConnections(): Entry");
+        while(accepting){
+            Socket socket = null;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketTimeoutException acceptTimeout) {
+                continue;
+            } catch (IOException acceptException) {
+                if(accepting){
+                    getLogger().warn(".acceptConnections(): Accept failed, error->{}", acceptException.getMessage());
+                }
+                continue;
+            }
+            startSession(socket);
+        }
+        getLogger().debug(".acceptConnections(): Exit");
+    }
+
+    protected void startSession(Socket socket){
+        MITaFMLLPEndpoint endpoint = getEndpoint();
+        if(!sessionPermits.tryAcquire()){
+            getLogger().warn(".startSession(): Maximum concurrent sessions ({}) reached, rejecting connection from {}", endpoint.getMaxConcurrentSessions(), socket.getRemoteSocketAddress());
+            closeQuietly(socket);
+            return;
+        }
+        MLLPBlockingSession session = null;
+        try {
+            socket.setTcpNoDelay(endpoint.isTcpNoDelay());
+            socket.setKeepAlive(endpoint.isKeepAlive());
+            socket.setSoTimeout(endpoint.getIdleTimeout());
+            session = new MLLPBlockingSession(this, socket);
+            activeSessions.add(session);
+            sessionExecutor.execute(session);
+            getLogger().info(".startSession(): Connection accepted, remoteAddress->{}", session.getRemoteAddress());
+        } catch (IOException | RejectedExecutionException startException) {
+            getLogger().warn(".startSession(): Cannot start session, error->{}", startException.getMessage());
+            if(session != null){
+                activeSessions.remove(session);
+            }
+            sessionPermits.release();
+            closeQuietly(socket);
+        }
+    }
+
+    protected void startSession(SocketChannel channel){
+        MITaFMLLPEndpoint endpoint = getEndpoint();
+        if(!accepting || !sessionPermits.tryAcquire()){
+            getLogger().warn(".startSession(): Maximum concurrent sessions ({}) reached, rejecting connection", endpoint.getMaxConcurrentSessions());
+            closeQuietly(channel);
+            return;
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, endpoint.isTcpNoDelay());
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, endpoint.isKeepAlive());
+            MLLPEventLoop connectionEventLoop = eventLoopGroup.next();
+            MLLPNioConnection connection = new MLLPNioConnection(this, channel, connectionEventLoop, sessionExecutor);
+            activeSessions.add(connection);
+            connectionEventLoop.register(channel, SelectionKey.OP_READ, connection);
+            getLogger().info(".startSession(): Connection accepted, remoteAddress->{}, eventLoop->{}", connection.getRemoteAddress(), connectionEventLoop.getName());
+        } catch (IOException startException) {
+            getLogger().warn(".startSession(): Cannot start session, error->{}", startException.getMessage());
+            sessionPermits.release();
+            closeQuietly(channel);
+        }
+    }
+
+    protected void sessionClosed(MLLPSession session){
+        if(activeSessions.remove(session)){
+            sessionPermits.release();
+        }
+    }
+
+    private void closeQuietly(SocketChannel channel){
+        try {
+            channel.close();
+        } catch (IOException closeException) {
+            getLogger().debug(".closeQuietly(): Error closing channel, error->{}", closeException.getMessage());
+        }
+    }
+
+    private void closeQuietly(Socket socket){
+        try {
+            socket.close();
+        } catch (IOException closeException) {
+            getLogger().debug(".closeQuietly(): Error closing socket, error->{}", closeException.getMessage());
+        }
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    @Override
+    public MITaFMLLPEndpoint getEndpoint() {
+        return (MITaFMLLPEndpoint)super.getEndpoint();
+    }
+
+    public MLLPFrameProcessor getFrameProcessor() {
+        return frameProcessor;
+    }
+
+    /**
+     * @return the journal of the port, or null if it is not journaled
+     */
+    public MLLPIngresJournal getJournal() {
+        return journal;
+    }
+
+    public MLLPIngresJournalReplayer getJournalReplayer() {
+        return journalReplayer;
+    }
+
+    public int getActiveSessionCount(){
+        return(activeSessions.size());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Generates an HL7 acknowledgement (ACK) for a received message, laid out the way camel-mllp's
+ * automatic acknowledgement is: the MSH of the original message with the sending and receiving
+ * application/facility swapped and MSH-9 set to ACK^trigger, followed by an MSA segment.
+ */
+public final class MLLPAcknowledgementGenerator {
+    public static final String APPLICATION_ACCEPT = "AA";
+    public static final String APPLICATION_ERROR = "AE";
+    public static final String APPLICATION_REJECT = "AR";
+
+    private MLLPAcknowledgementGenerator(){
+    }
+
+    /**
+     * @param mshFields the MSH fields of the message being acknowledged (see
+     *                  {@link MLLPMessageHeaderExtractor#extractMSHFields(byte[], java.nio.charset.Charset)})
+     * @param acknowledgementCode the MSA-1 value (AA, AE or AR)
+     * @param msaText the (optional) MSA-3 text
+     * @return the acknowledgement message, or null if the message had no usable MSH segment
+     */
+    public static String generateAcknowledgement(String[] mshFields, String acknowledgementCode, String msaText){
+        if(mshFields == null || mshFields.length < 3){
+            return(null);
+        }
+        String fieldSeparator = mshFields[1];
+        String encodingCharacters = mshFields[2];
+        String componentSeparator = StringUtils.isNotEmpty(encodingCharacters) ? encodingCharacters.substring(0, 1) : "^";
+        StringBuilder acknowledgement = new StringBuilder(256);
+        acknowledgement.append("MSH").append(fieldSeparator).append(encodingCharacters);
+        appendField(acknowledgement, fieldSeparator, MLLPMessageHeaderExtractor.getField(mshFields, 5));
+        appendField(acknowledgement, fieldSeparator, MLLPMessageHeaderExtractor.getField(mshFields, 6));
+        appendField(acknowledgement, fieldSeparator, MLLPMessageHeaderExtractor.getField(mshFields, 3));
+        appendField(acknowledgement, fieldSeparator, MLLPMessageHeaderExtractor.getField(mshFields, 4));
+        appendField(acknowledgement, fieldSeparator, MLLPMessageHeaderExtractor.getField(mshFields, 7));
+        appendField(acknowledgement, fieldSeparator, MLLPMessageHeaderExtractor.getField(mshFields, 8));
+        String triggerEvent = MLLPMessageHeaderExtractor.getComponent(mshFields, 9, 2);
+        if(StringUtils.isNotEmpty(triggerEvent)){
+            appendField(acknowledgement, fieldSeparator, "ACK" + componentSeparator + triggerEvent);
+        } else {
+            appendField(acknowledgement, fieldSeparator, "ACK");
+        }
+        for(int fieldNumber = 10; fieldNumber < mshFields.length; fieldNumber += 1){
+            appendField(acknowledgement, fieldSeparator, mshFields[fieldNumber]);
+        }
+        acknowledgement.append('\r');
+        acknowledgement.append("MSA").append(fieldSeparator).append(acknowledgementCode);
+        appendField(acknowledgement, fieldSeparator, MLLPMessageHeaderExtractor.getField(mshFields, 10));
+        if(StringUtils.isNotEmpty(msaText)){
+            appendField(acknowledgement, fieldSeparator, msaText);
+        }
+        acknowledgement.append('\r');
+        return(acknowledgement.toString());
+    }
+
+    /**
+     * Finds the MSA segment by its name at the start of a segment (followed by the field separator
+     * declared in MSH-1), so "MSA" appearing within the MSH (or any other segment) is not mistaken for it.
+     *
+     * @param acknowledgement an acknowledgement message
+     * @return the MSA-1 (acknowledgement code) of the message, or null if there is no MSA segment
+     */
+    public static String extractAcknowledgementCode(String acknowledgement){
+        if(acknowledgement == null || acknowledgement.length() < 4 || !acknowledgement.startsWith("MSH")){
+            return(null);
+        }
+        char fieldSeparator = acknowledgement.charAt(3);
+        int segmentStart = 0;
+        while(segmentStart < acknowledgement.length()){
+            int segmentEnd = findSegmentEnd(acknowledgement, segmentStart);
+            if(segmentEnd - segmentStart > 3 && acknowledgement.startsWith("MSA", segmentStart) && acknowledgement.charAt(segmentStart + 3) == fieldSeparator){
+                int fieldStart = segmentStart + 4;
+                int fieldEnd = acknowledgement.indexOf(fieldSeparator, fieldStart);
+                if(fieldEnd < 0 || fieldEnd > segmentEnd){
+                    fieldEnd = segmentEnd;
+                }
+                String acknowledgementCode = acknowledgement.substring(fieldStart, fieldEnd).trim();
+                return(acknowledgementCode.isEmpty() ? null : acknowledgementCode);
+            }
+            segmentStart = segmentEnd + 1;
+        }
+        return(null);
+    }
+
+    private static int findSegmentEnd(String message, int segmentStart){
+        for(int position = segmentStart; position < message.length(); position += 1){
+            char currentChar = message.charAt(position);
+            if(currentChar == '\r' || currentChar == '\n'){
+                return(position);
+            }
+        }
+        return(message.length());
+    }
+
+    private static void appendField(StringBuilder builder, String fieldSeparator, String value){
+        builder.append(fieldSeparator);
+        if(value != null){
+            builder.append(value);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.apache.camel.component.mllp.MllpProtocolConstants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads MLLP frames (0x0B message 0x1C 0x0D) from a blocking InputStream. Any bytes received outside
+ * of a frame are discarded.
+ *
+ * Deliberately free of monitors (it does its own read buffering rather than using a
+ * BufferedInputStream, and accumulates frames without a ByteArrayOutputStream) so a virtual thread
+ * blocked in {@link #readFrame()} never pins its carrier thread. Not thread-safe - each connection
+ * has its own reader.
+ */
+public class MLLPBlockingFrameReader {
+    private static final int INITIAL_FRAME_CAPACITY = 4096;
+
+    private final InputStream inputStream;
+    private final int maximumFrameSize;
+    private final byte[] readBuffer;
+    private int readPosition;
+    private int readLimit;
+    private byte[] frameBuffer;
+    private int pushedBackByte;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPBlockingFrameReader(InputStream inputStream, int readBufferSize, int maximumFrameSize){
+        this.inputStream = inputStream;
+        this.maximumFrameSize = maximumFrameSize;
+        this.readBuffer = new byte[readBufferSize];
+        this.readPosition = 0;
+        this.readLimit = 0;
+        this.frameBuffer = new byte[INITIAL_FRAME_CAPACITY];
+        this.pushedBackByte = -1;
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Blocks until a complete frame has been received.
+     *
+     * @return the frame content (without the envelope), or null if the stream ended between frames
+     * @throws IOException if the stream fails, ends part way through a frame, or the frame is too large
+     */
+    public byte[] readFrame() throws IOException {
+        int currentByte = nextByte();
+        while(currentByte != MllpProtocolConstants.START_OF_BLOCK){
+            if(currentByte == -1){
+                return(null);
+            }
+            currentByte = nextByte();
+        }
+        int frameLength = 0;
+        while(true){
+            currentByte = nextByte();
+            if(currentByte == -1){
+                throw new IOException("Connection closed part way through an MLLP frame, bytesReceived->" + frameLength);
+            }
+            if(currentByte == MllpProtocolConstants.END_OF_BLOCK){
+                int trailingByte = nextByte();
+                if(trailingByte != MllpProtocolConstants.END_OF_DATA && trailingByte != -1){
+                    pushedBackByte = trailingByte;
+                }
+                return(Arrays.copyOf(frameBuffer, frameLength));
+            }
+            if(frameLength == frameBuffer.length){
+                if(frameLength >= maximumFrameSize){
+                    throw new IOException("MLLP frame exceeds maximum size->" + maximumFrameSize);
+                }
+                frameBuffer = Arrays.copyOf(frameBuffer, Math.min(maximumFrameSize, frameBuffer.length * 2));
+            }
+            frameBuffer[frameLength] = (byte)currentByte;
+            frameLength += 1;
+        }
+    }
+
+    private int nextByte() throws IOException {
+        if(pushedBackByte != -1){
+            int currentByte = pushedBackByte;
+            pushedBackByte = -1;
+            return(currentByte);
+        }
+        if(readPosition == readLimit){
+            int bytesRead = inputStream.read(readBuffer, 0, readBuffer.length);
+            if(bytesRead <= 0){
+                return(-1);
+            }
+            readPosition = 0;
+            readLimit = bytesRead;
+        }
+        int currentByte = readBuffer[readPosition] & 0xFF;
+        readPosition += 1;
+        return(currentByte);
+    }
+}
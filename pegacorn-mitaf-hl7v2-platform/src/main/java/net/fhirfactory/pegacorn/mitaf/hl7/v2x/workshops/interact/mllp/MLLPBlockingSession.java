@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.apache.camel.component.mllp.MllpProtocolConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * The receive-and-process loop of a single MLLP connection: read a frame, run it through the route
+ * (synchronously), write the acknowledgement, repeat. Runs on its own (platform or virtual) thread.
+ */
+public class MLLPBlockingSession implements Runnable, MLLPSession {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPBlockingSession.class);
+
+    private final MITaFMLLPServerConsumer consumer;
+    private final Socket socket;
+    private final String localAddress;
+    private final String remoteAddress;
+    private volatile boolean running;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPBlockingSession(MITaFMLLPServerConsumer consumer, Socket socket){
+        this.consumer = consumer;
+        this.socket = socket;
+        this.localAddress = String.valueOf(socket.getLocalSocketAddress());
+        this.remoteAddress = String.valueOf(socket.getRemoteSocketAddress());
+        this.running = true;
+    }
+
+    //
+    // Session Loop
+    //
+
+    @Override
+    public void run() {
+        getLogger().debug(".run(): Entry, remoteAddress->{}", remoteAddress);
+        MITaFMLLPEndpoint endpoint = consumer.getEndpoint();
+        try {
+            MLLPBlockingFrameReader frameReader = new MLLPBlockingFrameReader(socket.getInputStream(), endpoint.getReceiveBufferSize(), endpoint.getMaxFrameSize());
+            OutputStream outputStream = socket.getOutputStream();
+            while(running && !socket.isClosed()){
+                byte[] frame = frameReader.readFrame();
+                if(frame == null){
+                    getLogger().debug(".run(): Connection closed by remote, remoteAddress->{}", remoteAddress);
+                    break;
+                }
+                MLLPFrameProcessor.MLLPFrameOutcome outcome = consumer.getFrameProcessor().processFrame(frame, localAddress, remoteAddress);
+                if(outcome.getAcknowledgement() != null){
+                    writeFrame(outputStream, outcome.getAcknowledgement());
+                }
+                if(outcome.isCloseConnection()){
+                    getLogger().debug(".run(): Closing connection as requested, remoteAddress->{}", remoteAddress);
+                    break;
+                }
+            }
+        } catch (SocketTimeoutException idleTimeout) {
+            getLogger().info(".run(): Idle timeout, closing connection, remoteAddress->{}", remoteAddress);
+        } catch (IOException ioException) {
+            if(running) {
+                getLogger().warn(".run(): Connection error, remoteAddress->{}, error->{}", remoteAddress, ioException.getMessage());
+            }
+        } finally {
+            close();
+            consumer.sessionClosed(this);
+        }
+        getLogger().debug(".run(): Exit, remoteAddress->{}", remoteAddress);
+    }
+
+    @Override
+    public void close(){
+        running = false;
+        try {
+            socket.close();
+        } catch (IOException closeException) {
+            getLogger().debug(".close(): Error closing socket, error->{}", closeException.getMessage());
+        }
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private void writeFrame(OutputStream outputStream, byte[] payload) throws IOException {
+        byte[] envelopedPayload = new byte[payload.length + 3];
+        envelopedPayload[0] = MllpProtocolConstants.START_OF_BLOCK;
+        System.arraycopy(payload, 0, envelopedPayload, 1, payload.length);
+        envelopedPayload[payload.length + 1] = MllpProtocolConstants.END_OF_BLOCK;
+        envelopedPayload[payload.length + 2] = MllpProtocolConstants.END_OF_DATA;
+        outputStream.write(envelopedPayload);
+        outputStream.flush();
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of fixed-size direct read buffers for the event-loop MLLP connections. A connection borrows
+ * a buffer only for the duration of a single read/decode (anything that doesn't form a complete frame
+ * is copied out by the {@link MLLPFrameDecoder}), so the number of buffers in use is bounded by the
+ * number of event loops rather than by the number of connections.
+ */
+public class MLLPDirectBufferPool {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_MAXIMUM_POOLED_BUFFERS = 64;
+
+    private static final MLLPDirectBufferPool SHARED_POOL = new MLLPDirectBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAXIMUM_POOLED_BUFFERS);
+
+    private final int bufferSize;
+    private final int maximumPooledBuffers;
+    private final ConcurrentLinkedQueue<ByteBuffer> pooledBuffers;
+    private final AtomicInteger pooledBufferCount;
+    private final AtomicLong allocatedBufferCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPDirectBufferPool(int bufferSize, int maximumPooledBuffers){
+        this.bufferSize = bufferSize;
+        this.maximumPooledBuffers = maximumPooledBuffers;
+        this.pooledBuffers = new ConcurrentLinkedQueue<>();
+        this.pooledBufferCount = new AtomicInteger(0);
+        this.allocatedBufferCount = new AtomicLong(0);
+    }
+
+    public static MLLPDirectBufferPool getSharedPool(){
+        return(SHARED_POOL);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @return a cleared direct buffer of {@link #getBufferSize()} bytes
+     */
+    public ByteBuffer acquire(){
+        ByteBuffer buffer = pooledBuffers.poll();
+        if(buffer == null){
+            allocatedBufferCount.incrementAndGet();
+            return(ByteBuffer.allocateDirect(bufferSize));
+        }
+        pooledBufferCount.decrementAndGet();
+        buffer.clear();
+        return(buffer);
+    }
+
+    /**
+     * Returns the buffer to the pool (or leaves it to the garbage collector if the pool is full).
+     *
+     * @param buffer a buffer obtained from {@link #acquire()}, must not be used afterwards
+     */
+    public void release(ByteBuffer buffer){
+        if(buffer == null || buffer.capacity() != bufferSize){
+            return;
+        }
+        if(pooledBufferCount.incrementAndGet() > maximumPooledBuffers){
+            pooledBufferCount.decrementAndGet();
+            return;
+        }
+        pooledBuffers.offer(buffer);
+    }
+
+    //
+    // Getters
+    //
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getPooledBufferCount(){
+        return(pooledBufferCount.get());
+    }
+
+    public long getAllocatedBufferCount(){
+        return(allocatedBufferCount.get());
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single selector thread. Channels are registered with it, and tasks that touch its channels are
+ * run by it (see {@link #execute(Runnable)}), so channel state is only ever touched by this thread.
+ * About once a second the loop also sweeps its channels for idle ones (see
+ * {@link MLLPSelectionHandler#checkIdle(long)}).
+ */
+public class MLLPEventLoop implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPEventLoop.class);
+
+    private static final long SELECT_TIMEOUT_IN_MILLISECONDS = 1000L;
+    private static final long IDLE_SWEEP_INTERVAL_IN_NANOSECONDS = TimeUnit.MILLISECONDS.toNanos(SELECT_TIMEOUT_IN_MILLISECONDS);
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> pendingTasks;
+    private final Thread loopThread;
+    private volatile boolean running;
+    private long lastIdleSweep;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPEventLoop(String threadName) throws IOException {
+        this.selector = Selector.open();
+        this.pendingTasks = new ConcurrentLinkedQueue<>();
+        this.loopThread = new Thread(this, threadName);
+        this.loopThread.setDaemon(true);
+        this.running = false;
+        this.lastIdleSweep = System.nanoTime();
+    }
+
+    //
+    // Lifecycle
+    //
+
+    public void start(){
+        this.running = true;
+        this.loopThread.start();
+    }
+
+    public void shutdown(){
+        this.running = false;
+        selector.wakeup();
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Runs the task on the event loop thread (immediately, if called from it).
+     *
+     * @param task the task
+     */
+    public void execute(Runnable task){
+        if(inEventLoop()){
+            task.run();
+            return;
+        }
+        pendingTasks.offer(task);
+        selector.wakeup();
+    }
+
+    public boolean inEventLoop(){
+        return(Thread.currentThread() == loopThread);
+    }
+
+    /**
+     * Registers the channel with this loop's selector (asynchronously, on the loop thread), then calls
+     * {@link MLLPSelectionHandler#registered(SelectionKey)}.
+     *
+     * @param channel a non-blocking channel
+     * @param interestOps the initial interest operations
+     * @param handler the handler of the channel's events
+     */
+    public void register(SelectableChannel channel, int interestOps, MLLPSelectionHandler handler){
+        execute(() -> {
+            try {
+                SelectionKey selectionKey = channel.register(selector, interestOps, handler);
+                handler.registered(selectionKey);
+            } catch (ClosedChannelException closedChannelException) {
+                getLogger().debug(".register(): Channel closed before registration");
+                handler.close();
+            }
+        });
+    }
+
+    //
+    // Event Loop
+    //
+
+    @Override
+    public void run() {
+        getLogger().info(".run(): Event loop started, thread->{}", loopThread.getName());
+        while(running){
+            try {
+                selector.select(SELECT_TIMEOUT_IN_MILLISECONDS);
+                runPendingTasks();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while(selectedKeys.hasNext()){
+                    SelectionKey selectionKey = selectedKeys.next();
+                    selectedKeys.remove();
+                    handleSelection(selectionKey);
+                }
+                sweepIdleChannels();
+            } catch (IOException selectException) {
+                getLogger().warn(".run(): Select failed, error->{}", selectException.getMessage());
+            } catch (RuntimeException unexpectedException) {
+                getLogger().error(".run(): Unexpected error in event loop, error->{}", unexpectedException.getMessage(), unexpectedException);
+            }
+        }
+        runPendingTasks();
+        for(SelectionKey currentKey: selector.keys()){
+            ((MLLPSelectionHandler)currentKey.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException closeException) {
+            getLogger().debug(".run(): Error closing selector, error->{}", closeException.getMessage());
+        }
+        getLogger().info(".run(): Event loop stopped, thread->{}", loopThread.getName());
+    }
+
+    private void handleSelection(SelectionKey selectionKey){
+        MLLPSelectionHandler handler = (MLLPSelectionHandler)selectionKey.attachment();
+        if(!selectionKey.isValid()){
+            handler.close();
+            return;
+        }
+        try {
+            handler.handleSelection(selectionKey);
+        } catch (IOException | RuntimeException handlerException) {
+            getLogger().debug(".handleSelection(): Closing channel, error->{}", handlerException.getMessage());
+            handler.close();
+        }
+    }
+
+    private void sweepIdleChannels(){
+        long now = System.nanoTime();
+        if(now - lastIdleSweep < IDLE_SWEEP_INTERVAL_IN_NANOSECONDS){
+            return;
+        }
+        lastIdleSweep = now;
+        for(SelectionKey currentKey: selector.keys()){
+            if(currentKey.isValid()){
+                ((MLLPSelectionHandler)currentKey.attachment()).checkIdle(now);
+            }
+        }
+    }
+
+    private void runPendingTasks(){
+        Runnable task = pendingTasks.poll();
+        while(task != null){
+            try {
+                task.run();
+            } catch (RuntimeException taskException) {
+                getLogger().warn(".runPendingTasks(): Task failed, error->{}", taskException.getMessage(), taskException);
+            }
+            task = pendingTasks.poll();
+        }
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public String getName(){
+        return(loopThread.getName());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The set of {@link MLLPEventLoop}s shared by all the "event-loop" MLLP ingres ports of the
+ * processing plant. It is created by the first consumer that starts (which also fixes the number of
+ * loops) and shut down when the last one stops.
+ */
+public class MLLPEventLoopGroup {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPEventLoopGroup.class);
+
+    private static final Object SHARED_GROUP_LOCK = new Object();
+    private static MLLPEventLoopGroup sharedGroup = null;
+    private static int sharedGroupReferenceCount = 0;
+
+    private final MLLPEventLoop[] eventLoops;
+    private final AtomicInteger nextEventLoop;
+
+    //
+    // Constructor(s)
+    //
+
+    private MLLPEventLoopGroup(int eventLoopCount) throws IOException {
+        this.eventLoops = new MLLPEventLoop[Math.max(1, eventLoopCount)];
+        for(int counter = 0; counter < eventLoops.length; counter += 1){
+            eventLoops[counter] = new MLLPEventLoop("MLLP-EventLoop-" + counter);
+        }
+        this.nextEventLoop = new AtomicInteger(0);
+    }
+
+    /**
+     * @param eventLoopCount the number of event loops, if the shared group has to be created
+     * @return the shared group (started)
+     * @throws IOException if a selector cannot be opened
+     */
+    public static MLLPEventLoopGroup acquireSharedGroup(int eventLoopCount) throws IOException {
+        synchronized (SHARED_GROUP_LOCK) {
+            if (sharedGroup == null) {
+                MLLPEventLoopGroup newGroup = new MLLPEventLoopGroup(eventLoopCount);
+                for (MLLPEventLoop currentLoop : newGroup.eventLoops) {
+                    currentLoop.start();
+                }
+                sharedGroup = newGroup;
+                LOG.info(".acquireSharedGroup(): Started shared MLLP event loop group, eventLoops->{}", newGroup.eventLoops.length);
+            }
+            sharedGroupReferenceCount += 1;
+            return (sharedGroup);
+        }
+    }
+
+    public static void releaseSharedGroup(){
+        synchronized (SHARED_GROUP_LOCK) {
+            if (sharedGroup == null) {
+                return;
+            }
+            sharedGroupReferenceCount -= 1;
+            if (sharedGroupReferenceCount <= 0) {
+                for (MLLPEventLoop currentLoop : sharedGroup.eventLoops) {
+                    currentLoop.shutdown();
+                }
+                LOG.info(".releaseSharedGroup(): Stopped shared MLLP event loop group");
+                sharedGroup = null;
+                sharedGroupReferenceCount = 0;
+            }
+        }
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @return the next event loop (round robin)
+     */
+    public MLLPEventLoop next(){
+        int index = Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length);
+        return(eventLoops[index]);
+    }
+
+    public int getEventLoopCount(){
+        return(eventLoops.length);
+    }
+}
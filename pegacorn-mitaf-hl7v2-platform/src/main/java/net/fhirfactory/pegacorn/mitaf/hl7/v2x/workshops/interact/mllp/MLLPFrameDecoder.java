@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.apache.camel.component.mllp.MllpProtocolConstants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Incremental decoder of MLLP frames (0x0B payload 0x1C 0x0D) from the (pooled) read buffers of an
+ * event-loop connection.
+ *
+ * The buffer is scanned in place. A frame that lies entirely within one read is copied exactly once,
+ * straight from the read buffer into the byte[] that becomes the message body; only a frame split
+ * across reads is accumulated (and is then trimmed to size when it completes). Bytes between frames
+ * are discarded, and the trailing 0x0D is skipped if present but not required, so a frame is
+ * delivered as soon as its 0x1C arrives. Not thread-safe - a decoder belongs to one connection.
+ */
+public class MLLPFrameDecoder {
+    private static final int INITIAL_PARTIAL_FRAME_SIZE = 4096;
+
+    private final int maximumFrameSize;
+    private boolean inFrame;
+    private boolean expectingEndOfData;
+    private byte[] partialFrame;
+    private int partialFrameLength;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPFrameDecoder(int maximumFrameSize){
+        this.maximumFrameSize = maximumFrameSize;
+        this.inFrame = false;
+        this.expectingEndOfData = false;
+        this.partialFrame = null;
+        this.partialFrameLength = 0;
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Decodes all the frames completed by the readable bytes of the buffer (which is fully consumed).
+     *
+     * @param buffer a buffer in read mode
+     * @param frameConsumer receives each completed frame payload (without the envelope)
+     * @throws IOException if a frame exceeds the maximum frame size
+     */
+    public void decode(ByteBuffer buffer, Consumer<byte[]> frameConsumer) throws IOException {
+        while(buffer.hasRemaining()){
+            if(expectingEndOfData){
+                expectingEndOfData = false;
+                if(buffer.get(buffer.position()) == MllpProtocolConstants.END_OF_DATA){
+                    buffer.position(buffer.position() + 1);
+                }
+                continue;
+            }
+            if(!inFrame){
+                int startOfBlock = indexOf(buffer, (byte)MllpProtocolConstants.START_OF_BLOCK);
+                if(startOfBlock < 0){
+                    buffer.position(buffer.limit());
+                    return;
+                }
+                buffer.position(startOfBlock + 1);
+                inFrame = true;
+                partialFrameLength = 0;
+                continue;
+            }
+            int endOfBlock = indexOf(buffer, (byte)MllpProtocolConstants.END_OF_BLOCK);
+            if(endOfBlock < 0){
+                appendPartialFrame(buffer, buffer.remaining());
+                return;
+            }
+            byte[] frame;
+            int length = endOfBlock - buffer.position();
+            if(partialFrameLength == 0){
+                checkFrameSize(length);
+                frame = new byte[length];
+                buffer.get(frame);
+            } else {
+                appendPartialFrame(buffer, length);
+                frame = Arrays.copyOf(partialFrame, partialFrameLength);
+                releasePartialFrame();
+            }
+            buffer.position(endOfBlock + 1);
+            inFrame = false;
+            expectingEndOfData = true;
+            frameConsumer.accept(frame);
+        }
+    }
+
+    public boolean isFramePending(){
+        return(inFrame && partialFrameLength > 0);
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private static int indexOf(ByteBuffer buffer, byte value){
+        int limit = buffer.limit();
+        for(int index = buffer.position(); index < limit; index += 1){
+            if(buffer.get(index) == value){
+                return(index);
+            }
+        }
+        return(-1);
+    }
+
+    private void appendPartialFrame(ByteBuffer buffer, int length) throws IOException {
+        int requiredLength = partialFrameLength + length;
+        checkFrameSize(requiredLength);
+        if(partialFrame == null || partialFrame.length < requiredLength){
+            int newSize = Math.max(requiredLength, partialFrame == null ? INITIAL_PARTIAL_FRAME_SIZE : partialFrame.length * 2);
+            partialFrame = partialFrame == null ? new byte[Math.min(newSize, maximumFrameSize)] : Arrays.copyOf(partialFrame, Math.min(newSize, maximumFrameSize));
+        }
+        buffer.get(partialFrame, partialFrameLength, length);
+        partialFrameLength = requiredLength;
+    }
+
+    private void releasePartialFrame(){
+        partialFrameLength = 0;
+        if(partialFrame != null && partialFrame.length > INITIAL_PARTIAL_FRAME_SIZE){
+            partialFrame = null;
+        }
+    }
+
+    private void checkFrameSize(int length) throws IOException {
+        if(length > maximumFrameSize){
+            throw new IOException("MLLP frame exceeds maximum frame size (" + maximumFrameSize + " bytes)");
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangePattern;
+import org.apache.camel.Message;
+import org.apache.camel.component.mllp.MllpConstants;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Turns a received MLLP frame into a Camel Exchange, runs it (synchronously) through the route and
+ * works out the acknowledgement to return - honouring the same exchange properties as camel-mllp
+ * (CamelMllpAcknowledgement, CamelMllpAcknowledgementString, CamelMllpAcknowledgementType,
+ * CamelMllpAcknowledgementMsaText, CamelMllpAutoAcknowledge, CamelMllpClose/ResetConnectionAfterSend).
+ *
+ * It is independent of how the frame was read, so it is shared by all the execution modes.
+ *
+ * When the port is journaled ({@link MLLPIngresJournal}) the frame is not run through the route here:
+ * it is appended to the journal and acknowledged (AA) as soon as the append is durable, and the
+ * {@link MLLPIngresJournalReplayer} later runs it through the route via {@link #processJournaledFrame(MLLPIngresJournalEntry)}.
+ */
+public class MLLPFrameProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPFrameProcessor.class);
+
+    private final MITaFMLLPServerConsumer consumer;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPFrameProcessor(MITaFMLLPServerConsumer consumer){
+        this.consumer = consumer;
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @param frame the received HL7 message (without the MLLP envelope)
+     * @param localAddress the local address of the connection
+     * @param remoteAddress the remote address of the connection
+     * @return the outcome (acknowledgement to send and whether to then close the connection)
+     */
+    public MLLPFrameOutcome processFrame(byte[] frame, String localAddress, String remoteAddress){
+        getLogger().debug(".processFrame(): Entry, frameSize->{}, remoteAddress->{}", frame.length, remoteAddress);
+        MLLPIngresJournal journal = consumer.getJournal();
+        if(journal != null){
+            MLLPFrameOutcome outcome = journalFrame(journal, frame, localAddress, remoteAddress);
+            getLogger().debug(".processFrame(): Exit, journaled, outcome->{}", outcome);
+            return(outcome);
+        }
+        MLLPFrameOutcome outcome = runFrame(frame, localAddress, remoteAddress);
+        getLogger().debug(".processFrame(): Exit, outcome->{}", outcome);
+        return(outcome);
+    }
+
+    /**
+     * Runs a frame read back from the journal through the route. The acknowledgement is not sent
+     * anywhere (the sender was acknowledged when the frame was journaled), it only decides whether
+     * the delivery succeeded.
+     *
+     * @param entry the journal entry
+     * @return the outcome; {@link MLLPFrameOutcome#isFailed()} if the route failed, or answered AE or AR
+     */
+    public MLLPFrameOutcome processJournaledFrame(MLLPIngresJournalEntry entry){
+        getLogger().debug(".processJournaledFrame(): Entry, entry->{}", entry);
+        MLLPFrameOutcome outcome = runFrame(entry.getFrame(), entry.getLocalAddress(), entry.getRemoteAddress());
+        getLogger().debug(".processJournaledFrame(): Exit, outcome->{}", outcome);
+        return(outcome);
+    }
+
+    protected MLLPFrameOutcome journalFrame(MLLPIngresJournal journal, byte[] frame, String localAddress, String remoteAddress){
+        Charset defaultCharset = consumer.getEndpoint().getCharset();
+        String[] mshFields = MLLPMessageHeaderExtractor.extractMSHFields(frame, defaultCharset);
+        Charset charset = MLLPMessageHeaderExtractor.resolveCharset(mshFields, defaultCharset);
+        String acknowledgementCode;
+        String msaText = null;
+        try {
+            journal.append(frame, localAddress, remoteAddress);
+            acknowledgementCode = MLLPAcknowledgementGenerator.APPLICATION_ACCEPT;
+        } catch (IOException journalException) {
+            getLogger().error(".journalFrame(): Cannot journal frame from {}, error->{}", remoteAddress, journalException.getMessage());
+            acknowledgementCode = MLLPAcknowledgementGenerator.APPLICATION_REJECT;
+            msaText = "Journal unavailable";
+        }
+        String acknowledgement = MLLPAcknowledgementGenerator.generateAcknowledgement(mshFields, acknowledgementCode, msaText);
+        if(acknowledgement == null){
+            getLogger().warn(".journalFrame(): Cannot generate acknowledgement, message has no MSH segment");
+            return(new MLLPFrameOutcome(null, false, acknowledgementCode, false));
+        }
+        return(new MLLPFrameOutcome(acknowledgement.getBytes(charset), false, acknowledgementCode, false));
+    }
+
+    protected MLLPFrameOutcome runFrame(byte[] frame, String localAddress, String remoteAddress){
+        MITaFMLLPEndpoint endpoint = consumer.getEndpoint();
+        Exchange exchange = consumer.createExchange(false);
+        try {
+            exchange.setPattern(ExchangePattern.InOut);
+            Charset defaultCharset = endpoint.getCharset();
+            String[] mshFields = MLLPMessageHeaderExtractor.extractMSHFields(frame, defaultCharset);
+            Charset charset = MLLPMessageHeaderExtractor.resolveCharset(mshFields, defaultCharset);
+            exchange.setProperty(Exchange.CHARSET_NAME, charset.name());
+
+            Message message = exchange.getMessage();
+            message.setHeader(MllpConstants.MLLP_LOCAL_ADDRESS, localAddress);
+            message.setHeader(MllpConstants.MLLP_REMOTE_ADDRESS, remoteAddress);
+            MLLPMessageHeaderExtractor.populateHeaders(message, mshFields);
+            if(endpoint.isStringPayload()){
+                message.setBody(new String(frame, charset));
+            } else {
+                message.setBody(frame);
+            }
+
+            try {
+                consumer.getProcessor().process(exchange);
+            } catch (Exception processingException) {
+                exchange.setException(processingException);
+            }
+
+            byte[] acknowledgement = resolveAcknowledgement(exchange, mshFields, charset);
+            if(exchange.getException() != null){
+                consumer.getExceptionHandler().handleException("Error processing MLLP frame", exchange, exchange.getException());
+            }
+            boolean closeConnection = exchange.getProperty(MllpConstants.MLLP_CLOSE_CONNECTION_AFTER_SEND, false, Boolean.class)
+                    || exchange.getProperty(MllpConstants.MLLP_RESET_CONNECTION_AFTER_SEND, false, Boolean.class);
+            String acknowledgementCode = exchange.getMessage().getHeader(MllpConstants.MLLP_ACKNOWLEDGEMENT_TYPE, String.class);
+            boolean failed = exchange.getException() != null
+                    || MLLPAcknowledgementGenerator.APPLICATION_REJECT.equals(acknowledgementCode)
+                    || MLLPAcknowledgementGenerator.APPLICATION_ERROR.equals(acknowledgementCode);
+            return(new MLLPFrameOutcome(acknowledgement, closeConnection, acknowledgementCode, failed));
+        } finally {
+            consumer.releaseExchange(exchange, false);
+        }
+    }
+
+    protected byte[] resolveAcknowledgement(Exchange exchange, String[] mshFields, Charset charset){
+        String acknowledgement = null;
+        byte[] acknowledgementBytes = exchange.getProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT, byte[].class);
+        if(acknowledgementBytes != null){
+            acknowledgement = new String(acknowledgementBytes, charset);
+        } else {
+            acknowledgement = exchange.getProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_STRING, String.class);
+        }
+        if(acknowledgement == null){
+            boolean autoAcknowledge = exchange.getProperty(MllpConstants.MLLP_AUTO_ACKNOWLEDGE, true, Boolean.class);
+            if(!autoAcknowledge){
+                getLogger().warn(".resolveAcknowledgement(): Automatic acknowledgement is disabled and no acknowledgement was provided");
+                return(null);
+            }
+            String acknowledgementCode = exchange.getProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_TYPE, String.class);
+            if(StringUtils.isEmpty(acknowledgementCode)){
+                acknowledgementCode = exchange.getException() == null ? MLLPAcknowledgementGenerator.APPLICATION_ACCEPT : MLLPAcknowledgementGenerator.APPLICATION_ERROR;
+            }
+            String msaText = exchange.getProperty(MllpConstants.MLLP_ACKNOWLEDGEMENT_MSA_TEXT, String.class);
+            if(StringUtils.isEmpty(msaText) && exchange.getException() != null){
+                msaText = exchange.getException().getClass().getName();
+            }
+            acknowledgement = MLLPAcknowledgementGenerator.generateAcknowledgement(mshFields, acknowledgementCode, msaText);
+            if(acknowledgement == null){
+                getLogger().warn(".resolveAcknowledgement(): Cannot generate acknowledgement, message has no MSH segment");
+                return(null);
+            }
+        }
+        acknowledgementBytes = acknowledgement.getBytes(charset);
+        Message message = exchange.getMessage();
+        message.setHeader(MllpConstants.MLLP_ACKNOWLEDGEMENT, acknowledgementBytes);
+        message.setHeader(MllpConstants.MLLP_ACKNOWLEDGEMENT_STRING, acknowledgement);
+        String acknowledgementType = MLLPAcknowledgementGenerator.extractAcknowledgementCode(acknowledgement);
+        if(StringUtils.isNotEmpty(acknowledgementType)){
+            message.setHeader(MllpConstants.MLLP_ACKNOWLEDGEMENT_TYPE, acknowledgementType);
+        }
+        return(acknowledgementBytes);
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    //
+    // Outcome
+    //
+
+    public static class MLLPFrameOutcome {
+        private final byte[] acknowledgement;
+        private final boolean closeConnection;
+        private final String acknowledgementCode;
+        private final boolean failed;
+
+        public MLLPFrameOutcome(byte[] acknowledgement, boolean closeConnection){
+            this(acknowledgement, closeConnection, null, false);
+        }
+
+        public MLLPFrameOutcome(byte[] acknowledgement, boolean closeConnection, String acknowledgementCode, boolean failed){
+            this.acknowledgement = acknowledgement;
+            this.closeConnection = closeConnection;
+            this.acknowledgementCode = acknowledgementCode;
+            this.failed = failed;
+        }
+
+        public byte[] getAcknowledgement() {
+            return acknowledgement;
+        }
+
+        public boolean isCloseConnection() {
+            return closeConnection;
+        }
+
+        public String getAcknowledgementCode() {
+            return acknowledgementCode;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        @Override
+        public String toString() {
+            return "MLLPFrameOutcome{" +
+                    "acknowledgementSize=" + (acknowledgement == null ? 0 : acknowledgement.length) +
+                    ", closeConnection=" + closeConnection +
+                    ", acknowledgementCode=" + acknowledgementCode +
+                    ", failed=" + failed +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+/**
+ * How an MLLP ingres (server) endpoint receives and processes its connections.
+ *
+ * The mode is selected per MLLPServerAdapter (additional parameter
+ * {@link MITaFMLLPComponent#MLLP_INGRES_EXECUTION_MODE_PARAMETER_NAME}), the default being the
+ * standard camel-mllp consumer.
+ */
+public enum MLLPIngresExecutionModeEnum {
+    /**
+     * The standard camel-mllp consumer, a bounded pool of (maxConcurrentConsumers) platform threads.
+     */
+    MLLP_INGRES_EXECUTION_CAMEL_MLLP("camel-mllp"),
+    /**
+     * The MITaF MLLP consumer with one platform thread per connection (capped by maxConcurrentSessions).
+     */
+    MLLP_INGRES_EXECUTION_PLATFORM_THREADS("platform-threads"),
+    /**
+     * The MITaF MLLP consumer with one virtual thread per connection (capped by maxConcurrentSessions).
+     * Falls back to platform threads on a JVM without virtual thread support. See
+     * {@link MITaFMLLPServerConsumer} for the pinning hazards of this mode.
+     */
+    MLLP_INGRES_EXECUTION_VIRTUAL_THREADS("virtual-threads"),
+    /**
+     * The MITaF MLLP consumer on non-blocking channels, served by the selector threads shared by all
+     * event-loop ports of the processing plant (capped by maxConcurrentSessions). See
+     * {@link MLLPEventLoopGroup} and {@link MLLPNioConnection}.
+     */
+    MLLP_INGRES_EXECUTION_EVENT_LOOP("event-loop");
+
+    private final String token;
+
+    private MLLPIngresExecutionModeEnum(String token){
+        this.token = token;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public static MLLPIngresExecutionModeEnum fromToken(String token){
+        if(token == null){
+            return(null);
+        }
+        for(MLLPIngresExecutionModeEnum currentMode: values()){
+            if(currentMode.getToken().equalsIgnoreCase(token.trim())){
+                return(currentMode);
+            }
+        }
+        return(null);
+    }
+}
@@ -0,0 +1,837 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * The write-ahead journal of a journaled MLLP ingres port. Received frames are appended to
+ * memory-mapped, fixed-size segment files, and {@link #append(byte[], String, String)} returns once
+ * the record has been forced to disk - concurrent appenders share a single force (group commit). A
+ * single reader ({@link MLLPIngresJournalReplayer}) reads the durable records back in order and
+ * records its progress in a checkpoint; segments wholly behind the checkpoint are deleted.
+ *
+ * On {@link #open()} the journal recovers from whatever is on disk: the tail of the last segment is
+ * validated (CRC and sequence) record by record, anything torn is discarded, and reading resumes at
+ * the checkpoint - so every entry that was acknowledged but not yet processed is replayed. Entries
+ * processed after the last forced checkpoint are replayed too (at-least-once).
+ *
+ * Layout: a segment starts with [long magic][long first sequence], then records of
+ * [int length][int crc32c][long sequence][short length, local address][short length, remote address][int length, frame],
+ * where length covers everything after it and the CRC covers everything after itself. A length of -1
+ * marks the end of a segment. The length is written last, so a partially written record reads as the
+ * end of the journal.
+ *
+ * A record that cannot be read back (see {@link #skipUnreadableRecord(JournalCursor)}) is copied to the
+ * "failed" directory and stepped over. If the journal cannot carry on safely it is taken offline
+ * ({@link #takeOffline(String)}): appends then fail, so the sender is no longer acknowledged (AA) for
+ * frames that would never be processed.
+ */
+public class MLLPIngresJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPIngresJournal.class);
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".journal";
+    private static final String CHECKPOINT_FILE_NAME = "checkpoint";
+    private static final String FAILED_ENTRIES_DIRECTORY_NAME = "failed";
+
+    private static final long SEGMENT_MAGIC = 0x4D4C4C504A524E4CL;
+    private static final long CHECKPOINT_MAGIC = 0x4D4C4C50434B5054L;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final int RECORD_OVERHEAD = 4 + 4 + 8 + 2 + 2 + 4;
+    private static final int END_OF_SEGMENT = -1;
+    private static final int CHECKPOINT_SIZE = 32;
+    private static final Method UNMAPPER = findUnmapper();
+    private static final Object UNSAFE = findUnsafe();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ConcurrentSkipListMap<Long, JournalSegment> segments;
+    private final ReentrantLock appendLock;
+    private final ReentrantLock syncLock;
+    private final ReentrantLock mappingLock;
+    private volatile JournalSegment appendSegment;
+    private long nextSequence;
+    private volatile long appendedSequence;
+    private volatile long durableSequence;
+    private volatile boolean open;
+    private volatile boolean mapped;
+    private volatile String offlineReason;
+    private MappedByteBuffer checkpointBuffer;
+    private JournalCursor recoveredCursor;
+    private volatile Thread waitingReader;
+
+    private final AtomicLong appendCount;
+    private final AtomicLong forceCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPIngresJournal(Path directory, int segmentSize){
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segments = new ConcurrentSkipListMap<>();
+        this.appendLock = new ReentrantLock();
+        this.syncLock = new ReentrantLock();
+        this.mappingLock = new ReentrantLock();
+        this.nextSequence = 1;
+        this.appendedSequence = 0;
+        this.durableSequence = 0;
+        this.open = false;
+        this.appendCount = new AtomicLong(0);
+        this.forceCount = new AtomicLong(0);
+    }
+
+    //
+    // Lifecycle
+    //
+
+    /**
+     * Opens (creating or recovering) the journal.
+     *
+     * @throws IOException if the journal cannot be opened, or an older segment is corrupt
+     */
+    public void open() throws IOException {
+        getLogger().debug(".open(): Entry, directory->{}", directory);
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> segmentFiles = Files.newDirectoryStream(directory, SEGMENT_FILE_PREFIX + "*" + SEGMENT_FILE_SUFFIX)) {
+            for (Path segmentFile : segmentFiles) {
+                String fileName = segmentFile.getFileName().toString();
+                long segmentNumber = Long.parseLong(fileName.substring(SEGMENT_FILE_PREFIX.length(), fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+                segments.put(segmentNumber, mapSegment(segmentNumber, segmentFile));
+            }
+        }
+        // a last segment with a bad header was being created when the plant stopped
+        while(!segments.isEmpty() && !segments.lastEntry().getValue().isHeaderValid()){
+            Map.Entry<Long, JournalSegment> lastEntry = segments.pollLastEntry();
+            getLogger().warn(".open(): Discarding incomplete segment->{}", lastEntry.getKey());
+            unmap(lastEntry.getValue().getBuffer());
+            Files.deleteIfExists(segmentFile(lastEntry.getKey()));
+        }
+        for(JournalSegment currentSegment: segments.values()){
+            if(!currentSegment.isHeaderValid()){
+                throw new IOException("Corrupt journal segment " + currentSegment.getSegmentNumber() + " in " + directory);
+            }
+        }
+        if(segments.isEmpty()){
+            JournalSegment firstSegment = createSegment(0, 1);
+            segments.put(firstSegment.getSegmentNumber(), firstSegment);
+        }
+        recoverAppendPosition();
+        recoverCheckpoint();
+        this.mapped = true;
+        this.open = true;
+        getLogger().info(".open(): Journal open, directory->{}, segments->{}, nextSequence->{}, entriesToReplay->{}", directory, segments.size(), nextSequence, durableSequence - recoveredCursor.getSequence() + 1);
+    }
+
+    /**
+     * Closes the journal, forcing and unmapping its files. A reader still running is not affected
+     * until its next read (which fails, the journal being closed).
+     */
+    public void close(){
+        getLogger().debug(".close(): Entry, directory->{}", directory);
+        appendLock.lock();
+        try {
+            open = false;
+        } finally {
+            appendLock.unlock();
+        }
+        // the mapping lock keeps the buffers mapped while a read or checkpoint is using them
+        mappingLock.lock();
+        try {
+            if(!mapped){
+                return;
+            }
+            mapped = false;
+            syncLock.lock();
+            try {
+                appendSegment.getBuffer().force();
+                if(checkpointBuffer != null){
+                    checkpointBuffer.force();
+                    unmap(checkpointBuffer);
+                }
+                for(JournalSegment currentSegment: segments.values()){
+                    unmap(currentSegment.getBuffer());
+                }
+            } finally {
+                syncLock.unlock();
+            }
+        } finally {
+            mappingLock.unlock();
+        }
+        getLogger().info(".close(): Journal closed, directory->{}, appended->{}, forces->{}", directory, appendCount.get(), forceCount.get());
+    }
+
+    /**
+     * Stops accepting frames (appends fail, so senders are rejected rather than acknowledged) - for
+     * when the journal's entries can no longer be processed. Entries already in the journal are kept
+     * and replayed on the next start.
+     *
+     * @param reason why the journal is being taken offline
+     */
+    public void takeOffline(String reason){
+        appendLock.lock();
+        try {
+            if(offlineReason == null){
+                offlineReason = reason;
+            }
+            open = false;
+        } finally {
+            appendLock.unlock();
+        }
+        getLogger().error(".takeOffline(): Journal taken offline, no further frames will be accepted, directory->{}, reason->{}", directory, reason);
+    }
+
+    //
+    // Appending
+    //
+
+    /**
+     * Appends a frame and waits until it is durable.
+     *
+     * @param frame the received frame (without the MLLP envelope)
+     * @param localAddress the local address of the connection
+     * @param remoteAddress the remote address of the connection
+     * @return the sequence number of the entry
+     * @throws IOException if the journal is closed, the frame cannot be written, or the force fails
+     */
+    public long append(byte[] frame, String localAddress, String remoteAddress) throws IOException {
+        byte[] localAddressBytes = encodeAddress(localAddress);
+        byte[] remoteAddressBytes = encodeAddress(remoteAddress);
+        int recordLength = RECORD_OVERHEAD - 4 + localAddressBytes.length + remoteAddressBytes.length + frame.length;
+        if(SEGMENT_HEADER_SIZE + 4 + recordLength + 4 > segmentSize){
+            throw new IOException("Frame of " + frame.length + " bytes does not fit in a journal segment of " + segmentSize + " bytes");
+        }
+        long sequence;
+        appendLock.lock();
+        try {
+            if(!open){
+                throw new IOException(offlineReason == null ? "Journal is closed" : "Journal is offline: " + offlineReason);
+            }
+            JournalSegment segment = appendSegment;
+            if(segment.getWriteOffset() + 4 + recordLength + 4 > segment.getSize()){
+                segment = rotate();
+            }
+            sequence = nextSequence;
+            int recordOffset = segment.getWriteOffset();
+            ByteBuffer writer = segment.getBuffer().duplicate();
+            writer.position(recordOffset + 8);
+            writer.putLong(sequence);
+            writer.putShort((short)localAddressBytes.length);
+            writer.put(localAddressBytes);
+            writer.putShort((short)remoteAddressBytes.length);
+            writer.put(remoteAddressBytes);
+            writer.putInt(frame.length);
+            writer.put(frame);
+            int recordEnd = writer.position();
+            writer.limit(recordEnd);
+            writer.position(recordOffset + 8);
+            CRC32C checksum = new CRC32C();
+            checksum.update(writer);
+            segment.getBuffer().putInt(recordOffset + 4, (int)checksum.getValue());
+            segment.getBuffer().putInt(recordOffset, recordLength);
+            segment.setWriteOffset(recordEnd);
+            nextSequence = sequence + 1;
+            appendedSequence = sequence;
+        } finally {
+            appendLock.unlock();
+        }
+        appendCount.incrementAndGet();
+        awaitDurable(sequence);
+        return(sequence);
+    }
+
+    private void awaitDurable(long sequence) throws IOException {
+        if(durableSequence >= sequence){
+            return;
+        }
+        syncLock.lock();
+        try {
+            if(durableSequence >= sequence){
+                return;
+            }
+            if(!mapped){
+                throw new IOException("Journal is closed");
+            }
+            // read the target before the segment: anything appended to an earlier segment was forced by rotate()
+            long targetSequence = appendedSequence;
+            JournalSegment segment = appendSegment;
+            segment.getBuffer().force();
+            forceCount.incrementAndGet();
+            durableSequence = targetSequence;
+        } catch (RuntimeException forceException) {
+            throw new IOException("Cannot force journal segment to disk", forceException);
+        } finally {
+            syncLock.unlock();
+        }
+        Thread reader = waitingReader;
+        if(reader != null){
+            LockSupport.unpark(reader);
+        }
+    }
+
+    private JournalSegment rotate() throws IOException {
+        JournalSegment currentSegment = appendSegment;
+        currentSegment.getBuffer().putInt(currentSegment.getWriteOffset(), END_OF_SEGMENT);
+        currentSegment.getBuffer().force();
+        JournalSegment nextSegment = createSegment(currentSegment.getSegmentNumber() + 1, nextSequence);
+        segments.put(nextSegment.getSegmentNumber(), nextSegment);
+        appendSegment = nextSegment;
+        getLogger().debug(".rotate(): Rotated to segment->{}", nextSegment.getSegmentNumber());
+        return(nextSegment);
+    }
+
+    //
+    // Reading
+    //
+
+    /**
+     * @return a cursor positioned at the first entry not yet checkpointed (where replay starts)
+     */
+    public JournalCursor getRecoveredCursor(){
+        return(new JournalCursor(recoveredCursor.getSegmentNumber(), recoveredCursor.getOffset(), recoveredCursor.getSequence()));
+    }
+
+    /**
+     * Reads the durable entry at the cursor. The cursor only moves to skip over segment ends; the
+     * reader advances it past the entry (with {@link JournalCursor#advance(MLLPIngresJournalEntry)}) once
+     * the entry has been dealt with.
+     *
+     * @param cursor the reader's cursor
+     * @return the entry, or null if there is no further durable entry
+     * @throws IOException if the record at the cursor is corrupt
+     */
+    public MLLPIngresJournalEntry read(JournalCursor cursor) throws IOException {
+        mappingLock.lock();
+        try {
+            if(!mapped){
+                throw new IOException("Journal is closed");
+            }
+            return(readMapped(cursor));
+        } finally {
+            mappingLock.unlock();
+        }
+    }
+
+    private MLLPIngresJournalEntry readMapped(JournalCursor cursor) throws IOException {
+        while(cursor.getSequence() <= durableSequence){
+            JournalSegment segment = segments.get(cursor.getSegmentNumber());
+            if(segment == null){
+                throw new IOException("Journal segment " + cursor.getSegmentNumber() + " is missing");
+            }
+            ByteBuffer reader = segment.getBuffer().duplicate();
+            int recordLength = reader.getInt(cursor.getOffset());
+            if(recordLength == END_OF_SEGMENT){
+                Long nextSegmentNumber = segments.higherKey(cursor.getSegmentNumber());
+                if(nextSegmentNumber == null){
+                    return(null);
+                }
+                cursor.moveTo(nextSegmentNumber, SEGMENT_HEADER_SIZE, cursor.getSequence());
+                continue;
+            }
+            MLLPIngresJournalEntry entry = readRecord(segment, cursor.getOffset(), cursor.getSequence());
+            if(entry == null){
+                throw new IOException("Corrupt journal record, segment->" + cursor.getSegmentNumber() + ", offset->" + cursor.getOffset() + ", sequence->" + cursor.getSequence());
+            }
+            return(entry);
+        }
+        return(null);
+    }
+
+    /**
+     * Moves the cursor past the record at the cursor, which could not be read (see
+     * {@link #read(JournalCursor)}), copying its raw bytes to the "failed" directory. If the record's
+     * length is intact (the record after it is readable) only the record is skipped, otherwise the
+     * rest of its segment is.
+     *
+     * @param cursor the reader's cursor
+     * @return the file the raw bytes were saved to, or null if there was nothing to save
+     * @throws IOException if the journal cannot be resynchronised or the bytes cannot be saved (the
+     * cursor is not moved)
+     */
+    public Path skipUnreadableRecord(JournalCursor cursor) throws IOException {
+        mappingLock.lock();
+        try {
+            if(!mapped){
+                throw new IOException("Journal is closed");
+            }
+            JournalSegment segment = segments.get(cursor.getSegmentNumber());
+            if(segment == null){
+                Long nextSegmentNumber = segments.higherKey(cursor.getSegmentNumber());
+                if(nextSegmentNumber == null){
+                    throw new IOException("Journal segment " + cursor.getSegmentNumber() + " is missing and there is no later segment");
+                }
+                JournalSegment nextSegment = segments.get(nextSegmentNumber);
+                getLogger().error(".skipUnreadableRecord(): Segment missing, skipping to segment->{}, fromSequence->{}, toSequence->{}", nextSegmentNumber, cursor.getSequence(), nextSegment.getFirstSequence());
+                cursor.moveTo(nextSegmentNumber, SEGMENT_HEADER_SIZE, nextSegment.getFirstSequence());
+                return(null);
+            }
+            int offset = cursor.getOffset();
+            int recordLength = segment.getBuffer().getInt(offset);
+            int recordEnd = offset + 4 + recordLength;
+            if(recordLength >= RECORD_OVERHEAD - 4 && recordEnd + 4 <= segment.getSize() && isRecordBoundary(segment, recordEnd, cursor.getSequence() + 1)){
+                Path savedFile = saveUnreadableBytes(segment, offset, recordEnd, cursor.getSequence());
+                cursor.moveTo(segment.getSegmentNumber(), recordEnd, cursor.getSequence() + 1);
+                return(savedFile);
+            }
+            // the length itself is damaged: step over the rest of the segment
+            Long nextSegmentNumber = segments.higherKey(segment.getSegmentNumber());
+            if(nextSegmentNumber != null){
+                JournalSegment nextSegment = segments.get(nextSegmentNumber);
+                Path savedFile = saveUnreadableBytes(segment, offset, segment.getSize(), cursor.getSequence());
+                getLogger().error(".skipUnreadableRecord(): Skipping rest of segment->{}, fromSequence->{}, toSequence->{}", segment.getSegmentNumber(), cursor.getSequence(), nextSegment.getFirstSequence());
+                cursor.moveTo(nextSegmentNumber, SEGMENT_HEADER_SIZE, nextSegment.getFirstSequence());
+                return(savedFile);
+            }
+            // the segment being appended to: everything up to the append position is skipped
+            appendLock.lock();
+            try {
+                Path savedFile = saveUnreadableBytes(segment, offset, segment.getWriteOffset(), cursor.getSequence());
+                getLogger().error(".skipUnreadableRecord(): Skipping to the end of the journal, fromSequence->{}, toSequence->{}", cursor.getSequence(), nextSequence);
+                cursor.moveTo(segment.getSegmentNumber(), segment.getWriteOffset(), nextSequence);
+                return(savedFile);
+            } finally {
+                appendLock.unlock();
+            }
+        } finally {
+            mappingLock.unlock();
+        }
+    }
+
+    private boolean isRecordBoundary(JournalSegment segment, int offset, long expectedSequence){
+        if(segment == appendSegment && offset == segment.getWriteOffset()){
+            return(true);
+        }
+        int nextLength = segment.getBuffer().getInt(offset);
+        return(nextLength == END_OF_SEGMENT || readRecord(segment, offset, expectedSequence) != null);
+    }
+
+    private Path saveUnreadableBytes(JournalSegment segment, int fromOffset, int toOffset, long sequence) throws IOException {
+        if(toOffset <= fromOffset){
+            return(null);
+        }
+        byte[] rawBytes = new byte[toOffset - fromOffset];
+        segment.getBuffer().duplicate().position(fromOffset).get(rawBytes);
+        Path failedDirectory = directory.resolve(FAILED_ENTRIES_DIRECTORY_NAME);
+        Files.createDirectories(failedDirectory);
+        Path failedFile = failedDirectory.resolve(String.format("%020d.unreadable", sequence));
+        Files.write(failedFile, rawBytes);
+        return(failedFile);
+    }
+
+    /**
+     * Parks the calling (reader) thread until an entry beyond the cursor is durable, or the timeout expires.
+     *
+     * @param cursor the reader's cursor
+     * @param timeoutInMilliseconds the maximum time to wait
+     */
+    public void awaitEntries(JournalCursor cursor, long timeoutInMilliseconds){
+        waitingReader = Thread.currentThread();
+        try {
+            if(cursor.getSequence() > durableSequence){
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeoutInMilliseconds));
+            }
+        } finally {
+            waitingReader = null;
+        }
+    }
+
+    /**
+     * Wakes a reader parked in {@link #awaitEntries(JournalCursor, long)} (e.g. so that it can stop).
+     */
+    public void wakeReader(){
+        Thread reader = waitingReader;
+        if(reader != null){
+            LockSupport.unpark(reader);
+        }
+    }
+
+    /**
+     * Records the reader's progress. A forced checkpoint is durable, and lets the segments before the
+     * cursor's segment be deleted.
+     *
+     * @param cursor the reader's cursor (positioned after the last processed entry)
+     * @param force true to force the checkpoint to disk (and delete consumed segments)
+     */
+    public void checkpoint(JournalCursor cursor, boolean force){
+        mappingLock.lock();
+        try {
+            if(mapped){
+                checkpointMapped(cursor, force);
+            }
+        } finally {
+            mappingLock.unlock();
+        }
+    }
+
+    private void checkpointMapped(JournalCursor cursor, boolean force){
+        long segmentNumber = cursor.getSegmentNumber();
+        long offset = cursor.getOffset();
+        long sequence = cursor.getSequence();
+        checkpointBuffer.putLong(0, segmentNumber);
+        checkpointBuffer.putLong(8, offset);
+        checkpointBuffer.putLong(16, sequence);
+        checkpointBuffer.putLong(24, segmentNumber ^ offset ^ sequence ^ CHECKPOINT_MAGIC);
+        if(!force){
+            return;
+        }
+        checkpointBuffer.force();
+        Map.Entry<Long, JournalSegment> oldestSegment = segments.firstEntry();
+        while(oldestSegment != null && oldestSegment.getKey() < segmentNumber){
+            segments.remove(oldestSegment.getKey());
+            // unmapped first: a mapped file keeps its disk space (and, on some platforms, cannot be deleted)
+            unmap(oldestSegment.getValue().getBuffer());
+            try {
+                Files.deleteIfExists(segmentFile(oldestSegment.getKey()));
+                getLogger().debug(".checkpoint(): Deleted consumed segment->{}", oldestSegment.getKey());
+            } catch (IOException deleteException) {
+                getLogger().warn(".checkpoint(): Cannot delete consumed segment->{}, error->{}", oldestSegment.getKey(), deleteException.getMessage());
+            }
+            oldestSegment = segments.firstEntry();
+        }
+    }
+
+    /**
+     * Writes an entry that could not be processed to the "failed" directory of the journal, so that it
+     * is not lost when the reader moves past it.
+     *
+     * @param entry the entry
+     * @return the file the frame was written to
+     * @throws IOException if it cannot be written
+     */
+    public Path saveFailedEntry(MLLPIngresJournalEntry entry) throws IOException {
+        Path failedDirectory = directory.resolve(FAILED_ENTRIES_DIRECTORY_NAME);
+        Files.createDirectories(failedDirectory);
+        Path failedFile = failedDirectory.resolve(String.format("%020d.hl7", entry.getSequence()));
+        Files.write(failedFile, entry.getFrame());
+        return(failedFile);
+    }
+
+    //
+    // Recovery
+    //
+
+    private void recoverAppendPosition() throws IOException {
+        JournalSegment lastSegment = segments.lastEntry().getValue();
+        long expectedSequence = lastSegment.getFirstSequence();
+        int offset = SEGMENT_HEADER_SIZE;
+        while(true){
+            if(offset + 4 > lastSegment.getSize()){
+                break;
+            }
+            int recordLength = lastSegment.getBuffer().getInt(offset);
+            if(recordLength == END_OF_SEGMENT){
+                // the plant stopped between ending this segment and creating the next one
+                lastSegment.setWriteOffset(offset);
+                lastSegment = createSegment(lastSegment.getSegmentNumber() + 1, expectedSequence);
+                segments.put(lastSegment.getSegmentNumber(), lastSegment);
+                offset = SEGMENT_HEADER_SIZE;
+                break;
+            }
+            if(readRecord(lastSegment, offset, expectedSequence) == null){
+                break;
+            }
+            offset += 4 + recordLength;
+            expectedSequence += 1;
+        }
+        lastSegment.setWriteOffset(offset);
+        this.appendSegment = lastSegment;
+        this.nextSequence = expectedSequence;
+        this.appendedSequence = expectedSequence - 1;
+        this.durableSequence = expectedSequence - 1;
+    }
+
+    private void recoverCheckpoint() throws IOException {
+        try (RandomAccessFile checkpointFile = new RandomAccessFile(directory.resolve(CHECKPOINT_FILE_NAME).toFile(), "rw")) {
+            checkpointFile.setLength(CHECKPOINT_SIZE);
+            checkpointBuffer = checkpointFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_SIZE);
+        }
+        long segmentNumber = checkpointBuffer.getLong(0);
+        long offset = checkpointBuffer.getLong(8);
+        long sequence = checkpointBuffer.getLong(16);
+        long check = checkpointBuffer.getLong(24);
+        boolean checkpointValid = check == (segmentNumber ^ offset ^ sequence ^ CHECKPOINT_MAGIC)
+                && segments.containsKey(segmentNumber)
+                && sequence >= 1 && sequence <= durableSequence + 1;
+        if(checkpointValid){
+            recoveredCursor = new JournalCursor(segmentNumber, (int)offset, sequence);
+        } else {
+            JournalSegment firstSegment = segments.firstEntry().getValue();
+            recoveredCursor = new JournalCursor(firstSegment.getSegmentNumber(), SEGMENT_HEADER_SIZE, firstSegment.getFirstSequence());
+            if(check != 0){
+                getLogger().warn(".recoverCheckpoint(): Checkpoint invalid, replaying from the oldest segment->{}", firstSegment.getSegmentNumber());
+            }
+        }
+    }
+
+    private MLLPIngresJournalEntry readRecord(JournalSegment segment, int offset, long expectedSequence){
+        ByteBuffer reader = segment.getBuffer().duplicate();
+        int recordLength = reader.getInt(offset);
+        if(recordLength < RECORD_OVERHEAD - 4 || offset + 4 + recordLength > segment.getSize()){
+            return(null);
+        }
+        int storedChecksum = reader.getInt(offset + 4);
+        reader.limit(offset + 4 + recordLength);
+        reader.position(offset + 8);
+        CRC32C checksum = new CRC32C();
+        checksum.update(reader);
+        if((int)checksum.getValue() != storedChecksum){
+            return(null);
+        }
+        reader.position(offset + 8);
+        long sequence = reader.getLong();
+        if(sequence != expectedSequence){
+            return(null);
+        }
+        String localAddress = decodeAddress(reader);
+        String remoteAddress = decodeAddress(reader);
+        byte[] frame = new byte[reader.getInt()];
+        reader.get(frame);
+        return(new MLLPIngresJournalEntry(sequence, segment.getSegmentNumber(), offset + 4 + recordLength, frame, localAddress, remoteAddress));
+    }
+
+    //
+    // Segment Files
+    //
+
+    private Path segmentFile(long segmentNumber){
+        return(directory.resolve(String.format("%s%020d%s", SEGMENT_FILE_PREFIX, segmentNumber, SEGMENT_FILE_SUFFIX)));
+    }
+
+    private JournalSegment createSegment(long segmentNumber, long firstSequence) throws IOException {
+        Path segmentFile = segmentFile(segmentNumber);
+        MappedByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile.toFile(), "rw")) {
+            file.setLength(segmentSize);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        buffer.putLong(0, SEGMENT_MAGIC);
+        buffer.putLong(8, firstSequence);
+        buffer.force();
+        return(new JournalSegment(segmentNumber, buffer));
+    }
+
+    private JournalSegment mapSegment(long segmentNumber, Path segmentFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile.toFile(), "rw")) {
+            return(new JournalSegment(segmentNumber, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length())));
+        }
+    }
+
+    /**
+     * Releases a mapping now rather than when the buffer is garbage collected. The buffer must not be
+     * used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer){
+        if(buffer == null || UNMAPPER == null || UNSAFE == null){
+            return;
+        }
+        try {
+            UNMAPPER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException unmapException) {
+            LOG.debug(".unmap(): Cannot unmap buffer, it is released when collected, error->{}", unmapException.getMessage());
+        }
+    }
+
+    private static Object findUnsafe(){
+        try {
+            Field unsafeField = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            return(unsafeField.get(null));
+        } catch (ReflectiveOperationException | RuntimeException unsafeException) {
+            return(null);
+        }
+    }
+
+    private static Method findUnmapper(){
+        try {
+            return(Class.forName("sun.misc.Unsafe").getMethod("invokeCleaner", ByteBuffer.class));
+        } catch (ReflectiveOperationException | RuntimeException unmapperException) {
+            LOG.info(".findUnmapper(): Journal segments cannot be unmapped explicitly, they are released when collected");
+            return(null);
+        }
+    }
+
+    private static byte[] encodeAddress(String address){
+        byte[] addressBytes = address == null ? new byte[0] : address.getBytes(StandardCharsets.UTF_8);
+        if(addressBytes.length > Short.MAX_VALUE){
+            return(new byte[0]);
+        }
+        return(addressBytes);
+    }
+
+    private static String decodeAddress(ByteBuffer reader){
+        byte[] addressBytes = new byte[reader.getShort()];
+        reader.get(addressBytes);
+        return(new String(addressBytes, StandardCharsets.UTF_8));
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getDurableSequence(){
+        return(durableSequence);
+    }
+
+    public long getAppendCount(){
+        return(appendCount.get());
+    }
+
+    public long getForceCount(){
+        return(forceCount.get());
+    }
+
+    public int getSegmentCount(){
+        return(segments.size());
+    }
+
+    public boolean isOffline(){
+        return(offlineReason != null);
+    }
+
+    public String getOfflineReason() {
+        return offlineReason;
+    }
+
+    //
+    // Segment
+    //
+
+    private static class JournalSegment {
+        private final long segmentNumber;
+        private final MappedByteBuffer buffer;
+        private int writeOffset;
+
+        public JournalSegment(long segmentNumber, MappedByteBuffer buffer){
+            this.segmentNumber = segmentNumber;
+            this.buffer = buffer;
+            this.writeOffset = SEGMENT_HEADER_SIZE;
+        }
+
+        public boolean isHeaderValid(){
+            return(buffer.capacity() >= SEGMENT_HEADER_SIZE && buffer.getLong(0) == SEGMENT_MAGIC);
+        }
+
+        public long getSegmentNumber() {
+            return segmentNumber;
+        }
+
+        public MappedByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        public long getFirstSequence(){
+            return(buffer.getLong(8));
+        }
+
+        public int getSize(){
+            return(buffer.capacity());
+        }
+
+        public int getWriteOffset() {
+            return writeOffset;
+        }
+
+        public void setWriteOffset(int writeOffset) {
+            this.writeOffset = writeOffset;
+        }
+    }
+
+    //
+    // Cursor
+    //
+
+    /**
+     * The reader's position in the journal: the segment and offset of the next record, and its sequence number.
+     */
+    public static class JournalCursor {
+        private long segmentNumber;
+        private int offset;
+        private long sequence;
+
+        public JournalCursor(long segmentNumber, int offset, long sequence){
+            this.segmentNumber = segmentNumber;
+            this.offset = offset;
+            this.sequence = sequence;
+        }
+
+        public void moveTo(long segmentNumber, int offset, long sequence){
+            this.segmentNumber = segmentNumber;
+            this.offset = offset;
+            this.sequence = sequence;
+        }
+
+        public void advance(MLLPIngresJournalEntry entry){
+            moveTo(entry.getSegmentNumber(), entry.getNextOffset(), entry.getSequence() + 1);
+        }
+
+        public long getSegmentNumber() {
+            return segmentNumber;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public String toString() {
+            return "JournalCursor{" +
+                    "segmentNumber=" + segmentNumber +
+                    ", offset=" + offset +
+                    ", sequence=" + sequence +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+/**
+ * A frame read back from the {@link MLLPIngresJournal}, with where the next record starts.
+ */
+public class MLLPIngresJournalEntry {
+    private final long sequence;
+    private final long segmentNumber;
+    private final int nextOffset;
+    private final byte[] frame;
+    private final String localAddress;
+    private final String remoteAddress;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPIngresJournalEntry(long sequence, long segmentNumber, int nextOffset, byte[] frame, String localAddress, String remoteAddress){
+        this.sequence = sequence;
+        this.segmentNumber = segmentNumber;
+        this.nextOffset = nextOffset;
+        this.frame = frame;
+        this.localAddress = localAddress;
+        this.remoteAddress = remoteAddress;
+    }
+
+    //
+    // Getters
+    //
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getSegmentNumber() {
+        return segmentNumber;
+    }
+
+    public int getNextOffset() {
+        return nextOffset;
+    }
+
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    public String getLocalAddress() {
+        return localAddress;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public String toString() {
+        return "MLLPIngresJournalEntry{" +
+                "sequence=" + sequence +
+                ", segmentNumber=" + segmentNumber +
+                ", frameSize=" + frame.length +
+                ", remoteAddress=" + remoteAddress +
+                '}';
+    }
+}
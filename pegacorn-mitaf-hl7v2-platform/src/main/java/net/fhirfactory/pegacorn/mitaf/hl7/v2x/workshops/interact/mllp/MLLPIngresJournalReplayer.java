@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the entries of an {@link MLLPIngresJournal} through the route, in journal order, on a
+ * single dedicated thread. An entry is only stepped past once it has been delivered: a failed
+ * delivery (the route threw, or answered AE or AR) is retried with a growing backoff, and after
+ * maximumRetries attempts the frame is written to the journal's "failed" directory and skipped, so
+ * that one poisoned message cannot hold up the port forever. A record that cannot be read from the
+ * journal at all is treated the same way (see {@link MLLPIngresJournal#skipUnreadableRecord(MLLPIngresJournal.JournalCursor)}).
+ *
+ * The sender was acknowledged when the frame was journaled, so the replayer must never silently stop:
+ * if it cannot move past an entry (the journal cannot be resynchronised, or a failed frame cannot be
+ * saved) it takes the journal offline - further frames are then rejected (AR) instead of acknowledged -
+ * and stops, leaving the entry in the journal to be replayed on the next start.
+ *
+ * Progress is checkpointed every {@value #CHECKPOINT_INTERVAL_IN_ENTRIES} entries or
+ * {@value #CHECKPOINT_INTERVAL_IN_MILLISECONDS}ms (and whenever the journal is drained); after a
+ * crash the entries delivered since the last checkpoint are delivered again.
+ */
+public class MLLPIngresJournalReplayer implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPIngresJournalReplayer.class);
+
+    private static final int CHECKPOINT_INTERVAL_IN_ENTRIES = 100;
+    private static final long CHECKPOINT_INTERVAL_IN_MILLISECONDS = 1000L;
+    private static final long IDLE_WAIT_IN_MILLISECONDS = 1000L;
+    private static final long INITIAL_RETRY_DELAY_IN_MILLISECONDS = 500L;
+    private static final long MAXIMUM_RETRY_DELAY_IN_MILLISECONDS = 30000L;
+    private static final long STOP_WAIT_IN_MILLISECONDS = 10000L;
+
+    private final MLLPIngresJournal journal;
+    private final MLLPFrameProcessor frameProcessor;
+    private final int maximumRetries;
+    private final MLLPIngresJournal.JournalCursor cursor;
+    private volatile boolean running;
+    private Thread replayThread;
+
+    private final AtomicLong deliveredCount;
+    private final AtomicLong retryCount;
+    private final AtomicLong failedCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPIngresJournalReplayer(MLLPIngresJournal journal, MLLPFrameProcessor frameProcessor, int maximumRetries){
+        this.journal = journal;
+        this.frameProcessor = frameProcessor;
+        this.maximumRetries = maximumRetries;
+        this.cursor = journal.getRecoveredCursor();
+        this.running = false;
+        this.deliveredCount = new AtomicLong(0);
+        this.retryCount = new AtomicLong(0);
+        this.failedCount = new AtomicLong(0);
+    }
+
+    //
+    // Lifecycle
+    //
+
+    public void start(String threadName){
+        getLogger().debug(".start(): Entry, threadName->{}, cursor->{}", threadName, cursor);
+        this.running = true;
+        this.replayThread = new Thread(this, threadName);
+        this.replayThread.setDaemon(true);
+        this.replayThread.start();
+    }
+
+    /**
+     * Stops the replayer, letting the delivery in progress (if any) finish, and checkpoints.
+     */
+    public void stop() throws InterruptedException {
+        getLogger().debug(".stop(): Entry");
+        this.running = false;
+        if(replayThread == null){
+            return;
+        }
+        journal.wakeReader();
+        replayThread.interrupt();
+        replayThread.join(STOP_WAIT_IN_MILLISECONDS);
+        if(replayThread.isAlive()){
+            getLogger().warn(".stop(): Replay thread did not stop within {}ms", STOP_WAIT_IN_MILLISECONDS);
+        }
+        replayThread = null;
+        getLogger().debug(".stop(): Exit, delivered->{}, retries->{}, failed->{}", deliveredCount.get(), retryCount.get(), failedCount.get());
+    }
+
+    //
+    // Business Methods
+    //
+
+    @Override
+    public void run() {
+        getLogger().info(".run(): Replaying journal, directory->{}, from->{}", journal.getDirectory(), cursor);
+        int entriesSinceCheckpoint = 0;
+        long lastCheckpointTime = System.currentTimeMillis();
+        while(running){
+            MLLPIngresJournalEntry entry;
+            try {
+                entry = journal.read(cursor);
+            } catch (IOException readException) {
+                if(!running || !skipUnreadableEntry(readException)){
+                    break;
+                }
+                journal.checkpoint(cursor, true);
+                entriesSinceCheckpoint = 0;
+                lastCheckpointTime = System.currentTimeMillis();
+                continue;
+            }
+            if(entry == null){
+                if(entriesSinceCheckpoint > 0){
+                    journal.checkpoint(cursor, true);
+                    entriesSinceCheckpoint = 0;
+                    lastCheckpointTime = System.currentTimeMillis();
+                }
+                journal.awaitEntries(cursor, IDLE_WAIT_IN_MILLISECONDS);
+                continue;
+            }
+            if(!deliver(entry)){
+                // stopping part way through the retries (or offline): the entry is replayed on the next start
+                break;
+            }
+            cursor.advance(entry);
+            entriesSinceCheckpoint += 1;
+            boolean forceCheckpoint = entriesSinceCheckpoint >= CHECKPOINT_INTERVAL_IN_ENTRIES
+                    || System.currentTimeMillis() - lastCheckpointTime >= CHECKPOINT_INTERVAL_IN_MILLISECONDS;
+            journal.checkpoint(cursor, forceCheckpoint);
+            if(forceCheckpoint){
+                entriesSinceCheckpoint = 0;
+                lastCheckpointTime = System.currentTimeMillis();
+            }
+        }
+        journal.checkpoint(cursor, true);
+        getLogger().info(".run(): Replay stopped, cursor->{}", cursor);
+    }
+
+    /**
+     * @return true if the entry has been dealt with (delivered, or saved as failed), false if the
+     * replayer was stopped before it could be, or the journal was taken offline
+     */
+    protected boolean deliver(MLLPIngresJournalEntry entry){
+        int attempt = 0;
+        while(true){
+            MLLPFrameProcessor.MLLPFrameOutcome outcome = frameProcessor.processJournaledFrame(entry);
+            if(!outcome.isFailed()){
+                deliveredCount.incrementAndGet();
+                return(true);
+            }
+            attempt += 1;
+            if(attempt > maximumRetries){
+                return(saveFailedEntry(entry, outcome));
+            }
+            long retryDelay = Math.min(MAXIMUM_RETRY_DELAY_IN_MILLISECONDS, INITIAL_RETRY_DELAY_IN_MILLISECONDS << Math.min(attempt - 1, 16));
+            getLogger().warn(".deliver(): Delivery failed, sequence->{}, acknowledgementCode->{}, attempt->{}, retrying in {}ms", entry.getSequence(), outcome.getAcknowledgementCode(), attempt, retryDelay);
+            retryCount.incrementAndGet();
+            if(!running){
+                return(false);
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(retryDelay);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                return(false);
+            }
+        }
+    }
+
+    /**
+     * @return true if the entry was saved (and can be stepped past), false if it could not be - the
+     * journal is then taken offline, so that the entry is not lost
+     */
+    private boolean saveFailedEntry(MLLPIngresJournalEntry entry, MLLPFrameProcessor.MLLPFrameOutcome outcome){
+        try {
+            Path failedFile = journal.saveFailedEntry(entry);
+            failedCount.incrementAndGet();
+            getLogger().error(".saveFailedEntry(): Delivery failed after {} retries, sequence->{}, acknowledgementCode->{}, saved->{}", maximumRetries, entry.getSequence(), outcome.getAcknowledgementCode(), failedFile);
+            return(true);
+        } catch (IOException saveException) {
+            getLogger().error(".saveFailedEntry(): Delivery failed after {} retries and cannot be saved, sequence->{}, remoteAddress->{}, error->{}", maximumRetries, entry.getSequence(), entry.getRemoteAddress(), saveException.getMessage());
+            journal.takeOffline("Cannot save undeliverable entry " + entry.getSequence() + ": " + saveException.getMessage());
+            return(false);
+        }
+    }
+
+    /**
+     * @return true if the cursor was moved past the unreadable record, false if it could not be - the
+     * journal is then taken offline
+     */
+    private boolean skipUnreadableEntry(IOException readException){
+        getLogger().error(".skipUnreadableEntry(): Cannot read journal, cursor->{}, error->{}", cursor, readException.getMessage());
+        long fromSequence = cursor.getSequence();
+        try {
+            Path savedFile = journal.skipUnreadableRecord(cursor);
+            failedCount.addAndGet(Math.max(1, cursor.getSequence() - fromSequence));
+            getLogger().error(".skipUnreadableEntry(): Skipped unreadable entries, fromSequence->{}, toSequence->{}, saved->{}", fromSequence, cursor.getSequence(), savedFile);
+            return(true);
+        } catch (IOException skipException) {
+            journal.takeOffline("Cannot read entry " + fromSequence + ": " + readException.getMessage() + ", and cannot skip it: " + skipException.getMessage());
+            return(false);
+        }
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public long getDeliveredCount(){
+        return(deliveredCount.get());
+    }
+
+    public long getRetryCount(){
+        return(retryCount.get());
+    }
+
+    public long getFailedCount(){
+        return(failedCount.get());
+    }
+
+    public long getBacklog(){
+        return(Math.max(0, journal.getDurableSequence() - cursor.getSequence() + 1));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageBytes;
+import org.apache.camel.Message;
+import org.apache.camel.component.mllp.MllpConstants;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the MSH fields from a received MLLP frame (without decoding the rest of the message) and
+ * maps them onto the same CamelMllp* headers camel-mllp populates.
+ */
+public final class MLLPMessageHeaderExtractor {
+
+    private MLLPMessageHeaderExtractor(){
+    }
+
+    /**
+     * Splits the MSH segment of the frame into its fields. The returned array is indexed by field
+     * number, i.e. [1] is MSH-1 (the field separator), [2] is MSH-2 (the encoding characters),
+     * [9] is MSH-9 (the message type) etc. - [0] is the segment name.
+     *
+     * @param frame the HL7 message (without MLLP envelope)
+     * @param charset the charset to decode the fields with
+     * @return the MSH fields, or an empty array if the frame doesn't start with an MSH segment
+     */
+    public static String[] extractMSHFields(byte[] frame, Charset charset){
+        if(frame == null){
+            return(new String[0]);
+        }
+        int segmentStart = 0;
+        while(segmentStart < frame.length && (frame[segmentStart] == '\r' || frame[segmentStart] == '\n')){
+            segmentStart += 1;
+        }
+        if(frame.length - segmentStart < 4 || frame[segmentStart] != 'M' || frame[segmentStart + 1] != 'S' || frame[segmentStart + 2] != 'H'){
+            return(new String[0]);
+        }
+        byte fieldSeparator = frame[segmentStart + 3];
+        List<String> fields = new ArrayList<>();
+        fields.add("MSH");
+        fields.add(new String(frame, segmentStart + 3, 1, charset));
+        int fieldStart = segmentStart + 4;
+        int position = fieldStart;
+        while(position <= frame.length){
+            boolean endOfSegment = position == frame.length || frame[position] == '\r' || frame[position] == '\n';
+            if(endOfSegment || frame[position] == fieldSeparator){
+                fields.add(new String(frame, fieldStart, position - fieldStart, charset));
+                fieldStart = position + 1;
+                if(endOfSegment){
+                    break;
+                }
+            }
+            position += 1;
+        }
+        return(fields.toArray(new String[0]));
+    }
+
+    /**
+     * @param mshFields the MSH fields (see {@link #extractMSHFields(byte[], Charset)})
+     * @param fieldNumber the MSH field number
+     * @return the field value, or null if the field isn't present
+     */
+    public static String getField(String[] mshFields, int fieldNumber){
+        if(mshFields == null || fieldNumber < 0 || fieldNumber >= mshFields.length){
+            return(null);
+        }
+        return(mshFields[fieldNumber]);
+    }
+
+    /**
+     * @param mshFields the MSH fields
+     * @param fieldNumber the MSH field number
+     * @param componentNumber the component number (1 based)
+     * @return the component value, or null if it isn't present
+     */
+    public static String getComponent(String[] mshFields, int fieldNumber, int componentNumber){
+        String field = getField(mshFields, fieldNumber);
+        String encodingCharacters = getField(mshFields, 2);
+        if(field == null || StringUtils.isEmpty(encodingCharacters)){
+            return(null);
+        }
+        String[] components = StringUtils.splitPreserveAllTokens(field, encodingCharacters.charAt(0));
+        if(componentNumber < 1 || componentNumber > components.length){
+            return(null);
+        }
+        return(components[componentNumber - 1]);
+    }
+
+    /**
+     * Resolves the charset of the message from MSH-18, falling back to the default charset.
+     *
+     * @param mshFields the MSH fields
+     * @param defaultCharset the charset to use if MSH-18 is absent or unknown
+     * @return the charset of the message
+     */
+    public static Charset resolveCharset(String[] mshFields, Charset defaultCharset){
+        return(HL7v2xMessageBytes.resolveCharset(getField(mshFields, 18), defaultCharset));
+    }
+
+    /**
+     * Sets the CamelMllp* HL7 headers (as camel-mllp does) on the Camel Message.
+     *
+     * @param message the Camel Message
+     * @param mshFields the MSH fields
+     */
+    public static void populateHeaders(Message message, String[] mshFields){
+        setHeader(message, MllpConstants.MLLP_SENDING_APPLICATION, getField(mshFields, 3));
+        setHeader(message, MllpConstants.MLLP_SENDING_FACILITY, getField(mshFields, 4));
+        setHeader(message, MllpConstants.MLLP_RECEIVING_APPLICATION, getField(mshFields, 5));
+        setHeader(message, MllpConstants.MLLP_RECEIVING_FACILITY, getField(mshFields, 6));
+        setHeader(message, MllpConstants.MLLP_TIMESTAMP, getField(mshFields, 7));
+        setHeader(message, MllpConstants.MLLP_SECURITY, getField(mshFields, 8));
+        setHeader(message, MllpConstants.MLLP_MESSAGE_TYPE, getField(mshFields, 9));
+        setHeader(message, MllpConstants.MLLP_EVENT_TYPE, getComponent(mshFields, 9, 1));
+        setHeader(message, MllpConstants.MLLP_TRIGGER_EVENT, getComponent(mshFields, 9, 2));
+        setHeader(message, MllpConstants.MLLP_MESSAGE_CONTROL, getField(mshFields, 10));
+        setHeader(message, MllpConstants.MLLP_PROCESSING_ID, getField(mshFields, 11));
+        setHeader(message, MllpConstants.MLLP_VERSION_ID, getField(mshFields, 12));
+        setHeader(message, MllpConstants.MLLP_CHARSET, getField(mshFields, 18));
+    }
+
+    private static void setHeader(Message message, String headerName, String value){
+        if(StringUtils.isNotEmpty(value)){
+            message.setHeader(headerName, value);
+        }
+    }
+}
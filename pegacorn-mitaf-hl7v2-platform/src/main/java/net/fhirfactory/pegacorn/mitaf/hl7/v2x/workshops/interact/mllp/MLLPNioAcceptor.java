@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Accepts the connections of an "event-loop" MLLP ingres port and hands each one to an event loop of
+ * the shared {@link MLLPEventLoopGroup} (round robin).
+ */
+public class MLLPNioAcceptor implements MLLPSelectionHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPNioAcceptor.class);
+
+    private final MITaFMLLPServerConsumer consumer;
+    private final ServerSocketChannel serverChannel;
+    private SelectionKey selectionKey;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPNioAcceptor(MITaFMLLPServerConsumer consumer, ServerSocketChannel serverChannel){
+        this.consumer = consumer;
+        this.serverChannel = serverChannel;
+    }
+
+    //
+    // Selection Handling
+    //
+
+    @Override
+    public void registered(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    @Override
+    public void handleSelection(SelectionKey selectionKey) {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            while (channel != null) {
+                consumer.startSession(channel);
+                channel = serverChannel.accept();
+            }
+        } catch (IOException acceptException) {
+            getLogger().warn(".handleSelection(): Accept failed, error->{}", acceptException.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if(selectionKey != null){
+            selectionKey.cancel();
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException closeException) {
+            getLogger().debug(".close(): Error closing server channel, error->{}", closeException.getMessage());
+        }
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+}
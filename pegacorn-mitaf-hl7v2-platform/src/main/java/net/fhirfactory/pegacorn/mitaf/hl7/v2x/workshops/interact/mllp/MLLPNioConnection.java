@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.apache.camel.component.mllp.MllpProtocolConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single MLLP connection in the "event-loop" execution mode. All channel I/O happens on the owning
+ * {@link MLLPEventLoop}; decoded frames are run through the route (synchronously, as the bean chain
+ * expects) on the consumer's worker executor, one frame at a time per connection, and the
+ * acknowledgement is written back by the event loop.
+ *
+ * Read-side backpressure: once maxPendingFrames decoded frames are waiting behind the one being
+ * processed, OP_READ is cleared, so a sender that pipelines faster than the route can process is
+ * held back by the TCP window rather than by buffering in the plant.
+ *
+ * Idle timeout: the event loop's idle sweep closes the connection once nothing has been read from it
+ * for idleTimeout milliseconds while no frame is being processed, as the socket timeout does in the
+ * blocking modes. An idleTimeout of 0 disables it.
+ */
+public class MLLPNioConnection implements MLLPSelectionHandler, MLLPSession {
+    private static final Logger LOG = LoggerFactory.getLogger(MLLPNioConnection.class);
+
+    private final MITaFMLLPServerConsumer consumer;
+    private final SocketChannel channel;
+    private final MLLPEventLoop eventLoop;
+    private final Executor workerExecutor;
+    private final MLLPDirectBufferPool bufferPool;
+    private final MLLPFrameDecoder frameDecoder;
+    private final ArrayDeque<byte[]> pendingFrames;
+    private final ArrayDeque<ByteBuffer> pendingWrites;
+    private final int maximumPendingFrames;
+    private final long idleTimeoutInNanoseconds;
+    private final String localAddress;
+    private final String remoteAddress;
+    private SelectionKey selectionKey;
+    private boolean processing;
+    private boolean closeAfterWrite;
+    private boolean closed;
+    private long lastActivity;
+
+    //
+    // Constructor(s)
+    //
+
+    public MLLPNioConnection(MITaFMLLPServerConsumer consumer, SocketChannel channel, MLLPEventLoop eventLoop, Executor workerExecutor){
+        this.consumer = consumer;
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.workerExecutor = workerExecutor;
+        this.bufferPool = MLLPDirectBufferPool.getSharedPool();
+        this.frameDecoder = new MLLPFrameDecoder(consumer.getEndpoint().getMaxFrameSize());
+        this.pendingFrames = new ArrayDeque<>();
+        this.pendingWrites = new ArrayDeque<>();
+        this.maximumPendingFrames = Math.max(1, consumer.getEndpoint().getMaxPendingFrames());
+        this.idleTimeoutInNanoseconds = TimeUnit.MILLISECONDS.toNanos(Math.max(0, consumer.getEndpoint().getIdleTimeout()));
+        this.localAddress = String.valueOf(channel.socket().getLocalSocketAddress());
+        this.remoteAddress = String.valueOf(channel.socket().getRemoteSocketAddress());
+        this.processing = false;
+        this.closeAfterWrite = false;
+        this.closed = false;
+        this.lastActivity = System.nanoTime();
+    }
+
+    //
+    // Selection Handling (event loop thread)
+    //
+
+    @Override
+    public void registered(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    @Override
+    public void handleSelection(SelectionKey selectionKey) throws IOException {
+        if(selectionKey.isWritable()){
+            flushWrites();
+        }
+        if(selectionKey.isValid() && selectionKey.isReadable()){
+            readFrames();
+        }
+    }
+
+    @Override
+    public void checkIdle(long now) {
+        if(idleTimeoutInNanoseconds == 0 || closed || processing || !pendingFrames.isEmpty()){
+            return;
+        }
+        if(now - lastActivity >= idleTimeoutInNanoseconds){
+            getLogger().info(".checkIdle(): Idle timeout, closing connection, remoteAddress->{}", remoteAddress);
+            close();
+        }
+    }
+
+    private void readFrames() throws IOException {
+        ByteBuffer readBuffer = bufferPool.acquire();
+        try {
+            int bytesRead = channel.read(readBuffer);
+            if(bytesRead < 0){
+                getLogger().debug(".readFrames(): Connection closed by remote, remoteAddress->{}", remoteAddress);
+                if(frameDecoder.isFramePending()){
+                    getLogger().warn(".readFrames(): Connection closed mid-frame, remoteAddress->{}", remoteAddress);
+                }
+                closeWhenIdle();
+                return;
+            }
+            lastActivity = System.nanoTime();
+            readBuffer.flip();
+            frameDecoder.decode(readBuffer, pendingFrames::add);
+        } finally {
+            bufferPool.release(readBuffer);
+        }
+        dispatchNextFrame();
+        updateReadInterest();
+    }
+
+    private void dispatchNextFrame(){
+        if(processing || closed || pendingFrames.isEmpty()){
+            return;
+        }
+        byte[] frame = pendingFrames.poll();
+        processing = true;
+        try {
+            workerExecutor.execute(() -> processFrame(frame));
+        } catch (RejectedExecutionException rejectedException) {
+            getLogger().warn(".dispatchNextFrame(): Worker executor rejected frame, closing connection, remoteAddress->{}", remoteAddress);
+            close();
+        }
+    }
+
+    private void updateReadInterest(){
+        if(closed || !selectionKey.isValid()){
+            return;
+        }
+        boolean readPaused = closeAfterWrite || pendingFrames.size() >= maximumPendingFrames;
+        int interestOps = selectionKey.interestOps();
+        int newInterestOps = readPaused ? (interestOps & ~SelectionKey.OP_READ) : (interestOps | SelectionKey.OP_READ);
+        if(newInterestOps != interestOps){
+            selectionKey.interestOps(newInterestOps);
+        }
+    }
+
+    private void flushWrites() throws IOException {
+        while(!pendingWrites.isEmpty()){
+            ByteBuffer currentWrite = pendingWrites.peek();
+            channel.write(currentWrite);
+            if(currentWrite.hasRemaining()){
+                selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            pendingWrites.poll();
+        }
+        if(selectionKey.isValid()){
+            selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        if(closeAfterWrite && !processing && pendingFrames.isEmpty()){
+            close();
+        }
+    }
+
+    private void onFrameProcessed(MLLPFrameProcessor.MLLPFrameOutcome outcome){
+        processing = false;
+        lastActivity = System.nanoTime();
+        if(closed){
+            return;
+        }
+        if(outcome.getAcknowledgement() != null){
+            pendingWrites.add(envelope(outcome.getAcknowledgement()));
+        }
+        if(outcome.isCloseConnection()){
+            getLogger().debug(".onFrameProcessed(): Closing connection as requested, remoteAddress->{}", remoteAddress);
+            pendingFrames.clear();
+            closeAfterWrite = true;
+        }
+        try {
+            flushWrites();
+        } catch (IOException writeException) {
+            getLogger().warn(".onFrameProcessed(): Cannot write acknowledgement, remoteAddress->{}, error->{}", remoteAddress, writeException.getMessage());
+            close();
+            return;
+        }
+        dispatchNextFrame();
+        updateReadInterest();
+    }
+
+    private void closeWhenIdle(){
+        closeAfterWrite = true;
+        if(!processing && pendingFrames.isEmpty()){
+            close();
+            return;
+        }
+        updateReadInterest();
+    }
+
+    //
+    // Frame Processing (worker thread)
+    //
+
+    private void processFrame(byte[] frame){
+        MLLPFrameProcessor.MLLPFrameOutcome outcome;
+        try {
+            outcome = consumer.getFrameProcessor().processFrame(frame, localAddress, remoteAddress);
+        } catch (RuntimeException processingException) {
+            getLogger().warn(".processFrame(): Frame processing failed, remoteAddress->{}, error->{}", remoteAddress, processingException.getMessage());
+            outcome = new MLLPFrameProcessor.MLLPFrameOutcome(null, true);
+        }
+        MLLPFrameProcessor.MLLPFrameOutcome finalOutcome = outcome;
+        eventLoop.execute(() -> onFrameProcessed(finalOutcome));
+    }
+
+    //
+    // Session Methods
+    //
+
+    @Override
+    public void close() {
+        if(!eventLoop.inEventLoop()){
+            eventLoop.execute(this::close);
+            return;
+        }
+        if(closed){
+            return;
+        }
+        closed = true;
+        if(selectionKey != null){
+            selectionKey.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException closeException) {
+            getLogger().debug(".close(): Error closing channel, error->{}", closeException.getMessage());
+        }
+        pendingFrames.clear();
+        pendingWrites.clear();
+        consumer.sessionClosed(this);
+        getLogger().debug(".close(): Connection closed, remoteAddress->{}", remoteAddress);
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private static ByteBuffer envelope(byte[] payload){
+        ByteBuffer envelopedPayload = ByteBuffer.allocate(payload.length + 3);
+        envelopedPayload.put((byte)MllpProtocolConstants.START_OF_BLOCK);
+        envelopedPayload.put(payload);
+        envelopedPayload.put((byte)MllpProtocolConstants.END_OF_BLOCK);
+        envelopedPayload.put((byte)MllpProtocolConstants.END_OF_DATA);
+        envelopedPayload.flip();
+        return(envelopedPayload);
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+/**
+ * Attached to a {@link SelectionKey} registered with an {@link MLLPEventLoop}, handles its readiness events.
+ */
+public interface MLLPSelectionHandler {
+    /**
+     * Called (on the event loop thread) once the channel has been registered.
+     *
+     * @param selectionKey the key of the registration
+     */
+    void registered(SelectionKey selectionKey);
+
+    /**
+     * Called (on the event loop thread) when the channel is ready for one or more of its interest operations.
+     *
+     * @param selectionKey the selected key
+     * @throws IOException if handling fails, the channel is then closed
+     */
+    void handleSelection(SelectionKey selectionKey) throws IOException;
+
+    /**
+     * Called (on the event loop thread) by the loop's periodic idle sweep. Does nothing by default.
+     *
+     * @param now the current {@link System#nanoTime()}
+     */
+    default void checkIdle(long now){
+    }
+
+    /**
+     * Called (on the event loop thread) when handling failed or the loop is shutting down.
+     */
+    void close();
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the per-connection (session) executors of the MITaF MLLP consumer.
+ *
+ * Virtual threads are only available from Java 21, and the processing plants don't all run on it
+ * yet, so they are obtained reflectively (Thread.ofVirtual() and
+ * Executors.newThreadPerTaskExecutor()). When they're not available the executor falls back to
+ * (unbounded, cached) platform threads - the consumer caps concurrency with its own semaphore either
+ * way.
+ */
+public final class VirtualThreadSupport {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadSupport.class);
+
+    private VirtualThreadSupport(){
+    }
+
+    /**
+     * @return true if this JVM can create virtual threads
+     */
+    public static boolean isVirtualThreadSupported(){
+        return(newVirtualThreadFactory("probe-") != null);
+    }
+
+    /**
+     * @return true if this JVM still pins a virtual thread to its carrier while it blocks inside a
+     * synchronized block (JDK 21 to 23, see JEP 491)
+     */
+    public static boolean isSynchronizedPinningRuntime(){
+        return(Runtime.version().feature() < 24);
+    }
+
+    /**
+     * @param threadNamePrefix the prefix of the session thread names
+     * @param preferVirtualThreads true to use virtual threads (if the JVM supports them)
+     * @return an executor which runs each submitted task on its own thread
+     */
+    public static ExecutorService newSessionExecutor(String threadNamePrefix, boolean preferVirtualThreads){
+        if(preferVirtualThreads){
+            ThreadFactory virtualThreadFactory = newVirtualThreadFactory(threadNamePrefix);
+            if(virtualThreadFactory != null){
+                try {
+                    ExecutorService executor = (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, virtualThreadFactory);
+                    LOG.info(".newSessionExecutor(): Using virtual threads, threadNamePrefix->{}", threadNamePrefix);
+                    return(executor);
+                } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException reflectionException) {
+                    LOG.warn(".newSessionExecutor(): Cannot create virtual thread executor, error->{}", reflectionException.getMessage());
+                }
+            } else {
+                LOG.warn(".newSessionExecutor(): Virtual threads are not supported by this JVM (Java {}), using platform threads", Runtime.version().feature());
+            }
+        }
+        return(Executors.newCachedThreadPool(newPlatformThreadFactory(threadNamePrefix)));
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private static ThreadFactory newVirtualThreadFactory(String threadNamePrefix){
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+            return((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+        } catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException reflectionException) {
+            return(null);
+        } catch (InvocationTargetException invocationException) {
+            // e.g. Java 19/20 without --enable-preview
+            return(null);
+        }
+    }
+
+    private static ThreadFactory newPlatformThreadFactory(String threadNamePrefix){
+        AtomicLong threadCount = new AtomicLong(0);
+        return(runnable -> {
+            Thread sessionThread = new Thread(runnable, threadNamePrefix + threadCount.getAndIncrement());
+            sessionThread.setDaemon(true);
+            return(sessionThread);
+        });
+    }
+}
@@ -119,7 +119,6 @@ public abstract class BaseHL7v2MessageAsynchronousACKEgressWUP extends InteractE
                 .bean(messageExtractor, "convertToMessage(*, Exchange)")
                 .bean(mLLPAsynchronousMessageFinisher, "extractUoW")
                 .to(egressFeed())
-                .delay(5000)
                 .bean(mLLPAsynchronousMessageFinisher, "extractUoWAndAnswer")
                 .bean(metricsCapture, "capturePostSendMetricDetail(*, Exchange)")
                 .bean(EgressActivityFinalisationRegistration.class,"registerActivityFinishAndFinalisation(*,  Exchange)");
@@ -31,14 +31,22 @@ import net.fhirfactory.pegacorn.core.model.topology.endpoints.mllp.adapters.MLLP
 import net.fhirfactory.pegacorn.internals.fhir.r4.internal.topics.HL7V2XTopicFactory;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2VersionEnum;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp.MLLPActivityAuditTrail;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp.MLLPIngresAdmissionController;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp.MLLPIngresDuplicateDetector;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp.MLLPIngresLatencyRecorder;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp.MLLPIngresStageEnum;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp.MLLPMessageIngresProcessor;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.notifications.EndpointITOpsNotificationPublisher;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.HL7v2xTriggerEventIngresProcessor;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.HL7v2xTriggerEventValidationProcessor;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp.MITaFMLLPComponent;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp.MLLPIngresExecutionModeEnum;
 import net.fhirfactory.pegacorn.petasos.core.moa.wup.MessageBasedWUPEndpointContainer;
 import net.fhirfactory.pegacorn.petasos.wup.helper.IngresActivityBeginRegistration;
 import net.fhirfactory.pegacorn.workshops.InteractWorkshop;
 import net.fhirfactory.pegacorn.wups.archetypes.petasosenabled.messageprocessingbased.InteractIngresMessagingGatewayWUP;
 import org.apache.camel.ExchangePattern;
+import org.apache.camel.model.RouteDefinition;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.inject.Inject;
@@ -48,11 +56,19 @@ public abstract class BaseHL7v2xMessageIngressWUP extends InteractIngresMessagin
 	private static Long DEFAULT_ACCEPT_TIMEOUT = 45000L;
 	private static Long DEFAULT_BIND_TIMEOUT=20000L;
 	private static int DEFAULT_CONCURRENT_CONSUMERS=30;
+	private static int DEFAULT_CONCURRENT_SESSIONS=1000;
 	private boolean camelToDeliverStringPayload;
 	private boolean camelToValidatePayload;
 	private Long acceptTimeout;
 	private Long bindTimeout;
 	private int maxConcurrentConsumers;
+	private int maxConcurrentSessions;
+	private MLLPIngresExecutionModeEnum ingresExecutionMode;
+	private MLLPIngresAdmissionController admissionController;
+	private MLLPIngresDuplicateDetector duplicateDetector;
+	private MLLPIngresLatencyRecorder latencyRecorder;
+	private String journalDirectory;
+	private Integer journalSegmentSize;
 	private boolean parametersInitialised;
 	private String mllpServerConfiguration;
 
@@ -62,6 +78,9 @@ public abstract class BaseHL7v2xMessageIngressWUP extends InteractIngresMessagin
 	@Inject
 	private HL7V2XTopicFactory hl7v2xTopicIDBuilder;
 
+	@Inject
+	private EndpointITOpsNotificationPublisher notificationPublisher;
+
 	@Override
 	protected WorkshopInterface specifyWorkshop() {
 		return (interactWorkshop);
@@ -82,6 +101,11 @@ public abstract class BaseHL7v2xMessageIngressWUP extends InteractIngresMessagin
 		setAcceptTimeout(DEFAULT_ACCEPT_TIMEOUT);
 		setBindTimeout(DEFAULT_BIND_TIMEOUT);
 		setMaxConcurrentConsumers(DEFAULT_CONCURRENT_CONSUMERS);
+		setMaxConcurrentSessions(DEFAULT_CONCURRENT_SESSIONS);
+		setIngresExecutionMode(MLLPIngresExecutionModeEnum.MLLP_INGRES_EXECUTION_CAMEL_MLLP);
+		setAdmissionController(new MLLPIngresAdmissionController());
+		setDuplicateDetector(new MLLPIngresDuplicateDetector());
+		setLatencyRecorder(new MLLPIngresLatencyRecorder());
 		setParametersInitialised(false);
 		setMllpServerConfiguration(null);
 	}
@@ -139,6 +163,62 @@ public abstract class BaseHL7v2xMessageIngressWUP extends InteractIngresMessagin
 		this.maxConcurrentConsumers = maxConcurrentConsumers;
 	}
 
+	public int getMaxConcurrentSessions() {
+		return maxConcurrentSessions;
+	}
+
+	public void setMaxConcurrentSessions(int maxConcurrentSessions) {
+		this.maxConcurrentSessions = maxConcurrentSessions;
+	}
+
+	public MLLPIngresExecutionModeEnum getIngresExecutionMode() {
+		return ingresExecutionMode;
+	}
+
+	public void setIngresExecutionMode(MLLPIngresExecutionModeEnum ingresExecutionMode) {
+		this.ingresExecutionMode = ingresExecutionMode;
+	}
+
+	public String getJournalDirectory() {
+		return journalDirectory;
+	}
+
+	public void setJournalDirectory(String journalDirectory) {
+		this.journalDirectory = journalDirectory;
+	}
+
+	public Integer getJournalSegmentSize() {
+		return journalSegmentSize;
+	}
+
+	public void setJournalSegmentSize(Integer journalSegmentSize) {
+		this.journalSegmentSize = journalSegmentSize;
+	}
+
+	public MLLPIngresAdmissionController getAdmissionController() {
+		return admissionController;
+	}
+
+	public void setAdmissionController(MLLPIngresAdmissionController admissionController) {
+		this.admissionController = admissionController;
+	}
+
+	public MLLPIngresDuplicateDetector getDuplicateDetector() {
+		return duplicateDetector;
+	}
+
+	public void setDuplicateDetector(MLLPIngresDuplicateDetector duplicateDetector) {
+		this.duplicateDetector = duplicateDetector;
+	}
+
+	public MLLPIngresLatencyRecorder getLatencyRecorder() {
+		return latencyRecorder;
+	}
+
+	public void setLatencyRecorder(MLLPIngresLatencyRecorder latencyRecorder) {
+		this.latencyRecorder = latencyRecorder;
+	}
+
 	public boolean isParametersInitialised() {
 		return parametersInitialised;
 	}
@@ -199,16 +279,47 @@ public abstract class BaseHL7v2xMessageIngressWUP extends InteractIngresMessagin
         getLogger().warn("{}:: ingresFeed() --> {}", getClass().getSimpleName(), ingresFeed());
         getLogger().info("{}:: egressFeed() --> {}", getClass().getSimpleName(), egressFeed());
 
-        fromInteractIngresService(ingresFeed())
-                .routeId(getNameSet().getRouteCoreWUP())
-                .bean(MLLPMessageIngresProcessor.class, "captureMLLPMessage(*, Exchange," + specifySourceSystem() +","+specifyIntendedTargetSystem()+","+specifyMessageDiscriminatorType()+","+specifyMessageDiscriminatorValue()+")")
-				.bean(HL7v2xTriggerEventValidationProcessor.class, "ensureMinimalCompliance(*, Exchange)")
-				.bean(HL7v2xTriggerEventIngresProcessor.class, "encapsulateTriggerEvent(*, Exchange)")
-				.bean(IngresActivityBeginRegistration.class, "registerActivityStart(*,  Exchange)")
-                .bean(mllpAuditTrail, "logMLLPActivity(*, Exchange, MLLPIngres)")
-                .to(ExchangePattern.InOnly, egressFeed());
+		if(!getIngresExecutionMode().equals(MLLPIngresExecutionModeEnum.MLLP_INGRES_EXECUTION_CAMEL_MLLP)){
+			MITaFMLLPComponent.registerWith(getContext());
+		}
+
+		RouteDefinition route = fromInteractIngresService(ingresFeed())
+                .routeId(getNameSet().getRouteCoreWUP());
+		if(getLatencyRecorder().isEnabled()){
+			getLatencyRecorder().bind(specifyIngresTopologyEndpointName(), notificationPublisher);
+			route.routePolicy(getLatencyRecorder().getRoutePolicy());
+			route.process(getLatencyRecorder().startTiming());
+		}
+		if(getAdmissionController().isEnabled()){
+			getAdmissionController().bind(getContext(), getNameSet().getRouteCoreWUP(), egressFeed(), specifyIngresTopologyEndpointName(), notificationPublisher);
+			route.bean(getAdmissionController(), "admitMessage(Exchange)");
+			timeStage(route, MLLPIngresStageEnum.MLLP_INGRES_STAGE_ADMISSION);
+		}
+        route.bean(MLLPMessageIngresProcessor.class, getCaptureMethodName() + "(*, Exchange," + specifySourceSystem() +","+specifyIntendedTargetSystem()+","+specifyMessageDiscriminatorType()+","+specifyMessageDiscriminatorValue()+")");
+		timeStage(route, MLLPIngresStageEnum.MLLP_INGRES_STAGE_CAPTURE);
+		if(getDuplicateDetector().isEnabled()){
+			getDuplicateDetector().bind(specifyIngresTopologyEndpointName(), notificationPublisher);
+			route.bean(getDuplicateDetector(), "suppressDuplicate(*, Exchange)");
+			timeStage(route, MLLPIngresStageEnum.MLLP_INGRES_STAGE_DUPLICATE_CHECK);
+		}
+		route.bean(HL7v2xTriggerEventValidationProcessor.class, "ensureMinimalCompliance(*, Exchange)");
+		timeStage(route, MLLPIngresStageEnum.MLLP_INGRES_STAGE_MINIMAL_COMPLIANCE);
+		route.bean(HL7v2xTriggerEventIngresProcessor.class, "encapsulateTriggerEvent(*, Exchange)");
+		timeStage(route, MLLPIngresStageEnum.MLLP_INGRES_STAGE_ENCAPSULATION);
+		route.bean(IngresActivityBeginRegistration.class, "registerActivityStart(*,  Exchange)");
+		timeStage(route, MLLPIngresStageEnum.MLLP_INGRES_STAGE_ACTIVITY_REGISTRATION);
+        route.bean(mllpAuditTrail, "logMLLPActivity(*, Exchange, MLLPIngres)");
+		timeStage(route, MLLPIngresStageEnum.MLLP_INGRES_STAGE_AUDIT);
+        route.to(ExchangePattern.InOnly, egressFeed());
+		timeStage(route, MLLPIngresStageEnum.MLLP_INGRES_STAGE_HANDOFF);
     }
 
+	private void timeStage(RouteDefinition route, MLLPIngresStageEnum stage){
+		if(getLatencyRecorder().isEnabled()){
+			route.process(getLatencyRecorder().stageCompleted(stage));
+		}
+	}
+
     @Override
     protected MessageBasedWUPEndpointContainer specifyIngresEndpoint() {
         getLogger().debug(".specifyIngresEndpoint(): Entry, specifyIngresTopologyEndpointName()->{}", specifyIngresTopologyEndpointName());
@@ -218,13 +329,27 @@ public abstract class BaseHL7v2xMessageIngressWUP extends InteractIngresMessagin
         getLogger().trace(".specifyIngresEndpoint(): Retrieved serverTopologyEndpoint->{}", serverTopologyEndpoint);
         int portValue = serverTopologyEndpoint.getMLLPServerAdapter().getServicePortValue();
         String interfaceDNSName = serverTopologyEndpoint.getMLLPServerAdapter().getHostName();
-        endpoint.setEndpointSpecification(CAMEL_COMPONENT_TYPE+":"+interfaceDNSName+":"+Integer.toString(portValue)+ getMllpServerConfiguration());
+        endpoint.setEndpointSpecification(getIngresCamelComponentType()+":"+interfaceDNSName+":"+Integer.toString(portValue)+ getMllpServerConfiguration());
         endpoint.setEndpointTopologyNode(serverTopologyEndpoint);
         endpoint.setFrameworkEnabled(false);
         getLogger().debug(".specifyIngresEndpoint(): Exit, endpoint->{}", endpoint);
         return (endpoint);
     }
 
+	protected String getCaptureMethodName(){
+		if(isCamelToDeliverStringPayload()){
+			return("captureMLLPMessage");
+		}
+		return("captureMLLPMessageBytes");
+	}
+
+	protected String getIngresCamelComponentType(){
+		if(getIngresExecutionMode().equals(MLLPIngresExecutionModeEnum.MLLP_INGRES_EXECUTION_CAMEL_MLLP)){
+			return(CAMEL_COMPONENT_TYPE);
+		}
+		return(MITaFMLLPComponent.MITAF_MLLP_SCHEME);
+	}
+
 	protected void buildMLLPConfigurationString(){
 		if(!isParametersInitialised()) {
 			MLLPServerEndpoint serverTopologyEndpoint = (MLLPServerEndpoint) getTopologyEndpoint(specifyIngresTopologyEndpointName());
@@ -235,6 +360,10 @@ public abstract class BaseHL7v2xMessageIngressWUP extends InteractIngresMessagin
 				String mllpBindTimeout = mllpAdapter.getAdditionalParameters().get(PetasosPropertyConstants.CAMEL_MLLP_BIND_TIMEOUT_PARAMETER_NAME);
 				String mllpAcceptTimeout = mllpAdapter.getAdditionalParameters().get(PetasosPropertyConstants.CAMEL_MLLP_ACCEPT_TIMEOUT_PARAMETER_NAME);
 				String mllpMaxConcurrentConsumers = mllpAdapter.getAdditionalParameters().get(PetasosPropertyConstants.CAMEL_MLLP_MAXIMUM_CONSUMERS_PARAMETER_NAME);
+				String mllpIngresExecutionMode = mllpAdapter.getAdditionalParameters().get(MITaFMLLPComponent.MLLP_INGRES_EXECUTION_MODE_PARAMETER_NAME);
+				String mllpMaxConcurrentSessions = mllpAdapter.getAdditionalParameters().get(MITaFMLLPComponent.MLLP_INGRES_MAXIMUM_SESSIONS_PARAMETER_NAME);
+				String mllpJournalDirectory = mllpAdapter.getAdditionalParameters().get(MITaFMLLPComponent.MLLP_INGRES_JOURNAL_DIRECTORY_PARAMETER_NAME);
+				String mllpJournalSegmentSize = mllpAdapter.getAdditionalParameters().get(MITaFMLLPComponent.MLLP_INGRES_JOURNAL_SEGMENT_SIZE_PARAMETER_NAME);
 				if (StringUtils.isNotEmpty(mllpValidatePayload)) {
 					if (mllpValidatePayload.equalsIgnoreCase("True")) {
 						setCamelToValidatePayload(true);
@@ -264,6 +393,36 @@ public abstract class BaseHL7v2xMessageIngressWUP extends InteractIngresMessagin
 						getLogger().debug(".buildMLLPConfigurationString(): Cannot parse maxConcurrentConsumers, leaving at default value");
 					}
 				}
+				if(StringUtils.isNotEmpty(mllpIngresExecutionMode)){
+					MLLPIngresExecutionModeEnum executionMode = MLLPIngresExecutionModeEnum.fromToken(mllpIngresExecutionMode);
+					if(executionMode != null){
+						setIngresExecutionMode(executionMode);
+					} else {
+						getLogger().warn(".buildMLLPConfigurationString(): Unknown ingres execution mode ({}), using camel-mllp", mllpIngresExecutionMode);
+					}
+				}
+				if(StringUtils.isNotEmpty(mllpMaxConcurrentSessions)){
+					try{
+						int maxConcurrentSessions = Integer.valueOf(mllpMaxConcurrentSessions);
+						setMaxConcurrentSessions(maxConcurrentSessions);
+					} catch(Exception ex){
+						getLogger().debug(".buildMLLPConfigurationString(): Cannot parse maxConcurrentSessions, leaving at default value");
+					}
+				}
+				if(StringUtils.isNotEmpty(mllpJournalDirectory)){
+					setJournalDirectory(mllpJournalDirectory);
+				}
+				if(StringUtils.isNotEmpty(mllpJournalSegmentSize)){
+					try{
+						Integer journalSegmentSize = Integer.valueOf(mllpJournalSegmentSize);
+						setJournalSegmentSize(journalSegmentSize);
+					} catch(Exception ex){
+						getLogger().debug(".buildMLLPConfigurationString(): Cannot parse journalSegmentSize, leaving at default value");
+					}
+				}
+				getAdmissionController().configure(mllpAdapter.getAdditionalParameters());
+				getDuplicateDetector().configure(mllpAdapter.getAdditionalParameters());
+				getLatencyRecorder().configure(mllpAdapter.getAdditionalParameters());
 				if(StringUtils.isNotEmpty(mllpDeliveryStringPayload)){
 					if(mllpDeliveryStringPayload.equalsIgnoreCase("True")){
 						setCamelToDeliverStringPayload(true);
@@ -274,7 +433,24 @@ public abstract class BaseHL7v2xMessageIngressWUP extends InteractIngresMessagin
 			}
 			StringBuilder mllpConfig = new StringBuilder();
 			mllpConfig.append("?");
-			mllpConfig.append("maxConcurrentConsumers="+Integer.toString(getMaxConcurrentConsumers()));
+			if(getIngresExecutionMode().equals(MLLPIngresExecutionModeEnum.MLLP_INGRES_EXECUTION_CAMEL_MLLP)) {
+				mllpConfig.append("maxConcurrentConsumers=" + Integer.toString(getMaxConcurrentConsumers()));
+				if(StringUtils.isNotEmpty(getJournalDirectory())){
+					getLogger().warn(".buildMLLPConfigurationString(): {} is only supported by the {} execution modes, ingres will not be journaled", MITaFMLLPComponent.MLLP_INGRES_JOURNAL_DIRECTORY_PARAMETER_NAME, MITaFMLLPComponent.MITAF_MLLP_SCHEME);
+				}
+			} else {
+				mllpConfig.append("executionMode=" + getIngresExecutionMode().getToken());
+				mllpConfig.append("&");
+				mllpConfig.append("maxConcurrentSessions=" + Integer.toString(getMaxConcurrentSessions()));
+				if(StringUtils.isNotEmpty(getJournalDirectory())){
+					mllpConfig.append("&");
+					mllpConfig.append("journalDirectory=RAW(" + getJournalDirectory() + ")");
+					if(getJournalSegmentSize() != null){
+						mllpConfig.append("&");
+						mllpConfig.append("journalSegmentSize=" + getJournalSegmentSize().toString());
+					}
+				}
+			}
 			mllpConfig.append("&");
 			mllpConfig.append("acceptTimeout="+getAcceptTimeout().toString());
 			mllpConfig.append("&");
@@ -285,11 +461,13 @@ public abstract class BaseHL7v2xMessageIngressWUP extends InteractIngresMessagin
 			} else {
 				mllpConfig.append("stringPayload=false");
 			}
-			mllpConfig.append("&");
-			if(isCamelToValidatePayload()){
-				mllpConfig.append("validatePayload=true");
-			} else {
-				mllpConfig.append("validatePayload=false");
+			if(getIngresExecutionMode().equals(MLLPIngresExecutionModeEnum.MLLP_INGRES_EXECUTION_CAMEL_MLLP)) {
+				mllpConfig.append("&");
+				if (isCamelToValidatePayload()) {
+					mllpConfig.append("validatePayload=true");
+				} else {
+					mllpConfig.append("validatePayload=false");
+				}
 			}
 			String mllpConfigurationString = mllpConfig.toString();
 			setMllpServerConfiguration(mllpConfigurationString);
@@ -4,16 +4,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.camel.Exchange;
-import org.apache.commons.lang3.SerializationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import ca.uhn.hl7v2.DefaultHapiContext;
-import ca.uhn.hl7v2.HapiContext;
 import ca.uhn.hl7v2.model.Message;
-import ca.uhn.hl7v2.parser.DefaultModelClassFactory;
-import ca.uhn.hl7v2.parser.ModelClassFactory;
-import ca.uhn.hl7v2.parser.PipeParser;
 import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
 import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelManifest;
 import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelDirectionEnum;
@@ -23,6 +17,8 @@ import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.PolicyEnforcemen
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers.HL7v2xParserProvider;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantDataParcelManifestDM;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.message.transformation.HL7MessageWithAttributes;
 import net.fhirfactory.pegacorn.petasos.core.tasks.accessors.PetasosFulfillmentTaskSharedInstance;
 
@@ -40,7 +36,7 @@ public abstract class BaseMessageDuplication {
 			    
 		List<DataParcelManifest> subscribedTopics = new ArrayList<>();
 
-		DataParcelManifest manifest = SerializationUtils.clone(uow.getIngresContent().getPayloadManifest());
+		DataParcelManifest manifest = ProcessingPlantDataParcelManifestDM.copyOf(uow.getIngresContent().getPayloadManifest());
 		manifest.setContainerDescriptor(null);
 		manifest.getContentDescriptor().setDataParcelAttribute("DuplicateMessage");
 
@@ -65,20 +61,12 @@ public abstract class BaseMessageDuplication {
 
 		List<HL7MessageWithAttributes> messages = null;
 
-		try (HapiContext context = new DefaultHapiContext();) {
-			PipeParser parser = context.getPipeParser();
-			parser.getParserConfiguration().setValidating(false);
+		originalMessage = HL7v2xParserProvider.parse(hl7Message);
+		messages = createMessages(originalMessage);
 
-			ModelClassFactory cmf = new DefaultModelClassFactory();
-			context.setModelClassFactory(cmf);
-
-			originalMessage = parser.parse(hl7Message);
-			messages = createMessages(originalMessage);
-			
-			// Add a total count of the messages attribute.
-			for (int i = 0; i < messages.size(); i++) {
-				messages.get(i).addAttribute("total_number_of_messages", messages.size());
-			}
+		// Add a total count of the messages attribute.
+		for (int i = 0; i < messages.size(); i++) {
+			messages.get(i).addAttribute("total_number_of_messages", messages.size());
 		}
 
 		uow.getEgressContent().getPayloadElements().clear();
@@ -22,16 +22,13 @@
 package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans;
 
 import javax.enterprise.context.ApplicationScoped;
-import javax.inject.Inject;
 
-import net.fhirfactory.pegacorn.internals.hl7v2.interfaces.HL7v2xInformationExtractionInterface;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.CachedHL7v2xMessage;
 import org.apache.camel.Exchange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import ca.uhn.hl7v2.DefaultHapiContext;
 import ca.uhn.hl7v2.HL7Exception;
-import ca.uhn.hl7v2.HapiContext;
 import ca.uhn.hl7v2.model.Message;
 import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
@@ -41,15 +38,6 @@ import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
 public class HL7v2MessageAsTextToHL7V2xMessage {
     private static final Logger LOG = LoggerFactory.getLogger(HL7v2MessageAsTextToHL7V2xMessage.class);
 
-    private HapiContext context;
-
-    public HL7v2MessageAsTextToHL7V2xMessage(){
-        context = new DefaultHapiContext();
-    }
-
-    @Inject
-    HL7v2xInformationExtractionInterface informationExtractionInterface;
-
     public Message convertToMessage(UoW incomingUoW, Exchange camelExchange) throws HL7Exception{
         LOG.debug(".convertToMessage(): Entry, incomingUoW->{}", incomingUoW);
         if(incomingUoW == null){
@@ -63,9 +51,10 @@ public class HL7v2MessageAsTextToHL7V2xMessage {
                 return(null);
             }
         }
-        String messageAsText= incomingUoW.getIngresContent().getPayload();     
-        Message message = informationExtractionInterface.convertToHL7v2Message(messageAsText);
-            
+        String messageAsText= incomingUoW.getIngresContent().getPayload();
+        // parsed once, the parsed message (and the text it came from) then travels with the exchange
+        Message message = CachedHL7v2xMessage.fromExchange(camelExchange, messageAsText).getMessage();
+
         LOG.debug(".convertToMessage(): Exit, message->{}", message);
         return(message);
     }
@@ -26,6 +26,7 @@ import javax.inject.Inject;
 
 import org.apache.camel.Exchange;
 import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,7 +41,9 @@ import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
 import net.fhirfactory.pegacorn.internals.fhir.r4.internal.topics.HL7V2XTopicFactory;
-import net.fhirfactory.pegacorn.internals.hl7v2.interfaces.HL7v2xInformationExtractionInterface;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.DataParcelInternKey;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantDataParcelManifestDM;
 import net.fhirfactory.pegacorn.petasos.core.tasks.accessors.PetasosFulfillmentTaskSharedInstance;
 
 /**
@@ -53,12 +56,14 @@ import net.fhirfactory.pegacorn.petasos.core.tasks.accessors.PetasosFulfillmentT
 public class HL7v2xInboundMessageTransformationPostProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(HL7v2xInboundMessageTransformationPostProcessor.class);
 
-    @Inject
-    private HL7v2xInformationExtractionInterface messageInformationExtractionInterface;
+    private static final String INBOUND_TRANSFORMATION_MANIFEST_PURPOSE = "HL7v2xInboundTransformation";
 
     @Inject
     private HL7V2XTopicFactory hl7v2TopicFactory;
 
+    @Inject
+    private ProcessingPlantDataParcelManifestDM manifestDM;
+
     //
     // Getters and Setters
     //
@@ -94,31 +99,36 @@ public class HL7v2xInboundMessageTransformationPostProcessor {
         //
         // Create new UoWPayload (egress payload)
         UoWPayload newPayload = new UoWPayload();
-        DataParcelManifest newManifest = new DataParcelManifest();
-
-        String messageType = messageInformationExtractionInterface.extractMessageType(message);
-        String messageTrigger = messageInformationExtractionInterface.extractMessageTrigger(message);
-        String messageVersion = messageInformationExtractionInterface.extractMessageVersion(message);
-        DataParcelTypeDescriptor parcelTypeDescriptor = hl7v2TopicFactory.newDataParcelDescriptor(messageType, messageTrigger, messageVersion);
-        if (uow.getIngresContent().getPayloadManifest().getContentDescriptor().hasDataParcelDiscriminatorType()) {
-            parcelTypeDescriptor.setDataParcelDiscriminatorType(SerializationUtils.clone(uow.getIngresContent().getPayloadManifest().getContentDescriptor().getDataParcelDiscriminatorType()));
-        }
-        if (uow.getIngresContent().getPayloadManifest().getContentDescriptor().hasDataParcelDiscriminatorValue()) {
-            parcelTypeDescriptor.setDataParcelDiscriminatorValue(SerializationUtils.clone(uow.getIngresContent().getPayloadManifest().getContentDescriptor().getDataParcelDiscriminatorValue()));
-        }
-
-        newManifest.setContentDescriptor(parcelTypeDescriptor);
-        newManifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_TRUE);
-        newManifest.setEnforcementPointApprovalStatus(PolicyEnforcementPointApprovalStatusEnum.POLICY_ENFORCEMENT_POINT_APPROVAL_NEGATIVE);
-        newManifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_TRUE);
-        newManifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_INBOUND_DATA_PARCEL);
-        if(uow.getIngresContent().getPayloadManifest().hasSourceProcessingPlantParticipantName()){
-            newManifest.setSourceProcessingPlantParticipantName(uow.getIngresContent().getPayloadManifest().getSourceProcessingPlantParticipantName());
-        }
-        if(uow.getIngresContent().getPayloadManifest().hasTargetProcessingPlantParticipantName()){
-            newManifest.setTargetProcessingPlantParticipantName(uow.getIngresContent().getPayloadManifest().getTargetProcessingPlantParticipantName());
-        }
-        newManifest.setInterSubsystemDistributable(false);
+        // the header metadata is read straight from the transformation output's MSH, there's no need to parse it
+        HL7v2xMessageView outputView = HL7v2xMessageView.fromExchange(exchange, message);
+        String messageType = outputView.getMessageType();
+        String messageTrigger = outputView.getTriggerEvent();
+        String messageVersion = outputView.getVersion();
+        DataParcelManifest ingresManifest = uow.getIngresContent().getPayloadManifest();
+        String discriminatorType = ingresManifest.getContentDescriptor().getDataParcelDiscriminatorType();
+        String discriminatorValue = ingresManifest.getContentDescriptor().getDataParcelDiscriminatorValue();
+        DataParcelTypeDescriptor parcelTypeDescriptor = manifestDM.getHL7v2xDescriptor(messageType, messageTrigger, messageVersion, discriminatorType, discriminatorValue);
+        String sourceParticipantName = ingresManifest.hasSourceProcessingPlantParticipantName() ? ingresManifest.getSourceProcessingPlantParticipantName() : null;
+        String targetParticipantName = ingresManifest.hasTargetProcessingPlantParticipantName() ? ingresManifest.getTargetProcessingPlantParticipantName() : null;
+        DataParcelInternKey manifestKey = new DataParcelInternKey(INBOUND_TRANSFORMATION_MANIFEST_PURPOSE, messageType, messageTrigger, messageVersion,
+                StringUtils.defaultString(discriminatorType), StringUtils.defaultString(discriminatorValue),
+                StringUtils.defaultString(sourceParticipantName), StringUtils.defaultString(targetParticipantName));
+        DataParcelManifest newManifest = manifestDM.getManifest(manifestKey, () -> {
+            DataParcelManifest manifest = new DataParcelManifest();
+            manifest.setContentDescriptor(parcelTypeDescriptor);
+            manifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_TRUE);
+            manifest.setEnforcementPointApprovalStatus(PolicyEnforcementPointApprovalStatusEnum.POLICY_ENFORCEMENT_POINT_APPROVAL_NEGATIVE);
+            manifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_TRUE);
+            manifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_INBOUND_DATA_PARCEL);
+            if(sourceParticipantName != null){
+                manifest.setSourceProcessingPlantParticipantName(sourceParticipantName);
+            }
+            if(targetParticipantName != null){
+                manifest.setTargetProcessingPlantParticipantName(targetParticipantName);
+            }
+            manifest.setInterSubsystemDistributable(false);
+            return(manifest);
+        });
 
         newPayload.setPayload(message.toString());
         newPayload.setPayloadManifest(newManifest);
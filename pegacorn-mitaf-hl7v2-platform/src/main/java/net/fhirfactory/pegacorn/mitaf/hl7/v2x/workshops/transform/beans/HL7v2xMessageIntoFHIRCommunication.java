@@ -26,15 +26,14 @@ import java.util.Date;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
-import net.fhirfactory.pegacorn.internals.hl7v2.interfaces.HL7v2xInformationExtractionInterface;
 import net.fhirfactory.pegacorn.petasos.core.tasks.accessors.PetasosFulfillmentTaskSharedInstance;
 import org.apache.camel.Exchange;
-import org.apache.commons.lang3.SerializationUtils;
 import org.hl7.fhir.r4.model.Communication;
 import org.hl7.fhir.r4.model.StringType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.model.Message;
 import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
 import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelManifest;
@@ -43,6 +42,9 @@ import net.fhirfactory.pegacorn.internals.fhir.r4.internal.topics.HL7V2XTopicFac
 import net.fhirfactory.pegacorn.internals.fhir.r4.resources.communication.extensions.CommunicationPayloadTypeExtensionEnricher;
 import net.fhirfactory.pegacorn.internals.fhir.r4.resources.communication.factories.CommunicationFactory;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.CachedHL7v2xMessage;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantDataParcelManifestDM;
 
 @ApplicationScoped
 public class HL7v2xMessageIntoFHIRCommunication {
@@ -53,25 +55,68 @@ public class HL7v2xMessageIntoFHIRCommunication {
     @Inject
     private CommunicationFactory communicationFactory;
 
-    @Inject
-    private HL7v2xInformationExtractionInterface messageInformationExtractionInterface;
-
     @Inject
     private CommunicationPayloadTypeExtensionEnricher payloadTypeExtensionEnricher;
 
     @Inject
     private HL7V2XTopicFactory hl7v2TopicFactory;
 
+    @Inject
+    private ProcessingPlantDataParcelManifestDM manifestDM;
+
+    /**
+     * Encapsulates a message that has already been parsed. The header details are still read from the
+     * message's encoding (see {@link CachedHL7v2xMessage}) rather than walked out of the HAPI object
+     * model, and the encoding is the one the message was parsed from if it travelled with the exchange.
+     *
+     * @param message the HL7 v2.x message
+     * @param exchange the Camel Exchange
+     * @return a Communication carrying the message, or null if the message is null or cannot be encoded
+     */
     public Communication encapsulateMessage(Message message, Exchange exchange){
         getLogger().debug(".encapsulateMessage(): Entry, message->{}", message);
         if(message == null){
             getLogger().warn(".encapsulateMessage(): Exit, message is null!");
+            return(null);
+        }
+        CachedHL7v2xMessage cachedMessage = CachedHL7v2xMessage.fromExchange(exchange, message);
+        HL7v2xMessageView messageView;
+        try {
+            messageView = cachedMessage.getMessageView();
+        } catch(HL7Exception encodingException){
+            getLogger().warn(".encapsulateMessage(): Exit, message cannot be encoded, error->{}", encodingException.getMessage());
+            return(null);
         }
-        String messageID = messageInformationExtractionInterface.extractMessageID(message);
-        Date messageDate = messageInformationExtractionInterface.extractMessageDate(message);
-        String source = messageInformationExtractionInterface.extractMessageSource(message);
+        Communication newCommunication = encapsulateMessageView(messageView, exchange);
+        getLogger().debug(".encapsulateMessage(): Exit, newCommunication->{}", newCommunication);
+        return (newCommunication);
+    }
 
+    /**
+     * Encapsulates the message without parsing it - the header details are read straight from the MSH
+     * segment (see {@link HL7v2xMessageView}), so the message text is carried through as-is.
+     *
+     * @param messageAsText the HL7 v2.x message (ER7 encoded)
+     * @param exchange the Camel Exchange
+     * @return a Communication carrying the message, or null if the message is null
+     */
+    public Communication encapsulateMessage(String messageAsText, Exchange exchange){
+        getLogger().debug(".encapsulateMessage(): Entry, messageAsText->{}", messageAsText);
+        if(messageAsText == null){
+            getLogger().warn(".encapsulateMessage(): Exit, messageAsText is null!");
+            return(null);
+        }
+        Communication newCommunication = encapsulateMessageView(HL7v2xMessageView.fromExchange(exchange, messageAsText), exchange);
+        getLogger().debug(".encapsulateMessage(): Exit, newCommunication->{}", newCommunication);
+        return (newCommunication);
+    }
+
+    private Communication encapsulateMessageView(HL7v2xMessageView messageView, Exchange exchange){
+        return(buildCommunication(messageView.getMessageControlId(), messageView.getMessageDate(), messageView.getMessageText(),
+                messageView.getMessageType(), messageView.getTriggerEvent(), messageView.getVersion(), exchange));
+    }
 
+    private Communication buildCommunication(String messageID, Date messageDate, String messageAsTxt, String messageType, String messageTrigger, String messageVersion, Exchange exchange){
         getLogger().trace(".buildDefaultCommunicationMessage(): Add Id value (from the m.room.message::event_id");
         Communication newCommunication = communicationFactory.newCommunicationResource(messageID, messageDate);
         newCommunication.setStatus(Communication.CommunicationStatus.COMPLETED);
@@ -81,27 +126,17 @@ public class HL7v2xMessageIntoFHIRCommunication {
         // Add payload
         //
         Communication.CommunicationPayloadComponent payload = new Communication.CommunicationPayloadComponent();
-        String messageAsTxt = messageInformationExtractionInterface.convertMessageToString(message);
         StringType messageStringType = new StringType(messageAsTxt);
         payload.setContent(messageStringType);
-        String messageType = messageInformationExtractionInterface.extractMessageType(message);
-        String messageTrigger = messageInformationExtractionInterface.extractMessageTrigger(message);
-        String messageVersion = messageInformationExtractionInterface.extractMessageVersion(message);
-        DataParcelTypeDescriptor parcelTypeDescriptor = hl7v2TopicFactory.newDataParcelDescriptor(messageType, messageTrigger, messageVersion);
 
         PetasosFulfillmentTaskSharedInstance fulfillmentTask = exchange.getProperty(PetasosPropertyConstants.WUP_PETASOS_FULFILLMENT_TASK_EXCHANGE_PROPERTY, PetasosFulfillmentTaskSharedInstance.class);
         UoW uowFromExchange = fulfillmentTask.getTaskWorkItem();
         DataParcelManifest manifestFromUoW = uowFromExchange.getPayloadTopicID();
-        DataParcelTypeDescriptor descriptorFromUoW = SerializationUtils.clone(manifestFromUoW.getContentDescriptor());
-        if(descriptorFromUoW.hasDataParcelDiscriminatorType()){
-            parcelTypeDescriptor.setDataParcelDiscriminatorType(SerializationUtils.clone(descriptorFromUoW.getDataParcelDiscriminatorType()));
-        }
-        if(descriptorFromUoW.hasDataParcelDiscriminatorValue()){
-            parcelTypeDescriptor.setDataParcelDiscriminatorValue(SerializationUtils.clone(descriptorFromUoW.getDataParcelDiscriminatorValue()));
-        }
+        DataParcelTypeDescriptor descriptorFromUoW = manifestFromUoW.getContentDescriptor();
+        DataParcelTypeDescriptor parcelTypeDescriptor = manifestDM.getHL7v2xDescriptor(messageType, messageTrigger, messageVersion,
+                descriptorFromUoW.getDataParcelDiscriminatorType(), descriptorFromUoW.getDataParcelDiscriminatorValue());
         payloadTypeExtensionEnricher.injectPayloadTypeExtension(payload,parcelTypeDescriptor );
         newCommunication.getPayload().add(payload);
-        getLogger().debug(".encapsulateMessage(): Exit, newCommunication->{}", newCommunication);
         return (newCommunication);
     }
 }
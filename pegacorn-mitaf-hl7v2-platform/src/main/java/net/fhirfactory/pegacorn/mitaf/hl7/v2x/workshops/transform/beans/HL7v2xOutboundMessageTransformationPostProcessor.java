@@ -26,6 +26,7 @@ import javax.inject.Inject;
 
 import org.apache.camel.Exchange;
 import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,11 +37,14 @@ import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelDirect
 import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelNormalisationStatusEnum;
 import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelTypeEnum;
 import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelValidationStatusEnum;
+import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.PolicyEnforcementPointApprovalStatusEnum;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
 import net.fhirfactory.pegacorn.internals.fhir.r4.internal.topics.HL7V2XTopicFactory;
-import net.fhirfactory.pegacorn.internals.hl7v2.interfaces.HL7v2xInformationExtractionInterface;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.DataParcelInternKey;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches.ProcessingPlantDataParcelManifestDM;
 import net.fhirfactory.pegacorn.petasos.core.tasks.accessors.PetasosFulfillmentTaskSharedInstance;
 
 /**
@@ -53,12 +57,14 @@ import net.fhirfactory.pegacorn.petasos.core.tasks.accessors.PetasosFulfillmentT
 public class HL7v2xOutboundMessageTransformationPostProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(HL7v2xOutboundMessageTransformationPostProcessor.class);
 
-    @Inject
-    private HL7v2xInformationExtractionInterface messageInformationExtractionInterface;
+    private static final String OUTBOUND_TRANSFORMATION_MANIFEST_PURPOSE = "HL7v2xOutboundTransformation";
 
     @Inject
     private HL7V2XTopicFactory hl7v2TopicFactory;
 
+    @Inject
+    private ProcessingPlantDataParcelManifestDM manifestDM;
+
     //
     // Getters and Setters
     //
@@ -94,25 +100,29 @@ public class HL7v2xOutboundMessageTransformationPostProcessor {
         //
         // Create new UoWPayload (egress payload)
         UoWPayload newPayload = new UoWPayload();
-        DataParcelManifest newManifest = new DataParcelManifest();
-
-        String messageType = messageInformationExtractionInterface.extractMessageType(message);
-        String messageTrigger = messageInformationExtractionInterface.extractMessageTrigger(message);
-        String messageVersion = messageInformationExtractionInterface.extractMessageVersion(message);
-        DataParcelTypeDescriptor parcelTypeDescriptor = hl7v2TopicFactory.newDataParcelDescriptor(messageType, messageTrigger, messageVersion);
-        if (uow.getIngresContent().getPayloadManifest().getContentDescriptor().hasDataParcelDiscriminatorType()) {
-            parcelTypeDescriptor.setDataParcelDiscriminatorType(SerializationUtils.clone(uow.getIngresContent().getPayloadManifest().getContentDescriptor().getDataParcelDiscriminatorType()));
-        }
-        if (uow.getIngresContent().getPayloadManifest().getContentDescriptor().hasDataParcelDiscriminatorValue()) {
-            parcelTypeDescriptor.setDataParcelDiscriminatorValue(SerializationUtils.clone(uow.getIngresContent().getPayloadManifest().getContentDescriptor().getDataParcelDiscriminatorValue()));
-        }
-
-        newManifest.setContentDescriptor(parcelTypeDescriptor);
-        newManifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_FALSE);
-        newManifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_FALSE);
-        newManifest.setEnforcementPointApprovalStatus(uow.getIngresContent().getPayloadManifest().getEnforcementPointApprovalStatus());
-        newManifest.setDataParcelType(DataParcelTypeEnum.GENERAL_DATA_PARCEL_TYPE);
-        newManifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_OUTBOUND_DATA_PARCEL);
+        // the header metadata is read straight from the transformation output's MSH, there's no need to parse it
+        HL7v2xMessageView outputView = HL7v2xMessageView.fromExchange(exchange, message);
+        String messageType = outputView.getMessageType();
+        String messageTrigger = outputView.getTriggerEvent();
+        String messageVersion = outputView.getVersion();
+        DataParcelManifest ingresManifest = uow.getIngresContent().getPayloadManifest();
+        String discriminatorType = ingresManifest.getContentDescriptor().getDataParcelDiscriminatorType();
+        String discriminatorValue = ingresManifest.getContentDescriptor().getDataParcelDiscriminatorValue();
+        DataParcelTypeDescriptor parcelTypeDescriptor = manifestDM.getHL7v2xDescriptor(messageType, messageTrigger, messageVersion, discriminatorType, discriminatorValue);
+        PolicyEnforcementPointApprovalStatusEnum approvalStatus = ingresManifest.getEnforcementPointApprovalStatus();
+        DataParcelInternKey manifestKey = new DataParcelInternKey(OUTBOUND_TRANSFORMATION_MANIFEST_PURPOSE, messageType, messageTrigger, messageVersion,
+                StringUtils.defaultString(discriminatorType), StringUtils.defaultString(discriminatorValue),
+                approvalStatus == null ? "" : approvalStatus.name());
+        DataParcelManifest newManifest = manifestDM.getManifest(manifestKey, () -> {
+            DataParcelManifest manifest = new DataParcelManifest();
+            manifest.setContentDescriptor(parcelTypeDescriptor);
+            manifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_FALSE);
+            manifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_FALSE);
+            manifest.setEnforcementPointApprovalStatus(approvalStatus);
+            manifest.setDataParcelType(DataParcelTypeEnum.GENERAL_DATA_PARCEL_TYPE);
+            manifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_OUTBOUND_DATA_PARCEL);
+            return(manifest);
+        });
 
         newPayload.setPayload(message.toString());
         newPayload.setPayloadManifest(newManifest);
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.engines;
+
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.message.transformation.TransformationTemplateService;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.HL7v2xTransformationEngineInterface;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.TransformationConfigurationFileSpecificationInterface;
+import org.apache.camel.Processor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.nio.file.Path;
+
+/**
+ * Executes FreeMarker (.ftl) transformations, using the compiled (and hot reloaded) templates of the
+ * {@link TransformationTemplateService}. The data model is the one prepared by FreeMarkerConfiguration.
+ */
+@ApplicationScoped
+public class FreeMarkerTransformationEngine implements HL7v2xTransformationEngineInterface {
+    private static final Logger LOG = LoggerFactory.getLogger(FreeMarkerTransformationEngine.class);
+
+    private static final String ENGINE_NAME = "FreeMarker";
+
+    @Inject
+    private TransformationTemplateService templateService;
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    @Override
+    public String getEngineName() {
+        return(ENGINE_NAME);
+    }
+
+    //
+    // Business Methods
+    //
+
+    @Override
+    public boolean supports(TransformationConfigurationFileSpecificationInterface specification) {
+        return(HL7v2xTransformationSpecification.isFreeMarkerTemplate(specification));
+    }
+
+    @Override
+    public Processor transformWith(TransformationConfigurationFileSpecificationInterface specification) {
+        getLogger().debug(".transformWith(): Entry, specification->{}", specification);
+        Path templatePath = templateService.resolveTemplatePath(specification.getTransformationConfigurationFileName());
+        // registering compiles the template, so a missing (or broken) template is found at startup
+        templateService.registerTemplate(templatePath);
+        Processor transformer = templateService.transformWith(templatePath);
+        getLogger().debug(".transformWith(): Exit, templatePath->{}", templatePath);
+        return(transformer);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.engines;
+
+import ca.uhn.hl7v2.model.Message;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.CachedHL7v2xMessage;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Routes each message to the transformation for its message type, trigger event and version (MSH-9.1,
+ * MSH-9.2 and MSH-12), so a message only runs the transformation logic written for it. Entries are keyed
+ * "type^trigger^version" where trigger and version may be "*"; the most specific entry wins:
+ *
+ * <pre>
+ *     ADT^A01^2.4  -&gt;  ADT^A01^*  -&gt;  ADT^*^2.4  -&gt;  ADT^*^*  -&gt;  default
+ * </pre>
+ *
+ * The table is built once, at route construction (the entries' transformations are precompiled) and is
+ * read-only afterwards.
+ */
+public class HL7v2xTransformationDispatchTable implements Processor {
+    private static final Logger LOG = LoggerFactory.getLogger(HL7v2xTransformationDispatchTable.class);
+
+    public static final String WILDCARD = "*";
+    private static final String KEY_SEPARATOR = "^";
+
+    private final Map<String, Processor> entries;
+    private final Processor defaultTransformation;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xTransformationDispatchTable(Processor defaultTransformation){
+        this.entries = new HashMap<>();
+        this.defaultTransformation = defaultTransformation;
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public Set<String> getEntryKeys(){
+        return(entries.keySet());
+    }
+
+    public boolean isEmpty(){
+        return(entries.isEmpty());
+    }
+
+    public Processor getDefaultTransformation() {
+        return defaultTransformation;
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @param messageType MSH-9.1, e.g. ADT
+     * @param triggerEvent MSH-9.2, e.g. A01, or null/"*" for any trigger event
+     * @param version MSH-12, e.g. 2.4, or null/"*" for any version
+     * @param transformation the transformation for matching messages
+     */
+    public void addEntry(String messageType, String triggerEvent, String version, Processor transformation){
+        if(StringUtils.isEmpty(messageType) || WILDCARD.equals(messageType) || transformation == null){
+            throw new IllegalArgumentException("A dispatch entry needs a message type and a transformation, messageType->" + messageType);
+        }
+        String key = buildKey(messageType, triggerEvent, version);
+        if(entries.put(key, transformation) != null){
+            getLogger().warn(".addEntry(): Entry replaced, key->{}", key);
+        }
+    }
+
+    /**
+     * @return the transformation for the message type, trigger event and version (the default if no entry matches)
+     */
+    public Processor resolve(String messageType, String triggerEvent, String version){
+        if(entries.isEmpty() || StringUtils.isEmpty(messageType)){
+            return(defaultTransformation);
+        }
+        Processor transformation = entries.get(buildKey(messageType, triggerEvent, version));
+        if(transformation == null){
+            transformation = entries.get(buildKey(messageType, triggerEvent, WILDCARD));
+        }
+        if(transformation == null){
+            transformation = entries.get(buildKey(messageType, WILDCARD, version));
+        }
+        if(transformation == null){
+            transformation = entries.get(buildKey(messageType, WILDCARD, WILDCARD));
+        }
+        if(transformation == null){
+            transformation = defaultTransformation;
+        }
+        return(transformation);
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        if(entries.isEmpty()){
+            defaultTransformation.process(exchange);
+            return;
+        }
+        CachedHL7v2xMessage cachedMessage = extractMessage(exchange);
+        String messageType = cachedMessage.getMessageType();
+        String triggerEvent = cachedMessage.getTriggerEvent();
+        String version = cachedMessage.getVersion();
+        getLogger().debug(".process(): messageType->{}, triggerEvent->{}, version->{}", messageType, triggerEvent, version);
+        resolve(messageType, triggerEvent, version).process(exchange);
+    }
+
+    //
+    // Helper Methods
+    //
+
+    public static String buildKey(String messageType, String triggerEvent, String version){
+        String trigger = StringUtils.isEmpty(triggerEvent) ? WILDCARD : triggerEvent;
+        String messageVersion = StringUtils.isEmpty(version) ? WILDCARD : version;
+        return(messageType + KEY_SEPARATOR + trigger + KEY_SEPARATOR + messageVersion);
+    }
+
+    // the message has (normally) been parsed and cached on the exchange already, so this is a lookup
+    private CachedHL7v2xMessage extractMessage(Exchange exchange) throws Exception {
+        Object body = exchange.getMessage().getBody();
+        if(body instanceof Message){
+            return(CachedHL7v2xMessage.fromExchange(exchange, (Message)body));
+        }
+        if(body instanceof String){
+            return(CachedHL7v2xMessage.fromExchange(exchange, (String)body));
+        }
+        throw new IllegalArgumentException("Cannot dispatch body of type " + (body == null ? "null" : body.getClass().getName()) + ", expected a HL7 Message");
+    }
+
+    @Override
+    public String toString() {
+        return "HL7v2xTransformationDispatchTable{" +
+                "entries=" + entries.keySet() +
+                '}';
+    }
+}
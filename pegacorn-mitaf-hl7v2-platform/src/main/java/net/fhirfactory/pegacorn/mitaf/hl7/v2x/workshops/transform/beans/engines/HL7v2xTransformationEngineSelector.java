@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.engines;
+
+import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.message.transformation.TransformationTemplateService;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.HL7v2xTransformationEngineInterface;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.TransformationConfigurationFileSpecificationInterface;
+import org.apache.camel.Processor;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Chooses the transformation engine for a transformation. The transformation is configured (per processing
+ * plant) with the HL7_INGRES_TRANSFORMATION / HL7_EGRESS_TRANSFORMATION parameters - either a template file
+ * (".ftl", absolute or relative to the transformation configuration directory) or "java:" and a mapping
+ * name. Without the parameter the service's default template is used, as before.
+ *
+ * A template transformation can be split per message type: next to the template, files named
+ * [template]_[type].ftl, [template]_[type]_[trigger].ftl or [template]_[type]_[trigger]_[version].ftl
+ * (e.g. svc-ingres-transformation-config_ADT_A01.ftl) are used for the matching messages, and the template
+ * itself for everything else - see {@link HL7v2xTransformationDispatchTable}.
+ */
+@ApplicationScoped
+public class HL7v2xTransformationEngineSelector {
+    private static final Logger LOG = LoggerFactory.getLogger(HL7v2xTransformationEngineSelector.class);
+
+    public static final String INGRES_TRANSFORMATION_PARAMETER_NAME = "HL7_INGRES_TRANSFORMATION";
+    public static final String EGRESS_TRANSFORMATION_PARAMETER_NAME = "HL7_EGRESS_TRANSFORMATION";
+
+    private static final String DISPATCH_ENTRY_SEPARATOR = "_";
+    private static final int MAXIMUM_DISPATCH_KEY_PARTS = 3;
+
+    @Inject
+    @Any
+    private Instance<HL7v2xTransformationEngineInterface> engines;
+
+    @Inject
+    private TransformationTemplateService templateService;
+
+    @Inject
+    private ProcessingPlantInterface processingPlant;
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    //
+    // Business Methods
+    //
+
+    public TransformationConfigurationFileSpecificationInterface getIngresTransformation(){
+        return(resolveSpecification(INGRES_TRANSFORMATION_PARAMETER_NAME, TransformationTemplateService.INGRES_TRANSFORMATION_TEMPLATE_SUFFIX));
+    }
+
+    public TransformationConfigurationFileSpecificationInterface getEgressTransformation(){
+        return(resolveSpecification(EGRESS_TRANSFORMATION_PARAMETER_NAME, TransformationTemplateService.EGRESS_TRANSFORMATION_TEMPLATE_SUFFIX));
+    }
+
+    protected TransformationConfigurationFileSpecificationInterface resolveSpecification(String parameterName, String defaultTemplateSuffix){
+        String configuredTransformation = processingPlant.getMeAsASoftwareComponent().getOtherConfigurationParameter(parameterName);
+        if(StringUtils.isNotBlank(configuredTransformation)){
+            getLogger().info(".resolveSpecification(): {}->{}", parameterName, configuredTransformation);
+            return(new HL7v2xTransformationSpecification(configuredTransformation.trim()));
+        }
+        return(new HL7v2xTransformationSpecification(templateService.getTransformationTemplatePath(defaultTemplateSuffix).toString()));
+    }
+
+    /**
+     * @param specification the transformation's configuration
+     * @return the Processor, from the first engine that supports the specification
+     * @throws RuntimeException if no engine supports the specification
+     */
+    public Processor transformWith(TransformationConfigurationFileSpecificationInterface specification){
+        getLogger().debug(".transformWith(): Entry, specification->{}", specification);
+        for(HL7v2xTransformationEngineInterface currentEngine: engines){
+            if(currentEngine.supports(specification)){
+                getLogger().info(".transformWith(): engine->{}, transformation->{}", currentEngine.getEngineName(), specification.getTransformationConfigurationFileName());
+                return(currentEngine.transformWith(specification));
+            }
+        }
+        throw new RuntimeException("No transformation engine supports transformation: " + specification.getTransformationConfigurationFileName());
+    }
+
+    /**
+     * As {@link #transformWith(TransformationConfigurationFileSpecificationInterface)}, but also picks up
+     * the per message type variants of a template (compiling each of them now) and dispatches each message
+     * to the one for its type. Variants added later need a restart (changes to existing ones are reloaded).
+     *
+     * @param specification the transformation's configuration, the default for messages without a variant
+     * @return the Processor
+     */
+    public Processor dispatchTransformations(TransformationConfigurationFileSpecificationInterface specification){
+        getLogger().debug(".dispatchTransformations(): Entry, specification->{}", specification);
+        HL7v2xTransformationDispatchTable dispatchTable = new HL7v2xTransformationDispatchTable(transformWith(specification));
+        if(HL7v2xTransformationSpecification.isFreeMarkerTemplate(specification)){
+            addTemplateVariants(dispatchTable, templateService.resolveTemplatePath(specification.getTransformationConfigurationFileName()));
+        }
+        if(dispatchTable.isEmpty()){
+            getLogger().debug(".dispatchTransformations(): Exit, no per message type transformations");
+            return(dispatchTable.getDefaultTransformation());
+        }
+        getLogger().info(".dispatchTransformations(): Exit, dispatchTable->{}", dispatchTable);
+        return(dispatchTable);
+    }
+
+    protected void addTemplateVariants(HL7v2xTransformationDispatchTable dispatchTable, Path templatePath){
+        String templateFileName = templatePath.getFileName().toString();
+        String variantPrefix = templateFileName.substring(0, templateFileName.length() - HL7v2xTransformationSpecification.FREEMARKER_TEMPLATE_EXTENSION.length()) + DISPATCH_ENTRY_SEPARATOR;
+        try(DirectoryStream<Path> directoryContent = Files.newDirectoryStream(templatePath.getParent(), variantPrefix + "*" + HL7v2xTransformationSpecification.FREEMARKER_TEMPLATE_EXTENSION)){
+            for(Path variantPath: directoryContent){
+                if(!Files.isRegularFile(variantPath)){
+                    continue;
+                }
+                String variantFileName = variantPath.getFileName().toString();
+                String variantKey = variantFileName.substring(variantPrefix.length(), variantFileName.length() - HL7v2xTransformationSpecification.FREEMARKER_TEMPLATE_EXTENSION.length());
+                String[] keyParts = variantKey.split(DISPATCH_ENTRY_SEPARATOR, MAXIMUM_DISPATCH_KEY_PARTS);
+                if(StringUtils.isEmpty(keyParts[0])){
+                    getLogger().warn(".addTemplateVariants(): Ignoring template, no message type in its name, template->{}", variantPath);
+                    continue;
+                }
+                String triggerEvent = keyParts.length > 1 ? keyParts[1] : null;
+                String version = keyParts.length > 2 ? keyParts[2] : null;
+                Processor variantTransformation = transformWith(new HL7v2xTransformationSpecification(variantPath.toString()));
+                dispatchTable.addEntry(keyParts[0], triggerEvent, version, variantTransformation);
+            }
+        } catch(IOException directoryException){
+            getLogger().warn(".addTemplateVariants(): Cannot list template directory, only the default transformation is used, directory->{}, error->{}", templatePath.getParent(), directoryException.getMessage());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.engines;
+
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.TransformationConfigurationFileSpecificationInterface;
+
+import java.util.Objects;
+
+/**
+ * The configuration of a single transformation: either a FreeMarker template (a file name ending in
+ * ".ftl") or a Java mapping ("java:" followed by the mapping name).
+ */
+public class HL7v2xTransformationSpecification implements TransformationConfigurationFileSpecificationInterface {
+    public static final String FREEMARKER_TEMPLATE_EXTENSION = ".ftl";
+    public static final String JAVA_MAPPING_PREFIX = "java:";
+
+    private final String transformationConfigurationFileName;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xTransformationSpecification(String transformationConfigurationFileName){
+        this.transformationConfigurationFileName = transformationConfigurationFileName;
+    }
+
+    //
+    // Getters
+    //
+
+    @Override
+    public String getTransformationConfigurationFileName() {
+        return transformationConfigurationFileName;
+    }
+
+    public static boolean isFreeMarkerTemplate(TransformationConfigurationFileSpecificationInterface specification){
+        String fileName = specification == null ? null : specification.getTransformationConfigurationFileName();
+        return(fileName != null && fileName.trim().endsWith(FREEMARKER_TEMPLATE_EXTENSION));
+    }
+
+    public static boolean isJavaMapping(TransformationConfigurationFileSpecificationInterface specification){
+        String fileName = specification == null ? null : specification.getTransformationConfigurationFileName();
+        return(fileName != null && fileName.trim().startsWith(JAVA_MAPPING_PREFIX));
+    }
+
+    /**
+     * @return the mapping name (the part after "java:"), or null if this isn't a Java mapping
+     */
+    public static String getJavaMappingName(TransformationConfigurationFileSpecificationInterface specification){
+        if(!isJavaMapping(specification)){
+            return(null);
+        }
+        return(specification.getTransformationConfigurationFileName().trim().substring(JAVA_MAPPING_PREFIX.length()).trim());
+    }
+
+    //
+    // equals, hashCode and toString
+    //
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        HL7v2xTransformationSpecification that = (HL7v2xTransformationSpecification) o;
+        return Objects.equals(transformationConfigurationFileName, that.transformationConfigurationFileName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(transformationConfigurationFileName);
+    }
+
+    @Override
+    public String toString() {
+        return "HL7v2xTransformationSpecification{" +
+                "transformationConfigurationFileName='" + transformationConfigurationFileName + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.engines;
+
+import ca.uhn.hl7v2.model.Message;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers.HL7v2xParserProvider;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.CachedHL7v2xMessage;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.HL7v2xMessageMappingInterface;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.HL7v2xTransformationEngineInterface;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.TransformationConfigurationFileSpecificationInterface;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Executes Java transformations ("java:" mappings, see {@link HL7v2xMessageMappingInterface}).
+ *
+ * There's no template to interpret and no re-parse of the output: the mapping edits the message that was
+ * parsed on input, in place, and the result is encoded once. The encoding is kept (as the exchange's
+ * {@link CachedHL7v2xMessage}) so that later steps don't encode the message again.
+ *
+ * Mappings are found by name: the CDI beans implementing the interface (registered at startup), mappings
+ * registered with {@link #registerMapping(String, HL7v2xMessageMappingInterface)} (e.g. lambdas) or,
+ * failing those, a class of that name with a no-argument constructor.
+ */
+@ApplicationScoped
+public class JavaMappingTransformationEngine implements HL7v2xTransformationEngineInterface {
+    private static final Logger LOG = LoggerFactory.getLogger(JavaMappingTransformationEngine.class);
+
+    private static final String ENGINE_NAME = "JavaMapping";
+
+    private final ConcurrentHashMap<String, HL7v2xMessageMappingInterface> mappings;
+    private boolean initialised;
+
+    @Inject
+    @Any
+    private Instance<HL7v2xMessageMappingInterface> discoveredMappings;
+
+    //
+    // Constructor(s)
+    //
+
+    public JavaMappingTransformationEngine(){
+        this.mappings = new ConcurrentHashMap<>();
+        this.initialised = false;
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Nothing to do, already initialised");
+            return;
+        }
+        if(discoveredMappings != null){
+            for(HL7v2xMessageMappingInterface currentMapping: discoveredMappings){
+                registerMapping(currentMapping.getMappingName(), currentMapping);
+            }
+        }
+        this.initialised = true;
+        getLogger().info(".initialise(): Registered {} mappings, mappingNames->{}", mappings.size(), mappings.keySet());
+        getLogger().debug(".initialise(): Exit");
+    }
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    @Override
+    public String getEngineName() {
+        return(ENGINE_NAME);
+    }
+
+    public int getMappingCount(){
+        return(mappings.size());
+    }
+
+    //
+    // Business Methods
+    //
+
+    public void registerMapping(String mappingName, HL7v2xMessageMappingInterface mapping){
+        if(StringUtils.isEmpty(mappingName) || mapping == null){
+            getLogger().warn(".registerMapping(): Ignoring, mappingName->{}, mapping->{}", mappingName, mapping);
+            return;
+        }
+        HL7v2xMessageMappingInterface previousMapping = mappings.put(mappingName, mapping);
+        if(previousMapping != null && previousMapping != mapping){
+            getLogger().warn(".registerMapping(): Mapping replaced, mappingName->{}", mappingName);
+        }
+    }
+
+    @Override
+    public boolean supports(TransformationConfigurationFileSpecificationInterface specification) {
+        return(HL7v2xTransformationSpecification.isJavaMapping(specification));
+    }
+
+    @Override
+    public Processor transformWith(TransformationConfigurationFileSpecificationInterface specification) {
+        getLogger().debug(".transformWith(): Entry, specification->{}", specification);
+        String mappingName = HL7v2xTransformationSpecification.getJavaMappingName(specification);
+        HL7v2xMessageMappingInterface mapping = resolveMapping(mappingName);
+        getLogger().debug(".transformWith(): Exit, mappingName->{}", mappingName);
+        return(exchange -> transform(mapping, exchange));
+    }
+
+    protected void transform(HL7v2xMessageMappingInterface mapping, Exchange exchange) throws Exception {
+        Message message = extractMessage(exchange);
+        mapping.map(message, exchange);
+        String transformedMessage = HL7v2xParserProvider.encode(message);
+        // the message has changed, so any cached encoding of it (e.g. the input text) is now stale
+        exchange.setProperty(CachedHL7v2xMessage.CACHED_MESSAGE_EXCHANGE_PROPERTY, new CachedHL7v2xMessage(message, transformedMessage));
+        exchange.getMessage().setBody(transformedMessage);
+    }
+
+    private Message extractMessage(Exchange exchange) throws Exception {
+        Object body = exchange.getMessage().getBody();
+        if(body instanceof Message){
+            return((Message)body);
+        }
+        if(body instanceof String){
+            return(CachedHL7v2xMessage.fromExchange(exchange, (String)body).getMessage());
+        }
+        throw new IllegalArgumentException("Cannot transform body of type " + (body == null ? "null" : body.getClass().getName()) + ", expected a HL7 Message");
+    }
+
+    /**
+     * @param mappingName the name of a registered mapping, or the class name of one
+     * @return the mapping
+     * @throws IllegalArgumentException if there's no such mapping
+     */
+    protected HL7v2xMessageMappingInterface resolveMapping(String mappingName){
+        if(StringUtils.isEmpty(mappingName)){
+            throw new IllegalArgumentException("No Java mapping name given");
+        }
+        HL7v2xMessageMappingInterface mapping = mappings.get(mappingName);
+        if(mapping != null){
+            return(mapping);
+        }
+        try {
+            Class<?> mappingClass = Class.forName(mappingName, true, Thread.currentThread().getContextClassLoader());
+            if(!HL7v2xMessageMappingInterface.class.isAssignableFrom(mappingClass)){
+                throw new IllegalArgumentException("Class " + mappingName + " is not a " + HL7v2xMessageMappingInterface.class.getSimpleName());
+            }
+            mapping = (HL7v2xMessageMappingInterface)mappingClass.getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException mappingException){
+            throw new IllegalArgumentException("Java mapping not found: " + mappingName, mappingException);
+        }
+        HL7v2xMessageMappingInterface existingMapping = mappings.putIfAbsent(mappingName, mapping);
+        return(existingMapping != null ? existingMapping : mapping);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.filter;
+
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The pre-transformation filter of a transformation WUP: a list of {@link HL7v2xMessageFilterRule}s, a
+ * message is discarded if any of them matches. The rules are checked in order and the first match decides
+ * (so it is the only rule whose hit count goes up).
+ */
+public class HL7v2xMessageFilter {
+    public static final String RULE_SEPARATOR = ";";
+
+    private final List<HL7v2xMessageFilterRule> rules;
+    private final AtomicLong evaluatedMessageCount;
+    private final AtomicLong discardedMessageCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xMessageFilter(){
+        this.rules = new ArrayList<>();
+        this.evaluatedMessageCount = new AtomicLong(0);
+        this.discardedMessageCount = new AtomicLong(0);
+    }
+
+    /**
+     * @param expressions rules separated by ";" (so an operand cannot contain one), e.g. "MSH-9 !in {ADT,ORU}; PV1-2 = 'I'"
+     * @return the filter
+     * @throws IllegalArgumentException if a rule cannot be parsed
+     */
+    public static HL7v2xMessageFilter parse(String expressions){
+        HL7v2xMessageFilter filter = new HL7v2xMessageFilter();
+        if(StringUtils.isBlank(expressions)){
+            return(filter);
+        }
+        for(String currentExpression: expressions.split(RULE_SEPARATOR)){
+            if(StringUtils.isNotBlank(currentExpression)){
+                filter.addRule(HL7v2xMessageFilterRule.parse(currentExpression));
+            }
+        }
+        return(filter);
+    }
+
+    //
+    // Business Methods
+    //
+
+    public HL7v2xMessageFilter addRule(HL7v2xMessageFilterRule rule){
+        rules.add(rule);
+        return(this);
+    }
+
+    public HL7v2xMessageFilter addRule(String expression){
+        return(addRule(HL7v2xMessageFilterRule.parse(expression)));
+    }
+
+    /**
+     * @param messageView the message
+     * @return the first rule the message matches (i.e. the reason to discard it), or null if it passes
+     */
+    public HL7v2xMessageFilterRule evaluate(HL7v2xMessageView messageView){
+        evaluatedMessageCount.incrementAndGet();
+        for(HL7v2xMessageFilterRule currentRule: rules){
+            if(currentRule.matches(messageView)){
+                discardedMessageCount.incrementAndGet();
+                return(currentRule);
+            }
+        }
+        return(null);
+    }
+
+    //
+    // Getters
+    //
+
+    public boolean isEmpty(){
+        return(rules.isEmpty());
+    }
+
+    public List<HL7v2xMessageFilterRule> getRules() {
+        return(Collections.unmodifiableList(rules));
+    }
+
+    //
+    // Metrics
+    //
+
+    public long getEvaluatedMessageCount() {
+        return(evaluatedMessageCount.get());
+    }
+
+    public long getDiscardedMessageCount() {
+        return(discardedMessageCount.get());
+    }
+
+    /**
+     * @return the hit count of each rule, by rule expression, in rule order
+     */
+    public Map<String, Long> getRuleHitCounts(){
+        Map<String, Long> hitCounts = new LinkedHashMap<>();
+        for(HL7v2xMessageFilterRule currentRule: rules){
+            hitCounts.put(currentRule.getExpression(), currentRule.getHitCount());
+        }
+        return(hitCounts);
+    }
+
+    @Override
+    public String toString() {
+        return "HL7v2xMessageFilter{" +
+                "evaluatedMessageCount=" + evaluatedMessageCount +
+                ", discardedMessageCount=" + discardedMessageCount +
+                ", ruleHitCounts=" + getRuleHitCounts() +
+                '}';
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.filter;
+
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xFieldPath;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A single pre-transformation filter rule: a condition on one value of the message which, when true,
+ * means the message is to be discarded. Rules are written as
+ *
+ * <pre>
+ *     PATH OPERATOR [OPERAND]
+ * </pre>
+ *
+ * where PATH is a {@link HL7v2xFieldPath} (e.g. "PV1-2", "PID-3-4") and OPERATOR is one of
+ * "=", "!=", "in", "!in", "matches", "!matches" (OPERAND is a value, a {A,B,C} list or a regular
+ * expression respectively, optionally quoted) or "empty"/"present" (no OPERAND). For example
+ * "MSH-9 !in {ADT,ORU}" discards anything other than ADT and ORU messages and "PV1-2 = 'I'" discards
+ * inpatient messages. A value that is absent from the message is treated as empty.
+ *
+ * The rule is evaluated on the message's text (via a {@link HL7v2xMessageView}), it never parses the message.
+ */
+public class HL7v2xMessageFilterRule {
+
+    public enum Operator {
+        EQUALS("="),
+        NOT_EQUALS("!="),
+        IN("in"),
+        NOT_IN("!in"),
+        MATCHES("matches"),
+        NOT_MATCHES("!matches"),
+        EMPTY("empty"),
+        PRESENT("present");
+
+        private final String token;
+
+        Operator(String token){
+            this.token = token;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public boolean hasOperand(){
+            return(this != EMPTY && this != PRESENT);
+        }
+
+        public static Operator fromToken(String token){
+            for(Operator currentOperator: values()){
+                if(currentOperator.token.equalsIgnoreCase(token)){
+                    return(currentOperator);
+                }
+            }
+            throw new IllegalArgumentException("Unknown filter operator: " + token);
+        }
+    }
+
+    private final String expression;
+    private final HL7v2xFieldPath fieldPath;
+    private final Operator operator;
+    private final String value;
+    private final Set<String> values;
+    private final Pattern pattern;
+    private final AtomicLong hitCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7v2xMessageFilterRule(String path, Operator operator, String... operands){
+        this.fieldPath = HL7v2xFieldPath.compile(path);
+        this.operator = operator;
+        if(operator.hasOperand() && (operands == null || operands.length == 0)){
+            throw new IllegalArgumentException("Filter operator " + operator.getToken() + " needs an operand, path->" + path);
+        }
+        this.value = operator.hasOperand() ? operands[0] : null;
+        this.values = operator.hasOperand() ? Collections.unmodifiableSet(new HashSet<>(Arrays.asList(operands))) : Collections.emptySet();
+        this.pattern = (operator == Operator.MATCHES || operator == Operator.NOT_MATCHES) ? Pattern.compile(value) : null;
+        this.expression = path + " " + operator.getToken() + (operator.hasOperand() ? " " + formatOperands(operator, operands) : "");
+        this.hitCount = new AtomicLong(0);
+    }
+
+    /**
+     * @param expression a rule, e.g. "PV1-2 = 'I'" or "MSH-9 in {ADT, ORU}"
+     * @return the compiled rule
+     * @throws IllegalArgumentException if the rule cannot be parsed
+     */
+    public static HL7v2xMessageFilterRule parse(String expression){
+        if(StringUtils.isBlank(expression)){
+            throw new IllegalArgumentException("Filter rule is empty");
+        }
+        String[] parts = expression.trim().split("\\s+", 3);
+        if(parts.length < 2){
+            throw new IllegalArgumentException("Invalid filter rule (expected PATH OPERATOR [OPERAND]): " + expression);
+        }
+        Operator operator = Operator.fromToken(parts[1]);
+        if(!operator.hasOperand()){
+            if(parts.length > 2){
+                throw new IllegalArgumentException("Filter operator " + operator.getToken() + " takes no operand: " + expression);
+            }
+            return(new HL7v2xMessageFilterRule(parts[0], operator));
+        }
+        if(parts.length < 3){
+            throw new IllegalArgumentException("Filter operator " + operator.getToken() + " needs an operand: " + expression);
+        }
+        String operand = parts[2].trim();
+        if(operator == Operator.IN || operator == Operator.NOT_IN){
+            if(operand.startsWith("{") && operand.endsWith("}")){
+                operand = operand.substring(1, operand.length() - 1);
+            }
+            String[] operands = operand.split(",");
+            for(int counter = 0; counter < operands.length; counter++){
+                operands[counter] = unquote(operands[counter].trim());
+            }
+            return(new HL7v2xMessageFilterRule(parts[0], operator, operands));
+        }
+        return(new HL7v2xMessageFilterRule(parts[0], operator, unquote(operand)));
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @param messageView the message
+     * @return true if the message matches the rule (i.e. is to be discarded), counting the hit
+     */
+    public boolean matches(HL7v2xMessageView messageView){
+        boolean matches = evaluate(fieldPath.getValue(messageView));
+        if(matches){
+            hitCount.incrementAndGet();
+        }
+        return(matches);
+    }
+
+    private boolean evaluate(String fieldValue){
+        switch(operator){
+            case EQUALS:
+                return(value.equals(fieldValue));
+            case NOT_EQUALS:
+                return(!value.equals(fieldValue));
+            case IN:
+                return(fieldValue != null && values.contains(fieldValue));
+            case NOT_IN:
+                return(fieldValue == null || !values.contains(fieldValue));
+            case MATCHES:
+                return(fieldValue != null && pattern.matcher(fieldValue).matches());
+            case NOT_MATCHES:
+                return(fieldValue == null || !pattern.matcher(fieldValue).matches());
+            case EMPTY:
+                return(fieldValue == null);
+            case PRESENT:
+            default:
+                return(fieldValue != null);
+        }
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private static String unquote(String operand){
+        if(operand.length() >= 2){
+            char first = operand.charAt(0);
+            char last = operand.charAt(operand.length() - 1);
+            if((first == '\'' || first == '"') && first == last){
+                return(operand.substring(1, operand.length() - 1));
+            }
+        }
+        return(operand);
+    }
+
+    private static String formatOperands(Operator operator, String[] operands){
+        if(operator == Operator.IN || operator == Operator.NOT_IN){
+            return("{" + String.join(",", operands) + "}");
+        }
+        return("'" + operands[0] + "'");
+    }
+
+    //
+    // Getters
+    //
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public long getHitCount(){
+        return(hitCount.get());
+    }
+
+    @Override
+    public String toString() {
+        return(expression);
+    }
+}
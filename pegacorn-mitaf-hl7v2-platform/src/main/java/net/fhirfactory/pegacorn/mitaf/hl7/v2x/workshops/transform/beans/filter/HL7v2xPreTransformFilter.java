@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.filter;
+
+import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
+import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
+import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
+import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
+import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWProcessingOutcomeEnum;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import net.fhirfactory.pegacorn.petasos.core.tasks.accessors.PetasosFulfillmentTaskSharedInstance;
+import org.apache.camel.Exchange;
+import org.apache.camel.Predicate;
+import org.apache.commons.lang3.SerializationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * The pre-transformation filter stage of the transformation WUPs. Messages the WUP's
+ * {@link HL7v2xMessageFilter} discards leave the route as FILTERED units of work straight away, before
+ * the message is parsed or transformed - the same outcome as a template setting sendMessage to false,
+ * without the work.
+ *
+ * The filters are configured per processing plant with the HL7_INGRES_FILTER / HL7_EGRESS_FILTER
+ * parameters (see {@link HL7v2xMessageFilter#parse(String)}), a WUP can specify its own instead.
+ */
+@ApplicationScoped
+public class HL7v2xPreTransformFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(HL7v2xPreTransformFilter.class);
+
+    public static final String INGRES_FILTER_PARAMETER_NAME = "HL7_INGRES_FILTER";
+    public static final String EGRESS_FILTER_PARAMETER_NAME = "HL7_EGRESS_FILTER";
+    public static final String FILTER_RULE_EXCHANGE_PROPERTY = "MITaFPreTransformFilterRule";
+
+    private static final long FILTER_REPORT_INTERVAL = 1000;
+
+    @Inject
+    private ProcessingPlantInterface processingPlant;
+
+    //
+    // Getters
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    protected ProcessingPlantInterface getProcessingPlant(){
+        return(processingPlant);
+    }
+
+    //
+    // Business Methods
+    //
+
+    public HL7v2xMessageFilter getIngresFilter(){
+        return(createFilter(INGRES_FILTER_PARAMETER_NAME));
+    }
+
+    public HL7v2xMessageFilter getEgressFilter(){
+        return(createFilter(EGRESS_FILTER_PARAMETER_NAME));
+    }
+
+    /**
+     * @param parameterName the processing plant parameter holding the filter rules
+     * @return a new filter (empty if the parameter isn't set)
+     * @throws IllegalArgumentException if a rule cannot be parsed, so a bad filter is found at startup
+     */
+    protected HL7v2xMessageFilter createFilter(String parameterName){
+        String filterExpressions = getProcessingPlant().getMeAsASoftwareComponent().getOtherConfigurationParameter(parameterName);
+        HL7v2xMessageFilter filter = HL7v2xMessageFilter.parse(filterExpressions);
+        if(!filter.isEmpty()){
+            getLogger().info(".createFilter(): {}->{}", parameterName, filter.getRules());
+        }
+        return(filter);
+    }
+
+    /**
+     * A Predicate that is true for the messages the filter discards. The message text is taken from the
+     * UoW in the body and only scanned (as a {@link HL7v2xMessageView}), never parsed.
+     *
+     * @param filter the WUP's filter
+     * @return the Predicate
+     */
+    public Predicate discards(HL7v2xMessageFilter filter){
+        if(filter == null || filter.isEmpty()){
+            return(exchange -> false);
+        }
+        return(exchange -> {
+            String messageText = extractMessageText(exchange);
+            if(messageText == null){
+                // leave it to the transformation to report the problem
+                return(false);
+            }
+            HL7v2xMessageFilterRule matchedRule = filter.evaluate(HL7v2xMessageView.fromExchange(exchange, messageText));
+            if(matchedRule == null){
+                return(false);
+            }
+            exchange.setProperty(FILTER_RULE_EXCHANGE_PROPERTY, matchedRule.getExpression());
+            getLogger().debug(".discards(): Discarding message, rule->{}", matchedRule);
+            if(matchedRule.getHitCount() == 1 || filter.getDiscardedMessageCount() % FILTER_REPORT_INTERVAL == 0){
+                getLogger().info(".discards(): filter->{}", filter);
+            }
+            return(true);
+        });
+    }
+
+    /**
+     * Completes the unit of work as filtered (and to be discarded), with no egress content.
+     *
+     * @param uow the incoming unit of work
+     * @param exchange the Camel Exchange
+     * @return the filtered unit of work
+     */
+    public UoW discard(UoW uow, Exchange exchange){
+        getLogger().debug(".discard(): Entry, rule->{}", exchange.getProperty(FILTER_RULE_EXCHANGE_PROPERTY));
+        PetasosFulfillmentTaskSharedInstance fulfillmentTask = (PetasosFulfillmentTaskSharedInstance) exchange.getProperty(PetasosPropertyConstants.WUP_PETASOS_FULFILLMENT_TASK_EXCHANGE_PROPERTY);
+        UoW filteredUoW = SerializationUtils.clone(fulfillmentTask.getTaskWorkItem());
+        filteredUoW.getEgressContent().getPayloadElements().clear();
+        filteredUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_FILTERED);
+        fulfillmentTask.getTaskFulfillment().setToBeDiscarded(true);
+        getLogger().debug(".discard(): Exit, filteredUoW->{}", filteredUoW);
+        return(filteredUoW);
+    }
+
+    //
+    // Helper Methods
+    //
+
+    // the same payload the transformation uses (see FreeMarkerConfiguration): the first egress payload, else the ingres payload
+    private String extractMessageText(Exchange exchange){
+        Object body = exchange.getIn().getBody();
+        if(!(body instanceof UoW)){
+            return(null);
+        }
+        UoW uow = (UoW)body;
+        if(!uow.getEgressContent().getPayloadElements().isEmpty()){
+            UoWPayload firstPayload = uow.getEgressContent().getPayloadElements().iterator().next();
+            if(firstPayload.getPayload() != null){
+                return(firstPayload.getPayload());
+            }
+        }
+        return(uow.getIngresContent().getPayload());
+    }
+}
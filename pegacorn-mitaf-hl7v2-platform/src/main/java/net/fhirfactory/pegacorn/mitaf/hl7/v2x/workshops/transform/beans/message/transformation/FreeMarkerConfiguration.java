@@ -14,14 +14,10 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import ca.uhn.hl7v2.DefaultHapiContext;
 import ca.uhn.hl7v2.HL7Exception;
-import ca.uhn.hl7v2.HapiContext;
 import ca.uhn.hl7v2.model.Message;
-import ca.uhn.hl7v2.parser.DefaultModelClassFactory;
-import ca.uhn.hl7v2.parser.ModelClassFactory;
-import ca.uhn.hl7v2.parser.PipeParser;
 import freemarker.ext.beans.BeansWrapper;
+import freemarker.ext.beans.BeansWrapperBuilder;
 import freemarker.template.TemplateModel;
 import freemarker.template.Version;
 import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
@@ -29,6 +25,8 @@ import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterfac
 import net.fhirfactory.pegacorn.core.model.petasos.task.datatypes.work.datatypes.TaskWorkItemType;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoW;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers.HL7v2xParserProvider;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.CachedHL7v2xMessage;
 import net.fhirfactory.pegacorn.petasos.core.tasks.accessors.PetasosFulfillmentTaskSharedInstance;
 
 /**
@@ -40,6 +38,10 @@ public class FreeMarkerConfiguration {
     private static final Logger LOG = LoggerFactory.getLogger(FreeMarkerConfiguration.class);
     
     public static final String PROP_DEPLOY_ENVIRONMENT_NAME = "DEPLOYMENT_ENVIRONMENT";
+
+    // the wrapper (and its introspection cache) and the static models are shared by all messages
+    private static final BeansWrapper STATICS_WRAPPER = new BeansWrapperBuilder(new Version(2, 3, 27)).build();
+    private static final TemplateModel STATICS = STATICS_WRAPPER.getStaticModels();
     
 	
     @Inject
@@ -128,6 +130,9 @@ public class FreeMarkerConfiguration {
         variableMap.put("message", message);
         variableMap.put("exchange", exchange);
         variableMap.put("deploymentEnvironment", getDeploymentEnvironment());
+        if (message != null) {
+            variableMap.put("hl7", new HL7MessageTemplateModel(CachedHL7v2xMessage.fromExchange(exchange, message)));
+        }
         // Set sendMessage property in the exchange to default of true, as is the case with most transformations, which require to be sent.
         exchange.setProperty("sendMessage", true);
         
@@ -135,11 +140,8 @@ public class FreeMarkerConfiguration {
         	variableMap.putAll(hl7MessageAttributes);
         }
         
+        variableMap.put("statics", STATICS);
         exchange.getIn().setHeader(FreemarkerConstants.FREEMARKER_DATA_MODEL, variableMap);
-        BeansWrapper wrapper = new BeansWrapper(new Version(2, 3, 27));
-        TemplateModel statics = wrapper.getStaticModels();
-
-        variableMap.put("statics", statics);
     }
 
     
@@ -171,20 +173,12 @@ public class FreeMarkerConfiguration {
 			throw new RuntimeException("Unable to extract the HL7 message");
 		}
 		
-		try (HapiContext hapiContext = new DefaultHapiContext();) {
-			PipeParser parser = hapiContext.getPipeParser();
-			parser.getParserConfiguration().setValidating(false);
-
-			ModelClassFactory cmf = new DefaultModelClassFactory();
-			hapiContext.setModelClassFactory(cmf);
+		Message message = CachedHL7v2xMessage.fromExchange(exchange, hl7Message).getMessage();
 
-			Message message = parser.parse(hl7Message);
+		exchange.getMessage().setBody(message);
+		exchange.getIn().setBody(message);
 
-			exchange.getMessage().setBody(message);
-			exchange.getIn().setBody(message);
-
-			return parser.parse(hl7Message);
-		}
+		return message;
 	}
 	
 	
@@ -248,14 +242,6 @@ public class FreeMarkerConfiguration {
 	 * @throws HL7Exception
 	 */
 	public Message convertToMessage(String message, Exchange exchange) throws IOException, HL7Exception {
-		try (HapiContext hapiContext = new DefaultHapiContext();) {
-			PipeParser parser = hapiContext.getPipeParser();
-			parser.getParserConfiguration().setValidating(false);
-
-			ModelClassFactory cmf = new DefaultModelClassFactory();
-			hapiContext.setModelClassFactory(cmf);
-
-			return parser.parse(message);
-		}		
+		return HL7v2xParserProvider.parse(message);
 	}
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.message.transformation;
+
+import ca.uhn.hl7v2.HL7Exception;
+import freemarker.template.AdapterTemplateModel;
+import freemarker.template.SimpleScalar;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.CachedHL7v2xMessage;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xFieldPath;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+
+/**
+ * Exposes the values of a HL7 message to the transformation templates by Terser style path, e.g.
+ * <code>${hl7["PID-3-1"]}</code> or <code>${hl7["OBX(1)-5"]!""}</code>.
+ *
+ * The paths are compiled once (and shared, see {@link HL7v2xFieldPath}) and resolved against a segment
+ * level view of the message's encoding, so a lookup doesn't go through bean introspection of the HAPI
+ * object model. The values are those of the message as it was received (or first encoded) - changes a
+ * template makes to the HAPI message aren't visible here. An absent or empty value is returned as
+ * null (i.e. "missing" to FreeMarker).
+ */
+public class HL7MessageTemplateModel implements TemplateHashModel, AdapterTemplateModel {
+
+    private final CachedHL7v2xMessage cachedMessage;
+    private HL7v2xMessageView messageView;
+
+    //
+    // Constructor(s)
+    //
+
+    public HL7MessageTemplateModel(CachedHL7v2xMessage cachedMessage){
+        this.cachedMessage = cachedMessage;
+        this.messageView = null;
+    }
+
+    //
+    // TemplateHashModel
+    //
+
+    @Override
+    public TemplateModel get(String path) throws TemplateModelException {
+        HL7v2xFieldPath fieldPath;
+        try {
+            fieldPath = HL7v2xFieldPath.compile(path);
+        } catch(IllegalArgumentException invalidPath){
+            throw new TemplateModelException(invalidPath.getMessage());
+        }
+        String value = fieldPath.getValue(getMessageView());
+        if(value == null){
+            return(null);
+        }
+        return(new SimpleScalar(value));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return(false);
+    }
+
+    /**
+     * @return the HAPI message, so passing the model to a Java method (e.g. a statics helper) passes the Message
+     */
+    @Override
+    public Object getAdaptedObject(Class<?> hint) {
+        return(cachedMessage.getMessage());
+    }
+
+    //
+    // Helper Methods
+    //
+
+    private HL7v2xMessageView getMessageView() throws TemplateModelException {
+        if(messageView == null){
+            try {
+                // the view (and, if needed, the encoding) is only created once a template asks for a value
+                messageView = cachedMessage.getMessageView();
+            } catch(HL7Exception encodingException){
+                throw new TemplateModelException("Unable to encode the HL7 message", encodingException);
+            }
+        }
+        return(messageView);
+    }
+}
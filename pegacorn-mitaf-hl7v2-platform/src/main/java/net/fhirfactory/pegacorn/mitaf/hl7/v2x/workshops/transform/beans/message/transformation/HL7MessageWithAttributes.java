@@ -7,12 +7,8 @@ import java.util.Map;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import ca.uhn.hl7v2.DefaultHapiContext;
-import ca.uhn.hl7v2.HapiContext;
 import ca.uhn.hl7v2.model.Message;
-import ca.uhn.hl7v2.parser.DefaultModelClassFactory;
-import ca.uhn.hl7v2.parser.ModelClassFactory;
-import ca.uhn.hl7v2.parser.PipeParser;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers.HL7v2xParserProvider;
 
 /**
  * HL7 Message + message attributes to be used in freemarker templates.
@@ -83,16 +79,8 @@ public class HL7MessageWithAttributes {
 	
 	
 	public Message getMessage() throws Exception {
-		try (HapiContext hapiContext = new DefaultHapiContext();) {
-			PipeParser parser = hapiContext.getPipeParser();
-			parser.getParserConfiguration().setValidating(false);
-
-			ModelClassFactory cmf = new DefaultModelClassFactory();
-			hapiContext.setModelClassFactory(cmf);
-
-			Message message = parser.parse(this.message);
-			return message;
-		}
+		Message message = HL7v2xParserProvider.parse(this.message);
+		return message;
 	}
 	
 	
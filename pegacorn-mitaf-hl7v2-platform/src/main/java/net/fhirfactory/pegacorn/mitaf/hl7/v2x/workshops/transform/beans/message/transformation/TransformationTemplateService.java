@@ -0,0 +1,516 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.message.transformation;
+
+import freemarker.cache.FileTemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.freemarker.FreemarkerConstants;
+import org.apache.camel.support.ExchangeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compiles the (FreeMarker) transformation templates once and keeps them, ready to use, for the life of
+ * the processing plant - rather than the freemarker component re-reading and re-parsing the .ftl file
+ * for every message.
+ *
+ * The directories holding the templates are watched (WatchService) and, when something in one of them
+ * changes, the affected templates are recompiled and swapped in atomically; a message being transformed
+ * at the time finishes with the template it started with. If the new version of a template doesn't
+ * compile, the previous version is kept (and a warning logged) until the file changes again.
+ *
+ * The change check compares the real path, file key, size and last-modified time of each template rather
+ * than the name in the watch event, as a Kubernetes ConfigMap update swaps a symbolic link (..data) in the
+ * directory rather than writing to the template file itself. A watch event can arrive while the file is
+ * still being written, so a changed template is only recompiled once it is non-empty and has stayed the
+ * same for RELOAD_SETTLE_TIME_IN_MILLISECONDS; until then the watcher re-checks it at that interval.
+ *
+ * Templates are loaded through a FileTemplateLoader rooted at the transformation configuration
+ * directory (${TRANSFORMATION_CONFIG_FILE_LOCATION}/${KUBERNETES_SERVICE_NAME}), or at the template's
+ * own directory for a template outside it, so #include and #import resolve relative to that directory.
+ * Included templates are reloaded by FreeMarker itself when they change.
+ */
+@ApplicationScoped
+public class TransformationTemplateService {
+    private static final Logger LOG = LoggerFactory.getLogger(TransformationTemplateService.class);
+
+    public static final String INGRES_TRANSFORMATION_TEMPLATE_SUFFIX = "-ingres-transformation-config.ftl";
+    public static final String EGRESS_TRANSFORMATION_TEMPLATE_SUFFIX = "-egress-transformation-config.ftl";
+
+    private static final String TRANSFORMATION_CONFIG_FILE_LOCATION = "TRANSFORMATION_CONFIG_FILE_LOCATION";
+    private static final String KUBERNETES_SERVICE_NAME = "KUBERNETES_SERVICE_NAME";
+
+    private static final long RELOAD_SETTLE_TIME_IN_MILLISECONDS = 1000L;
+
+    private final ConcurrentHashMap<Path, Configuration> configurations;
+    private final ConcurrentHashMap<Path, CompiledTemplate> templates;
+    private final Set<Path> watchedDirectories;
+    private final ReentrantLock watcherLock;
+    private final AtomicLong reloadCount;
+    private final AtomicLong reloadFailureCount;
+    private WatchService watchService;
+    private Thread watcherThread;
+    private volatile boolean running;
+
+    //
+    // Constructor(s)
+    //
+
+    public TransformationTemplateService(){
+        this.configurations = new ConcurrentHashMap<>();
+        this.templates = new ConcurrentHashMap<>();
+        this.watchedDirectories = new HashSet<>();
+        this.watcherLock = new ReentrantLock();
+        this.reloadCount = new AtomicLong(0);
+        this.reloadFailureCount = new AtomicLong(0);
+        this.running = false;
+    }
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        getLogger().debug(".shutdown(): Entry");
+        watcherLock.lock();
+        try {
+            running = false;
+            if(watchService != null){
+                try {
+                    watchService.close();
+                } catch(IOException closeException){
+                    getLogger().debug(".shutdown(): Error closing watch service, error->{}", closeException.getMessage());
+                }
+            }
+        } finally {
+            watcherLock.unlock();
+        }
+        getLogger().debug(".shutdown(): Exit");
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * The location of this service's transformation template, i.e.
+     * ${TRANSFORMATION_CONFIG_FILE_LOCATION}/${KUBERNETES_SERVICE_NAME}/${KUBERNETES_SERVICE_NAME}[suffix]
+     *
+     * @param templateSuffix one of INGRES_TRANSFORMATION_TEMPLATE_SUFFIX or EGRESS_TRANSFORMATION_TEMPLATE_SUFFIX
+     * @return the path of the template
+     */
+    public Path getTransformationTemplatePath(String templateSuffix){
+        String serviceName = System.getenv(KUBERNETES_SERVICE_NAME);
+        return(resolveTemplatePath(serviceName + templateSuffix));
+    }
+
+    /**
+     * @param templateFileName a template file name, either absolute or relative to
+     * ${TRANSFORMATION_CONFIG_FILE_LOCATION}/${KUBERNETES_SERVICE_NAME}
+     * @return the path of the template
+     */
+    public Path resolveTemplatePath(String templateFileName){
+        Path templatePath = Paths.get(templateFileName.trim());
+        if(templatePath.isAbsolute()){
+            return(templatePath);
+        }
+        Path configDirectory = getTransformationConfigDirectory();
+        if(configDirectory == null){
+            return(templatePath);
+        }
+        return(configDirectory.resolve(templatePath));
+    }
+
+    /**
+     * @return ${TRANSFORMATION_CONFIG_FILE_LOCATION}/${KUBERNETES_SERVICE_NAME}, or null if
+     * TRANSFORMATION_CONFIG_FILE_LOCATION isn't set
+     */
+    protected Path getTransformationConfigDirectory(){
+        String configFileLocation = System.getenv(TRANSFORMATION_CONFIG_FILE_LOCATION);
+        if(configFileLocation == null){
+            return(null);
+        }
+        String serviceName = System.getenv(KUBERNETES_SERVICE_NAME);
+        if(serviceName == null){
+            return(Paths.get(configFileLocation));
+        }
+        return(Paths.get(configFileLocation, serviceName));
+    }
+
+    /**
+     * Compiles the template (if it hasn't been already) and starts watching it for changes.
+     *
+     * @param templatePath the template file
+     * @throws RuntimeException if the template file doesn't exist or cannot be compiled
+     */
+    public void registerTemplate(Path templatePath){
+        getLogger().debug(".registerTemplate(): Entry, templatePath->{}", templatePath);
+        Path normalisedPath = templatePath.toAbsolutePath().normalize();
+        if(!Files.exists(normalisedPath)){
+            throw new RuntimeException("Transformation file not found: " + normalisedPath);
+        }
+        templates.computeIfAbsent(normalisedPath, path -> {
+            Path templateRoot = resolveTemplateRoot(path);
+            CompiledTemplate compiledTemplate = new CompiledTemplate(path, toTemplateName(templateRoot, path), getConfiguration(templateRoot));
+            try {
+                compiledTemplate.compile(TemplateFileState.of(path));
+            } catch(IOException compileException){
+                throw new RuntimeException("Transformation file could not be compiled: " + path, compileException);
+            }
+            return(compiledTemplate);
+        });
+        watchDirectory(normalisedPath.getParent());
+        getLogger().info(".registerTemplate(): Exit, template->{}", normalisedPath);
+    }
+
+    /**
+     * A Processor that transforms the exchange using the template: the data model is the one prepared
+     * by {@link FreeMarkerConfiguration} (the CamelFreemarkerDataModel header), or the exchange's variable
+     * map if there isn't one, and the output becomes the message body.
+     *
+     * @param templatePath the template file (registered, if it isn't already)
+     * @return the Processor
+     */
+    public Processor transformWith(Path templatePath){
+        Path normalisedPath = templatePath.toAbsolutePath().normalize();
+        registerTemplate(normalisedPath);
+        CompiledTemplate compiledTemplate = templates.get(normalisedPath);
+        return(exchange -> exchange.getMessage().setBody(transform(compiledTemplate.getTemplate(), exchange)));
+    }
+
+    /**
+     * @param templatePath a registered template file
+     * @return the current compiled version of the template, or null if it isn't registered
+     */
+    public Template getTemplate(Path templatePath){
+        CompiledTemplate compiledTemplate = templates.get(templatePath.toAbsolutePath().normalize());
+        if(compiledTemplate == null){
+            return(null);
+        }
+        return(compiledTemplate.getTemplate());
+    }
+
+    //
+    // Template Loading
+    //
+
+    /**
+     * The directory the template is loaded from (and its includes resolved against): the transformation
+     * configuration directory if the template is within it, otherwise the template's own directory.
+     */
+    protected Path resolveTemplateRoot(Path templatePath){
+        Path configDirectory = getTransformationConfigDirectory();
+        if(configDirectory != null){
+            Path normalisedConfigDirectory = configDirectory.toAbsolutePath().normalize();
+            if(templatePath.startsWith(normalisedConfigDirectory)){
+                return(normalisedConfigDirectory);
+            }
+        }
+        return(templatePath.getParent());
+    }
+
+    /**
+     * The FreeMarker Configuration for a template root directory, created (with a FileTemplateLoader
+     * rooted at the directory) the first time it is asked for.
+     */
+    protected Configuration getConfiguration(Path templateRoot){
+        return(configurations.computeIfAbsent(templateRoot, root -> {
+            // the same settings the freemarker component used for these templates
+            Configuration newConfiguration = new Configuration(Configuration.DEFAULT_INCOMPATIBLE_IMPROVEMENTS);
+            newConfiguration.setLocalizedLookup(false);
+            newConfiguration.setDefaultEncoding(StandardCharsets.UTF_8.name());
+            try {
+                // linking allowed, as ConfigMap files are symbolic links (into ..data)
+                newConfiguration.setTemplateLoader(new FileTemplateLoader(root.toFile(), true));
+            } catch(IOException loaderException){
+                throw new RuntimeException("Transformation template directory cannot be used: " + root, loaderException);
+            }
+            getLogger().info(".getConfiguration(): Loading templates from directory->{}", root);
+            return(newConfiguration);
+        }));
+    }
+
+    private static String toTemplateName(Path templateRoot, Path templatePath){
+        return(templateRoot.relativize(templatePath).toString().replace(File.separatorChar, '/'));
+    }
+
+    protected String transform(Template template, Exchange exchange) throws Exception {
+        Object dataModel = exchange.getIn().getHeader(FreemarkerConstants.FREEMARKER_DATA_MODEL);
+        if(dataModel == null){
+            dataModel = ExchangeHelper.createVariableMap(exchange, true);
+        }
+        StringWriter output = new StringWriter();
+        template.process(dataModel, output);
+        return(output.toString());
+    }
+
+    //
+    // File Watching
+    //
+
+    private void watchDirectory(Path directory){
+        watcherLock.lock();
+        try {
+            if(watchedDirectories.contains(directory)){
+                return;
+            }
+            if(watchService == null){
+                watchService = FileSystems.getDefault().newWatchService();
+                running = true;
+                watcherThread = new Thread(this::runWatcher, "TransformationTemplateWatcher");
+                watcherThread.setDaemon(true);
+                watcherThread.start();
+            }
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.add(directory);
+            getLogger().info(".watchDirectory(): Watching for template changes, directory->{}", directory);
+        } catch(IOException watchException){
+            // the templates still work, they just won't be reloaded
+            getLogger().warn(".watchDirectory(): Cannot watch directory, templates will not be reloaded, directory->{}, error->{}", directory, watchException.getMessage());
+        } finally {
+            watcherLock.unlock();
+        }
+    }
+
+    private void runWatcher(){
+        getLogger().debug(".runWatcher(): Entry");
+        boolean changesSettling = false;
+        while(running){
+            WatchKey watchKey;
+            try {
+                if(changesSettling){
+                    // wake up without an event too, to re-check the templates still being written
+                    watchKey = watchService.poll(RELOAD_SETTLE_TIME_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+                } else {
+                    watchKey = watchService.take();
+                }
+            } catch(InterruptedException interruptedException){
+                Thread.currentThread().interrupt();
+                break;
+            } catch(ClosedWatchServiceException closedException){
+                break;
+            }
+            Path directory = null;
+            if(watchKey != null){
+                directory = (Path)watchKey.watchable();
+                // the events themselves aren't needed, everything in the directory is checked
+                watchKey.pollEvents();
+            }
+            changesSettling = reloadChangedTemplates(directory);
+            if(watchKey != null){
+                watchKey.reset();
+            }
+        }
+        getLogger().debug(".runWatcher(): Exit");
+    }
+
+    /**
+     * Checks the templates in the directory (if there is one) and those with a change still settling,
+     * recompiling those whose change has settled.
+     *
+     * @param directory the directory of the watch event, or null if there wasn't one
+     * @return true if a change to some template is still settling (so it has to be checked again)
+     */
+    private boolean reloadChangedTemplates(Path directory){
+        boolean changesSettling = false;
+        long now = System.nanoTime();
+        for(Map.Entry<Path, CompiledTemplate> templateEntry: templates.entrySet()){
+            CompiledTemplate compiledTemplate = templateEntry.getValue();
+            if(!templateEntry.getKey().getParent().equals(directory) && !compiledTemplate.isChangeSettling()){
+                continue;
+            }
+            TemplateFileState fileState = null;
+            try {
+                fileState = TemplateFileState.of(templateEntry.getKey());
+                if(compiledTemplate.isChangeSettled(fileState, now)){
+                    compiledTemplate.compile(fileState);
+                    reloadCount.incrementAndGet();
+                    getLogger().info(".reloadChangedTemplates(): Template reloaded, template->{}", templateEntry.getKey());
+                }
+            } catch(IOException | RuntimeException reloadException){
+                compiledTemplate.compileFailed(fileState);
+                reloadFailureCount.incrementAndGet();
+                getLogger().warn(".reloadChangedTemplates(): Template could not be reloaded, keeping previous version, template->{}, error->{}", templateEntry.getKey(), reloadException.getMessage());
+            }
+            changesSettling |= compiledTemplate.isChangeSettling();
+        }
+        return(changesSettling);
+    }
+
+    //
+    // Metrics
+    //
+
+    public int getTemplateCount(){
+        return(templates.size());
+    }
+
+    public long getReloadCount(){
+        return(reloadCount.get());
+    }
+
+    public long getReloadFailureCount(){
+        return(reloadFailureCount.get());
+    }
+
+    //
+    // Compiled Template
+    //
+
+    private static class CompiledTemplate {
+        private final Path path;
+        private final String name;
+        private final Configuration configuration;
+        private volatile Template template;
+        // only used by the thread that compiles the template (registration, then the watcher)
+        private TemplateFileState compiledState;
+        private TemplateFileState failedState;
+        private TemplateFileState settlingState;
+        private long settlingSince;
+
+        CompiledTemplate(Path path, String name, Configuration configuration){
+            this.path = path;
+            this.name = name;
+            this.configuration = configuration;
+        }
+
+        Template getTemplate(){
+            return(template);
+        }
+
+        boolean isChangeSettling(){
+            return(settlingState != null);
+        }
+
+        /**
+         * @param fileState the state of the file now (null if it doesn't exist)
+         * @param now the time of the check (System.nanoTime())
+         * @return true if the file differs from the compiled (or the last failed) version, is non-empty
+         * and has not changed for RELOAD_SETTLE_TIME_IN_MILLISECONDS
+         */
+        boolean isChangeSettled(TemplateFileState fileState, long now){
+            if(fileState == null || fileState.equals(compiledState) || fileState.equals(failedState)){
+                settlingState = null;
+                return(false);
+            }
+            if(!fileState.equals(settlingState)){
+                settlingState = fileState;
+                settlingSince = now;
+                return(false);
+            }
+            // an empty file is (almost certainly) one being rewritten, keep waiting for the content
+            return(fileState.size > 0 && now - settlingSince >= TimeUnit.MILLISECONDS.toNanos(RELOAD_SETTLE_TIME_IN_MILLISECONDS));
+        }
+
+        void compileFailed(TemplateFileState fileState){
+            // not retried until the file changes again
+            this.failedState = fileState;
+            this.settlingState = null;
+        }
+
+        /**
+         * @param fileState the state of the file being compiled, taken before it is read (so a change
+         * made while it is being read is picked up by the next check)
+         */
+        void compile(TemplateFileState fileState) throws IOException {
+            // drop FreeMarker's cached copy, so the template is read and parsed again now
+            configuration.removeTemplateFromCache(name);
+            Template compiledTemplate = configuration.getTemplate(name);
+            this.compiledState = fileState;
+            this.failedState = null;
+            this.settlingState = null;
+            this.template = compiledTemplate;
+        }
+    }
+
+    //
+    // Template File State
+    //
+
+    private static final class TemplateFileState {
+        private final Path realPath;
+        private final Object fileKey;
+        private final long size;
+        private final FileTime lastModified;
+
+        private TemplateFileState(Path realPath, BasicFileAttributes attributes){
+            this.realPath = realPath;
+            // the file key (inode) changes when the file is replaced, even if the size and time do not
+            this.fileKey = attributes.fileKey();
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime();
+        }
+
+        /**
+         * @return the state of the file, or null if it doesn't exist
+         */
+        static TemplateFileState of(Path path) throws IOException {
+            if(!Files.exists(path)){
+                return(null);
+            }
+            Path realPath = path.toRealPath();
+            return(new TemplateFileState(realPath, Files.readAttributes(realPath, BasicFileAttributes.class)));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TemplateFileState that = (TemplateFileState) o;
+            return size == that.size && realPath.equals(that.realPath) && Objects.equals(fileKey, that.fileKey) && lastModified.equals(that.lastModified);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(realPath, fileKey, size, lastModified);
+        }
+    }
+}
@@ -6,14 +6,10 @@ import java.lang.reflect.InvocationTargetException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import ca.uhn.hl7v2.DefaultHapiContext;
-import ca.uhn.hl7v2.HapiContext;
 import ca.uhn.hl7v2.model.Message;
-import ca.uhn.hl7v2.parser.DefaultModelClassFactory;
-import ca.uhn.hl7v2.parser.ModelClassFactory;
-import ca.uhn.hl7v2.parser.PipeParser;
 import net.fhirfactory.pegacorn.csv.core.CSV;
 import net.fhirfactory.pegacorn.internals.hl7v2.HL7Message;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers.HL7v2xParserProvider;
 
 /**
  * Utility methods to transform a messages.
@@ -33,17 +29,9 @@ public class HL7MessageUtils {
 	 * @return
 	 */
 	public static Message getMessage(String message) throws Exception {
-		try (HapiContext context = new DefaultHapiContext();) {    
-            PipeParser parser = context.getPipeParser();
-            parser.getParserConfiguration().setValidating(false);
-    
-            ModelClassFactory cmf = new DefaultModelClassFactory();
-            context.setModelClassFactory(cmf);
-            
-            Message inputMessage = parser.parse(message);
-            
-            return inputMessage;
-		}
+		Message inputMessage = HL7v2xParserProvider.parse(message);
+
+		return inputMessage;
 	} 
 	
 	
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces;
+
+import ca.uhn.hl7v2.model.Message;
+import org.apache.camel.Exchange;
+
+/**
+ * A transformation written in Java (a class or a lambda), executed by the JavaMappingTransformationEngine.
+ *
+ * The mapping edits the (already parsed) message in place - the engine then encodes it, once. As with a
+ * template, a mapping can stop the message from being forwarded by setting the exchange's "sendMessage"
+ * property to false.
+ *
+ * Implementations that are CDI beans are registered automatically, under {@link #getMappingName()}.
+ */
+@FunctionalInterface
+public interface HL7v2xMessageMappingInterface {
+    public void map(Message message, Exchange exchange) throws Exception;
+
+    public default String getMappingName(){
+        return(getClass().getName());
+    }
+}
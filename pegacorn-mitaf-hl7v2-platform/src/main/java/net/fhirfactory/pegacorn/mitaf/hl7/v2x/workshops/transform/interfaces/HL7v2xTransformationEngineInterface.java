@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces;
+
+import org.apache.camel.Processor;
+
+/**
+ * A transformation engine, i.e. something that can turn the (configured) exchange into the transformed
+ * HL7 message, as ER7 text in the body. The engine used for a transformation is chosen from its
+ * {@link TransformationConfigurationFileSpecificationInterface} - see HL7v2xTransformationEngineSelector.
+ */
+public interface HL7v2xTransformationEngineInterface {
+    /**
+     * @param specification the transformation's configuration
+     * @return true if this engine can execute the transformation
+     */
+    public boolean supports(TransformationConfigurationFileSpecificationInterface specification);
+
+    /**
+     * Prepares (compiles, looks up etc.) the transformation once, at route construction.
+     *
+     * @param specification the transformation's configuration
+     * @return the Processor that executes the transformation for each exchange
+     */
+    public Processor transformWith(TransformationConfigurationFileSpecificationInterface specification);
+
+    public String getEngineName();
+}
@@ -33,6 +33,10 @@ import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.HL7v2xIn
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.HL7v2xInboundMessageTransformationPostProcessor;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.HL7v2xMessageIntoFHIRCommunication;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.message.transformation.FreeMarkerConfiguration;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.engines.HL7v2xTransformationEngineSelector;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.filter.HL7v2xMessageFilter;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.filter.HL7v2xPreTransformFilter;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.TransformationConfigurationFileSpecificationInterface;
 import net.fhirfactory.pegacorn.workshops.TransformWorkshop;
 import net.fhirfactory.pegacorn.wups.archetypes.petasosenabled.messageprocessingbased.MOAStandardWUP;
 import org.apache.camel.LoggingLevel;
@@ -41,7 +45,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import java.io.File;
 
 
 public abstract class BaseHL7v2xInboundMessageTransformationWUP extends MOAStandardWUP {
@@ -66,6 +69,12 @@ public abstract class BaseHL7v2xInboundMessageTransformationWUP extends MOAStand
     @Inject
     private FreeMarkerConfiguration freemarkerConfig;
 
+    @Inject
+    private HL7v2xTransformationEngineSelector engineSelector;
+
+    @Inject
+    private HL7v2xPreTransformFilter preTransformFilter;
+
     @Inject
     private HL7v2xInboundMessageTransformationPostProcessor transformationPostProcessor;
 
@@ -83,25 +92,42 @@ public abstract class BaseHL7v2xInboundMessageTransformationWUP extends MOAStand
         getLogger().info("{}:: ingresFeed() --> {}", getClass().getName(), ingresFeed());
         getLogger().info("{}:: egressFeed() --> {}", getClass().getName(), egressFeed());
 
-        // This will make sure the file exists during app startup
-        String fileName = System.getenv("TRANSFORMATION_CONFIG_FILE_LOCATION") + "/" + System.getenv("KUBERNETES_SERVICE_NAME") + "/" + System.getenv("KUBERNETES_SERVICE_NAME") + "-ingres-transformation-config.ftl";
-        File file = new File(fileName);
-
-        if (!file.exists()) {
-            throw new RuntimeException("Transformation file not found: " + fileName);
-        }
+        // Resolving the transformation makes sure it exists (and compiles) during app startup
+        TransformationConfigurationFileSpecificationInterface transformation = specifyIngresTransformation();
+        HL7v2xMessageFilter messageFilter = specifyIngresFilter();
 
         specifyDefaultInboundExceptionHandler();
 
         fromIncludingPetasosServicesNoExceptionHandling(ingresFeed())
                 .routeId(getNameSet().getRouteCoreWUP())
-                .bean(hl7v2TextToMessage, "convertToMessage")
-                .bean(freemarkerConfig, "configure(*, Exchange)")
-                .to("freemarker:file:" + fileName + "?allowTemplateFromHeader=true&allowContextMapAll=true")
-                .bean(transformationPostProcessor, "postTransformProcessing(*, Exchange)")
+                .choice()
+                    .when(preTransformFilter.discards(messageFilter))
+                        .bean(preTransformFilter, "discard(*, Exchange)")
+                    .otherwise()
+                        .bean(hl7v2TextToMessage, "convertToMessage")
+                        .bean(freemarkerConfig, "configure(*, Exchange)")
+                        .process(engineSelector.dispatchTransformations(transformation))
+                        .bean(transformationPostProcessor, "postTransformProcessing(*, Exchange)")
+                .end()
                 .to(egressFeed());
     }
 
+    /**
+     * The transformation to apply - by default the one configured for the processing plant (a FreeMarker
+     * template or a Java mapping, see {@link HL7v2xTransformationEngineSelector}).
+     */
+    protected TransformationConfigurationFileSpecificationInterface specifyIngresTransformation(){
+        return(engineSelector.getIngresTransformation());
+    }
+
+    /**
+     * The rules for discarding messages before they are parsed and transformed - by default the ones
+     * configured for the processing plant (see {@link HL7v2xPreTransformFilter}).
+     */
+    protected HL7v2xMessageFilter specifyIngresFilter(){
+        return(preTransformFilter.getIngresFilter());
+    }
+
     //
     // Exception Handling
     //
@@ -31,6 +31,10 @@ import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.HL7v2xOu
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.HL7v2xOutboundMessageTransformationPostProcessor;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.HL7v2xTransformMessage;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.message.transformation.FreeMarkerConfiguration;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.engines.HL7v2xTransformationEngineSelector;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.filter.HL7v2xMessageFilter;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.filter.HL7v2xPreTransformFilter;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.TransformationConfigurationFileSpecificationInterface;
 import net.fhirfactory.pegacorn.workshops.TransformWorkshop;
 import net.fhirfactory.pegacorn.wups.archetypes.petasosenabled.messageprocessingbased.MOAStandardWUP;
 import org.apache.camel.LoggingLevel;
@@ -41,7 +45,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -61,6 +64,12 @@ public class BaseHL7v2xOutboundMessageTransformationWUP extends MOAStandardWUP {
 	@Inject
 	private FreeMarkerConfiguration freemarkerConfig;
 
+	@Inject
+	private HL7v2xTransformationEngineSelector engineSelector;
+
+	@Inject
+	private HL7v2xPreTransformFilter preTransformFilter;
+
     @Inject
     private HL7v2xOutboundMessageTransformationExceptionHandler generalExceptionHandler;
 
@@ -91,24 +100,41 @@ public class BaseHL7v2xOutboundMessageTransformationWUP extends MOAStandardWUP {
         getLogger().info("{}:: ingresFeed() --> {}", getClass().getName(), ingresFeed());
         getLogger().info("{}:: egressFeed() --> {}", getClass().getName(), egressFeed());
         
-        // This will make sure the file exists during app startup
-        String fileName = System.getenv("TRANSFORMATION_CONFIG_FILE_LOCATION") + "/" + System.getenv("KUBERNETES_SERVICE_NAME") + "/" + System.getenv("KUBERNETES_SERVICE_NAME") + "-egress-transformation-config.ftl";
-        File file = new File(fileName);
-        
-        if (!file.exists()) {
-        	throw new RuntimeException("Transformation file not found: " + fileName);
-        }
+        // Resolving the transformation makes sure it exists (and compiles) during app startup
+        TransformationConfigurationFileSpecificationInterface transformation = specifyEgressTransformation();
+        HL7v2xMessageFilter messageFilter = specifyEgressFilter();
 
         handleGeneralException();
 
         fromIncludingPetasosServicesNoExceptionHandling(ingresFeed())
                 .routeId(getNameSet().getRouteCoreWUP())
-                .bean(freemarkerConfig,"configure(*, Exchange)")
-                .to("freemarker:file:" + fileName + "?contentCache=false&allowTemplateFromHeader=true&allowContextMapAll=true")
-                .bean(outboundMessageTransformationPostProcessor, "postTransformProcessing(*, Exchange)")
+                .choice()
+                    .when(preTransformFilter.discards(messageFilter))
+                        .bean(preTransformFilter, "discard(*, Exchange)")
+                    .otherwise()
+                        .bean(freemarkerConfig,"configure(*, Exchange)")
+                        .process(engineSelector.dispatchTransformations(transformation))
+                        .bean(outboundMessageTransformationPostProcessor, "postTransformProcessing(*, Exchange)")
+                .end()
                 .to(egressFeed());
 	}
 
+    /**
+     * The transformation to apply - by default the one configured for the processing plant (a FreeMarker
+     * template or a Java mapping, see {@link HL7v2xTransformationEngineSelector}).
+     */
+    protected TransformationConfigurationFileSpecificationInterface specifyEgressTransformation(){
+        return(engineSelector.getEgressTransformation());
+    }
+
+    /**
+     * The rules for discarding messages before they are parsed and transformed - by default the ones
+     * configured for the processing plant (see {@link HL7v2xPreTransformFilter}).
+     */
+    protected HL7v2xMessageFilter specifyEgressFilter(){
+        return(preTransformFilter.getEgressFilter());
+    }
+
     //
     // Exception Handler for (Outbound) Transformation WUPs
     //
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.helpers;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HL7v2xParserProviderTest {
+    private static final String MESSAGE = "MSH|^~\\&|APP|FAC|RCV|RFAC|20220101||ADT^A01|MSG0001|P|2.4\rEVN|A01|20220101\rPID|||123^^^MRN\r";
+
+    @Test
+    void parsesAndEncodesWithPooledParsers() throws HL7Exception {
+        Message message = HL7v2xParserProvider.parse(MESSAGE);
+        assertEquals("2.4", message.getVersion());
+        assertEquals(MESSAGE, HL7v2xParserProvider.encode(message));
+        assertEquals(0, HL7v2xParserProvider.getBorrowedParserCount());
+        assertTrue(HL7v2xParserProvider.getIdleParserCount() >= 1);
+    }
+
+    @Test
+    void rejectsEmptyMessages() {
+        assertThrows(HL7Exception.class, () -> HL7v2xParserProvider.parse(""));
+        assertThrows(HL7Exception.class, () -> HL7v2xParserProvider.parse(null));
+        assertEquals(0, HL7v2xParserProvider.getBorrowedParserCount());
+    }
+
+    @Test
+    void extractsTheVersionWithoutParsing() {
+        assertEquals("2.4", HL7v2xParserProvider.extractVersion(MESSAGE));
+        assertEquals("2.5.1", HL7v2xParserProvider.extractVersion("MSH|^~\\&|A|B|C|D|20220101||ADT^A01|1|P|2.5.1^AUS\r"));
+        assertEquals("unknown", HL7v2xParserProvider.extractVersion("MSH|^~\\&|A|B|C|D|20220101||ADT^A01|1|P\rEVN|A01\r"));
+        assertEquals("unknown", HL7v2xParserProvider.extractVersion("EVN|A01"));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HL7v2xFieldPathTest {
+    private static final String MESSAGE = "MSH|^~\\&|APP|FAC|RCV|RFAC|20220304050607||ORU^R01|MSG0001|P|2.4\r"
+            + "PID|||123^^^MRN&1.2&ISO~456^^^AUID||SMITH^JOHN\r"
+            + "OBR|1||ORDER1\r"
+            + "OBX|1|ST|CODE1||first\r"
+            + "OBX|2|ST|CODE2||second\r";
+
+    @Test
+    void resolvesTerserStylePaths() {
+        HL7v2xMessageView messageView = new HL7v2xMessageView(MESSAGE);
+        assertEquals("ORU", HL7v2xFieldPath.compile("MSH-9").getValue(messageView));
+        assertEquals("R01", HL7v2xFieldPath.compile("MSH-9-2").getValue(messageView));
+        assertEquals("123", HL7v2xFieldPath.compile("PID-3").getValue(messageView));
+        assertEquals("1.2", HL7v2xFieldPath.compile("PID-3-4-2").getValue(messageView));
+        assertEquals("456", HL7v2xFieldPath.compile("PID-3(1)-1").getValue(messageView));
+        assertEquals("AUID", HL7v2xFieldPath.compile("PID-3(1)-4").getValue(messageView));
+        assertEquals("first", HL7v2xFieldPath.compile("OBX-5").getValue(messageView));
+        assertEquals("second", HL7v2xFieldPath.compile("OBX(1)-5").getValue(messageView));
+    }
+
+    @Test
+    void absentValuesAreNull() {
+        HL7v2xMessageView messageView = new HL7v2xMessageView(MESSAGE);
+        assertNull(HL7v2xFieldPath.compile("OBX(2)-5").getValue(messageView));
+        assertNull(HL7v2xFieldPath.compile("PID-3(2)").getValue(messageView));
+        assertNull(HL7v2xFieldPath.compile("PV1-2").getValue(messageView));
+        assertNull(HL7v2xFieldPath.compile("PID-5-3").getValue(messageView));
+    }
+
+    @Test
+    void compiledPathsAreShared() {
+        HL7v2xFieldPath fieldPath = HL7v2xFieldPath.compile("PID-5-1");
+        assertSame(fieldPath, HL7v2xFieldPath.compile("PID-5-1"));
+        assertEquals("PID-5-1", fieldPath.getPath());
+    }
+
+    @Test
+    void rejectsInvalidPaths() {
+        String[] invalidPaths = {null, "PID", "PID-", "PID-0", "PID-3-0", "PI-3", "PIDX-3", "PID-3-1-1-1", "PID(x)-3", "PID-3(-1)", "PID-3(1", "/PATIENT/PID-3"};
+        for(String invalidPath: invalidPaths){
+            assertThrows(IllegalArgumentException.class, () -> HL7v2xFieldPath.compile(invalidPath), String.valueOf(invalidPath));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.model;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.util.Terser;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HL7v2xMessageViewTest {
+    private static final String MESSAGE = "MSH|^~\\&|APP|FAC^1.2.3^ISO|RCV|RFAC|20220304050607+1000||ADT^A01^ADT_A01|MSG0001|P|2.4\r"
+            + "EVN|A01|20220304050607\r"
+            + "PID|||123^^^MRN&1.2&ISO~456^^^AUID||SMITH^JOHN\\S\\JAMES^^^MR||19700101|M\r"
+            + "PV1||I|WARD^ROOM^BED\r"
+            + "OBX|1|ST|CODE1||first\\F\\value\r"
+            + "OBX|2|ST|CODE2||second \\E\\ value\\X0D\\\r";
+
+    @Test
+    void readsTheHeaderWithoutParsing() {
+        HL7v2xMessageView messageView = new HL7v2xMessageView(MESSAGE);
+        assertEquals("APP", messageView.getSendingApplication());
+        assertEquals("FAC", messageView.getSendingFacility());
+        assertEquals("ADT", messageView.getMessageType());
+        assertEquals("A01", messageView.getTriggerEvent());
+        assertEquals("MSG0001", messageView.getMessageControlId());
+        assertEquals("2.4", messageView.getVersion());
+        assertEquals("|", messageView.getFieldValue("MSH", 1));
+        assertEquals("^~\\&", messageView.getFieldValue("MSH", 2));
+        assertEquals(Date.from(ZonedDateTime.of(2022, 3, 4, 5, 6, 7, 0, ZoneOffset.ofHours(10)).toInstant()), messageView.getMessageDate());
+        assertEquals(6, messageView.getSegmentCount());
+        assertFalse(messageView.isParsed());
+    }
+
+    @Test
+    void agreesWithTheTerser() throws HL7Exception {
+        HL7v2xMessageView messageView = new HL7v2xMessageView(MESSAGE);
+        Terser terser = new Terser(messageView.getMessage());
+        assertTrue(messageView.isParsed());
+        int pid = messageView.indexOf("PID");
+        assertEquals(terser.get("/.PID-3(0)-1"), messageView.getValue(pid, 3, 0, 1, 1));
+        assertEquals(terser.get("/.PID-3(0)-4-2"), messageView.getValue(pid, 3, 0, 4, 2));
+        assertEquals(terser.get("/.PID-3(1)-1"), messageView.getValue(pid, 3, 1, 1, 1));
+        assertEquals(terser.get("/.PID-3(1)-4"), messageView.getValue(pid, 3, 1, 4, 1));
+        assertEquals(terser.get("/.PID-5-2"), messageView.getComponent("PID", 5, 2));
+        assertEquals(terser.get("/.PV1-3-3"), messageView.getComponent("PV1", 3, 3));
+        assertEquals(terser.get("/.MSH-4-2"), messageView.getComponent("MSH", 4, 2));
+        assertEquals(terser.get("/.OBX(0)-5"), messageView.getFieldValue(messageView.indexOf(HL7v2xSegmentIndex.toSegmentType("OBX"), 0), 5));
+        assertEquals("JOHN^JAMES", messageView.getComponent("PID", 5, 2));
+        assertEquals("first|value", messageView.getFieldValue("OBX", 5));
+    }
+
+    @Test
+    void leavesUnknownEscapesAndRawFieldsAlone() {
+        HL7v2xMessageView messageView = new HL7v2xMessageView(MESSAGE);
+        int secondObx = messageView.indexOf(HL7v2xSegmentIndex.toSegmentType("OBX"), 1);
+        assertEquals("second \\ value\\X0D\\", messageView.getFieldValue(secondObx, 5));
+        assertEquals("123^^^MRN&1.2&ISO~456^^^AUID", messageView.getRawField("PID", 3));
+        assertEquals("123^^^MRN&1.2&ISO", messageView.getFieldValue("PID", 3));
+    }
+
+    @Test
+    void returnsNullForAbsentOrEmptyValues() {
+        HL7v2xMessageView messageView = new HL7v2xMessageView(MESSAGE);
+        assertNull(messageView.getFieldValue("ZZZ", 1));
+        assertNull(messageView.getFieldValue("PID", 1));
+        assertNull(messageView.getFieldValue("PID", 40));
+        assertNull(messageView.getComponent("PID", 5, 9));
+        assertNull(messageView.getValue(messageView.indexOf("PID"), 3, 2, 1, 1));
+        assertNull(messageView.getValue(messageView.indexOf("PID"), 3, 0, 0, 1));
+        assertEquals(-1, messageView.indexOf(HL7v2xSegmentIndex.toSegmentType("OBX"), 2));
+        assertNull(HL7v2xMessageView.toDate("20X20304"));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HL7v2xSegmentIndexTest {
+    private static final String MESSAGE = "MSH|^~\\&|APP|FAC|||20220101||ADT^A01|1|P|2.4\rEVN|A01\rPID|1||123\r";
+
+    @Test
+    void indexesSegmentsOfAString() {
+        HL7v2xSegmentIndex segmentIndex = HL7v2xSegmentIndex.index(MESSAGE);
+        assertEquals(3, segmentIndex.getSegmentCount());
+        assertEquals("PID", segmentIndex.getSegmentName(2));
+        assertEquals("PID|1||123", segmentIndex.getSegment("PID"));
+        assertTrue(segmentIndex.isIndexOf(MESSAGE));
+    }
+
+    @Test
+    void carriageReturnDelimitedMessageIsNormalised() {
+        assertTrue(HL7v2xSegmentIndex.index(MESSAGE).isNormalised());
+        assertTrue(HL7v2xSegmentIndex.index(new HL7v2xMessageBytes(MESSAGE.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1)).isNormalised());
+    }
+
+    @Test
+    void lineFeedsBlankSegmentsAndMissingTerminatorAreNotNormalised() {
+        assertFalse(HL7v2xSegmentIndex.index(MESSAGE.replace('\r', '\n')).isNormalised());
+        assertFalse(HL7v2xSegmentIndex.index(MESSAGE.replace("\r", "\r\n")).isNormalised());
+        assertFalse(HL7v2xSegmentIndex.index(MESSAGE.replace("\rEVN", "\r\rEVN")).isNormalised());
+        assertFalse(HL7v2xSegmentIndex.index(MESSAGE.substring(0, MESSAGE.length() - 1)).isNormalised());
+        assertFalse(HL7v2xSegmentIndex.index("\r" + MESSAGE).isNormalised());
+        assertFalse(HL7v2xSegmentIndex.index("").isNormalised());
+    }
+
+    @Test
+    void lineFeedSeparatedSegmentsAreStillIndexed() {
+        HL7v2xSegmentIndex segmentIndex = HL7v2xSegmentIndex.index(MESSAGE.replace("\r", "\r\n"));
+        assertEquals(3, segmentIndex.getSegmentCount());
+        assertEquals("EVN|A01", segmentIndex.getSegment(1));
+    }
+}
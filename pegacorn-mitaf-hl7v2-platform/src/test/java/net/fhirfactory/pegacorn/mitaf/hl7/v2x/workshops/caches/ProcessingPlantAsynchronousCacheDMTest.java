@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessingPlantAsynchronousCacheDMTest {
+    private final AtomicLong clock = new AtomicLong(TimeUnit.DAYS.toNanos(1));
+
+    @Test
+    void entriesExpireAfterTheirTTL() {
+        ProcessingPlantAsynchronousCacheDM cacheDM = new ProcessingPlantAsynchronousCacheDM(5L, 100, clock::get);
+        AsynchronousCorrelationKey key = AsynchronousCorrelationKey.forAcknowledgement("MSG0001");
+        cacheDM.addAckMessage(key, "ACK");
+        advanceSeconds(4);
+        assertEquals("ACK", cacheDM.getAckMessage(key));
+        advanceSeconds(1);
+        assertNull(cacheDM.getAckMessage(key));
+        assertEquals(1, cacheDM.getExpiryCount());
+        assertEquals(1, cacheDM.getHitCount());
+        assertEquals(1, cacheDM.getMissCount());
+        assertEquals(0, cacheDM.getCacheSize());
+    }
+
+    @Test
+    void removedAndReplacedEntriesAreNotExpiredByTheirOldDeadline() {
+        ProcessingPlantAsynchronousCacheDM cacheDM = new ProcessingPlantAsynchronousCacheDM(5L, 100, clock::get);
+        AsynchronousCorrelationKey removedKey = AsynchronousCorrelationKey.forAcknowledgement("MSG0001");
+        AsynchronousCorrelationKey replacedKey = AsynchronousCorrelationKey.forOutboundMessage("MSG0002");
+        cacheDM.addAckMessage(removedKey, "ACK");
+        cacheDM.addAckMessage(replacedKey, "MSG-1");
+        cacheDM.removeAckMessage(removedKey);
+        advanceSeconds(3);
+        cacheDM.addAckMessage(replacedKey, "MSG-2");
+        advanceSeconds(2);
+        assertEquals("MSG-2", cacheDM.getAckMessage(replacedKey));
+        assertEquals(0, cacheDM.getExpiryCount());
+        advanceSeconds(3);
+        assertNull(cacheDM.getAckMessage(replacedKey));
+        assertEquals(1, cacheDM.getExpiryCount());
+    }
+
+    @Test
+    void entriesOutliveAFullRotationOfTheWheel() {
+        ProcessingPlantAsynchronousCacheDM cacheDM = new ProcessingPlantAsynchronousCacheDM(600L, 100, clock::get);
+        AsynchronousCorrelationKey key = AsynchronousCorrelationKey.forAcknowledgement("MSG0001");
+        cacheDM.addAckMessage(key, "ACK");
+        for(int second = 0; second < 599; second += 1){
+            advanceSeconds(1);
+            cacheDM.getAckMessage(AsynchronousCorrelationKey.forAcknowledgement("OTHER"));
+        }
+        assertEquals("ACK", cacheDM.getAckMessage(key));
+        advanceSeconds(1);
+        assertNull(cacheDM.getAckMessage(key));
+    }
+
+    @Test
+    void entriesExpireAfterALongIdlePeriod() {
+        ProcessingPlantAsynchronousCacheDM cacheDM = new ProcessingPlantAsynchronousCacheDM(5L, 100, clock::get);
+        cacheDM.addAckMessage(AsynchronousCorrelationKey.forAcknowledgement("MSG0001"), "ACK");
+        cacheDM.addAckMessage(AsynchronousCorrelationKey.forOutboundMessage("MSG0001"), "MSG");
+        advanceSeconds(10000);
+        assertNull(cacheDM.getAckMessage(AsynchronousCorrelationKey.forAcknowledgement("MSG0001")));
+        assertEquals(2, cacheDM.getExpiryCount());
+        assertEquals(0, cacheDM.getCacheSize());
+    }
+
+    @Test
+    void theOldestEntryIsEvictedAtTheCap() {
+        ProcessingPlantAsynchronousCacheDM cacheDM = new ProcessingPlantAsynchronousCacheDM(5L, 2, clock::get);
+        cacheDM.addAckMessage(AsynchronousCorrelationKey.forAcknowledgement("MSG0001"), "ACK-1");
+        cacheDM.addAckMessage(AsynchronousCorrelationKey.forAcknowledgement("MSG0002"), "ACK-2");
+        cacheDM.addAckMessage(AsynchronousCorrelationKey.forAcknowledgement("MSG0003"), "ACK-3");
+        assertEquals(2, cacheDM.getCacheSize());
+        assertEquals(1, cacheDM.getEvictionCount());
+        assertNull(cacheDM.getAckMessage(AsynchronousCorrelationKey.forAcknowledgement("MSG0001")));
+        assertEquals("ACK-3", cacheDM.getAckMessage(AsynchronousCorrelationKey.forAcknowledgement("MSG0003")));
+        advanceSeconds(5);
+        assertNull(cacheDM.getAckMessage(AsynchronousCorrelationKey.forAcknowledgement("MSG0003")));
+        assertEquals(0, cacheDM.getCacheSize());
+        assertEquals(2, cacheDM.getExpiryCount());
+    }
+
+    private void advanceSeconds(long seconds){
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches;
+
+import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelManifest;
+import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelTypeDescriptor;
+import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelDirectionEnum;
+import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelValidationStatusEnum;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessingPlantDataParcelManifestDMTest {
+
+    @Test
+    void hitReturnsTheSharedInstanceWithoutCopying() {
+        ProcessingPlantDataParcelManifestDM manifestDM = new ProcessingPlantDataParcelManifestDM();
+        AtomicInteger builds = new AtomicInteger();
+        DataParcelInternKey key = new DataParcelInternKey("Test", "ADT", "A01", "2.4");
+        DataParcelManifest first = manifestDM.getManifest(key, () -> {
+            builds.incrementAndGet();
+            return(new UnserialisableManifest());
+        });
+        // a second key instance with the same values, as each message builds its own key
+        DataParcelManifest second = manifestDM.getManifest(new DataParcelInternKey("Test", "ADT", "A01", "2.4"), () -> {
+            builds.incrementAndGet();
+            return(new UnserialisableManifest());
+        });
+        assertSame(first, second);
+        assertEquals(1, builds.get());
+        assertEquals(1, manifestDM.getMissCount());
+        assertEquals(1, manifestDM.getHitCount());
+    }
+
+    @Test
+    void copyOfCopiesEveryFieldIntoNewInstances() {
+        DataParcelTypeDescriptor descriptor = new DataParcelTypeDescriptor();
+        descriptor.setDataParcelDefiner("HL7");
+        descriptor.setDataParcelCategory("v2");
+        descriptor.setDataParcelSubCategory("ADT");
+        descriptor.setDataParcelResource("A01");
+        descriptor.setDataParcelDiscriminatorType("Source");
+        descriptor.setDataParcelDiscriminatorValue("PAS");
+        descriptor.setVersion("2.4");
+        DataParcelManifest manifest = new UnserialisableManifest();
+        manifest.setContentDescriptor(descriptor);
+        manifest.setSourceSystem("PAS");
+        manifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_TRUE);
+        manifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_INBOUND_DATA_PARCEL);
+        manifest.setInterSubsystemDistributable(true);
+
+        DataParcelManifest copy = ProcessingPlantDataParcelManifestDM.copyOf(manifest);
+        assertNotSame(manifest, copy);
+        assertNotSame(descriptor, copy.getContentDescriptor());
+        assertEquals("PAS", copy.getSourceSystem());
+        assertEquals(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_TRUE, copy.getValidationStatus());
+        assertEquals(DataParcelDirectionEnum.INFORMATION_FLOW_INBOUND_DATA_PARCEL, copy.getDataParcelFlowDirection());
+        assertTrue(copy.isInterSubsystemDistributable());
+        assertEquals("A01", copy.getContentDescriptor().getDataParcelResource());
+        assertEquals("PAS", copy.getContentDescriptor().getDataParcelDiscriminatorValue());
+        assertEquals("2.4", copy.getContentDescriptor().getVersion());
+        assertNull(copy.getContainerDescriptor());
+
+        copy.getContentDescriptor().setDataParcelAttribute("DuplicateMessage");
+        assertNull(descriptor.getDataParcelAttribute());
+    }
+
+    /**
+     * A manifest that cannot be serialised, so any serialisation (e.g. a SerializationUtils.clone) of it fails.
+     */
+    private static class UnserialisableManifest extends DataParcelManifest {
+        private void writeObject(ObjectOutputStream outputStream) throws IOException {
+            throw new NotSerializableException("UnserialisableManifest");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.caches;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessingPlantPendingAcknowledgementDMTest {
+
+    @Test
+    void completedAcknowledgementIsReturnedAndEntryRemoved() {
+        ProcessingPlantPendingAcknowledgementDM pendingAcknowledgementDM = new ProcessingPlantPendingAcknowledgementDM();
+        pendingAcknowledgementDM.registerPendingAcknowledgement("MSG0001");
+        assertTrue(pendingAcknowledgementDM.completePendingAcknowledgement("MSG0001", "ACK"));
+        assertEquals("ACK", pendingAcknowledgementDM.awaitAcknowledgement("MSG0001", 1000L));
+        assertEquals(0, pendingAcknowledgementDM.getPendingAcknowledgementCount());
+        assertFalse(pendingAcknowledgementDM.completePendingAcknowledgement("MSG0001", "ACK"));
+        assertEquals(1, pendingAcknowledgementDM.getUnmatchedAcknowledgementCount());
+    }
+
+    @Test
+    void cancelRemovesOnlyTheMatchingRegistration() {
+        ProcessingPlantPendingAcknowledgementDM pendingAcknowledgementDM = new ProcessingPlantPendingAcknowledgementDM();
+        long firstRegistration = pendingAcknowledgementDM.registerPendingAcknowledgement("MSG0001");
+        long secondRegistration = pendingAcknowledgementDM.registerPendingAcknowledgement("MSG0001");
+        assertNotEquals(firstRegistration, secondRegistration);
+        assertFalse(pendingAcknowledgementDM.cancelPendingAcknowledgement("MSG0001", firstRegistration));
+        assertEquals(1, pendingAcknowledgementDM.getPendingAcknowledgementCount());
+        assertTrue(pendingAcknowledgementDM.cancelPendingAcknowledgement("MSG0001", secondRegistration));
+        assertEquals(0, pendingAcknowledgementDM.getPendingAcknowledgementCount());
+    }
+
+    @Test
+    void registrationTokensAreUnique() {
+        ProcessingPlantPendingAcknowledgementDM pendingAcknowledgementDM = new ProcessingPlantPendingAcknowledgementDM();
+        Set<Long> registrationTokens = new HashSet<>();
+        for(int i = 0; i < 1000; i++){
+            long registrationToken = pendingAcknowledgementDM.registerPendingAcknowledgement("MSG0001");
+            assertNotEquals(ProcessingPlantPendingAcknowledgementDM.NOT_REGISTERED, registrationToken);
+            assertTrue(registrationTokens.add(registrationToken));
+        }
+    }
+
+    @Test
+    void registrationsAreBoundedAndExpire() throws InterruptedException {
+        ProcessingPlantPendingAcknowledgementDM pendingAcknowledgementDM = new ProcessingPlantPendingAcknowledgementDM(2, 50L);
+        assertNotEquals(ProcessingPlantPendingAcknowledgementDM.NOT_REGISTERED, pendingAcknowledgementDM.registerPendingAcknowledgement("MSG0001"));
+        assertNotEquals(ProcessingPlantPendingAcknowledgementDM.NOT_REGISTERED, pendingAcknowledgementDM.registerPendingAcknowledgement("MSG0002"));
+        assertEquals(ProcessingPlantPendingAcknowledgementDM.NOT_REGISTERED, pendingAcknowledgementDM.registerPendingAcknowledgement("MSG0003"));
+        assertEquals(1, pendingAcknowledgementDM.getRejectedRegistrationCount());
+        Thread.sleep(100L);
+        assertNotEquals(ProcessingPlantPendingAcknowledgementDM.NOT_REGISTERED, pendingAcknowledgementDM.registerPendingAcknowledgement("MSG0003"));
+        assertEquals(2, pendingAcknowledgementDM.getExpiredPendingAcknowledgementCount());
+        assertEquals(1, pendingAcknowledgementDM.getPendingAcknowledgementCount());
+    }
+
+    @Test
+    void awaitTimesOutWhenNoAcknowledgementArrives() {
+        ProcessingPlantPendingAcknowledgementDM pendingAcknowledgementDM = new ProcessingPlantPendingAcknowledgementDM();
+        pendingAcknowledgementDM.registerPendingAcknowledgement("MSG0001");
+        assertNull(pendingAcknowledgementDM.awaitAcknowledgement("MSG0001", 10L));
+        assertEquals(1, pendingAcknowledgementDM.getAcknowledgementTimeoutCount());
+        assertEquals(0, pendingAcknowledgementDM.getPendingAcknowledgementCount());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp;
+
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.mllp.MLLPIngresMessageIdentityRegistry.IdentityStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MLLPIngresMessageIdentityRegistryTest {
+    private static final long WINDOW = 60000L;
+    private static final long START = 1000000L;
+
+    @Test
+    void resendIsInProgressUntilTheOriginalCompletes() {
+        MLLPIngresMessageIdentityRegistry registry = new MLLPIngresMessageIdentityRegistry(WINDOW, 100, START);
+        long registrationToken = registry.nextRegistrationToken();
+        assertEquals(IdentityStatus.NEW, registry.checkAndRegister("APP|FAC|1", registrationToken, START));
+        assertEquals(IdentityStatus.IN_PROGRESS, registry.checkAndRegister("APP|FAC|1", registry.nextRegistrationToken(), START + 10));
+        registry.complete("APP|FAC|1", registrationToken);
+        assertEquals(IdentityStatus.COMPLETED, registry.checkAndRegister("APP|FAC|1", registry.nextRegistrationToken(), START + 20));
+        assertEquals(IdentityStatus.NEW, registry.checkAndRegister("APP|FAC|2", registry.nextRegistrationToken(), START + 20));
+    }
+
+    @Test
+    void forgottenIdentityIsNewAgain() {
+        MLLPIngresMessageIdentityRegistry registry = new MLLPIngresMessageIdentityRegistry(WINDOW, 100, START);
+        long registrationToken = registry.nextRegistrationToken();
+        registry.checkAndRegister("APP|FAC|1", registrationToken, START);
+        registry.forget("APP|FAC|1", registrationToken);
+        assertEquals(IdentityStatus.NEW, registry.checkAndRegister("APP|FAC|1", registry.nextRegistrationToken(), START + 10));
+    }
+
+    @Test
+    void staleRegistrationDoesNotCompleteOrForgetALaterOne() {
+        MLLPIngresMessageIdentityRegistry registry = new MLLPIngresMessageIdentityRegistry(WINDOW, 100, START);
+        long staleToken = registry.nextRegistrationToken();
+        registry.checkAndRegister("APP|FAC|1", staleToken, START);
+        long reRegistrationTime = START + WINDOW + 1;
+        assertEquals(IdentityStatus.NEW, registry.checkAndRegister("APP|FAC|1", registry.nextRegistrationToken(), reRegistrationTime));
+        registry.complete("APP|FAC|1", staleToken);
+        registry.forget("APP|FAC|1", staleToken);
+        assertEquals(IdentityStatus.IN_PROGRESS, registry.checkAndRegister("APP|FAC|1", registry.nextRegistrationToken(), reRegistrationTime + 10));
+    }
+
+    @Test
+    void registrationsInTheSameMillisecondAreKeptApart() {
+        MLLPIngresMessageIdentityRegistry registry = new MLLPIngresMessageIdentityRegistry(WINDOW, 100, START);
+        long firstToken = registry.nextRegistrationToken();
+        registry.checkAndRegister("APP|FAC|1", firstToken, START);
+        registry.forget("APP|FAC|1", firstToken);
+        long secondToken = registry.nextRegistrationToken();
+        assertNotEquals(firstToken, secondToken);
+        assertEquals(IdentityStatus.NEW, registry.checkAndRegister("APP|FAC|1", secondToken, START));
+        // the first message's (late) outcome must not touch the second registration
+        registry.complete("APP|FAC|1", firstToken);
+        registry.forget("APP|FAC|1", firstToken);
+        assertEquals(IdentityStatus.IN_PROGRESS, registry.checkAndRegister("APP|FAC|1", registry.nextRegistrationToken(), START));
+    }
+
+    @Test
+    void concurrentCopiesAreRegisteredOnce() throws Exception {
+        int threadCount = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for(int round = 0; round < 200; round++){
+                MLLPIngresMessageIdentityRegistry registry = new MLLPIngresMessageIdentityRegistry(WINDOW, 100, START);
+                String identity = "APP|FAC|" + round;
+                CountDownLatch startSignal = new CountDownLatch(1);
+                List<Future<IdentityStatus>> outcomes = new ArrayList<>();
+                for(int i = 0; i < threadCount; i++){
+                    outcomes.add(executor.submit(() -> {
+                        startSignal.await();
+                        return(registry.checkAndRegister(identity, registry.nextRegistrationToken(), START));
+                    }));
+                }
+                startSignal.countDown();
+                int newCount = 0;
+                for(Future<IdentityStatus> outcome: outcomes){
+                    if(outcome.get(10, TimeUnit.SECONDS) == IdentityStatus.NEW){
+                        newCount++;
+                    }
+                }
+                assertEquals(1, newCount, "identity->" + identity);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void identityExpiresAfterTheWindow() {
+        MLLPIngresMessageIdentityRegistry registry = new MLLPIngresMessageIdentityRegistry(WINDOW, 100, START);
+        long registrationToken = registry.nextRegistrationToken();
+        registry.checkAndRegister("APP|FAC|1", registrationToken, START);
+        registry.complete("APP|FAC|1", registrationToken);
+        assertEquals(IdentityStatus.COMPLETED, registry.checkAndRegister("APP|FAC|1", registry.nextRegistrationToken(), START + WINDOW));
+        assertEquals(IdentityStatus.NEW, registry.checkAndRegister("APP|FAC|1", registry.nextRegistrationToken(), START + 3 * WINDOW));
+    }
+
+    @Test
+    void lruIsBoundedByCapacity() {
+        MLLPIngresMessageIdentityRegistry registry = new MLLPIngresMessageIdentityRegistry(WINDOW, 10, START);
+        for(int i = 0; i < 50; i++){
+            registry.checkAndRegister("APP|FAC|" + i, registry.nextRegistrationToken(), START + i);
+        }
+        assertEquals(10, registry.getIdentityCount());
+        assertEquals(IdentityStatus.NEW, registry.checkAndRegister("APP|FAC|0", registry.nextRegistrationToken(), START + 100));
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegativesAndFewFalsePositives() {
+        int expectedEntries = 10000;
+        MLLPIngresMessageIdentityRegistry.BloomFilter filter = new MLLPIngresMessageIdentityRegistry.BloomFilter(expectedEntries, 0.01);
+        for(int i = 0; i < expectedEntries; i++){
+            filter.put(MLLPIngresMessageIdentityRegistry.hash("present-" + i));
+        }
+        for(int i = 0; i < expectedEntries; i++){
+            assertTrue(filter.mightContain(MLLPIngresMessageIdentityRegistry.hash("present-" + i)));
+        }
+        int falsePositives = 0;
+        for(int i = 0; i < expectedEntries; i++){
+            if(filter.mightContain(MLLPIngresMessageIdentityRegistry.hash("absent-" + i))){
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < expectedEntries * 0.03, "falsePositives=" + falsePositives);
+        filter.clear();
+        assertFalse(filter.mightContain(MLLPIngresMessageIdentityRegistry.hash("present-0")));
+    }
+}
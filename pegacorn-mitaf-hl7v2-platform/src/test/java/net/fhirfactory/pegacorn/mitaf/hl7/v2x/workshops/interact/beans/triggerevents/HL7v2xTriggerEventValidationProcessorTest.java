@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents;
+
+import ca.uhn.hl7v2.Version;
+import net.fhirfactory.pegacorn.internals.hl7v2.triggerevents.valuesets.HL7v2VersionEnum;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HL7v2xTriggerEventValidationProcessorTest {
+
+    @Test
+    void everyHapiVersionMapsToItsConformanceToolVersion() {
+        Map<Version, HL7v2VersionEnum> expectedVersions = new EnumMap<>(Version.class);
+        expectedVersions.put(Version.V21, HL7v2VersionEnum.VERSION_HL7_V21);
+        expectedVersions.put(Version.V22, HL7v2VersionEnum.VERSION_HL7_V22);
+        expectedVersions.put(Version.V23, HL7v2VersionEnum.VERSION_HL7_V23);
+        expectedVersions.put(Version.V231, HL7v2VersionEnum.VERSION_HL7_V231);
+        expectedVersions.put(Version.V24, HL7v2VersionEnum.VERSION_HL7_V24);
+        expectedVersions.put(Version.V25, HL7v2VersionEnum.VERSION_HL7_V25);
+        expectedVersions.put(Version.V251, HL7v2VersionEnum.VERSION_HL7_V251);
+        expectedVersions.put(Version.V26, HL7v2VersionEnum.VERSION_HL7_V26);
+        expectedVersions.put(Version.V27, HL7v2VersionEnum.VERSION_UNKNOWN);
+        expectedVersions.put(Version.V271, HL7v2VersionEnum.VERSION_UNKNOWN);
+        expectedVersions.put(Version.V28, HL7v2VersionEnum.VERSION_UNKNOWN);
+        expectedVersions.put(Version.V281, HL7v2VersionEnum.VERSION_UNKNOWN);
+
+        HL7v2xTriggerEventValidationProcessor validationProcessor = new HL7v2xTriggerEventValidationProcessor();
+        for(Version version: Version.values()){
+            assertTrue(expectedVersions.containsKey(version), "no expected conformance tool version for " + version);
+            assertEquals(expectedVersions.get(version), validationProcessor.toConformanceToolVersion(version), version.getVersion());
+        }
+        assertEquals(HL7v2VersionEnum.VERSION_UNKNOWN, validationProcessor.toConformanceToolVersion(null));
+    }
+}
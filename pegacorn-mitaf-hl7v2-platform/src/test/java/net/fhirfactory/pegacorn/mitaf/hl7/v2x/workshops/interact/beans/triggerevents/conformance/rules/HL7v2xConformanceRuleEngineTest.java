@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.triggerevents.conformance.rules;
+
+import ca.uhn.hl7v2.Version;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xSegmentIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HL7v2xConformanceRuleEngineTest {
+    private static final int MFE = HL7v2xSegmentIndex.toSegmentType("MFE");
+    private static final int PID = HL7v2xSegmentIndex.toSegmentType("PID");
+
+    @Test
+    void versionSpecificRulesApplyOnlyToTheirVersion() {
+        HL7v2xConformanceRuleEngine ruleEngine = new HL7v2xConformanceRuleEngine();
+        ruleEngine.compile(ruleSet(defaultValueRule("MFE", 5, "CE", "2.4")));
+
+        assertNotNull(ruleEngine.getRuleTable(Version.V24));
+        assertEquals("MFE|A|||ID|CE", ruleEngine.getRuleTable(Version.V24).get(MFE).apply("MFE|A|||ID|"));
+        assertNull(ruleEngine.getRuleTable(Version.V25));
+        assertNull(ruleEngine.getRuleTable(null));
+    }
+
+    @Test
+    void versionsOutsideTheOldEnumKeepTheirOwnRules() {
+        HL7v2xConformanceRuleEngine ruleEngine = new HL7v2xConformanceRuleEngine();
+        ruleEngine.compile(ruleSet(defaultValueRule("PID", 8, "U", "2.6"), defaultValueRule("PID", 8, "F", "2.8.1")));
+
+        assertEquals("PID|1|||||||U", ruleEngine.getRuleTable(Version.V26).get(PID).apply("PID|1||||||"));
+        assertEquals("PID|1|||||||F", ruleEngine.getRuleTable(Version.V281).get(PID).apply("PID|1||||||"));
+        assertNull(ruleEngine.getRuleTable(Version.V27));
+    }
+
+    @Test
+    void allVersionRulesApplyToEveryVersionAndToUnknownVersions() {
+        HL7v2xConformanceRuleEngine ruleEngine = new HL7v2xConformanceRuleEngine();
+        ruleEngine.compile(ruleSet(defaultValueRule("PID", 8, "U"), defaultValueRule("PID", 8, "F", "2.5")));
+
+        assertEquals("PID|1|||||||U", ruleEngine.getRuleTable(Version.V21).get(PID).apply("PID|1||||||"));
+        assertEquals("PID|1|||||||U", ruleEngine.getRuleTable(null).get(PID).apply("PID|1||||||"));
+        // the version specific rule wins
+        assertEquals("PID|1|||||||F", ruleEngine.getRuleTable(Version.V25).get(PID).apply("PID|1||||||"));
+    }
+
+    @Test
+    void rulesWithUnknownVersionsAreRejected() {
+        HL7v2xConformanceRuleEngine ruleEngine = new HL7v2xConformanceRuleEngine();
+        ruleEngine.compile(ruleSet(defaultValueRule("PID", 8, "U", "2.4", "9.9"), defaultValueRule("MFE", 5, "CE", "2.4")));
+
+        assertEquals(1, ruleEngine.getRuleCount());
+        assertNull(ruleEngine.getRuleTable(Version.V24).get(PID));
+        assertNotNull(ruleEngine.getRuleTable(Version.V24).get(MFE));
+    }
+
+    @Test
+    void loadsRulesFromYaml(@TempDir Path rulesDirectory) throws Exception {
+        File rulesFile = rulesDirectory.resolve("rules.yaml").toFile();
+        String yaml = "rules:\n"
+                + "  - segment: MFE\n"
+                + "    versions: [\"2.3.1\", \"2.7\"]\n"
+                + "    type: DEFAULT_VALUE\n"
+                + "    field: 5\n"
+                + "    value: CE\n"
+                + "  - segment: MFE\n"
+                + "    versions: [\"2.10\"]\n"
+                + "    type: DEFAULT_VALUE\n"
+                + "    field: 5\n"
+                + "    value: XX\n";
+        Files.write(rulesFile.toPath(), yaml.getBytes(StandardCharsets.UTF_8));
+        HL7v2xConformanceRuleEngine ruleEngine = new HL7v2xConformanceRuleEngine();
+        ruleEngine.compile(ruleEngine.loadRuleSet(rulesFile));
+
+        assertEquals(1, ruleEngine.getRuleCount());
+        assertEquals("MFE|A|||ID|CE", ruleEngine.getRuleTable(Version.V27).get(MFE).apply("MFE|A|||ID|"));
+        assertNotNull(ruleEngine.getRuleTable(Version.V231));
+    }
+
+    private static HL7v2xConformanceRuleSet ruleSet(HL7v2xConformanceRule... rules){
+        HL7v2xConformanceRuleSet ruleSet = new HL7v2xConformanceRuleSet();
+        ruleSet.setRules(Arrays.asList(rules));
+        return(ruleSet);
+    }
+
+    private static HL7v2xConformanceRule defaultValueRule(String segment, int field, String value, String... versions){
+        HL7v2xConformanceRule rule = new HL7v2xConformanceRule();
+        rule.setSegment(segment);
+        rule.setType(HL7v2xConformanceRuleTypeEnum.DEFAULT_VALUE);
+        rule.setField(field);
+        rule.setValue(value);
+        rule.setVersions(versions.length == 0 ? Collections.emptyList() : Arrays.asList(versions));
+        return(rule);
+    }
+}
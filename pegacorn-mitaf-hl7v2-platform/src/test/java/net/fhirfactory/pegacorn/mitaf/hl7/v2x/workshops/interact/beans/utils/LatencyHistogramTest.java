@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.beans.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsAreExactBelow256AndWithinOnePercentAbove() {
+        for(long value = 0; value < 256; value += 1){
+            assertEquals(value, LatencyHistogram.bucketUpperValue(LatencyHistogram.bucketIndex(value)));
+        }
+        int previousIndex = LatencyHistogram.bucketIndex(255);
+        for(long value = 256; value < (1L << 32); value = value * 3 / 2 + 1){
+            int index = LatencyHistogram.bucketIndex(value);
+            long upperValue = LatencyHistogram.bucketUpperValue(index);
+            assertTrue(index > previousIndex);
+            assertTrue(upperValue >= value);
+            assertTrue(upperValue - value <= value / 128, "value " + value + " upper " + upperValue);
+            previousIndex = index;
+        }
+        assertEquals(3327, LatencyHistogram.bucketIndex((1L << 32) - 1));
+    }
+
+    @Test
+    void percentilesComeFromTheRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long value = 1; value <= 1000; value += 1){
+            histogram.recordNanoseconds(value * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        assertEquals(1000, snapshot.getTotalCount());
+        assertEquals(500, snapshot.getMean());
+        assertEquals(1000, snapshot.getMaximum());
+        assertEquals(1, snapshot.getValueAtPercentile(0.0));
+        assertEquals(500, snapshot.getValueAtPercentile(50.0), 4);
+        assertEquals(990, snapshot.getValueAtPercentile(99.0), 8);
+        assertEquals(1000, snapshot.getValueAtPercentile(100.0));
+    }
+
+    @Test
+    void snapshotResetsTheInterval() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanoseconds(5000L);
+        assertEquals(1, histogram.getTotalCount());
+        assertEquals(1, histogram.snapshotAndReset().getTotalCount());
+        assertEquals(0, histogram.getTotalCount());
+        LatencyHistogram.Snapshot emptySnapshot = histogram.snapshotAndReset();
+        assertEquals(0, emptySnapshot.getTotalCount());
+        assertEquals(0, emptySnapshot.getMean());
+        assertEquals(0, emptySnapshot.getValueAtPercentile(99.0));
+    }
+
+    @Test
+    void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanoseconds(-1000L);
+        histogram.recordNanoseconds(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        assertEquals(2, snapshot.getTotalCount());
+        assertEquals(0, snapshot.getValueAtPercentile(50.0));
+        assertEquals((1L << 32) - 1, snapshot.getMaximum());
+        assertEquals((1L << 32) - 1, snapshot.getValueAtPercentile(100.0));
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.apache.camel.ResolveEndpointFailedException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MITaFMLLPEndpointTest {
+
+    @Test
+    void producersAreRejected() {
+        MITaFMLLPEndpoint endpoint = new MITaFMLLPEndpoint("mitaf-mllp:localhost:12345", new MITaFMLLPComponent());
+        ResolveEndpointFailedException exception = assertThrows(ResolveEndpointFailedException.class, endpoint::createProducer);
+        assertEquals("mitaf-mllp:localhost:12345", exception.getUri());
+    }
+
+    @Test
+    void eventLoopIsAnAcceptedExecutionMode() {
+        MITaFMLLPEndpoint endpoint = new MITaFMLLPEndpoint("mitaf-mllp:localhost:12345", new MITaFMLLPComponent());
+        endpoint.setExecutionMode("event-loop");
+        assertEquals(MLLPIngresExecutionModeEnum.MLLP_INGRES_EXECUTION_EVENT_LOOP, endpoint.getExecutionMode());
+        assertThrows(IllegalArgumentException.class, () -> endpoint.setExecutionMode("no-such-mode"));
+    }
+}
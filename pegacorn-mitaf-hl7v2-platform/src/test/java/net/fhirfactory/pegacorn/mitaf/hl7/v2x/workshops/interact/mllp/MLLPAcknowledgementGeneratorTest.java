@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MLLPAcknowledgementGeneratorTest {
+
+    @Test
+    void extractsTheAcknowledgementCodeFromTheMSASegment() {
+        String acknowledgement = "MSH|^~\\&|RCV|FAC|APP|FAC|20220101||ACK^A01|1|P|2.4\rMSA|AE|MSG0001|Bad message\r";
+        assertEquals("AE", MLLPAcknowledgementGenerator.extractAcknowledgementCode(acknowledgement));
+        assertEquals("CA", MLLPAcknowledgementGenerator.extractAcknowledgementCode("MSH|^~\\&|A|B\nMSA|CA\n"));
+    }
+
+    @Test
+    void ignoresMSAWithinOtherSegments() {
+        String acknowledgement = "MSH|^~\\&|MSA|FAC|APP|FAC|20220101||ACK^A01|1|P|2.4\rMSA|AA|MSG0001\r";
+        assertEquals("AA", MLLPAcknowledgementGenerator.extractAcknowledgementCode(acknowledgement));
+        assertNull(MLLPAcknowledgementGenerator.extractAcknowledgementCode("MSH|^~\\&|MSA|FAC|APP|FAC\rEVN|A01\r"));
+        assertNull(MLLPAcknowledgementGenerator.extractAcknowledgementCode("MSH|^~\\&|A|B\rMSAX|AA\r"));
+        assertNull(MLLPAcknowledgementGenerator.extractAcknowledgementCode(null));
+    }
+
+    @Test
+    void usesTheDeclaredFieldSeparator() {
+        assertEquals("AR", MLLPAcknowledgementGenerator.extractAcknowledgementCode("MSH#^~\\&#A#B\rMSA#AR#1\r"));
+        assertNull(MLLPAcknowledgementGenerator.extractAcknowledgementCode("MSH#^~\\&#A#B\rMSA|AR|1\r"));
+    }
+
+    @Test
+    void generatedAcknowledgementRoundTrips() {
+        String[] mshFields = MLLPMessageHeaderExtractor.extractMSHFields("MSH|^~\\&|APP|FAC|RCV|RFAC|20220101||ADT^A01|MSG0001|P|2.4\rEVN|A01\r".getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1);
+        String acknowledgement = MLLPAcknowledgementGenerator.generateAcknowledgement(mshFields, MLLPAcknowledgementGenerator.APPLICATION_ACCEPT, null);
+        assertEquals(MLLPAcknowledgementGenerator.APPLICATION_ACCEPT, MLLPAcknowledgementGenerator.extractAcknowledgementCode(acknowledgement));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MLLPFrameDecoderTest {
+    private static final String FIRST_MESSAGE = "MSH|^~\\&|APP|FAC|RCV|RFAC|20220101||ADT^A01|MSG0001|P|2.4\rEVN|A01\r";
+    private static final String SECOND_MESSAGE = "MSH|^~\\&|APP|FAC|RCV|RFAC|20220101||ADT^A08|MSG0002|P|2.4\rEVN|A08\r";
+
+    @Test
+    void decodesAFrameSplitAcrossReads() throws IOException {
+        MLLPFrameDecoder decoder = new MLLPFrameDecoder(1024);
+        List<byte[]> frames = new ArrayList<>();
+        byte[] envelope = envelope(FIRST_MESSAGE);
+        int[] splits = {0, 1, 20, envelope.length - 2, envelope.length - 1, envelope.length};
+        for(int index = 1; index < splits.length; index += 1){
+            decoder.decode(ByteBuffer.wrap(envelope, splits[index - 1], splits[index] - splits[index - 1]), frames::add);
+            if(splits[index] < envelope.length - 1){
+                assertTrue(frames.isEmpty());
+            }
+        }
+        assertEquals(1, frames.size());
+        assertEquals(FIRST_MESSAGE, new String(frames.get(0), StandardCharsets.ISO_8859_1));
+        assertFalse(decoder.isFramePending());
+    }
+
+    @Test
+    void decodesSeveralFramesInOneRead() throws IOException {
+        MLLPFrameDecoder decoder = new MLLPFrameDecoder(1024);
+        List<byte[]> frames = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        buffer.put(envelope(FIRST_MESSAGE));
+        buffer.put(envelope(SECOND_MESSAGE));
+        buffer.put(envelope(FIRST_MESSAGE), 0, 10);
+        buffer.flip();
+        decoder.decode(buffer, frames::add);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(2, frames.size());
+        assertEquals(FIRST_MESSAGE, new String(frames.get(0), StandardCharsets.ISO_8859_1));
+        assertEquals(SECOND_MESSAGE, new String(frames.get(1), StandardCharsets.ISO_8859_1));
+        assertTrue(decoder.isFramePending());
+        byte[] envelope = envelope(FIRST_MESSAGE);
+        decoder.decode(ByteBuffer.wrap(envelope, 10, envelope.length - 10), frames::add);
+        assertEquals(3, frames.size());
+        assertEquals(FIRST_MESSAGE, new String(frames.get(2), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void discardsBytesBetweenFramesAndToleratesAMissingEndOfData() throws IOException {
+        MLLPFrameDecoder decoder = new MLLPFrameDecoder(1024);
+        List<byte[]> frames = new ArrayList<>();
+        String stream = "noise\u000B" + FIRST_MESSAGE + "\u001C\u000B" + SECOND_MESSAGE + "\u001C\r\r";
+        decoder.decode(ByteBuffer.wrap(stream.getBytes(StandardCharsets.ISO_8859_1)), frames::add);
+        assertEquals(2, frames.size());
+        assertEquals(FIRST_MESSAGE, new String(frames.get(0), StandardCharsets.ISO_8859_1));
+        assertEquals(SECOND_MESSAGE, new String(frames.get(1), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void rejectsFramesLargerThanTheMaximumFrameSize() throws IOException {
+        MLLPFrameDecoder decoder = new MLLPFrameDecoder(32);
+        byte[] envelope = envelope(FIRST_MESSAGE);
+        assertThrows(IOException.class, () -> decoder.decode(ByteBuffer.wrap(envelope), frame -> fail()));
+        MLLPFrameDecoder splitDecoder = new MLLPFrameDecoder(32);
+        splitDecoder.decode(ByteBuffer.wrap(envelope, 0, 20), frame -> fail());
+        assertThrows(IOException.class, () -> splitDecoder.decode(ByteBuffer.wrap(envelope, 20, 20), frame -> fail()));
+    }
+
+    private static byte[] envelope(String message){
+        return(("\u000B" + message + "\u001C\r").getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
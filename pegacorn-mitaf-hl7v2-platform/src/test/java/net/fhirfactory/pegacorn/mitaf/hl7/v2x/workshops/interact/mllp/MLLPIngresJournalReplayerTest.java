@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MLLPIngresJournalReplayerTest {
+    private static final long WAIT_IN_MILLISECONDS = 5000L;
+
+    @TempDir
+    Path journalDirectory;
+
+    @Test
+    void deliversJournaledFramesAndSavesUndeliverableOnes() throws Exception {
+        MLLPIngresJournal journal = openJournal();
+        RecordingFrameProcessor frameProcessor = new RecordingFrameProcessor(2L, MLLPAcknowledgementGenerator.APPLICATION_ERROR);
+        for(int sequence = 1; sequence <= 3; sequence++){
+            journal.append(MLLPIngresJournalTest.frame(sequence), "local", "remote");
+        }
+        MLLPIngresJournalReplayer replayer = new MLLPIngresJournalReplayer(journal, frameProcessor, 0);
+        replayer.start("ReplayerTest");
+        awaitCondition(() -> replayer.getDeliveredCount() == 2 && replayer.getFailedCount() == 1);
+        replayer.stop();
+
+        assertEquals(List.of(1L, 2L, 3L), frameProcessor.getProcessedSequences());
+        assertTrue(Files.exists(journalDirectory.resolve("failed").resolve(String.format("%020d.hl7", 2))));
+        assertFalse(journal.isOffline());
+        journal.close();
+    }
+
+    @Test
+    void takesTheJournalOfflineWhenAnUndeliverableFrameCannotBeSaved() throws Exception {
+        MLLPIngresJournal journal = openJournal();
+        // a file where the failed directory should be, so saving fails
+        Files.write(journalDirectory.resolve("failed"), new byte[0]);
+        RecordingFrameProcessor frameProcessor = new RecordingFrameProcessor(1L, MLLPAcknowledgementGenerator.APPLICATION_REJECT);
+        journal.append(MLLPIngresJournalTest.frame(1), "local", "remote");
+        journal.append(MLLPIngresJournalTest.frame(2), "local", "remote");
+        MLLPIngresJournalReplayer replayer = new MLLPIngresJournalReplayer(journal, frameProcessor, 0);
+        replayer.start("ReplayerTest");
+        awaitCondition(journal::isOffline);
+        replayer.stop();
+
+        assertEquals(List.of(1L), frameProcessor.getProcessedSequences());
+        assertThrows(IOException.class, () -> journal.append(MLLPIngresJournalTest.frame(3), "local", "remote"));
+        journal.close();
+
+        // the entry is still in the journal, for the next start
+        MLLPIngresJournal reopenedJournal = openJournal();
+        assertEquals(1, reopenedJournal.getRecoveredCursor().getSequence());
+        reopenedJournal.close();
+    }
+
+    //
+    // Helpers
+    //
+
+    private MLLPIngresJournal openJournal() throws IOException {
+        MLLPIngresJournal journal = new MLLPIngresJournal(journalDirectory, 64 * 1024);
+        journal.open();
+        return(journal);
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_IN_MILLISECONDS;
+        while(!condition.getAsBoolean()){
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for the replayer");
+            Thread.sleep(10);
+        }
+    }
+
+    private static class RecordingFrameProcessor extends MLLPFrameProcessor {
+        private final long failingSequence;
+        private final String failureCode;
+        private final List<Long> processedSequences;
+
+        RecordingFrameProcessor(long failingSequence, String failureCode){
+            super(null);
+            this.failingSequence = failingSequence;
+            this.failureCode = failureCode;
+            this.processedSequences = new CopyOnWriteArrayList<>();
+        }
+
+        @Override
+        public MLLPFrameOutcome processJournaledFrame(MLLPIngresJournalEntry entry){
+            processedSequences.add(entry.getSequence());
+            if(entry.getSequence() == failingSequence){
+                return(new MLLPFrameOutcome(null, false, failureCode, true));
+            }
+            return(new MLLPFrameOutcome(null, false, MLLPAcknowledgementGenerator.APPLICATION_ACCEPT, false));
+        }
+
+        List<Long> getProcessedSequences(){
+            return(processedSequences);
+        }
+    }
+}
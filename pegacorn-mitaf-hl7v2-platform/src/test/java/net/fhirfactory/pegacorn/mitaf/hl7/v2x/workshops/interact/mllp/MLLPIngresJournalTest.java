@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.mllp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MLLPIngresJournalTest {
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final String LOCAL_ADDRESS = "10.0.0.1:10100";
+    private static final String REMOTE_ADDRESS = "10.0.0.2:40000";
+
+    @TempDir
+    Path journalDirectory;
+
+    @Test
+    void appendedFramesAreReadBackInOrder() throws IOException {
+        MLLPIngresJournal journal = openJournal(64 * 1024);
+        assertEquals(1, journal.append(frame(1), LOCAL_ADDRESS, REMOTE_ADDRESS));
+        assertEquals(2, journal.append(frame(2), LOCAL_ADDRESS, REMOTE_ADDRESS));
+        assertEquals(3, journal.append(frame(3), LOCAL_ADDRESS, REMOTE_ADDRESS));
+
+        MLLPIngresJournal.JournalCursor cursor = journal.getRecoveredCursor();
+        for(int sequence = 1; sequence <= 3; sequence++){
+            MLLPIngresJournalEntry entry = journal.read(cursor);
+            assertNotNull(entry);
+            assertEquals(sequence, entry.getSequence());
+            assertArrayEquals(frame(sequence), entry.getFrame());
+            assertEquals(LOCAL_ADDRESS, entry.getLocalAddress());
+            assertEquals(REMOTE_ADDRESS, entry.getRemoteAddress());
+            cursor.advance(entry);
+        }
+        assertNull(journal.read(cursor));
+        journal.close();
+    }
+
+    @Test
+    void appendsRotateSegmentsAndCheckpointDeletesConsumedSegments() throws IOException {
+        MLLPIngresJournal journal = openJournal(256);
+        for(int sequence = 1; sequence <= 20; sequence++){
+            journal.append(frame(sequence), LOCAL_ADDRESS, REMOTE_ADDRESS);
+        }
+        assertTrue(journal.getSegmentCount() > 1);
+
+        MLLPIngresJournal.JournalCursor cursor = journal.getRecoveredCursor();
+        for(int sequence = 1; sequence <= 20; sequence++){
+            MLLPIngresJournalEntry entry = journal.read(cursor);
+            assertEquals(sequence, entry.getSequence());
+            assertArrayEquals(frame(sequence), entry.getFrame());
+            cursor.advance(entry);
+        }
+        journal.checkpoint(cursor, true);
+        assertEquals(1, journal.getSegmentCount());
+        assertEquals(1, countSegmentFiles());
+        journal.close();
+    }
+
+    @Test
+    void reopenedJournalReplaysFromTheCheckpoint() throws IOException {
+        MLLPIngresJournal journal = openJournal(256);
+        for(int sequence = 1; sequence <= 10; sequence++){
+            journal.append(frame(sequence), LOCAL_ADDRESS, REMOTE_ADDRESS);
+        }
+        MLLPIngresJournal.JournalCursor cursor = journal.getRecoveredCursor();
+        for(int sequence = 1; sequence <= 4; sequence++){
+            cursor.advance(journal.read(cursor));
+        }
+        journal.checkpoint(cursor, true);
+        journal.close();
+
+        MLLPIngresJournal reopenedJournal = openJournal(256);
+        MLLPIngresJournal.JournalCursor recoveredCursor = reopenedJournal.getRecoveredCursor();
+        assertEquals(5, recoveredCursor.getSequence());
+        for(int sequence = 5; sequence <= 10; sequence++){
+            MLLPIngresJournalEntry entry = reopenedJournal.read(recoveredCursor);
+            assertEquals(sequence, entry.getSequence());
+            assertArrayEquals(frame(sequence), entry.getFrame());
+            recoveredCursor.advance(entry);
+        }
+        assertNull(reopenedJournal.read(recoveredCursor));
+        assertEquals(11, reopenedJournal.append(frame(11), LOCAL_ADDRESS, REMOTE_ADDRESS));
+        reopenedJournal.close();
+    }
+
+    @Test
+    void tornTailIsDiscardedOnRecovery() throws IOException {
+        MLLPIngresJournal journal = openJournal(64 * 1024);
+        for(int sequence = 1; sequence <= 3; sequence++){
+            journal.append(frame(sequence), LOCAL_ADDRESS, REMOTE_ADDRESS);
+        }
+        journal.close();
+        // a crash part way through writing the last record
+        corruptByte(firstSegmentFile(), recordOffset(3) + 30);
+
+        MLLPIngresJournal recoveredJournal = openJournal(64 * 1024);
+        assertEquals(2, recoveredJournal.getDurableSequence());
+        MLLPIngresJournal.JournalCursor cursor = recoveredJournal.getRecoveredCursor();
+        cursor.advance(recoveredJournal.read(cursor));
+        cursor.advance(recoveredJournal.read(cursor));
+        assertNull(recoveredJournal.read(cursor));
+        assertEquals(3, recoveredJournal.append(frame(33), LOCAL_ADDRESS, REMOTE_ADDRESS));
+        assertArrayEquals(frame(33), recoveredJournal.read(cursor).getFrame());
+        recoveredJournal.close();
+    }
+
+    @Test
+    void corruptRecordIsSavedAndSkipped() throws IOException {
+        MLLPIngresJournal journal = openJournal(64 * 1024);
+        for(int sequence = 1; sequence <= 3; sequence++){
+            journal.append(frame(sequence), LOCAL_ADDRESS, REMOTE_ADDRESS);
+        }
+        corruptByte(firstSegmentFile(), recordOffset(2) + 30);
+
+        MLLPIngresJournal.JournalCursor cursor = journal.getRecoveredCursor();
+        cursor.advance(journal.read(cursor));
+        assertThrows(IOException.class, () -> journal.read(cursor));
+        Path savedFile = journal.skipUnreadableRecord(cursor);
+        assertNotNull(savedFile);
+        assertTrue(Files.exists(savedFile));
+        assertEquals(3, cursor.getSequence());
+        MLLPIngresJournalEntry entry = journal.read(cursor);
+        assertEquals(3, entry.getSequence());
+        assertArrayEquals(frame(3), entry.getFrame());
+        journal.close();
+    }
+
+    @Test
+    void corruptLengthSkipsToTheEndOfTheJournal() throws IOException {
+        MLLPIngresJournal journal = openJournal(64 * 1024);
+        for(int sequence = 1; sequence <= 3; sequence++){
+            journal.append(frame(sequence), LOCAL_ADDRESS, REMOTE_ADDRESS);
+        }
+        corruptByte(firstSegmentFile(), recordOffset(2) + 1);
+
+        MLLPIngresJournal.JournalCursor cursor = journal.getRecoveredCursor();
+        cursor.advance(journal.read(cursor));
+        assertThrows(IOException.class, () -> journal.read(cursor));
+        assertNotNull(journal.skipUnreadableRecord(cursor));
+        assertEquals(4, cursor.getSequence());
+        assertNull(journal.read(cursor));
+        journal.append(frame(4), LOCAL_ADDRESS, REMOTE_ADDRESS);
+        assertArrayEquals(frame(4), journal.read(cursor).getFrame());
+        journal.close();
+    }
+
+    @Test
+    void offlineJournalRejectsAppends() throws IOException {
+        MLLPIngresJournal journal = openJournal(64 * 1024);
+        journal.append(frame(1), LOCAL_ADDRESS, REMOTE_ADDRESS);
+        journal.takeOffline("test");
+        assertTrue(journal.isOffline());
+        IOException appendException = assertThrows(IOException.class, () -> journal.append(frame(2), LOCAL_ADDRESS, REMOTE_ADDRESS));
+        assertTrue(appendException.getMessage().contains("offline"));
+        // what was journaled is still there to replay
+        assertArrayEquals(frame(1), journal.read(journal.getRecoveredCursor()).getFrame());
+        journal.close();
+    }
+
+    @Test
+    void closedJournalFailsReads() throws IOException {
+        MLLPIngresJournal journal = openJournal(64 * 1024);
+        journal.append(frame(1), LOCAL_ADDRESS, REMOTE_ADDRESS);
+        MLLPIngresJournal.JournalCursor cursor = journal.getRecoveredCursor();
+        journal.close();
+        assertThrows(IOException.class, () -> journal.read(cursor));
+        assertThrows(IOException.class, () -> journal.append(frame(2), LOCAL_ADDRESS, REMOTE_ADDRESS));
+    }
+
+    //
+    // Helpers
+    //
+
+    private MLLPIngresJournal openJournal(int segmentSize) throws IOException {
+        MLLPIngresJournal journal = new MLLPIngresJournal(journalDirectory, segmentSize);
+        journal.open();
+        return(journal);
+    }
+
+    // frames of the same length, so records are the same size
+    static byte[] frame(int number){
+        return(String.format("MSH|^~\\&|A|F|R|RF|20210101||ADT^A01|%04d|P|2.4\r", number).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static int recordOffset(int sequence){
+        int recordSize = 4 + 4 + 8 + 2 + LOCAL_ADDRESS.length() + 2 + REMOTE_ADDRESS.length() + 4 + frame(sequence).length;
+        return(SEGMENT_HEADER_SIZE + (sequence - 1) * recordSize);
+    }
+
+    private Path firstSegmentFile() throws IOException {
+        try(Stream<Path> files = Files.list(journalDirectory)){
+            return(files.filter(file -> file.getFileName().toString().endsWith(".journal")).sorted().findFirst().orElseThrow());
+        }
+    }
+
+    private long countSegmentFiles() throws IOException {
+        try(Stream<Path> files = Files.list(journalDirectory)){
+            return(files.filter(file -> file.getFileName().toString().endsWith(".journal")).count());
+        }
+    }
+
+    private static void corruptByte(Path file, int offset) throws IOException {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")){
+            randomAccessFile.seek(offset);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(offset);
+            randomAccessFile.write(value ^ 0x5A);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.filter;
+
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HL7v2xMessageFilterRuleTest {
+    private static final HL7v2xMessageView INPATIENT_ADMISSION = new HL7v2xMessageView("MSH|^~\\&|APP|FAC|RCV|RFAC|20220101||ADT^A01|MSG0001|P|2.4\r"
+            + "PID|||123^^^MRN||SMITH JONES^JOHN\r"
+            + "PV1||I|WARD^ROOM^BED\r");
+
+    @Test
+    void comparesValues() {
+        assertTrue(HL7v2xMessageFilterRule.parse("PV1-2 = 'I'").matches(INPATIENT_ADMISSION));
+        assertFalse(HL7v2xMessageFilterRule.parse("PV1-2 = O").matches(INPATIENT_ADMISSION));
+        assertTrue(HL7v2xMessageFilterRule.parse("PV1-2 != \"O\"").matches(INPATIENT_ADMISSION));
+        assertTrue(HL7v2xMessageFilterRule.parse("PID-5 = 'SMITH JONES'").matches(INPATIENT_ADMISSION));
+    }
+
+    @Test
+    void checksListMembership() {
+        assertFalse(HL7v2xMessageFilterRule.parse("MSH-9 !in {ADT, ORU}").matches(INPATIENT_ADMISSION));
+        assertTrue(HL7v2xMessageFilterRule.parse("MSH-9 !in {ORU,'MDM'}").matches(INPATIENT_ADMISSION));
+        assertTrue(HL7v2xMessageFilterRule.parse("MSH-9-2 in {A01,A04}").matches(INPATIENT_ADMISSION));
+        assertFalse(HL7v2xMessageFilterRule.parse("PV1-4 in {A01}").matches(INPATIENT_ADMISSION));
+        assertTrue(HL7v2xMessageFilterRule.parse("PV1-4 !in {A01}").matches(INPATIENT_ADMISSION));
+    }
+
+    @Test
+    void matchesRegularExpressions() {
+        assertTrue(HL7v2xMessageFilterRule.parse("PV1-3 matches 'WA.*'").matches(INPATIENT_ADMISSION));
+        assertFalse(HL7v2xMessageFilterRule.parse("PV1-3 matches WA").matches(INPATIENT_ADMISSION));
+        assertTrue(HL7v2xMessageFilterRule.parse("PV1-3 !matches ICU.*").matches(INPATIENT_ADMISSION));
+        assertTrue(HL7v2xMessageFilterRule.parse("PV1-4 !matches .*").matches(INPATIENT_ADMISSION));
+    }
+
+    @Test
+    void treatsAbsentValuesAsEmpty() {
+        assertTrue(HL7v2xMessageFilterRule.parse("PV1-4 empty").matches(INPATIENT_ADMISSION));
+        assertTrue(HL7v2xMessageFilterRule.parse("ZZZ-1 empty").matches(INPATIENT_ADMISSION));
+        assertFalse(HL7v2xMessageFilterRule.parse("PID-3 empty").matches(INPATIENT_ADMISSION));
+        assertTrue(HL7v2xMessageFilterRule.parse("PID-3 PRESENT").matches(INPATIENT_ADMISSION));
+        assertTrue(HL7v2xMessageFilterRule.parse("PV1-4 != I").matches(INPATIENT_ADMISSION));
+    }
+
+    @Test
+    void countsHitsAndKeepsANormalisedExpression() {
+        HL7v2xMessageFilterRule rule = HL7v2xMessageFilterRule.parse("  MSH-9   in   {ADT, ORU}");
+        assertEquals("MSH-9 in {ADT,ORU}", rule.getExpression());
+        assertEquals(HL7v2xMessageFilterRule.Operator.IN, rule.getOperator());
+        rule.matches(INPATIENT_ADMISSION);
+        rule.matches(INPATIENT_ADMISSION);
+        assertEquals(2, rule.getHitCount());
+        assertEquals("PV1-2 = 'I'", HL7v2xMessageFilterRule.parse("PV1-2 = I").getExpression());
+    }
+
+    @Test
+    void rejectsInvalidRules() {
+        String[] invalidRules = {"", "PV1-2", "PV1-2 ~ I", "PV1-2 =", "PV1-2 empty I", "PV1 = I", "PV1-2 matches ("};
+        for(String invalidRule: invalidRules){
+            assertThrows(IllegalArgumentException.class, () -> HL7v2xMessageFilterRule.parse(invalidRule), invalidRule);
+        }
+    }
+}
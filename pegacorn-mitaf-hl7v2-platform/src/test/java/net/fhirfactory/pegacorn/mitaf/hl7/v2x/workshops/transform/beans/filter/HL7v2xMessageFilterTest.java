@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.filter;
+
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HL7v2xMessageFilterTest {
+    private static final HL7v2xMessageView INPATIENT_ADMISSION = new HL7v2xMessageView("MSH|^~\\&|APP|FAC|RCV|RFAC|20220101||ADT^A01|MSG0001|P|2.4\rPV1||I\r");
+    private static final HL7v2xMessageView OUTPATIENT_ADMISSION = new HL7v2xMessageView("MSH|^~\\&|APP|FAC|RCV|RFAC|20220101||ADT^A01|MSG0002|P|2.4\rPV1||O\r");
+    private static final HL7v2xMessageView RESULT = new HL7v2xMessageView("MSH|^~\\&|APP|FAC|RCV|RFAC|20220101||ORU^R01|MSG0003|P|2.4\rOBX|1|ST\r");
+    private static final HL7v2xMessageView ORDER = new HL7v2xMessageView("MSH|^~\\&|APP|FAC|RCV|RFAC|20220101||ORM^O01|MSG0004|P|2.4\r");
+
+    @Test
+    void theFirstMatchingRuleDecides() {
+        HL7v2xMessageFilter filter = HL7v2xMessageFilter.parse("MSH-9 !in {ADT,ORU}; PV1-2 = 'I'; MSH-9 = ADT");
+        assertEquals(3, filter.getRules().size());
+        assertEquals("MSH-9 !in {ADT,ORU}", filter.evaluate(ORDER).getExpression());
+        assertEquals("PV1-2 = 'I'", filter.evaluate(INPATIENT_ADMISSION).getExpression());
+        assertEquals("MSH-9 = 'ADT'", filter.evaluate(OUTPATIENT_ADMISSION).getExpression());
+        assertNull(filter.evaluate(RESULT));
+        assertEquals(4, filter.getEvaluatedMessageCount());
+        assertEquals(3, filter.getDiscardedMessageCount());
+        Map<String, Long> hitCounts = filter.getRuleHitCounts();
+        assertArrayEquals(new Object[]{"MSH-9 !in {ADT,ORU}", "PV1-2 = 'I'", "MSH-9 = 'ADT'"}, hitCounts.keySet().toArray());
+        assertArrayEquals(new Object[]{1L, 1L, 1L}, hitCounts.values().toArray());
+    }
+
+    @Test
+    void anEmptyFilterPassesEverything() {
+        HL7v2xMessageFilter filter = HL7v2xMessageFilter.parse("  ;; ");
+        assertTrue(filter.isEmpty());
+        assertTrue(HL7v2xMessageFilter.parse(null).isEmpty());
+        assertNull(filter.evaluate(ORDER));
+        assertEquals(0, filter.getDiscardedMessageCount());
+    }
+
+    @Test
+    void rulesCanBeAddedOneByOne() {
+        HL7v2xMessageFilter filter = new HL7v2xMessageFilter().addRule("OBX-2 present").addRule(new HL7v2xMessageFilterRule("PV1-2", HL7v2xMessageFilterRule.Operator.IN, "I", "E"));
+        assertEquals("OBX-2 present", filter.evaluate(RESULT).getExpression());
+        assertEquals("PV1-2 in {I,E}", filter.evaluate(INPATIENT_ADMISSION).getExpression());
+        assertNull(filter.evaluate(OUTPATIENT_ADMISSION));
+        assertThrows(IllegalArgumentException.class, () -> HL7v2xMessageFilter.parse("MSH-9 = ADT; PV1-2 ~ I"));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.message.transformation;
+
+import freemarker.template.Template;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransformationTemplateServiceTest {
+    private static final long WAIT_IN_MILLISECONDS = 10000L;
+
+    @TempDir
+    Path configDirectory;
+
+    private TransformationTemplateService templateService;
+
+    @BeforeEach
+    void createService() {
+        templateService = new TransformationTemplateService(){
+            @Override
+            protected Path getTransformationConfigDirectory() {
+                return(configDirectory);
+            }
+        };
+    }
+
+    @AfterEach
+    void shutdownService() {
+        templateService.shutdown();
+    }
+
+    @Test
+    void includesResolveAgainstTheConfigDirectory() throws Exception {
+        Files.createDirectories(configDirectory.resolve("common"));
+        Files.write(configDirectory.resolve("common/greeting.ftl"), "Hello ${name}".getBytes(StandardCharsets.UTF_8));
+        Path templatePath = configDirectory.resolve("templates/main.ftl");
+        Files.createDirectories(templatePath.getParent());
+        Files.write(templatePath, "<#include \"/common/greeting.ftl\">!".getBytes(StandardCharsets.UTF_8));
+
+        templateService.registerTemplate(templateService.resolveTemplatePath("templates/main.ftl"));
+
+        assertEquals("Hello World!", process(templateService.getTemplate(templatePath)));
+    }
+
+    @Test
+    void templateOutsideTheConfigDirectoryIncludesFromItsOwnDirectory(@TempDir Path otherDirectory) throws Exception {
+        Files.write(otherDirectory.resolve("part.ftl"), "part of ${name}".getBytes(StandardCharsets.UTF_8));
+        Path templatePath = otherDirectory.resolve("main.ftl");
+        Files.write(templatePath, "<#include \"part.ftl\">".getBytes(StandardCharsets.UTF_8));
+
+        templateService.registerTemplate(templatePath);
+
+        assertEquals("part of World", process(templateService.getTemplate(templatePath)));
+    }
+
+    @Test
+    void changedTemplateIsRecompiled() throws Exception {
+        Path templatePath = configDirectory.resolve("main.ftl");
+        Files.write(templatePath, "Version 1 ${name}".getBytes(StandardCharsets.UTF_8));
+        templateService.registerTemplate(templatePath);
+
+        replace(templatePath, "Version 2 ${name}");
+
+        long deadline = System.currentTimeMillis() + WAIT_IN_MILLISECONDS;
+        // the template is swapped in just before the reload is counted, so wait for both
+        while((!"Version 2 World".equals(process(templateService.getTemplate(templatePath))) || templateService.getReloadCount() == 0) && System.currentTimeMillis() < deadline){
+            Thread.sleep(50L);
+        }
+        assertEquals("Version 2 World", process(templateService.getTemplate(templatePath)));
+        assertEquals(1, templateService.getReloadCount());
+    }
+
+    @Test
+    void emptyOrBrokenTemplateKeepsThePreviousVersion() throws Exception {
+        Path templatePath = configDirectory.resolve("main.ftl");
+        Files.write(templatePath, "Version 1 ${name}".getBytes(StandardCharsets.UTF_8));
+        templateService.registerTemplate(templatePath);
+
+        // a truncated file is never swapped in, however long it stays that way
+        replace(templatePath, "");
+        Thread.sleep(3000L);
+        assertEquals(0, templateService.getReloadCount());
+        assertEquals("Version 1 World", process(templateService.getTemplate(templatePath)));
+
+        replace(templatePath, "Version 2 ${name");
+        long deadline = System.currentTimeMillis() + WAIT_IN_MILLISECONDS;
+        while(templateService.getReloadFailureCount() == 0 && System.currentTimeMillis() < deadline){
+            Thread.sleep(50L);
+        }
+        assertEquals(1, templateService.getReloadFailureCount());
+        assertEquals(0, templateService.getReloadCount());
+        assertEquals("Version 1 World", process(templateService.getTemplate(templatePath)));
+    }
+
+    @Test
+    void missingTemplateIsRejected() {
+        assertThrows(RuntimeException.class, () -> templateService.registerTemplate(configDirectory.resolve("missing.ftl")));
+    }
+
+    /**
+     * Replaces the template the way a deployment would: written in full to a temporary file, which is then
+     * moved over the template.
+     */
+    private static void replace(Path templatePath, String content) throws Exception {
+        Path temporaryPath = Files.createTempFile(templatePath.getParent(), "template", ".tmp");
+        Files.write(temporaryPath, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporaryPath, templatePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String process(Template template) throws Exception {
+        StringWriter output = new StringWriter();
+        template.process(Map.of("name", "World"), output);
+        return(output.toString());
+    }
+}
@@ -31,6 +31,8 @@ import ca.uhn.hl7v2.util.idgenerator.NanoTimeGenerator;
 import net.fhirfactory.pegacorn.core.interfaces.capabilities.CapabilityUtilisationBrokerInterface;
 import net.fhirfactory.pegacorn.core.model.capabilities.base.CapabilityUtilisationRequest;
 import net.fhirfactory.pegacorn.core.model.capabilities.base.CapabilityUtilisationResponse;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xMessageView;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.model.HL7v2xSegmentIndex;
 import org.apache.camel.Exchange;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -49,6 +51,7 @@ public class HL7v24TaskA19QueryClientHandler {
     //TODO move these to a more common place
     public final static String A19QUERY_FULFILLMENT_NAME = "A19QueryFulfillment";
     public final static String EXCHANGE_PROP_AIP = "AIPNumber";
+    private final static String HL7V24_VERSION = "2.4";
     
     private HapiContext hapiContext;
 
@@ -98,6 +101,35 @@ public class HL7v24TaskA19QueryClientHandler {
         } catch (Exception ex) {
             LOG.warn(".processA19Request(): Something went wrong --> {}", ex);
         }
+        return(executeA19Query(queryString, exchange));
+    }
+
+    /**
+     * Processes the (ingres transformed) A19 query without building the HAPI object model for it - the
+     * only things needed from the query are the QRD segment (and the subject filter in QRD-8) and the
+     * query text itself, both of which are read straight from the message text.
+     *
+     * @param incomingRequest the A19 query (ER7 encoded)
+     * @param exchange the Camel Exchange
+     * @return the query response
+     */
+    public Message processA19QueryText(String incomingRequest, Exchange exchange) {
+        LOG.info(".processA19QueryText(): Entry Received Message");
+        LOG.debug(".processA19QueryText(): IncomingMessage->{}", incomingRequest);
+        HL7v2xMessageView queryView = HL7v2xMessageView.fromExchange(exchange, incomingRequest);
+        if (queryView.indexOf("QRD") < 0) {
+            throw new IllegalArgumentException("No QRD segment in incoming request");
+        }
+        String version = queryView.getVersion();
+        if (!HL7V24_VERSION.equals(version)) {
+            throw new IllegalArgumentException("Unexpected QRD segment for message version " + version + ", likely wrong message version");
+        }
+        String urn = queryView.getComponent("QRD", 8, 1);
+        LOG.info(".processA19QueryText(): URN --> {}", urn);
+        return(executeA19Query(toQueryString(queryView), exchange));
+    }
+
+    private Message executeA19Query(String queryString, Exchange exchange){
         Parser parser = getHAPIContext().getPipeParser();
         parser.getParserConfiguration().setValidating(false);
         parser.getParserConfiguration().setEncodeEmptyMandatoryFirstSegments(true);
@@ -121,6 +153,19 @@ public class HL7v24TaskA19QueryClientHandler {
         return(null);
     }
 
+    /**
+     * The query is passed on as HAPI would have encoded it, i.e. with every segment terminated by a
+     * carriage return (whatever the template emitted).
+     */
+    private String toQueryString(HL7v2xMessageView queryView){
+        HL7v2xSegmentIndex segmentIndex = queryView.getSegmentIndex();
+        StringBuilder queryString = new StringBuilder(segmentIndex.getMessageLength() + 1);
+        for(int segmentNumber = 0; segmentNumber < segmentIndex.getSegmentCount(); segmentNumber += 1){
+            segmentIndex.appendSegment(queryString, segmentNumber).append('\r');
+        }
+        return(queryString.toString());
+    }
+
     private String utiliseA19QueryCapability(String queryString, String aipNumber){
         LOG.info(".utiliseA19QueryCapability(): Entry, queryString --> {}, aipNumber --> {}", queryString, aipNumber);
         //
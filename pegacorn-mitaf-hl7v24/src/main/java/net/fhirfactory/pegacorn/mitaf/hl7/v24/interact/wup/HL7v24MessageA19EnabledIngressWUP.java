@@ -21,10 +21,6 @@
  */
 package net.fhirfactory.pegacorn.mitaf.hl7.v24.interact.wup;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-
 import javax.inject.Inject;
 
 import org.apache.camel.LoggingLevel;
@@ -34,6 +30,8 @@ import net.fhirfactory.pegacorn.mitaf.hl7.v24.interact.beans.HL7v24TaskA19QueryC
 import net.fhirfactory.pegacorn.mitaf.hl7.v24.interact.beans.HL7v24UnsupportedInput;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.interact.wup.BaseHL7v2xMessageIngressWUP;
 import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.message.transformation.FreeMarkerConfiguration;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.beans.engines.HL7v2xTransformationEngineSelector;
+import net.fhirfactory.pegacorn.mitaf.hl7.v2x.workshops.transform.interfaces.TransformationConfigurationFileSpecificationInterface;
 
 public abstract class HL7v24MessageA19EnabledIngressWUP extends BaseHL7v2xMessageIngressWUP {
 
@@ -41,6 +39,9 @@ public abstract class HL7v24MessageA19EnabledIngressWUP extends BaseHL7v2xMessag
 
     @Inject
     private FreeMarkerConfiguration freemarkerConfig;
+
+    @Inject
+    private HL7v2xTransformationEngineSelector engineSelector;
     
     @Override
     protected String specifyWUPInstanceName() {
@@ -57,17 +58,9 @@ public abstract class HL7v24MessageA19EnabledIngressWUP extends BaseHL7v2xMessag
         getLogger().info("{}:: ingresFeed() --> {}", getClass().getSimpleName(), ingresFeed());
         getLogger().info("{}:: egressFeed() --> {}", getClass().getSimpleName(), egressFeed());
 
-        // This will make sure the file exists during app startup
-        String ingresTransformFileName = System.getenv("TRANSFORMATION_CONFIG_FILE_LOCATION") + "/" + System.getenv("KUBERNETES_SERVICE_NAME") + "/" + System.getenv("KUBERNETES_SERVICE_NAME") + "-ingres-transformation-config.ftl";
-        Path ingresTransformationFile = Paths.get(ingresTransformFileName);
-        if (!Files.exists(ingresTransformationFile)) {
-            throw new RuntimeException("Transformation file not found: " + ingresTransformFileName);
-        }
-        String egressTransformFileName = System.getenv("TRANSFORMATION_CONFIG_FILE_LOCATION") + "/" + System.getenv("KUBERNETES_SERVICE_NAME") + "/" + System.getenv("KUBERNETES_SERVICE_NAME") + "-egress-transformation-config.ftl";
-        Path egressTransformFile = Paths.get(egressTransformFileName);
-        if (!Files.exists(egressTransformFile)) {
-            throw new RuntimeException("Transformation file not found: " + ingresTransformFileName);
-        }
+        // Resolving the transformations makes sure they exist (and compile) during app startup
+        TransformationConfigurationFileSpecificationInterface ingresTransformation = engineSelector.getIngresTransformation();
+        TransformationConfigurationFileSpecificationInterface egressTransformation = engineSelector.getEgressTransformation();
         
         HL7DataFormat hl7 = new HL7DataFormat();
         hl7.setValidate(false);
@@ -77,20 +70,20 @@ public abstract class HL7v24MessageA19EnabledIngressWUP extends BaseHL7v2xMessag
                 .unmarshal(hl7)
                 .log(LoggingLevel.INFO, "HL7v24MessageA19EnabledIngressWUP: Received -> ${body}")
                 .bean(freemarkerConfig,"configure(*, Exchange)")
-                .to("freemarker:file:" + ingresTransformFileName + "?contentCache=false&allowTemplateFromHeader=true&allowContextMapAll=true")
-                .bean(freemarkerConfig,"convertToMessage(*, Exchange)")
+                .process(engineSelector.dispatchTransformations(ingresTransformation))
                 .choice()
                     .when(exchangeProperty(HL7v24UnsupportedInput.EXCHANGE_PROP_UNSUPPORTED_ERROR).isNull())
                         .log(LoggingLevel.DEBUG, "HL7v24MessageA19EnabledIngressWUP: Received Supported Query -> ${body}")
-                        .bean(HL7v24TaskA19QueryClientHandler.class, "processA19Request")
+                        .bean(HL7v24TaskA19QueryClientHandler.class, "processA19QueryText(*, Exchange)")
                         .log(LoggingLevel.DEBUG, "HL7v24MessageA19EnabledIngressWUP: Post A19 Query Client Handler -> ${body}")
                         .bean(freemarkerConfig,"configure(*, Exchange)")
-                        .to("freemarker:file:" + egressTransformFileName + "?contentCache=false&allowTemplateFromHeader=true&allowContextMapAll=true")
+                        .process(engineSelector.dispatchTransformations(egressTransformation))
                         .bean(freemarkerConfig,"convertToMessage(*, Exchange)")
                         .marshal(hl7)
                         .log(LoggingLevel.INFO, "HL7v24MessageA19EnabledIngressWUP: Returning ACK -> ${body}")
                     .otherwise()
                         .log(LoggingLevel.DEBUG, "HL7v24MessageA19EnabledIngressWUP: Not a supported query after ingres transformation -> ${body}")
+                        .bean(freemarkerConfig,"convertToMessage(*, Exchange)")
                         .bean(HL7v24UnsupportedInput.class, "buildUnsupportedNACK(*, Exchange)")
                         .marshal(hl7)
                         .log(LoggingLevel.INFO, "HL7v24MessageA19EnabledIngressWUP: Returning NACK -> ${body}")